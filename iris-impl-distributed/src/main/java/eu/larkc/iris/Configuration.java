@@ -16,16 +16,23 @@
 package eu.larkc.iris;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.hadoop.mapred.JobConf;
 
+import eu.larkc.iris.evaluation.DeltaTracker;
+import eu.larkc.iris.evaluation.EvaluationMetrics;
 import eu.larkc.iris.evaluation.IDistributedEvaluationStrategyFactory;
 import eu.larkc.iris.evaluation.bottomup.DistributedBottomUpEvaluationStrategyFactory;
 import eu.larkc.iris.evaluation.bottomup.IRuleEvaluationBlocker;
 import eu.larkc.iris.evaluation.bottomup.naive.DistributedEvaluatorFactory;
+import eu.larkc.iris.indexing.PredicateCatalog;
+import eu.larkc.iris.indexing.TermDictionary;
 import eu.larkc.iris.rules.IRecursiveRulePreProcessor;
 import eu.larkc.iris.rules.NonOptimizingRecursiveRulePreProcessor;
 import eu.larkc.iris.rules.optimisation.JoinOptimizer;
@@ -33,6 +40,7 @@ import eu.larkc.iris.rules.stratification.DependencyMinimizingStratifier;
 import eu.larkc.iris.rules.stratification.IPostStratificationOptimization;
 import eu.larkc.iris.rules.stratification.IPreStratificationOptimization;
 import eu.larkc.iris.rules.stratification.RdfsOptimizer;
+import eu.larkc.iris.storage.ColumnarStatistics;
 
 /**
  * Configuration for a distributed evaluation
@@ -47,6 +55,124 @@ public class Configuration extends org.deri.iris.Configuration
 
 	public boolean doPredicateIndexing = false;
 	
+	/**
+	 * If enabled the recursive rules are re-evaluated by joining only the inferences of the previous iterations (the delta) 
+	 * with the full relations, instead of re-joining all the data
+	 */
+	public boolean doSemiNaiveEvaluation = false;
+	
+	/**
+	 * The maximum number of rules evaluated at the same time by the evaluators. 
+	 * The rules of an iteration (or depending on the predicates updated in a round) are submitted together, 1 evaluates them one after the other.
+	 * A rule reading the locations written by an earlier rule of the group waits for it
+	 */
+	public int maxConcurrentRules = 1;
+	
+	/**
+	 * Literals with at most this number of records are joined on the map side, by loading them in memory, instead of a CoGroup.
+	 * Needs predicate indexing for the counts, 0 disables the map side joins
+	 */
+	public long replicatedJoinThreshold = 0;
+	
+	/**
+	 * The number of cells, each grouped by a reducer, over which the streams joined without common variables (a cross product) are spread. 
+	 * A cross product with a literal smaller than the {@link #replicatedJoinThreshold} is computed on the map side instead
+	 */
+	public int crossProductCells = 32;
+	
+	/**
+	 * The number of distinct tuples a task keeps in memory to remove duplicates and to count before the shuffle (the threshold 
+	 * of the {@code AggregateBy} assemblies), so the duplicates derived close to each other are not shuffled. 0 disables the partial aggregation
+	 */
+	public int partialAggregationCapacity = 10000;
+
+	/**
+	 * The number of records of a literal read to find the hot join keys, the keys which would overload a reducer. 
+	 * The records of a hot key are spread over {@link #skewSplits} reducers. Needs predicate indexing, 0 disables the sampling
+	 */
+	public int skewSampleSize = 0;
+	
+	/**
+	 * A join key found in at least this fraction of the sampled records is hot
+	 */
+	public double skewThreshold = 0.05;
+	
+	/**
+	 * The number of reducers over which the records of a hot join key are spread
+	 */
+	public int skewSplits = 8;
+	
+	/**
+	 * The number of records a reducer of a join is expected to process, the reducers of each join are chosen by the 
+	 * estimated count of the joined streams. Needs predicate indexing for the counts, 0 uses the reducers of the job configuration
+	 */
+	public long reducerRecords = 0;
+	
+	/**
+	 * The maximum number of reducers of a job
+	 */
+	public int maxReducers = 32;
+	
+	/**
+	 * The inferences of a location are compacted after a stratum when they are stored in at least this number of files, 
+	 * 0 disables the compaction
+	 */
+	public int compactionFilesThreshold = 0;
+	
+	/**
+	 * If the total count of the predicates is below this number the flows run in process, with the Hadoop local job runner, 
+	 * instead of being submitted to the cluster. Needs predicate indexing for the counts, 0 disables the local execution
+	 */
+	public long localExecutionThreshold = 0;
+	
+	/**
+	 * If enabled the rules using only schema predicates are evaluated once in memory, before the distributed evaluation
+	 */
+	public boolean doSchemaClosure = false;
+	
+	/**
+	 * The schema (terminological) predicates, closed in memory when schema closure is enabled
+	 */
+	public List<String> schemaPredicates = new ArrayList<String>(Arrays.asList(
+			"http://www.w3.org/2000/01/rdf-schema#subClassOf", "http://www.w3.org/2000/01/rdf-schema#subPropertyOf", 
+			"http://www.w3.org/2000/01/rdf-schema#domain", "http://www.w3.org/2000/01/rdf-schema#range"));
+	
+	/**
+	 * If enabled the terms are encoded into long ids at import, using the terms dictionary.
+	 * The rules are evaluated on the ids and the terms are decoded only at export
+	 */
+	public boolean doTermEncoding = false;
+	
+	/**
+	 * If enabled the facts and the inferences are stored by columns, in compressed blocks with the statistics of their columns.
+	 * The blocks which do not contain the constants of a literal are skipped
+	 */
+	public boolean doColumnarStorage = false;
+	
+	/**
+	 * If enabled the n-triple export is streamed by the client into a local file.
+	 * Otherwise the lines are formatted by the tasks and written in parallel into part files
+	 */
+	public boolean doStreamingExport = false;
+	
+	/**
+	 * If enabled the part files of the n-triple export are compressed with gzip.
+	 * The export is written at the given path, which should then end with .gz
+	 */
+	public boolean doExportCompression = false;
+	
+	/**
+	 * If enabled the part files of the n-triple export are merged into the export file, 
+	 * otherwise the export path is a folder with the part files
+	 */
+	public boolean doExportMerge = true;
+	
+	/**
+	 * If set the metrics of the rule evaluations are written to this path at the end of the evaluation, 
+	 * as JSON if the path ends with .json, as CSV otherwise. A path without a scheme is a file of the client
+	 */
+	public String metricsReportPath = null;
+	
 	public org.apache.hadoop.conf.Configuration hadoopConfiguration = null;
 	public JobConf jobConf = null;
 	
@@ -69,6 +195,24 @@ public class Configuration extends org.deri.iris.Configuration
 	
 	public List<IRuleEvaluationBlocker> ruleEvaluationBlockers = new ArrayList<IRuleEvaluationBlocker>();
 	
+	/** Tracks the new inferences written during evaluation, used for semi-naive evaluation. */
+	public DeltaTracker deltaTracker = new DeltaTracker();
+	
+	/** The dictionary used to encode the terms, when term encoding is enabled. */
+	public TermDictionary termDictionary = new TermDictionary(this);
+	
+	/** The configuration of the predicates, when predicate indexing is enabled, loaded once and shared by all the flows. */
+	public PredicateCatalog predicateCatalog = new PredicateCatalog(this);
+	
+	/** The statistics of the columnar storage files, used to estimate the number of records of the literals with constants. */
+	public ColumnarStatistics columnarStatistics = new ColumnarStatistics();
+	
+	/** The metrics of the rule evaluations, taken from the statistics of the flows. */
+	public EvaluationMetrics evaluationMetrics = new EvaluationMetrics();
+	
+	/** The schema predicates closed in memory by the schema closure, no rule of the distributed evaluation derives them. */
+	public Set<String> closedSchemaPredicates = new HashSet<String>();
+	
 	public Configuration() {		
 		//include default optimizers
 		super();
@@ -80,7 +224,7 @@ public class Configuration extends org.deri.iris.Configuration
 		ruleEvaluationBlockers.add(optimizer);
 		//end RDFS specific
 		
-		ruleOptimisers.add(new JoinOptimizer());
+		ruleOptimisers.add(new JoinOptimizer(this));
 		recursiveRulePreProcessors.add(new NonOptimizingRecursiveRulePreProcessor());		
 	
 		stratifiers.add(new DependencyMinimizingStratifier(this));
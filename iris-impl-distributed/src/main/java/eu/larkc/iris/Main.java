@@ -58,6 +58,7 @@ import eu.larkc.iris.exports.Exporter;
 import eu.larkc.iris.imports.Importer;
 import eu.larkc.iris.indexing.DistributedFileSystemManager;
 import eu.larkc.iris.indexing.PredicateData;
+import eu.larkc.iris.storage.WritableComparableSerialization;
 
 /**
  * @author valer
@@ -182,8 +183,12 @@ public class Main extends Configured implements Tool {
 		//!!!IMPORTANT, if not : Caused by: java.io.FileNotFoundException: File does not exist: hdfs://ec2-50-19-191-200.compute-1.amazonaws.com:8020/user/root/lubm/facts/lubm50/data
 		jobConf.setBoolean("mapred.input.dir.recursive", true);
 		
-		jobConf.set("cascading.serialization.tokens", "130=eu.larkc.iris.storage.IRIWritable,131=eu.larkc.iris.storage.StringTermWritable");
-		defaultConfiguration.flowProperties.put("cascading.serialization.tokens", "130=eu.larkc.iris.storage.IRIWritable,131=eu.larkc.iris.storage.StringTermWritable");
+		jobConf.set("cascading.serialization.tokens", "130=eu.larkc.iris.storage.IRIWritable,131=eu.larkc.iris.storage.StringTermWritable,132=eu.larkc.iris.storage.LongTermWritable");
+		defaultConfiguration.flowProperties.put("cascading.serialization.tokens", "130=eu.larkc.iris.storage.IRIWritable,131=eu.larkc.iris.storage.StringTermWritable,132=eu.larkc.iris.storage.LongTermWritable");
+		
+		//raw comparators for the terms, so the sorts and groups do not deserialize them. must be before the default writable serialization
+		jobConf.set("io.serializations", WritableComparableSerialization.class.getName() + "," + jobConf.get("io.serializations"));
+		defaultConfiguration.flowProperties.put("io.serializations", jobConf.get("io.serializations"));
 		
 		/*
 	    if( System.getProperty("log4j.logger") != null )
@@ -197,7 +202,7 @@ public class Main extends Configured implements Tool {
 
 		//FIXME
 		//jobConf.setNumMapTasks(8);
-		jobConf.setNumReduceTasks(32);
+		jobConf.setNumReduceTasks(defaultConfiguration.maxReducers);
 
 		FlowConnector.setDebugLevel(defaultConfiguration.flowProperties, DebugLevel.VERBOSE);
 		MultiMapReducePlanner.setJobConf( defaultConfiguration.flowProperties, jobConf );
@@ -289,6 +294,7 @@ public class Main extends Configured implements Tool {
 		defaultConfiguration.project = project;
 		
 		logger.info("predicate indexing is " + (defaultConfiguration.doPredicateIndexing ? "ON" : "OFF"));
+		logger.info("term encoding is " + (defaultConfiguration.doTermEncoding ? "ON" : "OFF"));
 		
 		if (rdfImporter) {
 			return doRdfImport(defaultConfiguration);
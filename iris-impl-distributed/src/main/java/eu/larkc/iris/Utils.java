@@ -28,13 +28,14 @@ import org.slf4j.LoggerFactory;
 
 import cascading.flow.Flow;
 import cascading.flow.FlowConnector;
+import cascading.operation.Identity;
 import cascading.operation.aggregator.Count;
 import cascading.pipe.Each;
 import cascading.pipe.Every;
 import cascading.pipe.GroupBy;
 import cascading.pipe.Pipe;
+import cascading.pipe.assembly.CountBy;
 import cascading.scheme.Scheme;
-import cascading.scheme.SequenceFile;
 import cascading.tap.Hfs;
 import cascading.tap.Tap;
 import cascading.tuple.Fields;
@@ -46,6 +47,7 @@ import eu.larkc.iris.indexing.DistributedFileSystemManager;
 import eu.larkc.iris.indexing.PredicateCount;
 import eu.larkc.iris.indexing.PredicateData;
 import eu.larkc.iris.storage.IRIWritable;
+import eu.larkc.iris.storage.LongTermWritable;
 import eu.larkc.iris.storage.WritableComparable;
 
 /**
@@ -58,20 +60,33 @@ public class Utils {
 
 	private static final Logger logger = LoggerFactory.getLogger(Utils.class);
 	
-	public static Pipe buildPredicateCountPipe(Pipe previousPipe) {
+	/**
+	 * Builds the pipe counting the records of each predicate, the predicate is the first field.
+	 * With partial aggregation the records are counted in memory before the shuffle and the partial counts are summed.
+	 * 
+	 * @param configuration the configuration
+	 * @param previousPipe the pipe of the records, null if the records are read directly from a source
+	 * @return the pipe with the predicates and their counts
+	 */
+	public static Pipe buildPredicateCountPipe(Configuration configuration, Pipe previousPipe) {
 		Pipe predicatesPipe = null;
 		if (previousPipe != null) {
 			predicatesPipe = new Pipe("predicatesPipe", previousPipe);
 		} else {
 			predicatesPipe = new Pipe("predicatesPipe");
 		}
-		predicatesPipe = new GroupBy(predicatesPipe, new Fields(0)); //group by predicates
-		predicatesPipe = new Every(predicatesPipe, new Count(new Fields("count")), new Fields(0, "count"));
+		if (configuration.partialAggregationCapacity > 0) {
+			predicatesPipe = new Each(predicatesPipe, new Fields(0), new Identity(new Fields("predicate")));
+			predicatesPipe = new CountBy(predicatesPipe, new Fields("predicate"), new Fields("count"), configuration.partialAggregationCapacity);
+		} else {
+			predicatesPipe = new GroupBy(predicatesPipe, new Fields(0)); //group by predicates
+			predicatesPipe = new Every(predicatesPipe, new Count(new Fields("count")), new Fields(0, "count"));
+		}
 		
 		return predicatesPipe;
 	}
 	
-	public static List<PredicateCount> readPredicateCounts(Flow flow, String sinkName) throws IOException {
+	public static List<PredicateCount> readPredicateCounts(Configuration configuration, Flow flow, String sinkName) throws IOException {
 		List<PredicateCount> predicateCounts = new ArrayList<PredicateCount>();
 		
 		TupleEntryIterator predicatesEntryIterator = null;
@@ -83,7 +98,14 @@ public class Utils {
 		while (predicatesEntryIterator.hasNext()) {
 			TupleEntry predicatesEntry = predicatesEntryIterator.next();
 			Tuple predicatesTuple = predicatesEntry.getTuple();
-			IRIWritable predicate = (IRIWritable) predicatesTuple.getObject(0);
+			Object value = predicatesTuple.getObject(0);
+			IRIWritable predicate = null;
+			if (value instanceof LongTermWritable) {
+				//with term encoding the predicates configuration still uses the terms, only the data is encoded
+				predicate = (IRIWritable) configuration.termDictionary.getTerm((LongTermWritable) value);
+			} else {
+				predicate = (IRIWritable) value;
+			}
 			Long count = predicatesTuple.getLong(1);
 			predicateCounts.add(new PredicateCount(predicate, count));
 		}
@@ -112,13 +134,17 @@ public class Utils {
 				locationPredicates.put(predicateData.getLocation(), new HashSet<WritableComparable>());
 			}
 			Set<WritableComparable> locationPredicate = locationPredicates.get(predicateData.getLocation());
-			locationPredicate.add(predicate);
+			if (configuration.doTermEncoding) {
+				locationPredicate.add(configuration.termDictionary.getId(predicate));
+			} else {
+				locationPredicate.add(predicate);
+			}
 			logger.info("add predicate : " + predicate);
 		}
 		for (Integer location : locationPredicates.keySet()) {
 			String streamId = locationName + String.valueOf(location);
 
-			Scheme predicateScheme = new SequenceFile(new Fields(0, 1, 2));
+			Scheme predicateScheme = distributedFileSystemManager.getScheme(new Fields(0, 1, 2));
 			predicateScheme.setNumSinkParts(1);
 			Tap predicateSink = null;
 			if (facts) {
@@ -130,7 +156,8 @@ public class Utils {
 
 			Pipe locationPipe = new Pipe(streamId, sourcePipe);
 			locationPipe = new Each(locationPipe, new ConstantFilter(0, locationPredicates.get(location)));
-			locationPipe = new GroupBy(locationPipe, new Fields(0, 1, 2)); //make group to force reduce
+			locationPipe = new GroupBy(locationPipe, new Fields(0, 1, 2)); //make group to force reduce, the location is stored sorted
+			locationPipe = new Every(locationPipe, new Count(), new Fields(0, 1, 2)); //and without duplicates
 			//predicatePipe = new Each(predicatePipe, new Identity(), new Fields(1, 2));
 			pipes.add(locationPipe);
 		}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.evaluation;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.apache.commons.lang.NotImplementedException;
+import org.deri.iris.EvaluationException;
+import org.deri.iris.api.basics.ITuple;
+import org.deri.iris.api.builtins.IBuiltinAtom;
+import org.deri.iris.api.terms.IConstructedTerm;
+import org.deri.iris.api.terms.ITerm;
+import org.deri.iris.api.terms.IVariable;
+import org.deri.iris.factory.Factory;
+
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+import eu.larkc.iris.storage.WritableComparable;
+import eu.larkc.iris.storage.WritableFactory;
+
+/**
+ * A built-in atom evaluated by the map side operations on the tuples of a stream.
+ * The iris built-ins are not serializable, so the built-in is kept as its class and its terms and
+ * is created again in each task, once per operation.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class BuiltinEvaluator implements Serializable {
+
+	/**
+	 * serialVersionUID
+	 */
+	private static final long serialVersionUID = -3165508432291094375L;
+
+	private Class<? extends IBuiltinAtom> builtinClass;
+	private String name;
+	//for each term of the built-in, the position of its value in the arguments of the operation, -1 if the term is not an argument
+	private int[] arguments;
+	//the names of the variable terms, null for the constants
+	private String[] variables;
+	//the constant terms, null for the variables
+	private WritableComparable[] constants;
+	
+	/**
+	 * The instance of the built-in in a task, reused for all the tuples
+	 */
+	public static class Instance {
+		private IBuiltinAtom builtin;
+		private ITerm[] substitutes;
+		private Tuple result = Tuple.size(1);
+		
+		public Tuple getResult() {
+			return result;
+		}
+	}
+	
+	/**
+	 * The built-in with the values of {@code argumentVariables} as arguments
+	 * 
+	 * @param builtin the built-in atom
+	 * @param argumentVariables the variables whose values are the arguments of the operation, in the arguments order
+	 * @throws NotImplementedException if the built-in has terms that can not be stored
+	 */
+	public BuiltinEvaluator(IBuiltinAtom builtin, List<IVariable> argumentVariables) {
+		this.builtinClass = builtin.getClass();
+		this.name = builtin.toString();
+		int size = builtin.getTuple().size();
+		this.arguments = new int[size];
+		this.variables = new String[size];
+		this.constants = new WritableComparable[size];
+		for (int i = 0; i < size; i++) {
+			ITerm term = builtin.getTuple().get(i);
+			arguments[i] = -1;
+			if (term instanceof IVariable) {
+				variables[i] = ((IVariable) term).getValue();
+				arguments[i] = argumentVariables.indexOf(term);
+			} else if (term instanceof IConstructedTerm) {
+				throw new NotImplementedException("Function Symbols are not supported");
+			} else {
+				constants[i] = (WritableComparable) WritableFactory.fromTerm(term);
+				if (constants[i] == null) {
+					throw new NotImplementedException("Term not supported in built-in " + builtin + " : " + term);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Creates the built-in for a task
+	 * 
+	 * @return the instance of the built-in
+	 */
+	public Instance create() {
+		ITerm[] terms = new ITerm[arguments.length];
+		for (int i = 0; i < terms.length; i++) {
+			if (variables[i] != null) {
+				terms[i] = Factory.TERM.createVariable(variables[i]);
+			} else {
+				terms[i] = WritableFactory.toTerm(constants[i]);
+			}
+		}
+		Instance instance = new Instance();
+		try {
+			instance.builtin = builtinClass.getConstructor(ITerm[].class).newInstance((Object) terms);
+		} catch (Exception e) {
+			throw new IllegalStateException("can not create built-in " + name, e);
+		}
+		instance.substitutes = terms.clone();
+		return instance;
+	}
+	
+	/**
+	 * Evaluates the built-in for the values of the arguments
+	 * 
+	 * @param instance the instance of the built-in
+	 * @param argumentsEntry the arguments
+	 * @return the values computed for the variables which are not arguments, an empty tuple for a built-in 
+	 * without such variables if the built-in holds, null if the built-in does not hold
+	 */
+	public ITuple evaluate(Instance instance, TupleEntry argumentsEntry) {
+		for (int i = 0; i < arguments.length; i++) {
+			if (arguments[i] != -1) {
+				instance.substitutes[i] = WritableFactory.toTerm(argumentsEntry.get(arguments[i]));
+			}
+		}
+		try {
+			return instance.builtin.evaluate(Factory.BASIC.createTuple(instance.substitutes));
+		} catch (EvaluationException e) {
+			throw new RuntimeException("can not evaluate built-in " + name, e);
+		} catch (IllegalArgumentException e) {
+			//the values have types the built-in is not defined for
+			return null;
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.evaluation;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Filter;
+import cascading.operation.FilterCall;
+import cascading.operation.OperationCall;
+
+/**
+ * Filters the tuples of a stream by a built-in with all its variables bound (comparisons, type checks...).
+ * A negated built-in removes the tuples for which the built-in holds.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+@SuppressWarnings("unchecked")
+public class BuiltinFilter extends BaseOperation<BuiltinEvaluator.Instance> implements Filter<BuiltinEvaluator.Instance> {
+
+	/**
+	 * serialVersionUID
+	 */
+	private static final long serialVersionUID = 4622046893004183720L;
+
+	private BuiltinEvaluator builtin;
+	private boolean positive;
+	
+	/**
+	 * Filters by the built-in, the arguments are the values of the built-in variables
+	 * 
+	 * @param builtin the built-in
+	 * @param positive false if the built-in is negated
+	 */
+	public BuiltinFilter(BuiltinEvaluator builtin, boolean positive) {
+		this.builtin = builtin;
+		this.positive = positive;
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.operation.BaseOperation#prepare(cascading.flow.FlowProcess, cascading.operation.OperationCall)
+	 */
+	@Override
+	public void prepare(FlowProcess flowProcess, OperationCall<BuiltinEvaluator.Instance> operationCall) {
+		operationCall.setContext(builtin.create());
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.operation.Filter#isRemove(cascading.flow.FlowProcess, cascading.operation.FilterCall)
+	 */
+	@Override
+	public boolean isRemove(FlowProcess flowProcess, FilterCall<BuiltinEvaluator.Instance> filterCall) {
+		boolean holds = builtin.evaluate(filterCall.getContext(), filterCall.getArguments()) != null;
+		return holds != positive;
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.operation.BaseOperation#cleanup(cascading.flow.FlowProcess, cascading.operation.OperationCall)
+	 */
+	@Override
+	public void cleanup(FlowProcess flowProcess, OperationCall<BuiltinEvaluator.Instance> operationCall) {
+		operationCall.setContext(null);
+	}
+}
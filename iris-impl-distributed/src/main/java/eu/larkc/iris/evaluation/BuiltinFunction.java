@@ -0,0 +1,88 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.evaluation;
+
+import org.deri.iris.api.basics.ITuple;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Function;
+import cascading.operation.FunctionCall;
+import cascading.operation.OperationCall;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import eu.larkc.iris.storage.WritableFactory;
+
+/**
+ * Computes the value of the only unbound variable of a built-in (arithmetic, string functions...) 
+ * from the values of the other variables, e.g. ?z for ADD(?x, ?y, ?z). 
+ * The tuples for which the built-in can not be computed are removed.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+@SuppressWarnings("unchecked")
+public class BuiltinFunction extends BaseOperation<BuiltinEvaluator.Instance> implements Function<BuiltinEvaluator.Instance> {
+
+	/**
+	 * serialVersionUID
+	 */
+	private static final long serialVersionUID = -1806385931622513479L;
+
+	private BuiltinEvaluator builtin;
+	
+	/**
+	 * Computes the unbound variable of the built-in, the arguments are the values of the bound variables
+	 * 
+	 * @param builtin the built-in
+	 * @param fieldDeclaration the field of the computed variable
+	 */
+	public BuiltinFunction(BuiltinEvaluator builtin, Fields fieldDeclaration) {
+		super(fieldDeclaration);
+		this.builtin = builtin;
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.operation.BaseOperation#prepare(cascading.flow.FlowProcess, cascading.operation.OperationCall)
+	 */
+	@Override
+	public void prepare(FlowProcess flowProcess, OperationCall<BuiltinEvaluator.Instance> operationCall) {
+		operationCall.setContext(builtin.create());
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.operation.Function#operate(cascading.flow.FlowProcess, cascading.operation.FunctionCall)
+	 */
+	@Override
+	public void operate(FlowProcess flowProcess, FunctionCall<BuiltinEvaluator.Instance> functionCall) {
+		ITuple values = builtin.evaluate(functionCall.getContext(), functionCall.getArguments());
+		if (values == null || values.size() != 1) {
+			return;
+		}
+		//the result tuple is reused, it is copied in the outgoing tuple
+		Tuple result = functionCall.getContext().getResult();
+		result.set(0, WritableFactory.fromTerm(values.get(0)));
+		functionCall.getOutputCollector().add(result);
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.operation.BaseOperation#cleanup(cascading.flow.FlowProcess, cascading.operation.OperationCall)
+	 */
+	@Override
+	public void cleanup(FlowProcess flowProcess, OperationCall<BuiltinEvaluator.Instance> operationCall) {
+		operationCall.setContext(null);
+	}
+}
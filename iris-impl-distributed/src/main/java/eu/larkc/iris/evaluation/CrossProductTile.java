@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.evaluation;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Function;
+import cascading.operation.FunctionCall;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+
+/**
+ * Assigns the tuples of one side of a cross product to the cells of a grid of {@code rows} x {@code columns} cells, 
+ * so the cross product is computed in parallel by grouping on the cell instead of on a constant.
+ * A tuple of the left side is placed in one row and sent to all the cells of the row, 
+ * a tuple of the right side is placed in one column and sent to all the cells of the column, 
+ * so each pair of tuples meets in exactly one cell. The tuple is emitted once for each of its cells, with the cell's number appended.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+@SuppressWarnings("unchecked")
+public class CrossProductTile extends BaseOperation implements Function {
+
+	/**
+	 * serialVersionUID
+	 */
+	private static final long serialVersionUID = 6377043569117016484L;
+
+	private int rows;
+	private int columns;
+	private boolean left;
+	
+	/**
+	 * Tiles one side of a cross product
+	 * 
+	 * @param cellField the field with the cell's number
+	 * @param rows the number of rows of the grid
+	 * @param columns the number of columns of the grid
+	 * @param left true for the left side, placed in rows, false for the right side, placed in columns
+	 */
+	public CrossProductTile(Fields cellField, int rows, int columns, boolean left) {
+		super(cellField);
+		if (rows < 1 || columns < 1) {
+			throw new IllegalArgumentException("The grid must have at least one row and one column: " + rows + "x" + columns);
+		}
+		this.rows = rows;
+		this.columns = columns;
+		this.left = left;
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.operation.Function#operate(cascading.flow.FlowProcess, cascading.operation.FunctionCall)
+	 */
+	@Override
+	public void operate(FlowProcess flowProcess, FunctionCall functionCall) {
+		//the tuple's hash spreads the tuples over the rows (columns), any placement is correct as long as each tuple has only one
+		int hash = functionCall.getArguments().getTuple().hashCode() & Integer.MAX_VALUE;
+		Tuple cell = Tuple.size(1);
+		if (left) {
+			int row = hash % rows;
+			for (int column = 0; column < columns; column++) {
+				cell.set(0, row * columns + column);
+				functionCall.getOutputCollector().add(cell);
+			}
+		} else {
+			int column = hash % columns;
+			for (int row = 0; row < rows; row++) {
+				cell.set(0, row * columns + column);
+				functionCall.getOutputCollector().add(cell);
+			}
+		}
+	}
+}
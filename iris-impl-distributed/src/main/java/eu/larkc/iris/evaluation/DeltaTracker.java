@@ -0,0 +1,95 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.evaluation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps track of the paths where new inferences were written during an evaluation.
+ * Every registered path gets a new version, so a rule can ask only for the inferences (the delta)
+ * produced after the version it has seen on its previous evaluation. Used for semi-naive evaluation.
+ * The tracker is shared by the rules evaluated concurrently.
+ *
+ * @author valer.roman@softgress.com
+ *
+ */
+public class DeltaTracker {
+
+	/**
+	 * Version used for rules which have not been evaluated yet
+	 */
+	public static final long NO_VERSION = -1;
+
+	private class Delta {
+		private long version;
+		private Integer location;
+		private String path;
+
+		public Delta(long version, Integer location, String path) {
+			this.version = version;
+			this.location = location;
+			this.path = path;
+		}
+	}
+
+	private long version = 0;
+
+	private List<Delta> deltas = new ArrayList<Delta>();
+
+	/**
+	 * Returns the current version, the version of the last registered path
+	 *
+	 * @return the current version
+	 */
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Registers the path of new inferences stored at a predicate location
+	 *
+	 * @param location the predicate location, null if predicate indexing is not used
+	 * @param path the path of the new inferences
+	 * @return the version of the registered path
+	 */
+	public synchronized long register(Integer location, String path) {
+		version++;
+		deltas.add(new Delta(version, location, path));
+		return version;
+	}
+
+	/**
+	 * Returns the paths of inferences registered after {@code sinceVersion} for a predicate location.
+	 * If {@code location} is null all the paths are returned, no matter of their location.
+	 *
+	 * @param location the predicate location
+	 * @param sinceVersion the version from where to start, exclusive
+	 * @return list of paths
+	 */
+	public synchronized List<String> getDeltaPaths(Integer location, long sinceVersion) {
+		List<String> paths = new ArrayList<String>();
+		for (Delta delta : deltas) {
+			if (delta.version <= sinceVersion) {
+				continue;
+			}
+			if (location == null || delta.location == null || location.equals(delta.location)) {
+				paths.add(delta.path);
+			}
+		}
+		return paths;
+	}
+}
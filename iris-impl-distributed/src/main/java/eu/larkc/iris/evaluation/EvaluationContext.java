@@ -33,6 +33,9 @@ public class EvaluationContext {
 	private int iterationNumber;
 	private int ruleNumber;
 	
+	//the version of the inferences seen on the previous evaluation, used for semi-naive evaluation
+	private long deltaVersion = DeltaTracker.NO_VERSION;
+	
 	public EvaluationContext(int stratumNumber, int iterationNumber, int ruleNumber) {
 		this.stratumNumber = stratumNumber;
 		this.iterationNumber = iterationNumber;
@@ -65,6 +68,17 @@ public class EvaluationContext {
 		this.ruleNumber = ruleNumber;
 	}
 
+	/**
+	 * @return the version of the inferences seen on the previous evaluation of the rule
+	 */
+	public long getDeltaVersion() {
+		return deltaVersion;
+	}
+
+	public void setDeltaVersion(long deltaVersion) {
+		this.deltaVersion = deltaVersion;
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		return EqualsBuilder.reflectionEquals(this, obj);
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.evaluation;
+
+/**
+ * Hadoop counters incremented by the flows evaluating the rules.
+ *
+ * @author valer.roman@softgress.com
+ *
+ */
+public enum EvaluationCounters {
+	
+	/**
+	 * The number of new inferences stored by a rule evaluation
+	 */
+	INFERENCES,
+	
+	/**
+	 * The number of tuples produced by a rule evaluation, before duplicates elimination
+	 */
+	CANDIDATES
+}
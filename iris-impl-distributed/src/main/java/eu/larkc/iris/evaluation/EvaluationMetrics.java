@@ -0,0 +1,366 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.evaluation;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cascading.stats.FlowStats;
+
+/**
+ * Collects the metrics of the rule evaluations, one entry per evaluation of a rule. A rule can be evaluated again 
+ * in the same context (stratum, iteration, rule number), so the evaluations are numbered in the order they are recorded.
+ * The metrics are taken from the statistics of the completed flows, the report shows which rules dominate the evaluation time.
+ * The collector is shared by the rules evaluated concurrently.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class EvaluationMetrics {
+
+	private static final Logger logger = LoggerFactory.getLogger(EvaluationMetrics.class);
+	
+	private static final String FILESYSTEM_COUNTER_GROUP = "FileSystemCounters";
+	private static final String JSON_EXTENSION = ".json";
+	
+	//the number of rules logged in the summary
+	private static final int SUMMARY_RULES = 10;
+	
+	private static final String[] COLUMNS = {"stratum", "iteration", "rule", "evaluation", "flow", "planningTime", "jobs", "wallTime", 
+		"inputBytes", "inputRecords", "shuffleBytes", "shuffleRecords", "outputBytes", "outputRecords", 
+		"candidates", "inferences", "duplicatesRatio", "text"};
+	
+	/**
+	 * The metrics of one rule evaluation
+	 */
+	public static class RuleMetrics {
+		private int stratum;
+		private int iteration;
+		private int rule;
+		private long evaluation;
+		private String text;
+		private String flow;
+		private long planningTime;
+		private int jobs;
+		private long wallTime;
+		private long inputBytes;
+		private long inputRecords;
+		private long shuffleBytes;
+		private long shuffleRecords;
+		private long outputBytes;
+		private long outputRecords;
+		private long candidates;
+		private long inferences;
+		
+		public int getStratum() {
+			return stratum;
+		}
+		
+		public int getIteration() {
+			return iteration;
+		}
+		
+		public int getRule() {
+			return rule;
+		}
+		
+		/**
+		 * @return the number of the evaluation, in the order the evaluations were recorded
+		 */
+		public long getEvaluation() {
+			return evaluation;
+		}
+		
+		public String getText() {
+			return text;
+		}
+
+		public String getFlow() {
+			return flow;
+		}
+
+		/**
+		 * @return the time spent to plan the flow, in milliseconds
+		 */
+		public long getPlanningTime() {
+			return planningTime;
+		}
+
+		/**
+		 * @return the number of map reduce jobs of the flow
+		 */
+		public int getJobs() {
+			return jobs;
+		}
+
+		/**
+		 * @return the time the flow was running, in milliseconds
+		 */
+		public long getWallTime() {
+			return wallTime;
+		}
+
+		public long getInputBytes() {
+			return inputBytes;
+		}
+
+		public long getInputRecords() {
+			return inputRecords;
+		}
+
+		public long getShuffleBytes() {
+			return shuffleBytes;
+		}
+
+		public long getShuffleRecords() {
+			return shuffleRecords;
+		}
+
+		public long getOutputBytes() {
+			return outputBytes;
+		}
+
+		public long getOutputRecords() {
+			return outputRecords;
+		}
+
+		/**
+		 * @return the number of tuples produced by the rule, before duplicates elimination
+		 */
+		public long getCandidates() {
+			return candidates;
+		}
+
+		/**
+		 * @return the number of new tuples stored by the rule
+		 */
+		public long getInferences() {
+			return inferences;
+		}
+		
+		/**
+		 * Returns the fraction of the tuples produced by the rule which were eliminated as duplicates
+		 * 
+		 * @return the ratio, 0 if the rule produced no tuples
+		 */
+		public double getDuplicatesRatio() {
+			if (candidates == 0) {
+				return 0;
+			}
+			return 1 - (inferences / (double) candidates);
+		}
+		
+		private Object[] getValues() {
+			return new Object[] {stratum, iteration, rule, evaluation, flow, planningTime, jobs, wallTime, 
+					inputBytes, inputRecords, shuffleBytes, shuffleRecords, outputBytes, outputRecords, 
+					candidates, inferences, getDuplicatesRatio(), text};
+		}
+	}
+	
+	private Map<String, RuleMetrics> metrics = new LinkedHashMap<String, RuleMetrics>();
+	
+	//the number of the recorded evaluations
+	private long evaluations = 0;
+	
+	/**
+	 * Records the metrics of a completed flow evaluating a rule
+	 * 
+	 * @param evaluationContext the evaluation context of the rule
+	 * @param text the rule
+	 * @param flowName the name of the flow
+	 * @param planningTime the time spent to plan the flow, in milliseconds
+	 * @param flowStats the statistics of the completed flow
+	 * @param fileSystem the file system the rules read from and write to, the bytes are counted for its scheme
+	 * @return the recorded metrics
+	 */
+	public synchronized RuleMetrics record(EvaluationContext evaluationContext, String text, String flowName, long planningTime, 
+			FlowStats flowStats, FileSystem fileSystem) {
+		String scheme = fileSystem.getUri().getScheme().toUpperCase();
+		RuleMetrics ruleMetrics = new RuleMetrics();
+		ruleMetrics.stratum = evaluationContext.getStratumNumber();
+		ruleMetrics.iteration = evaluationContext.getIterationNumber();
+		ruleMetrics.rule = evaluationContext.getRuleNumber();
+		ruleMetrics.evaluation = ++evaluations;
+		ruleMetrics.text = text;
+		ruleMetrics.flow = flowName;
+		ruleMetrics.planningTime = planningTime;
+		ruleMetrics.jobs = flowStats.getStepsCount();
+		ruleMetrics.wallTime = flowStats.getDuration();
+		ruleMetrics.inputBytes = flowStats.getCounterValue(FILESYSTEM_COUNTER_GROUP, scheme + "_BYTES_READ");
+		ruleMetrics.inputRecords = flowStats.getCounterValue(TaskCounter.MAP_INPUT_RECORDS);
+		ruleMetrics.shuffleBytes = flowStats.getCounterValue(TaskCounter.REDUCE_SHUFFLE_BYTES);
+		ruleMetrics.shuffleRecords = flowStats.getCounterValue(TaskCounter.REDUCE_INPUT_RECORDS);
+		ruleMetrics.outputBytes = flowStats.getCounterValue(FILESYSTEM_COUNTER_GROUP, scheme + "_BYTES_WRITTEN");
+		ruleMetrics.outputRecords = flowStats.getCounterValue(TaskCounter.REDUCE_OUTPUT_RECORDS);
+		ruleMetrics.candidates = flowStats.getCounterValue(EvaluationCounters.CANDIDATES);
+		ruleMetrics.inferences = flowStats.getCounterValue(EvaluationCounters.INFERENCES);
+		metrics.put(getKey(evaluationContext) + "_" + ruleMetrics.evaluation, ruleMetrics);
+		return ruleMetrics;
+	}
+	
+	/**
+	 * Returns the metrics of the last evaluation of the rule in an evaluation context
+	 * 
+	 * @param evaluationContext the evaluation context
+	 * @return the metrics or null if no flow was completed for the context
+	 */
+	public synchronized RuleMetrics getMetrics(EvaluationContext evaluationContext) {
+		String key = getKey(evaluationContext) + "_";
+		RuleMetrics last = null;
+		for (Map.Entry<String, RuleMetrics> entry : metrics.entrySet()) {
+			if (entry.getKey().startsWith(key)) {
+				last = entry.getValue();
+			}
+		}
+		return last;
+	}
+	
+	/**
+	 * Returns the metrics of all the rule evaluations, in the order they were recorded
+	 * 
+	 * @return list of metrics
+	 */
+	public synchronized List<RuleMetrics> getMetrics() {
+		return new ArrayList<RuleMetrics>(metrics.values());
+	}
+	
+	private String getKey(EvaluationContext evaluationContext) {
+		return evaluationContext.getStratumNumber() + "_" + evaluationContext.getIterationNumber() + "_" + evaluationContext.getRuleNumber();
+	}
+	
+	/**
+	 * Logs the rules which took the longest to evaluate
+	 */
+	public void logSummary() {
+		List<RuleMetrics> sorted = getMetrics();
+		Collections.sort(sorted, new Comparator<RuleMetrics>() {
+			@Override
+			public int compare(RuleMetrics m1, RuleMetrics m2) {
+				return m1.wallTime > m2.wallTime ? -1 : (m1.wallTime == m2.wallTime ? 0 : 1);
+			}
+		});
+		long total = 0;
+		for (RuleMetrics ruleMetrics : sorted) {
+			total += ruleMetrics.wallTime;
+		}
+		logger.info(sorted.size() + " rule evaluations in " + total + " ms");
+		for (RuleMetrics ruleMetrics : sorted.subList(0, Math.min(SUMMARY_RULES, sorted.size()))) {
+			logger.info(ruleMetrics.flow + " : " + ruleMetrics.wallTime + " ms, " + ruleMetrics.jobs + " jobs, " 
+					+ ruleMetrics.inferences + " inferences, " + ruleMetrics.text);
+		}
+	}
+	
+	/**
+	 * Writes the report of the metrics to {@code path}, as JSON if the path ends with .json, as CSV otherwise.
+	 * A path without a scheme is a file of the client.
+	 * 
+	 * @param hadoopConfiguration the hadoop configuration
+	 * @param path the path of the report
+	 */
+	public void writeReport(org.apache.hadoop.conf.Configuration hadoopConfiguration, String path) {
+		Path reportPath = new Path(path);
+		try {
+			FileSystem fs = (reportPath.toUri().getScheme() == null) ? FileSystem.getLocal(hadoopConfiguration) : reportPath.getFileSystem(hadoopConfiguration);
+			Writer writer = new OutputStreamWriter(fs.create(reportPath, true), "UTF-8");
+			try {
+				if (path.endsWith(JSON_EXTENSION)) {
+					writeJson(writer);
+				} else {
+					writeCsv(writer);
+				}
+			} finally {
+				writer.close();
+			}
+		} catch (IOException e) {
+			logger.error("io exception", e);
+			throw new RuntimeException("io exception", e);
+		}
+		logger.info("evaluation metrics written to " + path);
+	}
+	
+	private void writeCsv(Writer writer) throws IOException {
+		for (int i = 0; i < COLUMNS.length; i++) {
+			writer.write((i > 0 ? "," : "") + COLUMNS[i]);
+		}
+		writer.write("\n");
+		for (RuleMetrics ruleMetrics : getMetrics()) {
+			Object[] values = ruleMetrics.getValues();
+			for (int i = 0; i < values.length; i++) {
+				if (i > 0) {
+					writer.write(",");
+				}
+				if (values[i] instanceof String) {
+					writer.write("\"" + ((String) values[i]).replace("\"", "\"\"") + "\"");
+				} else {
+					writer.write(String.valueOf(values[i]));
+				}
+			}
+			writer.write("\n");
+		}
+	}
+	
+	private void writeJson(Writer writer) throws IOException {
+		writer.write("[");
+		boolean first = true;
+		for (RuleMetrics ruleMetrics : getMetrics()) {
+			writer.write(first ? "\n" : ",\n");
+			first = false;
+			Object[] values = ruleMetrics.getValues();
+			writer.write("{");
+			for (int i = 0; i < values.length; i++) {
+				if (i > 0) {
+					writer.write(", ");
+				}
+				writer.write("\"" + COLUMNS[i] + "\": ");
+				if (values[i] instanceof String) {
+					writer.write("\"" + escapeJson((String) values[i]) + "\"");
+				} else {
+					writer.write(String.valueOf(values[i]));
+				}
+			}
+			writer.write("}");
+		}
+		writer.write("\n]\n");
+	}
+	
+	private String escapeJson(String value) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+}
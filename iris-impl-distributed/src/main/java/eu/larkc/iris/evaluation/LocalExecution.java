@@ -0,0 +1,117 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.evaluation;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.mapred.JobConf;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cascading.flow.Flow;
+import cascading.flow.MultiMapReducePlanner;
+import eu.larkc.iris.Configuration;
+import eu.larkc.iris.indexing.DistributedFileSystemManager;
+import eu.larkc.iris.indexing.PredicateData;
+
+/**
+ * Runs the flows in process, with the Hadoop local job runner, instead of submitting them as jobs to the cluster.
+ * The flows are planned exactly as for the cluster, only the fixed cost of launching the jobs and their tasks is avoided.
+ * Used for the evaluations on small data, where this cost dominates.
+ * <p>
+ * This is not a separate tuple executor: Cascading (1.2) plans the pipe assemblies only as MapReduce jobs, 
+ * so the rule flows still run as jobs, one after the other, with their intermediate results written between the jobs. 
+ * The local job runner runs the map tasks of a job sequentially and a single reduce task.
+ *
+ * @author valer.roman@softgress.com
+ *
+ */
+public class LocalExecution {
+
+	private static final Logger logger = LoggerFactory.getLogger(LocalExecution.class);
+
+	private static final String LOCAL = "local";
+
+	//the sort buffer of the tasks, allocated inside this process
+	private static final String LOCAL_SORT_MB = "100";
+
+	//how often the completion of the in process jobs is checked, in milliseconds
+	private static final long LOCAL_POLLING_INTERVAL = 100;
+
+	private Configuration configuration;
+
+	//the job configuration and the flow properties replaced by the setup
+	private JobConf savedJobConf = null;
+	private Map<Object, Object> savedFlowProperties = null;
+
+	public LocalExecution(Configuration configuration) {
+		this.configuration = configuration;
+	}
+
+	/**
+	 * Checks if the data is small enough to be processed in process, that is the total count of the predicates
+	 * is below {@code Configuration.localExecutionThreshold}
+	 *
+	 * @return true if the flows should run in process
+	 */
+	public boolean isSmall() {
+		if (!configuration.doPredicateIndexing || configuration.localExecutionThreshold <= 0) {
+			return false;
+		}
+		long count = 0;
+		for (PredicateData predicateData : new DistributedFileSystemManager(configuration).getPredicateData()) {
+			count += predicateData.getCount();
+		}
+		logger.info("total count of the predicates is " + count + ", local execution threshold is " + configuration.localExecutionThreshold);
+		return count < configuration.localExecutionThreshold;
+	}
+
+	/**
+	 * Changes the configuration so that all the flows created from now on run in process, until {@link #teardown()}
+	 */
+	public void setup() {
+		logger.info("flows run in process");
+		savedJobConf = configuration.jobConf;
+		savedFlowProperties = new HashMap<Object, Object>(configuration.flowProperties);
+		JobConf localJobConf = (configuration.jobConf != null) ? new JobConf(configuration.jobConf) : new JobConf(configuration.hadoopConfiguration);
+		localJobConf.set("mapred.job.tracker", LOCAL);
+		localJobConf.set("mapreduce.jobtracker.address", LOCAL);
+		//the local job runner supports only one reducer
+		localJobConf.setNumReduceTasks(1);
+		localJobConf.set("io.sort.mb", LOCAL_SORT_MB);
+		localJobConf.set("mapreduce.task.io.sort.mb", LOCAL_SORT_MB);
+		configuration.jobConf = localJobConf;
+
+		MultiMapReducePlanner.setJobConf(configuration.flowProperties, localJobConf);
+		Flow.setJobPollingInterval(configuration.flowProperties, LOCAL_POLLING_INTERVAL);
+	}
+
+	/**
+	 * Restores the job configuration and the flow properties changed by {@link #setup()}, 
+	 * the flows created from now on run on the cluster
+	 */
+	public void teardown() {
+		if (savedFlowProperties == null) {
+			return;
+		}
+		configuration.jobConf = savedJobConf;
+		configuration.flowProperties.clear();
+		configuration.flowProperties.putAll(savedFlowProperties);
+		savedJobConf = null;
+		savedFlowProperties = null;
+	}
+}
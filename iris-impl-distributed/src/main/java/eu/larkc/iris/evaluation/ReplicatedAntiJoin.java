@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.evaluation;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.io.WritableComparable;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Filter;
+import cascading.operation.FilterCall;
+import cascading.operation.OperationCall;
+import cascading.scheme.Scheme;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+
+/**
+ * Map side anti join of a stream with a small relation.
+ * The join fields of the small relation are read from the storage and kept in memory in a hash set, 
+ * the tuples of the stream which have a match in the relation are removed, without shuffling the stream.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+@SuppressWarnings("unchecked")
+public class ReplicatedAntiJoin extends BaseOperation<Set<Tuple>> implements Filter<Set<Tuple>> {
+
+	/**
+	 * serialVersionUID
+	 */
+	private static final long serialVersionUID = 5803385927425393218L;
+
+	private ReplicatedRelation relation;
+	
+	/**
+	 * Anti joins with the small relation stored at {@code paths}
+	 * 
+	 * @param scheme the scheme the small relation is stored with
+	 * @param joinFields the fields of the small relation to join on, in the order of the stream's arguments, 
+	 * empty to remove all the tuples when the small relation has any tuple
+	 * @param constants the constants the small relation is filtered by, same as for {@link ConstantFilter}
+	 * @param paths the paths where the small relation is stored
+	 */
+	public ReplicatedAntiJoin(Scheme scheme, Fields joinFields, Map<String, WritableComparable> constants, String... paths) {
+		this.relation = new ReplicatedRelation(scheme, joinFields, constants, paths);
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.operation.BaseOperation#prepare(cascading.flow.FlowProcess, cascading.operation.OperationCall)
+	 */
+	@Override
+	public void prepare(FlowProcess flowProcess, OperationCall<Set<Tuple>> operationCall) {
+		//only the join fields are needed to find a match
+		operationCall.setContext(relation.loadKeys(flowProcess));
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.operation.Filter#isRemove(cascading.flow.FlowProcess, cascading.operation.FilterCall)
+	 */
+	@Override
+	public boolean isRemove(FlowProcess flowProcess, FilterCall<Set<Tuple>> filterCall) {
+		return filterCall.getContext().contains(relation.getKey(filterCall.getArguments()));
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.operation.BaseOperation#cleanup(cascading.flow.FlowProcess, cascading.operation.OperationCall)
+	 */
+	@Override
+	public void cleanup(FlowProcess flowProcess, OperationCall<Set<Tuple>> operationCall) {
+		operationCall.setContext(null);
+	}
+}
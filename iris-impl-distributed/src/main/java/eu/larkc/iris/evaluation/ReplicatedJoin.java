@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.evaluation;
+
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.io.WritableComparable;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Function;
+import cascading.operation.FunctionCall;
+import cascading.operation.OperationCall;
+import cascading.scheme.Scheme;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+
+/**
+ * Map side join of a stream with a small relation.
+ * The small relation is read from the storage and kept in memory as a hash table on the join fields, 
+ * so the big stream is joined in the map phase, without being shuffled.
+ * For each tuple of the stream the matching tuples of the small relation are emitted.
+ * Without join fields all the tuples of the small relation are emitted, a cross product computed on the map side.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+@SuppressWarnings("unchecked")
+public class ReplicatedJoin extends BaseOperation<Map<Tuple, List<Tuple>>> implements Function<Map<Tuple, List<Tuple>>> {
+
+	/**
+	 * serialVersionUID
+	 */
+	private static final long serialVersionUID = -6049462262387961478L;
+
+	private ReplicatedRelation relation;
+	
+	/**
+	 * Joins with the small relation stored at {@code paths}
+	 * 
+	 * @param scheme the scheme the small relation is stored with, its source fields are the declared fields
+	 * @param joinFields the fields of the small relation to join on, in the order of the stream's arguments, empty for a cross product
+	 * @param constants the constants the small relation is filtered by, same as for {@link ConstantFilter}
+	 * @param paths the paths where the small relation is stored
+	 */
+	public ReplicatedJoin(Scheme scheme, Fields joinFields, Map<String, WritableComparable> constants, String... paths) {
+		super(scheme.getSourceFields());
+		this.relation = new ReplicatedRelation(scheme, joinFields, constants, paths);
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.operation.BaseOperation#prepare(cascading.flow.FlowProcess, cascading.operation.OperationCall)
+	 */
+	@Override
+	public void prepare(FlowProcess flowProcess, OperationCall<Map<Tuple, List<Tuple>>> operationCall) {
+		operationCall.setContext(relation.load(flowProcess));
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.operation.Function#operate(cascading.flow.FlowProcess, cascading.operation.FunctionCall)
+	 */
+	@Override
+	public void operate(FlowProcess flowProcess, FunctionCall<Map<Tuple, List<Tuple>>> functionCall) {
+		List<Tuple> tuples = functionCall.getContext().get(relation.getKey(functionCall.getArguments()));
+		if (tuples == null) {
+			return;
+		}
+		for (Tuple tuple : tuples) {
+			functionCall.getOutputCollector().add(tuple);
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.operation.BaseOperation#cleanup(cascading.flow.FlowProcess, cascading.operation.OperationCall)
+	 */
+	@Override
+	public void cleanup(FlowProcess flowProcess, OperationCall<Map<Tuple, List<Tuple>>> operationCall) {
+		operationCall.setContext(null);
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.evaluation;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cascading.flow.FlowProcess;
+import cascading.flow.hadoop.HadoopFlowProcess;
+import cascading.scheme.Scheme;
+import cascading.tap.Hfs;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryIterator;
+
+/**
+ * A small relation loaded in memory by the map side operations, as a hash table on the join fields.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+@SuppressWarnings("unchecked")
+public class ReplicatedRelation implements Serializable {
+
+	/**
+	 * serialVersionUID
+	 */
+	private static final long serialVersionUID = 2291367702744963650L;
+
+	private static final Logger logger = LoggerFactory.getLogger(ReplicatedRelation.class);
+	
+	//the key of all the tuples when there are no fields to join on
+	private static final Tuple CROSS_PRODUCT_KEY = new Tuple();
+	
+	private static final String DEPRECATED_INPUT_DIR = "mapred.input.dir";
+	
+	private Scheme scheme;
+	private String[] paths;
+	private Fields joinFields;
+	private Map<String, WritableComparable> constants;
+	
+	/**
+	 * The relation stored at {@code paths}
+	 * 
+	 * @param scheme the scheme the relation is stored with
+	 * @param joinFields the fields of the relation to join on
+	 * @param constants the constants the relation is filtered by, same as for {@link ConstantFilter}
+	 * @param paths the paths where the relation is stored
+	 */
+	public ReplicatedRelation(Scheme scheme, Fields joinFields, Map<String, WritableComparable> constants, String... paths) {
+		this.scheme = scheme;
+		this.joinFields = joinFields;
+		this.constants = constants;
+		this.paths = paths;
+	}
+	
+	/**
+	 * Reads the relation from the storage
+	 * 
+	 * @param flowProcess the flow process of the operation loading the relation
+	 * @return the tuples of the relation, by the values of their join fields
+	 */
+	public Map<Tuple, List<Tuple>> load(FlowProcess flowProcess) {
+		Map<Tuple, List<Tuple>> relation = new HashMap<Tuple, List<Tuple>>();
+		read(flowProcess, relation, null);
+		return relation;
+	}
+	
+	/**
+	 * Reads from the storage only the values of the join fields of the relation, for an anti join. 
+	 * Without join fields only the first tuple is read, it is enough to know that the relation is not empty.
+	 * 
+	 * @param flowProcess the flow process of the operation loading the relation
+	 * @return the values of the join fields
+	 */
+	public Set<Tuple> loadKeys(FlowProcess flowProcess) {
+		Set<Tuple> keys = new HashSet<Tuple>();
+		read(flowProcess, null, keys);
+		return keys;
+	}
+	
+	/*
+	 * reads the tuples of the relation by their key, or only the keys if relation is null
+	 */
+	private void read(FlowProcess flowProcess, Map<Tuple, List<Tuple>> relation, Set<Tuple> keys) {
+		long count = 0;
+		try {
+			JobConf jobConf = getReadConf(((HadoopFlowProcess) flowProcess).getJobConf());
+			for (String path : paths) {
+				Tap tap = new Hfs(scheme, path);
+				if (!tap.pathExists(jobConf)) {
+					continue;
+				}
+				TupleEntryIterator iterator = tap.openForRead(jobConf);
+				while (iterator.hasNext()) {
+					TupleEntry tupleEntry = iterator.next();
+					if (!matchesConstants(tupleEntry)) {
+						continue;
+					}
+					Tuple key = isCrossProduct() ? CROSS_PRODUCT_KEY : tupleEntry.selectTuple(joinFields);
+					count++;
+					if (relation == null) {
+						keys.add(key);
+						if (isCrossProduct()) {
+							break;
+						}
+						continue;
+					}
+					List<Tuple> tuples = relation.get(key);
+					if (tuples == null) {
+						tuples = new ArrayList<Tuple>();
+						relation.put(key, tuples);
+					}
+					tuples.add(new Tuple(tupleEntry.getTuple()));
+				}
+				iterator.close();
+				if (relation == null && isCrossProduct() && !keys.isEmpty()) {
+					break;
+				}
+			}
+		} catch (IOException e) {
+			logger.error("io exception", e);
+			throw new RuntimeException("io exception", e);
+		}
+		logger.info("replicated " + count + " tuples");
+	}
+
+	/*
+	 * The configuration of the task without its input paths. A tap reads all the input paths of the configuration 
+	 * it is opened with, and the relation can be stored where the task reads its input (the facts without indexing).
+	 */
+	private JobConf getReadConf(JobConf taskConf) {
+		JobConf jobConf = new JobConf(false);
+		for (Map.Entry<String, String> entry : taskConf) {
+			if (!entry.getKey().equals(FileInputFormat.INPUT_DIR) && !entry.getKey().equals(DEPRECATED_INPUT_DIR)) {
+				jobConf.set(entry.getKey(), entry.getValue());
+			}
+		}
+		return jobConf;
+	}
+	
+
+	/**
+	 * Returns the key to look up in the loaded relation for the arguments of a stream's tuple.
+	 * Without join fields all the tuples of the relation are found under the same key, for a cross product.
+	 * 
+	 * @param arguments the arguments, the values of the stream's join fields
+	 * @return the key
+	 */
+	public Tuple getKey(TupleEntry arguments) {
+		return isCrossProduct() ? CROSS_PRODUCT_KEY : arguments.getTuple();
+	}
+	
+	/**
+	 * Checks if the relation is joined without join fields, each tuple of the stream with all the tuples of the relation
+	 * 
+	 * @return true if there are no join fields
+	 */
+	public boolean isCrossProduct() {
+		return joinFields.size() == 0;
+	}
+	
+	/*
+	 * checks if the tuple has the expected constants
+	 */
+	private boolean matchesConstants(TupleEntry tupleEntry) {
+		for (String fieldName : constants.keySet()) {
+			if (!tupleEntry.get(fieldName).equals(constants.get(fieldName))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.evaluation;
+
+import java.util.Set;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Function;
+import cascading.operation.FunctionCall;
+import cascading.operation.OperationCall;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+
+/**
+ * Appends a split number to the join key of one side of a join, so the records of the hot keys are grouped by several reducers.
+ * The records with a hot key of the spread side are assigned to the splits in turn, 
+ * the records with a hot key of the other side are copied to all the splits, so each pair of records with the same key meets in one split.
+ * The records of the other keys are all in the split 0.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+@SuppressWarnings("unchecked")
+public class SkewSalt extends BaseOperation<int[]> implements Function<int[]> {
+
+	/**
+	 * serialVersionUID
+	 */
+	private static final long serialVersionUID = -1864392570138251769L;
+
+	private Set<Tuple> hotKeys;
+	private int splits;
+	private boolean spread;
+	
+	/**
+	 * Salts one side of a join
+	 * 
+	 * @param splitField the field with the split number
+	 * @param hotKeys the hot keys, with the values in the order of the arguments
+	 * @param splits the number of splits of a hot key
+	 * @param spread true if the records of the hot keys are spread over the splits, false if they are copied to all the splits
+	 */
+	public SkewSalt(Fields splitField, Set<Tuple> hotKeys, int splits, boolean spread) {
+		super(splitField);
+		if (splits < 1) {
+			throw new IllegalArgumentException("The number of splits must be positive: " + splits);
+		}
+		this.hotKeys = hotKeys;
+		this.splits = splits;
+		this.spread = spread;
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.operation.BaseOperation#prepare(cascading.flow.FlowProcess, cascading.operation.OperationCall)
+	 */
+	@Override
+	public void prepare(FlowProcess flowProcess, OperationCall<int[]> operationCall) {
+		//the next split of the spread side
+		operationCall.setContext(new int[] {0});
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.operation.Function#operate(cascading.flow.FlowProcess, cascading.operation.FunctionCall)
+	 */
+	@Override
+	public void operate(FlowProcess flowProcess, FunctionCall<int[]> functionCall) {
+		Tuple split = Tuple.size(1);
+		if (!hotKeys.contains(functionCall.getArguments().getTuple())) {
+			split.set(0, 0);
+			functionCall.getOutputCollector().add(split);
+		} else if (spread) {
+			int[] next = functionCall.getContext();
+			split.set(0, next[0]);
+			next[0] = (next[0] + 1) % splits;
+			functionCall.getOutputCollector().add(split);
+		} else {
+			for (int i = 0; i < splits; i++) {
+				split.set(0, i);
+				functionCall.getOutputCollector().add(split);
+			}
+		}
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.operation.BaseOperation#cleanup(cascading.flow.FlowProcess, cascading.operation.OperationCall)
+	 */
+	@Override
+	public void cleanup(FlowProcess flowProcess, OperationCall<int[]> operationCall) {
+		operationCall.setContext(null);
+	}
+}
@@ -21,13 +21,17 @@ import java.util.List;
 import org.deri.iris.EvaluationException;
 import org.deri.iris.ProgramNotStratifiedException;
 import org.deri.iris.RuleUnsafeException;
+import org.deri.iris.api.basics.ILiteral;
 import org.deri.iris.api.basics.IQuery;
 import org.deri.iris.api.basics.IRule;
 import org.deri.iris.api.terms.IVariable;
 import org.deri.iris.evaluation.IEvaluationStrategy;
 import org.deri.iris.evaluation.stratifiedbottomup.EvaluationUtilities;
+import org.deri.iris.rules.stratification.GlobalStratifier;
 import org.deri.iris.storage.IRelation;
 
+import eu.larkc.iris.evaluation.LocalExecution;
+import eu.larkc.iris.indexing.DistributedFileSystemManager;
 import eu.larkc.iris.rules.IRecursiveRulePreProcessor;
 import eu.larkc.iris.rules.NonOptimizingRecursiveRulePreProcessor;
 import eu.larkc.iris.rules.compiler.CascadingRuleCompiler;
@@ -84,14 +88,75 @@ public class DistributedBottomUpEvaluationStrategy implements
 		
 		List<IRule> safeRules = utils.applyRuleSafetyProcessor(rules);		
 		
-		IRecursiveRulePreProcessor recursiveRuleProcessor = new NonOptimizingRecursiveRulePreProcessor();
-		recursiveRuleProcessor.process(safeRules);
-		List<IRule> singlePassRules = recursiveRuleProcessor.getNonrecursive();
-		List<IRule> recursiveRules = recursiveRuleProcessor.getRecursive();
-		
-		evaluateSinglePassRules(singlePassRules);
+		LocalExecution localExecution = new LocalExecution(mConfiguration);
+		boolean local = localExecution.isSmall();
+		if (local) {
+			localExecution.setup();
+		}
+		try {
+			if (mConfiguration.doSchemaClosure) {
+				safeRules = new SchemaClosure(mConfiguration).evaluate(safeRules);
+			}
+			
+			//the rules of a negation stratum are evaluated only after the predicates they negate reached their fixpoint
+			for (List<IRule> negationStratum : stratifyNegation(safeRules)) {
+				IRecursiveRulePreProcessor recursiveRuleProcessor = new NonOptimizingRecursiveRulePreProcessor();
+				recursiveRuleProcessor.process(negationStratum);
+				List<IRule> singlePassRules = recursiveRuleProcessor.getNonrecursive();
+				List<IRule> recursiveRules = recursiveRuleProcessor.getRecursive();
+				
+				evaluateSinglePassRules(singlePassRules);
+				
+				evaluateRecursiveRules(recursiveRules);
+			}
+		} finally {
+			//the configuration is used after the evaluation, e.g. for the exports
+			if (local) {
+				localExecution.teardown();
+			}
+		}
 		
-		evaluateRecursiveRules(recursiveRules);	
+		mConfiguration.evaluationMetrics.logSummary();
+		if (mConfiguration.metricsReportPath != null) {
+			mConfiguration.evaluationMetrics.writeReport(mConfiguration.hadoopConfiguration, mConfiguration.metricsReportPath);
+		}
+	}
+	
+	/**
+	 * Splits the rules in strata such that the predicates negated in a stratum are completely evaluated by the previous strata.
+	 * Programs without negation are not split.
+	 * 
+	 * @param rules the rules
+	 * @return the negation strata, in evaluation order
+	 * @throws ProgramNotStratifiedException if the rules have negation through recursion
+	 */
+	protected List<List<IRule>> stratifyNegation(List<IRule> rules) throws ProgramNotStratifiedException {
+		List<List<IRule>> negationStrata = new ArrayList<List<IRule>>();
+		if (!hasNegation(rules)) {
+			negationStrata.add(rules);
+			return negationStrata;
+		}
+		List<List<IRule>> strata = new GlobalStratifier().stratify(rules);
+		if (strata == null) {
+			throw new ProgramNotStratifiedException("The input program is not stratified");
+		}
+		for (List<IRule> stratum : strata) {
+			if (!stratum.isEmpty()) {
+				negationStrata.add(stratum);
+			}
+		}
+		return negationStrata;
+	}
+	
+	private boolean hasNegation(List<IRule> rules) {
+		for (IRule rule : rules) {
+			for (ILiteral literal : rule.getBody()) {
+				if (!literal.isPositive()) {
+					return true;
+				}
+			}
+		}
+		return false;
 	}
 	
 	protected void evaluateSinglePassRules(List<IRule> rules) throws EvaluationException {	
@@ -103,12 +168,26 @@ public class DistributedBottomUpEvaluationStrategy implements
 
 		List<IDistributedCompiledRule> compiledRules = new ArrayList<IDistributedCompiledRule>();
 		
+		rc.setEvaluatedRules(optimisedRules);
 		for (IRule rule : optimisedRules) {
 			IDistributedCompiledRule compiledRule = rc.compile(rule);
 			compiledRules.add(compiledRule);
 		}
+		//the new constants of the rules are written in the dictionary
+		flushTermDictionary();
 
-		singlePass.evaluateRules(null, compiledRules, mConfiguration);		
+		//the single pass rules are numbered as a stratum, the number is part of the flow identificators
+		singlePass.evaluateRules(stratumNumber, compiledRules, mConfiguration);		
+		
+		compactInferences();
+		
+		stratumNumber++;
+	}
+	
+	private void flushTermDictionary() {
+		if (mConfiguration.doTermEncoding) {
+			mConfiguration.termDictionary.flush();
+		}
 	}
 	
 	protected void evaluateRecursiveRules(List<IRule> rules) throws EvaluationException {		
@@ -120,7 +199,7 @@ public class DistributedBottomUpEvaluationStrategy implements
 		//PredicateCounts predicateCounts = PredicateCounts.getInstance(mConfiguration);
 		
 		//process each rule layer independently, no recomputations outside of each layer are required
-		Integer stratumNumber = 1;
+		//the strata are numbered continuously over the negation strata, the number is part of the flow identificators
 		for (List<IRule> stratum : stratifiedRules) {
 			
 			//reorder rules within stratum
@@ -128,18 +207,33 @@ public class DistributedBottomUpEvaluationStrategy implements
 			List<IRule> optimisedRules = utils.applyRuleOptimisers(reorderedRules);
 
 			List<IDistributedCompiledRule> compiledRules = new ArrayList<IDistributedCompiledRule>();			
+			rc.setEvaluatedRules(optimisedRules);
 			for (IRule rule : optimisedRules) {
 				IDistributedCompiledRule compiledRule = rc.compile(rule);
 				compiledRules.add(compiledRule);
 			}
+			flushTermDictionary();
 
 			evaluator.evaluateRules(stratumNumber, compiledRules, mConfiguration);
 			
+			compactInferences();
+			
 			stratumNumber++;
 		}
 	}
 	
+	/**
+	 * Compacts the inferences, if enabled. Called only between strata, the delta of a stratum is not used by the next strata.
+	 */
+	protected void compactInferences() {
+		if (mConfiguration.compactionFilesThreshold > 0) {
+			new DistributedFileSystemManager(mConfiguration).compactInferences();
+		}
+	}
+	
 	protected EvaluationUtilities utils;
+	
+	protected Integer stratumNumber = 1;
 
 	protected final IDistributedRuleEvaluatorFactory mRuleEvaluatorFactory;
 
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.evaluation.bottomup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.deri.iris.EvaluationException;
+import org.deri.iris.KnowledgeBaseFactory;
+import org.deri.iris.api.IKnowledgeBase;
+import org.deri.iris.api.basics.IAtom;
+import org.deri.iris.api.basics.ILiteral;
+import org.deri.iris.api.basics.IPredicate;
+import org.deri.iris.api.basics.IQuery;
+import org.deri.iris.api.basics.IRule;
+import org.deri.iris.api.basics.ITuple;
+import org.deri.iris.api.terms.ITerm;
+import org.deri.iris.api.terms.IVariable;
+import org.deri.iris.factory.Factory;
+import org.deri.iris.rules.stratification.GlobalStratifier;
+import org.deri.iris.storage.IRelation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cascading.tap.Hfs;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntryCollector;
+import cascading.tuple.TupleEntryIterator;
+import eu.larkc.iris.indexing.DistributedFileSystemManager;
+import eu.larkc.iris.indexing.PredicateCount;
+import eu.larkc.iris.indexing.PredicateData;
+import eu.larkc.iris.rules.compiler.LiteralFields;
+import eu.larkc.iris.storage.IRIWritable;
+import eu.larkc.iris.storage.WritableFactory;
+
+/**
+ * Computes in memory the closure of the schema (terminological) predicates, before the distributed evaluation.
+ * The rules using only schema predicates (like the transitivity of rdfs:subClassOf) are evaluated once with the 
+ * local IRIS engine on the schema facts, the new schema facts are stored as inferences and the rules are removed 
+ * from the distributed evaluation. This way the distributed evaluation does not need iterations over the schema.
+ * The schema rules are kept in the distributed evaluation if other rules can derive schema facts (e.g. rdfs6, rdfs7), 
+ * the closure would not be complete otherwise.
+ * Once the closure is complete the schema predicates are recorded as closed, the instance rules join them on the map side, 
+ * from a copy of the closure in the memory of each task, instead of shuffling the instances to the schema.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class SchemaClosure {
+
+	private static final Logger logger = LoggerFactory.getLogger(SchemaClosure.class);
+	
+	//the identificator of the inferences of the schema closure
+	private static final String SCHEMA_FLOW_IDENTIFICATOR = "_schema";
+	
+	private eu.larkc.iris.Configuration configuration;
+	
+	private DistributedFileSystemManager distributedFileSystemManager;
+	
+	//the stored values of the terms, the term used in the local evaluation is the index in this list
+	private List<Object> values = new ArrayList<Object>();
+	private Map<Object, ITerm> terms = new HashMap<Object, ITerm>();
+	
+	public SchemaClosure(eu.larkc.iris.Configuration configuration) {
+		this.configuration = configuration;
+	}
+	
+	/**
+	 * Evaluates the schema rules and stores the new schema facts
+	 * 
+	 * @param rules all the rules
+	 * @return the rules left for the distributed evaluation
+	 * @throws EvaluationException
+	 */
+	public List<IRule> evaluate(List<IRule> rules) throws EvaluationException {
+		List<IRule> schemaRules = new ArrayList<IRule>();
+		List<IRule> otherRules = new ArrayList<IRule>();
+		Set<IPredicate> predicates = new HashSet<IPredicate>();
+		Set<IPredicate> headPredicates = new HashSet<IPredicate>();
+		for (IRule rule : rules) {
+			if (isSchemaRule(rule)) {
+				schemaRules.add(rule);
+				for (ILiteral literal : rule.getBody()) {
+					predicates.add(literal.getAtom().getPredicate());
+				}
+				IPredicate headPredicate = rule.getHead().get(0).getAtom().getPredicate();
+				predicates.add(headPredicate);
+				headPredicates.add(headPredicate);
+			} else {
+				otherRules.add(rule);
+			}
+		}
+		if (schemaRules.isEmpty()) {
+			return rules;
+		}
+		logger.info("evaluate in memory the schema rules : " + schemaRules);
+		
+		distributedFileSystemManager = new DistributedFileSystemManager(configuration);
+		Map<IPredicate, IRelation> facts = new HashMap<IPredicate, IRelation>();
+		for (IPredicate predicate : predicates) {
+			facts.put(predicate, readRelation(predicate));
+		}
+		//the local evaluation adds the inferences to the relations of the facts
+		Map<IPredicate, Set<ITuple>> knownFacts = new HashMap<IPredicate, Set<ITuple>>();
+		for (IPredicate predicate : headPredicates) {
+			Set<ITuple> known = new HashSet<ITuple>();
+			IRelation relation = facts.get(predicate);
+			for (int i = 0; i < relation.size(); i++) {
+				known.add(relation.get(i));
+			}
+			knownFacts.put(predicate, known);
+		}
+		
+		//the default local configuration has no stratifiers
+		org.deri.iris.Configuration localConfiguration = KnowledgeBaseFactory.getDefaultConfiguration();
+		localConfiguration.stratifiers.add(new GlobalStratifier());
+		IKnowledgeBase knowledgeBase = KnowledgeBaseFactory.createKnowledgeBase(facts, schemaRules, localConfiguration);
+		Map<IPredicate, List<ITuple>> newFacts = new HashMap<IPredicate, List<ITuple>>();
+		List<PredicateCount> predicateCounts = new ArrayList<PredicateCount>();
+		for (IPredicate predicate : headPredicates) {
+			Set<ITuple> known = knownFacts.get(predicate);
+			List<ITerm> variables = new ArrayList<ITerm>();
+			for (int i = 0; i < predicate.getArity(); i++) {
+				variables.add(Factory.TERM.createVariable("X" + i));
+			}
+			IQuery query = Factory.BASIC.createQuery(Factory.BASIC.createLiteral(true, predicate, Factory.BASIC.createTuple(variables)));
+			IRelation closure = knowledgeBase.execute(query);
+			
+			List<ITuple> inferences = new ArrayList<ITuple>();
+			for (int i = 0; i < closure.size(); i++) {
+				if (!known.contains(closure.get(i))) {
+					inferences.add(closure.get(i));
+				}
+			}
+			logger.info("schema closure of " + predicate + " has " + inferences.size() + " new facts");
+			if (!inferences.isEmpty()) {
+				newFacts.put(predicate, inferences);
+				predicateCounts.add(new PredicateCount(new IRIWritable(predicate), (long) inferences.size()));
+			}
+		}
+		
+		//the new predicates get their location before the inferences are written in it
+		if (configuration.doPredicateIndexing && !predicateCounts.isEmpty()) {
+			distributedFileSystemManager.addPredicates(predicateCounts);
+		}
+		for (Map.Entry<IPredicate, List<ITuple>> entry : newFacts.entrySet()) {
+			writeInferences(entry.getKey(), entry.getValue());
+		}
+		if (configuration.doPredicateIndexing && !predicateCounts.isEmpty()) {
+			distributedFileSystemManager.savePredicateConfig();
+		}
+		
+		for (IRule rule : otherRules) {
+			if (canDeriveSchemaFacts(rule)) {
+				logger.info("the schema rules are also evaluated distributed, rule " + rule + " derives schema facts");
+				return rules;
+			}
+		}
+		for (IPredicate predicate : predicates) {
+			configuration.closedSchemaPredicates.add(predicate.getPredicateSymbol());
+		}
+		return otherRules;
+	}
+	
+	/*
+	 * a schema rule has only schema predicates, in the head and in the body
+	 */
+	boolean isSchemaRule(IRule rule) {
+		for (ILiteral literal : rule.getHead()) {
+			if (!isSchemaPredicate(literal.getAtom().getPredicate())) {
+				return false;
+			}
+		}
+		for (ILiteral literal : rule.getBody()) {
+			if (!literal.isPositive() || literal.getAtom().isBuiltin() || !isSchemaPredicate(literal.getAtom().getPredicate())) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/*
+	 * a rule derives schema facts if the predicate of its head is a schema predicate, 
+	 * or a variable or a schema predicate in the predicate position of a RIF_HAS_VALUE head
+	 */
+	boolean canDeriveSchemaFacts(IRule rule) {
+		for (ILiteral literal : rule.getHead()) {
+			IAtom atom = literal.getAtom();
+			if (isSchemaPredicate(atom.getPredicate())) {
+				return true;
+			}
+			if (atom.getPredicate().getPredicateSymbol().equals(LiteralFields.RIF_HAS_VALUE)) {
+				ITerm predicateTerm = atom.getTuple().get(0);
+				if (predicateTerm instanceof IVariable || configuration.schemaPredicates.contains(predicateTerm.getValue().toString())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	private boolean isSchemaPredicate(IPredicate predicate) {
+		return configuration.schemaPredicates.contains(predicate.getPredicateSymbol());
+	}
+	
+	/*
+	 * returns the term used in the local evaluation for a stored value
+	 */
+	private ITerm getTerm(Object value) {
+		ITerm term = terms.get(value);
+		if (term == null) {
+			term = Factory.TERM.createString(String.valueOf(values.size()));
+			values.add(value);
+			terms.put(value, term);
+		}
+		return term;
+	}
+	
+	/*
+	 * returns the stored value of a term used in the local evaluation
+	 */
+	private Object getValue(ITerm term) {
+		return values.get(Integer.parseInt((String) term.getValue()));
+	}
+	
+	/*
+	 * returns the facts and inferences paths of a predicate
+	 */
+	private List<String> getPaths(PredicateData predicateData) {
+		List<String> paths = new ArrayList<String>();
+		if (predicateData == null) {
+			paths.add(distributedFileSystemManager.getFactsPath());
+		} else {
+			paths.add(distributedFileSystemManager.getPredicateFactsPath(predicateData.getLocation()));
+		}
+		paths.add(distributedFileSystemManager.getInferencesPath(predicateData));
+		return paths;
+	}
+	
+	/*
+	 * returns the fields of a stored tuple of a predicate, the predicate followed by the terms
+	 */
+	private Fields getFields(IPredicate predicate) {
+		Integer[] positions = new Integer[predicate.getArity() + 1];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = i;
+		}
+		return new Fields(positions);
+	}
+	
+	/*
+	 * reads from the storage the facts and inferences of a predicate
+	 */
+	private IRelation readRelation(IPredicate predicate) {
+		IRelation relation = configuration.relationFactory.createRelation();
+		PredicateData predicateData = null;
+		if (configuration.doPredicateIndexing) {
+			predicateData = distributedFileSystemManager.getPredicateData(new IRIWritable(predicate));
+			if (predicateData == null) {
+				return relation;
+			}
+		}
+		Object predicateValue = WritableFactory.fromPredicate(configuration, predicate);
+		try {
+			FileSystem fs = FileSystem.get(configuration.hadoopConfiguration);
+			for (String path : getPaths(predicateData)) {
+				if (!fs.exists(new Path(path))) {
+					continue;
+				}
+				Tap source = new Hfs(distributedFileSystemManager.getScheme(getFields(predicate)), path);
+				TupleEntryIterator iterator = source.openForRead(configuration.jobConf);
+				while (iterator.hasNext()) {
+					Tuple tuple = iterator.next().getTuple();
+					if (tuple.size() != predicate.getArity() + 1 || !predicateValue.equals(tuple.get(0))) {
+						continue;
+					}
+					List<ITerm> tupleTerms = new ArrayList<ITerm>();
+					for (int i = 1; i < tuple.size(); i++) {
+						tupleTerms.add(getTerm(tuple.get(i)));
+					}
+					relation.add(Factory.BASIC.createTuple(tupleTerms));
+				}
+				iterator.close();
+			}
+		} catch (IOException e) {
+			logger.error("io exception", e);
+			throw new RuntimeException("io exception", e);
+		}
+		return relation;
+	}
+	
+	/*
+	 * writes the new facts of a predicate in the inferences storage
+	 */
+	private void writeInferences(IPredicate predicate, List<ITuple> inferences) {
+		PredicateData predicateData = null;
+		if (configuration.doPredicateIndexing) {
+			predicateData = distributedFileSystemManager.getPredicateData(new IRIWritable(predicate));
+		}
+		String resultName = configuration.resultsName != null ? configuration.resultsName : "inference";
+		String path = distributedFileSystemManager.getInferencesPath(predicateData, resultName, SCHEMA_FLOW_IDENTIFICATOR + predicate.getPredicateSymbol().hashCode());
+		
+		Object predicateValue = WritableFactory.fromPredicate(configuration, predicate);
+		try {
+			Tap sink = new Hfs(distributedFileSystemManager.getScheme(getFields(predicate)), path, true);
+			TupleEntryCollector collector = sink.openForWrite(configuration.jobConf);
+			for (ITuple inference : inferences) {
+				Tuple tuple = new Tuple(predicateValue);
+				for (ITerm term : inference) {
+					tuple.add(getValue(term));
+				}
+				collector.add(tuple);
+			}
+			collector.close();
+		} catch (IOException e) {
+			logger.error("io exception", e);
+			throw new RuntimeException("io exception", e);
+		}
+		
+		if (configuration.doSemiNaiveEvaluation) {
+			configuration.deltaTracker.register(predicateData != null ? predicateData.getLocation() : null, path);
+		}
+	}
+}
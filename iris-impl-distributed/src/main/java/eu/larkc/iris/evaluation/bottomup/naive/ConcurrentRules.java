@@ -0,0 +1,179 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.evaluation.bottomup.naive;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.deri.iris.EvaluationException;
+import org.deri.iris.api.basics.ILiteral;
+import org.deri.iris.api.basics.IPredicate;
+import org.deri.iris.api.basics.IRule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.larkc.iris.evaluation.EvaluationContext;
+import eu.larkc.iris.indexing.PredicateData;
+import eu.larkc.iris.rules.compiler.FlowAssembly;
+import eu.larkc.iris.rules.compiler.IDistributedCompiledRule;
+import eu.larkc.iris.rules.compiler.LiteralFields;
+import eu.larkc.iris.storage.IRIWritable;
+
+/**
+ * Evaluates a group of rules (a round of a fixpoint iteration) concurrently, at most {@code Configuration.maxConcurrentRules} 
+ * at the same time. Only the flows run concurrently on the cluster, see {@link FlowAssembly#evaluate(EvaluationContext)}.
+ * A rule starts only after the earlier rules of the group writing the locations it reads, or reading the locations it writes, 
+ * completed, so a flow never reads a location while another flow writes into it.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class ConcurrentRules {
+
+	private static final Logger logger = LoggerFactory.getLogger(ConcurrentRules.class);
+	
+	//the location of the predicates which can not be known before the evaluation (variable predicates, no predicate indexing)
+	private static final Object ALL_LOCATIONS = new Object();
+	
+	/**
+	 * Evaluates the rules concurrently
+	 * 
+	 * @param rules the rules to evaluate
+	 * @param contextMap the evaluation context of each rule
+	 * @param configuration the configuration
+	 * @return for each rule, true if new inferences were stored
+	 * @throws EvaluationException
+	 */
+	public static Map<IDistributedCompiledRule, Boolean> evaluate(List<IDistributedCompiledRule> rules, 
+			final Map<IDistributedCompiledRule, EvaluationContext> contextMap, eu.larkc.iris.Configuration configuration) throws EvaluationException {
+		Map<IDistributedCompiledRule, Boolean> deltas = new HashMap<IDistributedCompiledRule, Boolean>();
+		if (rules.isEmpty()) {
+			return deltas;
+		}
+		
+		int threads = Math.max(1, Math.min(configuration.maxConcurrentRules, rules.size()));
+		logger.info("evaluate " + rules.size() + " rules, " + threads + " at the same time");
+		
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			Map<IDistributedCompiledRule, Future<Boolean>> results = new LinkedHashMap<IDistributedCompiledRule, Future<Boolean>>();
+			Map<IDistributedCompiledRule, Set<Object>> reads = new HashMap<IDistributedCompiledRule, Set<Object>>();
+			Map<IDistributedCompiledRule, Set<Object>> writes = new HashMap<IDistributedCompiledRule, Set<Object>>();
+			for (final IDistributedCompiledRule rule : rules) {
+				reads.put(rule, getReadLocations(rule.getRule(), configuration));
+				writes.put(rule, getWrittenLocations(rule.getRule(), configuration));
+				
+				//the rules are submitted in order, the pool starts the earlier rules first, so waiting for them does not deadlock
+				final List<Future<Boolean>> predecessors = new ArrayList<Future<Boolean>>();
+				for (Map.Entry<IDistributedCompiledRule, Future<Boolean>> result : results.entrySet()) {
+					IDistributedCompiledRule earlierRule = result.getKey();
+					if (intersect(writes.get(earlierRule), reads.get(rule)) || intersect(writes.get(rule), reads.get(earlierRule))) {
+						predecessors.add(result.getValue());
+					}
+				}
+				results.put(rule, executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() throws Exception {
+						for (Future<Boolean> predecessor : predecessors) {
+							predecessor.get();
+						}
+						return rule.evaluate(contextMap.get(rule));
+					}
+				}));
+			}
+			for (Map.Entry<IDistributedCompiledRule, Future<Boolean>> result : results.entrySet()) {
+				deltas.put(result.getKey(), result.getValue().get());
+			}
+		} catch (InterruptedException e) {
+			logger.error("interrupted while evaluating rules", e);
+			throw new EvaluationException("interrupted while evaluating rules");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof EvaluationException) {
+				throw (EvaluationException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			logger.error("exception evaluating rule", cause);
+			throw new RuntimeException("exception evaluating rule", cause);
+		} finally {
+			executor.shutdownNow();
+		}
+		
+		return deltas;
+	}
+	
+	/*
+	 * returns the locations read by the body of a rule
+	 */
+	static Set<Object> getReadLocations(IRule rule, eu.larkc.iris.Configuration configuration) {
+		Set<Object> locations = new HashSet<Object>();
+		for (ILiteral literal : rule.getBody()) {
+			if (!literal.getAtom().isBuiltin()) {
+				locations.add(getLocation(literal.getAtom().getPredicate(), configuration));
+			}
+		}
+		return locations;
+	}
+	
+	/*
+	 * returns the locations written by the head of a rule
+	 */
+	static Set<Object> getWrittenLocations(IRule rule, eu.larkc.iris.Configuration configuration) {
+		Set<Object> locations = new HashSet<Object>();
+		for (ILiteral literal : rule.getHead()) {
+			locations.add(getLocation(literal.getAtom().getPredicate(), configuration));
+		}
+		return locations;
+	}
+	
+	/*
+	 * the location of a predicate, the predicate itself if it is not in the predicate catalog yet
+	 */
+	private static Object getLocation(IPredicate predicate, eu.larkc.iris.Configuration configuration) {
+		if (!configuration.doPredicateIndexing || predicate.getPredicateSymbol().equals(LiteralFields.RIF_HAS_VALUE)) {
+			return ALL_LOCATIONS;
+		}
+		PredicateData predicateData = configuration.predicateCatalog.getPredicateData(new IRIWritable(predicate));
+		return (predicateData != null) ? predicateData.getLocation() : predicate;
+	}
+	
+	static boolean intersect(Set<Object> locations, Set<Object> otherLocations) {
+		if (locations.isEmpty() || otherLocations.isEmpty()) {
+			return false;
+		}
+		if (locations.contains(ALL_LOCATIONS) || otherLocations.contains(ALL_LOCATIONS)) {
+			return true;
+		}
+		for (Object location : locations) {
+			if (otherLocations.contains(location)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -69,6 +69,8 @@ public class DistributedDependencyAwareEvaluator implements IDistributedRuleEval
 		//optionally: completely block some rules from re-evaluation
 		blockers = configuration.ruleEvaluationBlockers;
 		
+		this.configuration = configuration;
+		
 		//transform flat list to hashmap reflecting the dependencies between rules (more particularly predicates)
 		transformToDependencyMap(rules);
 		
@@ -85,6 +87,22 @@ public class DistributedDependencyAwareEvaluator implements IDistributedRuleEval
 			
 			//get rules that depend on this predicate (i.e. it is a body predicate of them)
 			List<IDistributedCompiledRule> dependingRules = dynamicDependencyMap.get(toEvaluate);
+			
+			//the rules depending on all the updated predicates are evaluated together, in one round
+			if (configuration.maxConcurrentRules > 1) {
+				dependingRules = (dependingRules == null) ? new ArrayList<IDistributedCompiledRule>() : new ArrayList<IDistributedCompiledRule>(dependingRules);
+				while (!predicatesToEvaluate.isEmpty()) {
+					List<IDistributedCompiledRule> otherRules = dynamicDependencyMap.get(predicatesToEvaluate.poll());
+					if (otherRules == null) {
+						continue;
+					}
+					for (IDistributedCompiledRule otherRule : otherRules) {
+						if (!dependingRules.contains(otherRule)) {
+							dependingRules.add(otherRule);
+						}
+					}
+				}
+			}
 	
 			if(logger.isInfoEnabled()) {
 				logger.info("Depending rules: " + dependingRules);
@@ -127,6 +145,12 @@ public class DistributedDependencyAwareEvaluator implements IDistributedRuleEval
 		}
 		
 		
+		//evaluate all the rules together concurrently
+		Map<IDistributedCompiledRule, Boolean> deltas = null;
+		if (configuration.maxConcurrentRules > 1) {
+			deltas = ConcurrentRules.evaluate(toEvaluate, contextMap, configuration);
+		}
+		
 		for (IDistributedCompiledRule currentRule: toEvaluate) {
 			
 			//get evaluation context and increment iteration number after evaluation of this rule
@@ -136,7 +160,7 @@ public class DistributedDependencyAwareEvaluator implements IDistributedRuleEval
 				logger.info("EvaluationContext: " + ctx);
 			}	
 			
-			boolean delta = currentRule.evaluate(ctx);			
+			boolean delta = (deltas != null) ? deltas.get(currentRule) : currentRule.evaluate(ctx);			
 			
 			//new data was derived, take head predicate and push it on the "update queue"
 			if(delta && !isBlocked(currentRule.getRule())) {
@@ -264,6 +288,11 @@ public class DistributedDependencyAwareEvaluator implements IDistributedRuleEval
 	 */
 	private List<IRuleEvaluationBlocker> blockers;
 	
+	/**
+	 * The configuration of the current evaluation.
+	 */
+	private eu.larkc.iris.Configuration configuration;
+	
 	/**
 	 * Queued up set of predicates that have been updated and determine rules to be re-evaluated.
 	 */
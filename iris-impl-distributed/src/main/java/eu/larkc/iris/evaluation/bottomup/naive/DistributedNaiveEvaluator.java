@@ -15,7 +15,9 @@
  */
 package eu.larkc.iris.evaluation.bottomup.naive;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.deri.iris.EvaluationException;
 import org.slf4j.Logger;
@@ -41,6 +43,8 @@ public class DistributedNaiveEvaluator implements IDistributedRuleEvaluator {
 	public void evaluateRules( Integer stratumNumber, List<IDistributedCompiledRule> rules, eu.larkc.iris.Configuration configuration)
 			throws EvaluationException {
 		int iterationNumber = 1;
+		//the contexts are kept between iterations, they hold the delta version of each rule for semi-naive evaluation
+		Map<IDistributedCompiledRule, EvaluationContext> contextMap = new HashMap<IDistributedCompiledRule, EvaluationContext>();
 		boolean cont = true;
 		while( cont )
 		{
@@ -50,11 +54,27 @@ public class DistributedNaiveEvaluator implements IDistributedRuleEvaluator {
 			// For each rule in the collection (stratum)
 			for (final IDistributedCompiledRule rule : rules )
 			{
-				logger.info("evaluate stratum : " + stratumNumber + ", iteration : " + iterationNumber + ", ruleNumber : " + ruleNumber + ", rule : " + rule.getRule());
-				boolean delta = rule.evaluate(new EvaluationContext(stratumNumber, iterationNumber, ruleNumber));
-				cont = delta ?  delta : cont;
+				EvaluationContext ctx = contextMap.get(rule);
+				if (ctx == null) {
+					ctx = new EvaluationContext(stratumNumber, iterationNumber, ruleNumber);
+					contextMap.put(rule, ctx);
+				} else {
+					ctx.setIterationNumber(iterationNumber);
+				}
+				if (configuration.maxConcurrentRules <= 1) {
+					logger.info("evaluate stratum : " + stratumNumber + ", iteration : " + iterationNumber + ", ruleNumber : " + ruleNumber + ", rule : " + rule.getRule());
+					boolean delta = rule.evaluate(ctx);
+					cont = delta ?  delta : cont;
+				}
 				ruleNumber++;
 			}
+			
+			//all the rules of the iteration are evaluated concurrently
+			if (configuration.maxConcurrentRules > 1) {
+				logger.info("evaluate stratum : " + stratumNumber + ", iteration : " + iterationNumber + ", rules : " + rules.size());
+				Map<IDistributedCompiledRule, Boolean> deltas = ConcurrentRules.evaluate(rules, contextMap, configuration);
+				cont = deltas.containsValue(Boolean.TRUE);
+			}
 			iterationNumber++;
 		}
 
@@ -20,6 +20,7 @@ import java.util.List;
 import org.deri.iris.EvaluationException;
 
 import eu.larkc.iris.Configuration;
+import eu.larkc.iris.evaluation.EvaluationContext;
 import eu.larkc.iris.evaluation.bottomup.IDistributedRuleEvaluator;
 import eu.larkc.iris.rules.compiler.IDistributedCompiledRule;
 
@@ -43,7 +44,7 @@ public class DistributedOnePassEvaluator implements IDistributedRuleEvaluator {
 		int ruleNumber = 1;
 		for (final IDistributedCompiledRule rule : rules )
 		{
-			rule.evaluate(ruleNumber);
+			rule.evaluate(new EvaluationContext(stratumNumber, 1, ruleNumber));
 			ruleNumber++;
 		}
 	}
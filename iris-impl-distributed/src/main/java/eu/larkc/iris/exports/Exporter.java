@@ -15,19 +15,30 @@
  */
 package eu.larkc.iris.exports;
 
-import java.io.BufferedWriter;
-import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.GzipCodec;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,18 +47,17 @@ import cascading.flow.FlowConnector;
 import cascading.operation.Identity;
 import cascading.pipe.Each;
 import cascading.pipe.Pipe;
+import cascading.scheme.TextLine;
+import cascading.scheme.TextLine.Compress;
 import cascading.tap.Hfs;
 import cascading.tap.MultiSourceTap;
 import cascading.tap.Tap;
 import cascading.tuple.Fields;
-import cascading.tuple.Tuple;
 import cascading.tuple.TupleEntryIterator;
 import eu.larkc.iris.Configuration;
 import eu.larkc.iris.indexing.DistributedFileSystemManager;
 import eu.larkc.iris.indexing.PredicateData;
 import eu.larkc.iris.storage.FactsFactory;
-import eu.larkc.iris.storage.IRIWritable;
-import eu.larkc.iris.storage.StringTermWritable;
 
 /**
  * Used to export the inferred results to different storages.
@@ -60,6 +70,11 @@ public class Exporter {
 
 	private static final Logger logger = LoggerFactory.getLogger(Exporter.class);
 	
+	private static final String PART_PREFIX = "part-";
+	
+	//the buffer of the streamed export
+	private static final int STREAM_BUFFER_SIZE = 4 * 1024 * 1024;
+	
 	Configuration configuration = null;
 	DistributedFileSystemManager distributedFileSystemManager = null;
 	
@@ -69,11 +84,40 @@ public class Exporter {
 	}
 	
 	/*
-	 * Returns the {@code Tap} for the inferences of {@code resultsName}   
+	 * Returns the {@code Tap} for the inferences of {@code resultsName}, decoded if term encoding is enabled
 	 */
 	private Tap getSource(String resultsName) {
+		Tap source = getInferencesSource(resultsName);
+		if (!configuration.doTermEncoding) {
+			return source;
+		}
+		String exportPath = distributedFileSystemManager.getExportTempPath(resultsName);
+		configuration.termDictionary.decode(source, exportPath);
+		return new Hfs(new Fields(0, 1, 2), exportPath);
+	}
+	
+	/*
+	 * Deletes the decoded inferences after export
+	 */
+	private void cleanSource(String resultsName) {
+		if (!configuration.doTermEncoding) {
+			return;
+		}
+		try {
+			FileSystem fs = FileSystem.get(configuration.hadoopConfiguration);
+			fs.delete(new Path(distributedFileSystemManager.getExportTempPath(resultsName)), true);
+		} catch (IOException e) {
+			logger.error("io exception", e);
+			throw new RuntimeException("io exception", e);
+		}
+	}
+	
+	/*
+	 * Returns the {@code Tap} for the stored inferences of {@code resultsName}   
+	 */
+	private Tap getInferencesSource(String resultsName) {
 		if (!configuration.doPredicateIndexing) {
-			return new Hfs(new Fields(0, 1, 2), distributedFileSystemManager.getInferencesPath() + resultsName, true );
+			return new Hfs(distributedFileSystemManager.getScheme(new Fields(0, 1, 2)), distributedFileSystemManager.getInferencesPath() + resultsName, true );
 		}
 		Set<String> inputPaths = new HashSet<String>();
 		try {
@@ -91,7 +135,7 @@ public class Exporter {
 		}
 		List<Tap> taps = new ArrayList<Tap>();
 		for (String inputPath : inputPaths) {
-			taps.add(new Hfs(new Fields(0, 1, 2), inputPath, true ));
+			taps.add(new Hfs(distributedFileSystemManager.getScheme(new Fields(0, 1, 2)), inputPath, true ));
 		}
 		return new MultiSourceTap(taps.toArray(new Tap[0]));
 	}
@@ -123,6 +167,8 @@ public class Exporter {
 		
 		Flow aFlow = new FlowConnector(configuration.flowProperties).connect(sources, sink, identity);
 		aFlow.complete();
+		
+		cleanSource(resultsName);
 	}
 
 	/**
@@ -139,53 +185,119 @@ public class Exporter {
 	 * Does the actual export to n-triple file
 	 */
 	protected void processNTriple(String outPath, String resultsName) {
-		File file = new File(outPath);
-		BufferedWriter bw = null;
+		Tap source = getSource(resultsName); //new Hfs(new Fields(0, 1, 2), project + "/inferences/" + resultsName );
 		try {
-			bw = new BufferedWriter(new FileWriter(file));
+			if (configuration.doStreamingExport) {
+				streamNTriple(source, outPath);
+			} else {
+				exportNTriple(source, outPath, resultsName);
+			}
 		} catch (IOException e) {
-			logger.error("io exception opening out file", e);
-			throw new RuntimeException("io exception out file", e);
+			logger.error("io exception", e);
+			throw new RuntimeException("io exception", e);
 		}
 		
-		Tap source = getSource(resultsName); //new Hfs(new Fields(0, 1, 2), project + "/inferences/" + resultsName );
-		TupleEntryIterator tei;
-		try {
-			tei = source.openForRead(configuration.jobConf);
-		} catch (IOException e) {
-			logger.error("io exception opening source", e);
-			throw new RuntimeException("io exception opening source", e);
+		cleanSource(resultsName);
+	}
+	
+	/*
+	 * The lines are formatted by the tasks and written in parallel into (compressed) part files. 
+	 * If merging is enabled the part files are concatenated into the export file, gzip members can be concatenated.
+	 */
+	private void exportNTriple(Tap source, String outPath, String resultsName) throws IOException {
+		String partsPath = configuration.doExportMerge ? distributedFileSystemManager.getExportPartsPath(resultsName) : outPath;
+		
+		Map<Object, Object> properties = new HashMap<Object, Object>(configuration.flowProperties);
+		if (configuration.doExportCompression) {
+			properties.put("mapred.output.compression.codec", GzipCodec.class.getName());
+			properties.put("mapreduce.output.fileoutputformat.compress.codec", GzipCodec.class.getName());
 		}
-		while (tei.hasNext()) {
-			StringBuilder sb = new StringBuilder();
-			Tuple tuple = tei.next().getTuple();
-			for (int i = 0; i < tuple.size(); i++) {
-				Object value = tuple.getObject(i);
-				if (value instanceof IRIWritable) {
-					IRIWritable iri = (IRIWritable) value;
-					if (i == 1) {
-						sb.insert(0, "<" + iri.getValue() + "> ");
-					} else {
-						sb.append("<" + iri.getValue() + "> ");
-					}
-				} else if (value instanceof StringTermWritable) {
-					StringTermWritable stringTerm = (StringTermWritable) value;
-					sb.append(stringTerm.getValue() + " ");
-				}
+		Compress compress = configuration.doExportCompression ? Compress.ENABLE : Compress.DISABLE;
+		Tap sink = new Hfs(new TextLine(new Fields("offset", "line"), new Fields(NTriplesExporterFunction.LINE), compress), partsPath, true);
+		
+		Pipe sourcePipe = new Pipe("source");
+		sourcePipe = new Each(sourcePipe, new Fields(0, 1, 2), new NTriplesExporterFunction());
+		
+		Flow aFlow = new FlowConnector(properties).connect(source, sink, sourcePipe);
+		aFlow.complete();
+		logger.info("exported " + aFlow.getFlowStats().getCounterValue(NTriplesExporterFunction.Counter.TRIPLES) + " triples to " + partsPath);
+		
+		if (configuration.doExportMerge) {
+			mergeParts(partsPath, outPath);
+		}
+	}
+	
+	/*
+	 * Concatenates the part files, in the order of their names, into {@code outPath}. 
+	 * A path without a scheme is a file of the client, as for the streamed export.
+	 */
+	private void mergeParts(String partsPath, String outPath) throws IOException {
+		FileSystem fs = FileSystem.get(configuration.hadoopConfiguration);
+		Path outFile = new Path(outPath);
+		FileSystem outFs = (outFile.toUri().getScheme() == null) ? FileSystem.getLocal(configuration.hadoopConfiguration) 
+				: outFile.getFileSystem(configuration.hadoopConfiguration);
+		FileStatus[] parts = fs.listStatus(new Path(partsPath), new PathFilter() {
+			@Override
+			public boolean accept(Path path) {
+				return path.getName().startsWith(PART_PREFIX);
 			}
-			sb.append(".\n");
-			try {
-				bw.write(sb.toString());
-			} catch (IOException e) {
-				logger.error("io exception writing line", e);
-				throw new RuntimeException("io exception writing line", e);
+		});
+		Arrays.sort(parts);
+		
+		logger.info("merge " + parts.length + " part files into " + outPath);
+		OutputStream out = outFs.create(outFile, true);
+		try {
+			for (FileStatus part : parts) {
+				InputStream in = fs.open(part.getPath());
+				try {
+					IOUtils.copyBytes(in, out, configuration.hadoopConfiguration, false);
+				} finally {
+					in.close();
+				}
 			}
+		} finally {
+			out.close();
 		}
+		fs.delete(new Path(partsPath), true);
+	}
+	
+	/*
+	 * The lines are formatted and written by the client, through a large buffer into a local file, encoded in UTF-8
+	 */
+	private void streamNTriple(Tap source, String outPath) throws IOException {
+		TupleEntryIterator tei = source.openForRead(configuration.jobConf);
+		FileChannel channel = new FileOutputStream(outPath).getChannel();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(STREAM_BUFFER_SIZE);
+		CharsetEncoder encoder = Charset.forName("UTF-8").newEncoder()
+			.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		StringBuilder sb = new StringBuilder();
+		long count = 0;
 		try {
-			bw.close();
-		} catch (IOException e) {
-			logger.error("exception closing writer", e);
+			while (tei.hasNext()) {
+				sb.setLength(0);
+				NTriplesExporterFunction.format(tei.next().getTuple(), sb);
+				sb.append('\n');
+				CharBuffer chars = CharBuffer.wrap(sb);
+				while (encoder.encode(chars, buffer, true).isOverflow()) {
+					write(channel, buffer);
+				}
+				encoder.reset();
+				count++;
+			}
+			write(channel, buffer);
+		} finally {
+			tei.close();
+			channel.close();
+		}
+		logger.info("exported " + count + " triples to " + outPath);
+	}
+	
+	private void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
 		}
+		buffer.clear();
 	}
 	
 }
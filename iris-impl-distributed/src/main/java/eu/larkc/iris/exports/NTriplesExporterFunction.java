@@ -0,0 +1,99 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.exports;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Function;
+import cascading.operation.FunctionCall;
+import cascading.operation.OperationCall;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import eu.larkc.iris.storage.IRIWritable;
+import eu.larkc.iris.storage.StringTermWritable;
+
+/**
+ * User defined cascading function formatting the inferences (predicate, subject, object) as n-triple lines, 
+ * so the export files are written by the tasks, in parallel.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class NTriplesExporterFunction extends BaseOperation<StringBuilder> implements Function<StringBuilder> {
+
+	/**
+	 * serialVersionUID
+	 */
+	private static final long serialVersionUID = -2461386911837428813L;
+
+	public static final String LINE = "line";
+	
+	/**
+	 * The counters of the exported lines
+	 */
+	public enum Counter {
+		TRIPLES
+	}
+	
+	/**
+	 * The arguments are the predicate, the subject and the object
+	 */
+	public NTriplesExporterFunction() {
+		super(3, new Fields(LINE));
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.operation.BaseOperation#prepare(cascading.flow.FlowProcess, cascading.operation.OperationCall)
+	 */
+	@Override
+	public void prepare(FlowProcess flowProcess, OperationCall<StringBuilder> operationCall) {
+		operationCall.setContext(new StringBuilder());
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.operation.Function#operate(cascading.flow.FlowProcess, cascading.operation.FunctionCall)
+	 */
+	@Override
+	public void operate(FlowProcess flowProcess, FunctionCall<StringBuilder> functionCall) {
+		StringBuilder sb = functionCall.getContext();
+		sb.setLength(0);
+		format(functionCall.getArguments().getTuple(), sb);
+		functionCall.getOutputCollector().add(new Tuple(sb.toString()));
+		flowProcess.increment(Counter.TRIPLES, 1);
+	}
+	
+	/**
+	 * Appends the n-triple line of an inference (predicate, subject, object), without the line terminator
+	 * 
+	 * @param tuple the inference
+	 * @param sb where the line is appended
+	 */
+	public static void format(Tuple tuple, StringBuilder sb) {
+		append(tuple.getObject(1), sb);
+		append(tuple.getObject(0), sb);
+		append(tuple.getObject(2), sb);
+		sb.append('.');
+	}
+	
+	private static void append(Object value, StringBuilder sb) {
+		if (value instanceof IRIWritable) {
+			sb.append('<').append(((IRIWritable) value).getValue()).append("> ");
+		} else if (value instanceof StringTermWritable) {
+			//the literals are stored in their n-triple form
+			sb.append(((StringTermWritable) value).getValue()).append(' ');
+		}
+	}
+}
@@ -21,6 +21,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
 import org.apache.hadoop.fs.Path;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,7 +29,8 @@ import org.slf4j.LoggerFactory;
 import cascading.flow.Flow;
 import cascading.flow.FlowConnector;
 import cascading.operation.Identity;
-import cascading.operation.regex.RegexParser;
+import cascading.operation.filter.FilterNotNull;
+import cascading.operation.filter.FilterNull;
 import cascading.pipe.Each;
 import cascading.pipe.Pipe;
 import cascading.scheme.SequenceFile;
@@ -74,7 +76,8 @@ public class Importer {
 		SequenceFile sinkScheme = new SequenceFile(source.getSourceFields());
 		sinkScheme.setNumSinkParts(1);
 		String importPath = distributedFileSystemManager.getImportPath(importName);
-		Tap sink = new Hfs(sinkScheme, importPath, true );
+		String sinkPath = configuration.doTermEncoding ? distributedFileSystemManager.getRawImportPath(importName) : importPath;
+		Tap sink = new Hfs(sinkScheme, sinkPath, true );
 
 		Map<String, Tap> sources = new HashMap<String, Tap>();
 		sources.put("source", source);
@@ -89,6 +92,10 @@ public class Importer {
 		Flow aFlow = new FlowConnector(configuration.flowProperties).connect(sources, sink, identity);
 		aFlow.complete();
 		
+		if (configuration.doTermEncoding) {
+			encodeTerms(sinkPath, importPath);
+		}
+		
 		if (configuration.doPredicateIndexing) {
 			try {
 				processIndexing(importName);
@@ -118,35 +125,61 @@ public class Importer {
 	}
 	
 	/*
-	 * Does the actual import from a n-triple file
+	 * Does the actual import from a n-triple (or n-quad) file. The file is read directly, compressed files 
+	 * are decompressed by the text input, bzip2 files are split. The lines which can not be parsed are written 
+	 * to the import errors path instead of the facts.
 	 */
 	public void processNTriple(String inPath, String importName) throws IOException {
-		//FIXME
-		//configuration.jobConf.set("mapreduce.input.fileinputformat.split.minsize", "268435456");
 		FileSystem fs = FileSystem.get(configuration.hadoopConfiguration);
 		
-		String fileName = configuration.project + "/" + DistributedFileSystemManager.TMP_FOLDER + "/" + inPath.substring(inPath.lastIndexOf("/") + 1);
-		logger.info("copy start: " + inPath + " to hdfs : " + fileName);
-		fs.copyFromLocalFile(new Path(inPath), new Path(fileName));
-		logger.info("copy done : " + inPath + " to hdfs : " + fileName);
+		String fileName = null;
+		String sourcePath = inPath;
+		if (isLocalToClient(inPath)) {
+			fileName = configuration.project + "/" + DistributedFileSystemManager.TMP_FOLDER + "/" + inPath.substring(inPath.lastIndexOf("/") + 1);
+			logger.info("copy start: " + inPath + " to hdfs : " + fileName);
+			fs.copyFromLocalFile(new Path(inPath), new Path(fileName));
+			logger.info("copy done : " + inPath + " to hdfs : " + fileName);
+			sourcePath = fileName;
+		} else if (new Path(inPath).toUri().getScheme() == null) {
+			sourcePath = new Path(inPath).makeQualified(FileSystem.getLocal(configuration.hadoopConfiguration)).toString();
+		}
 		
-		//Tap source = new Lfs(new TextLine(), inPath);
-		Tap source = new Hfs(new TextLine(), fileName);
+		Tap source = new Hfs(new TextLine(), sourcePath);
 		
 		SequenceFile sinkScheme = new SequenceFile(new Fields(0, 1, 2));
-		//sinkScheme.setNumSinkParts(1);
 		String importPath = distributedFileSystemManager.getImportPath(importName);
-		Tap sink = new Hfs(sinkScheme, importPath, true );
+		String sinkPath = configuration.doTermEncoding ? distributedFileSystemManager.getRawImportPath(importName) : importPath;
+		String errorsPath = distributedFileSystemManager.getImportErrorsPath(importName);
+		Map<String, Tap> sinks = new HashMap<String, Tap>();
+		sinks.put("triples", new Hfs(sinkScheme, sinkPath, true ));
+		sinks.put("errors", new Hfs(new TextLine(), errorsPath, true ));
 		
-		int[] groups = {2, 1, 3};
-		RegexParser parser = new RegexParser(Fields.UNKNOWN, "^(<[^\\s]+>|_:node\\w+)\\s*(<[^\\s]+>|_:node\\w+)\\s*([<\"].*[^\\s]|_:node\\w+)\\s*.\\s*$", groups); //_ is for generated nodes like _:node15n67q1f2x14
-		Pipe sourcePipe = new Each("sourcePipe", new Fields("line"), parser);
-		sourcePipe = new Each(sourcePipe, Fields.ALL, new TextImporterFunction());
+		Pipe sourcePipe = new Each("sourcePipe", new Fields("offset", "line"), new NTriplesImporterFunction());
+		Pipe triples = new Pipe("triples", sourcePipe);
+		triples = new Each(triples, new Fields(NTriplesImporterFunction.ERROR), new FilterNotNull());
+		triples = new Each(triples, new Fields(NTriplesImporterFunction.PREDICATE, NTriplesImporterFunction.SUBJECT, NTriplesImporterFunction.OBJECT), new Identity());
+		Pipe errors = new Pipe("errors", sourcePipe);
+		errors = new Each(errors, new Fields(NTriplesImporterFunction.ERROR), new FilterNull());
+		errors = new Each(errors, new Fields(NTriplesImporterFunction.ERROR), new Identity());
 		
-		Flow aFlow = new FlowConnector(configuration.flowProperties).connect(source, sink, sourcePipe);
+		Flow aFlow = new FlowConnector(configuration.flowProperties).connect(source, sinks, triples, errors);
 		aFlow.complete();
 		
-		fs.delete(new Path(fileName), false);
+		long errorsCount = aFlow.getFlowStats().getCounterValue(NTriplesImporterFunction.Counter.ERRORS);
+		logger.info("imported " + aFlow.getFlowStats().getCounterValue(NTriplesImporterFunction.Counter.TRIPLES) + " triples from " + inPath);
+		if (errorsCount > 0) {
+			logger.warn(errorsCount + " lines of " + inPath + " could not be parsed, see " + errorsPath);
+		} else {
+			fs.delete(new Path(errorsPath), true);
+		}
+		
+		if (fileName != null) {
+			fs.delete(new Path(fileName), false);
+		}
+		
+		if (configuration.doTermEncoding) {
+			encodeTerms(sinkPath, importPath);
+		}
 		
 		if (configuration.doPredicateIndexing) {
 			processIndexing(importName);
@@ -156,6 +189,33 @@ public class Importer {
 		}
 	}
 	
+	/*
+	 * Adds the new terms of the imported facts to the terms dictionary and stores the facts encoded at {@code importPath}
+	 */
+	private void encodeTerms(String rawPath, String importPath) {
+		configuration.termDictionary.build(rawPath);
+		configuration.termDictionary.encode(rawPath, importPath);
+		try {
+			FileSystem fs = FileSystem.get(configuration.hadoopConfiguration);
+			fs.delete(new Path(rawPath), true);
+		} catch (IOException e) {
+			logger.error("io exception", e);
+			throw new RuntimeException("io exception", e);
+		}
+	}
+	
+	/*
+	 * A path without a scheme is a file of the client. It has to be copied to the distributed file system 
+	 * only if the tasks do not run locally, where they can read it.
+	 */
+	private boolean isLocalToClient(String inPath) throws IOException {
+		if (new Path(inPath).toUri().getScheme() != null) {
+			return false;
+		}
+		return !(FileSystem.get(configuration.hadoopConfiguration) instanceof LocalFileSystem) 
+			&& !"local".equals(configuration.jobConf.get("mapred.job.tracker", "local"));
+	}
+	
 	/*
 	 * perform an indexing of the data based on the RDF predicates
 	 * It groups the data by predicate into different locations 
@@ -170,16 +230,20 @@ public class Importer {
 		
 		Tap predicatesSource = new Hfs(new Fields(0, 1, 2), distributedFileSystemManager.getImportPath(importName), true );
 		Tap predicatesSink = new Hfs(new Fields(0, 1), predicateGroupsTempPath);
-		Pipe predicatesPipe = Utils.buildPredicateCountPipe(null);
+		Pipe predicatesPipe = Utils.buildPredicateCountPipe(configuration, null);
 		Flow predicatesFlow = new FlowConnector(configuration.flowProperties).connect(predicatesSource, predicatesSink, predicatesPipe);
 		predicatesFlow.complete();
 		
-		List<PredicateCount> predicateCounts = Utils.readPredicateCounts(predicatesFlow, null);
+		List<PredicateCount> predicateCounts = Utils.readPredicateCounts(configuration, predicatesFlow, null);
 		
-		distributedFileSystemManager.addPredicates(predicateCounts);
+		//the facts are split per location sorted and without duplicates
+		distributedFileSystemManager.addFacts(predicateCounts);
 		
 		Tap importSource = new Hfs(new Fields(0, 1, 2), distributedFileSystemManager.getImportPath(importName), true );
 		Utils.splitStreamPerPredicates(configuration, distributedFileSystemManager, importSource, predicateCounts, importName);
+		if (configuration.doTermEncoding) {
+			configuration.termDictionary.flush();
+		}
 
 		distributedFileSystemManager.savePredicateConfig();
 		fs.delete(new Path(predicateGroupsTempPath), true);
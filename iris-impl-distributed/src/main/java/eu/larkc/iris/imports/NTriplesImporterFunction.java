@@ -0,0 +1,92 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.imports;
+
+import java.text.ParseException;
+
+import cascading.flow.FlowProcess;
+import cascading.operation.BaseOperation;
+import cascading.operation.Function;
+import cascading.operation.FunctionCall;
+import cascading.operation.OperationCall;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+
+/**
+ * User defined cascading function importing the lines of n-triple and n-quad files, read with a {@code TextLine} scheme.
+ * A valid line gives the predicate, the subject and the object, with a null error. 
+ * A line which can not be parsed gives only the error, with the offset of the line, so it can be written to a separate sink.
+ * Empty lines and comments are skipped.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class NTriplesImporterFunction extends BaseOperation<NTriplesParser> implements Function<NTriplesParser> {
+
+	/**
+	 * serialVersionUID
+	 */
+	private static final long serialVersionUID = 4226785915423384105L;
+
+	public static final String PREDICATE = "predicate";
+	public static final String SUBJECT = "subject";
+	public static final String OBJECT = "object";
+	public static final String ERROR = "error";
+	
+	/**
+	 * The counters of the imported lines
+	 */
+	public enum Counter {
+		TRIPLES, ERRORS
+	}
+	
+	/**
+	 * The arguments are the offset and the line
+	 */
+	public NTriplesImporterFunction() {
+		super(2, new Fields(PREDICATE, SUBJECT, OBJECT, ERROR));
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.operation.BaseOperation#prepare(cascading.flow.FlowProcess, cascading.operation.OperationCall)
+	 */
+	@Override
+	public void prepare(FlowProcess flowProcess, OperationCall<NTriplesParser> operationCall) {
+		//one parser per task, it interns the predicates
+		operationCall.setContext(new NTriplesParser());
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.operation.Function#operate(cascading.flow.FlowProcess, cascading.operation.FunctionCall)
+	 */
+	@Override
+	public void operate(FlowProcess flowProcess, FunctionCall<NTriplesParser> functionCall) {
+		Tuple arguments = functionCall.getArguments().getTuple();
+		String line = arguments.getString(1);
+		NTriplesParser parser = functionCall.getContext();
+		try {
+			if (!parser.parse(line)) {
+				return;
+			}
+			functionCall.getOutputCollector().add(new Tuple(parser.getPredicate(), parser.getSubject(), parser.getObject(), null));
+			flowProcess.increment(Counter.TRIPLES, 1);
+		} catch (ParseException e) {
+			String error = "offset " + arguments.get(0) + ", " + e.getMessage() + " : " + line;
+			functionCall.getOutputCollector().add(new Tuple(null, null, null, error));
+			flowProcess.increment(Counter.ERRORS, 1);
+		}
+	}
+}
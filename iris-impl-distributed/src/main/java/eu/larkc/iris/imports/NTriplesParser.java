@@ -0,0 +1,292 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.imports;
+
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+
+import eu.larkc.iris.storage.IRIWritable;
+import eu.larkc.iris.storage.StringTermWritable;
+import eu.larkc.iris.storage.WritableComparable;
+
+/**
+ * A tokenizer for the lines of n-triple and n-quad files, working on the line without regular expressions.
+ * The IRIs and the blank nodes are parsed as {@code IRIWritable}, the literals as {@code StringTermWritable} 
+ * keeping the text of the literal with its quotes, escapes, language tag or datatype, the same as it is exported.
+ * The graph of a n-quad is checked but not kept, the facts are triples.
+ * The predicates are interned, the same instance is returned for the same predicate.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class NTriplesParser {
+
+	/**
+	 * The namespace of the IRIs the blank nodes are stored as
+	 */
+	public static final String BLANK_NODE_NAMESPACE = "http://www.w3.org/2011/node#";
+	
+	//the interned predicates are dropped above this number, the predicates are expected to be few
+	private static final int MAX_INTERNED_PREDICATES = 10000;
+	
+	private Map<String, IRIWritable> predicates = new HashMap<String, IRIWritable>();
+	
+	private String line;
+	private int position;
+	
+	private WritableComparable subject;
+	private IRIWritable predicate;
+	private WritableComparable object;
+	
+	/**
+	 * Parses a line
+	 * 
+	 * @param line the line
+	 * @return true if the line has a triple, false if it is empty or a comment
+	 * @throws ParseException if the line is not a valid triple, the error offset is the position in the line
+	 */
+	public boolean parse(String line) throws ParseException {
+		this.line = line;
+		this.position = 0;
+		skipWhitespaces();
+		if (isEnd() || current() == '#') {
+			return false;
+		}
+		subject = parseResource("subject");
+		skipWhitespaces();
+		predicate = intern(parseIri("predicate"));
+		skipWhitespaces();
+		object = parseObject();
+		skipWhitespaces();
+		if (!isEnd() && current() != '.') {
+			parseResource("graph");
+			skipWhitespaces();
+		}
+		if (isEnd() || current() != '.') {
+			throw error("expected '.' at the end of the triple");
+		}
+		position++;
+		skipWhitespaces();
+		if (!isEnd() && current() != '#') {
+			throw error("unexpected characters after the end of the triple");
+		}
+		return true;
+	}
+	
+	public WritableComparable getSubject() {
+		return subject;
+	}
+
+	public IRIWritable getPredicate() {
+		return predicate;
+	}
+
+	public WritableComparable getObject() {
+		return object;
+	}
+
+	private boolean isEnd() {
+		return position >= line.length();
+	}
+	
+	private char current() {
+		return line.charAt(position);
+	}
+	
+	private ParseException error(String message) {
+		return new ParseException(message + " at position " + position, position);
+	}
+	
+	private void skipWhitespaces() {
+		while (!isEnd() && (current() == ' ' || current() == '\t' || current() == '\r' || current() == '\n')) {
+			position++;
+		}
+	}
+	
+	private IRIWritable intern(String value) {
+		IRIWritable iri = predicates.get(value);
+		if (iri == null) {
+			if (predicates.size() >= MAX_INTERNED_PREDICATES) {
+				predicates.clear();
+			}
+			iri = createIri(value);
+			predicates.put(value, iri);
+		}
+		return iri;
+	}
+	
+	private IRIWritable createIri(String value) {
+		IRIWritable iri = new IRIWritable();
+		iri.setValue(value);
+		return iri;
+	}
+	
+	/*
+	 * parses an IRI or a blank node
+	 */
+	private IRIWritable parseResource(String role) throws ParseException {
+		if (isEnd()) {
+			throw error("missing " + role);
+		}
+		if (current() == '<') {
+			return createIri(parseIri(role));
+		} else if (current() == '_') {
+			return parseBlankNode();
+		}
+		throw error("expected an IRI or a blank node as " + role);
+	}
+	
+	private WritableComparable parseObject() throws ParseException {
+		if (!isEnd() && current() == '"') {
+			StringTermWritable literal = new StringTermWritable();
+			literal.setValue(parseLiteral());
+			return literal;
+		}
+		return parseResource("object");
+	}
+	
+	/*
+	 * parses an IRI, returns its value without the angle brackets
+	 */
+	private String parseIri(String role) throws ParseException {
+		if (isEnd() || current() != '<') {
+			throw error("expected an IRI as " + role);
+		}
+		int start = ++position;
+		while (!isEnd() && current() != '>') {
+			char c = current();
+			if (c <= ' ' || c == '<' || c == '"' || c == '{' || c == '}' || c == '|' || c == '^' || c == '`') {
+				throw error("invalid character in IRI");
+			}
+			if (c == '\\') {
+				position++;
+				parseUnicodeEscape();
+			} else {
+				position++;
+			}
+		}
+		if (isEnd()) {
+			throw error("unterminated IRI");
+		}
+		return line.substring(start, position++);
+	}
+	
+	/*
+	 * parses a blank node label, the blank node is stored as an IRI
+	 */
+	private IRIWritable parseBlankNode() throws ParseException {
+		if (!line.startsWith("_:", position)) {
+			throw error("invalid blank node");
+		}
+		position += 2;
+		int start = position;
+		while (!isEnd() && isLabelCharacter(current())) {
+			position++;
+		}
+		//a label can not end with '.', the dot ends the triple
+		while (position > start && line.charAt(position - 1) == '.') {
+			position--;
+		}
+		if (position == start) {
+			throw error("empty blank node label");
+		}
+		return createIri(BLANK_NODE_NAMESPACE + line.substring(start, position));
+	}
+	
+	private boolean isLabelCharacter(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.' || c == '\u00B7';
+	}
+	
+	/*
+	 * parses a literal with its language tag or datatype, returns the text of the literal
+	 */
+	private String parseLiteral() throws ParseException {
+		int start = position++;
+		while (true) {
+			if (isEnd()) {
+				throw error("unterminated literal");
+			}
+			char c = current();
+			if (c == '"') {
+				position++;
+				break;
+			} else if (c == '\\') {
+				position++;
+				parseEscape();
+			} else if (c == '\n' || c == '\r') {
+				throw error("new line in literal");
+			} else {
+				position++;
+			}
+		}
+		if (!isEnd() && current() == '@') {
+			position++;
+			int tagStart = position;
+			while (!isEnd() && (isAsciiLetter(current()) || (position > tagStart && (current() == '-' || Character.isDigit(current()))))) {
+				position++;
+			}
+			if (position == tagStart || line.charAt(position - 1) == '-') {
+				throw error("invalid language tag");
+			}
+		} else if (line.startsWith("^^", position)) {
+			position += 2;
+			parseIri("datatype");
+		}
+		return line.substring(start, position);
+	}
+	
+	private boolean isAsciiLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+	
+	/*
+	 * checks the escape after a backslash in a literal
+	 */
+	private void parseEscape() throws ParseException {
+		if (isEnd()) {
+			throw error("unterminated escape");
+		}
+		switch (current()) {
+		case 't': case 'b': case 'n': case 'r': case 'f': case '"': case '\'': case '\\':
+			position++;
+			break;
+		default:
+			parseUnicodeEscape();
+		}
+	}
+	
+	/*
+	 * checks an unicode escape after a backslash, \\uXXXX or \\UXXXXXXXX
+	 */
+	private void parseUnicodeEscape() throws ParseException {
+		int digits = 0;
+		if (!isEnd() && current() == 'u') {
+			digits = 4;
+		} else if (!isEnd() && current() == 'U') {
+			digits = 8;
+		} else {
+			throw error("invalid escape");
+		}
+		position++;
+		for (int i = 0; i < digits; i++) {
+			if (isEnd() || Character.digit(current(), 16) == -1) {
+				throw error("invalid unicode escape");
+			}
+			position++;
+		}
+	}
+}
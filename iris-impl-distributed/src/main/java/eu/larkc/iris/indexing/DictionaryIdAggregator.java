@@ -0,0 +1,95 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.indexing;
+
+import cascading.flow.FlowProcess;
+import cascading.flow.hadoop.HadoopFlowProcess;
+import cascading.operation.Aggregator;
+import cascading.operation.AggregatorCall;
+import cascading.operation.BaseOperation;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import eu.larkc.iris.storage.LongTermWritable;
+
+/**
+ * Aggregator assigning a new id to each group of a term, if the term has no id yet in the dictionary.
+ * It emits the term and its new id.
+ * A term already has an id if any of the arguments is a {@code LongTermWritable} (the id from the existing dictionary).
+ * 
+ * The ids are unique without any coordination between the reducers :
+ * the highest 16 bits are the generation of the dictionary (one generation per import), 
+ * the next 16 bits the reduce task number and the lowest 32 bits a counter of the task.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+@SuppressWarnings(value = "unchecked")
+public class DictionaryIdAggregator extends BaseOperation<Object[]> implements Aggregator<Object[]> {
+
+	/**
+	 * serialVersionUID
+	 */
+	private static final long serialVersionUID = -3208547195906932176L;
+
+	private long generation;
+	
+	//the number of ids assigned by the current task
+	private transient long counter = 0;
+	
+	public DictionaryIdAggregator(Fields fieldDeclaration, long generation) {
+		super(fieldDeclaration);
+		this.generation = generation;
+	}
+	
+	@Override
+	public void start(FlowProcess flowProcess, AggregatorCall<Object[]> aggregatorCall) {
+		if (aggregatorCall.getContext() == null) {
+			aggregatorCall.setContext(new Object[] {false, null});
+		} else {
+			aggregatorCall.getContext()[0] = false;
+			aggregatorCall.getContext()[1] = null;
+		}
+	}
+
+	@Override
+	public void aggregate(FlowProcess flowProcess, AggregatorCall<Object[]> aggregatorCall) {
+		Tuple arguments = aggregatorCall.getArguments().getTuple();
+		for (int i = 0; i < arguments.size(); i++) {
+			Object value = arguments.get(i);
+			if (value instanceof LongTermWritable) {
+				//the term already has an id
+				aggregatorCall.getContext()[0] = true;
+			} else if (value != null) {
+				aggregatorCall.getContext()[1] = value;
+			}
+		}
+	}
+
+	@Override
+	public void complete(FlowProcess flowProcess, AggregatorCall<Object[]> aggregatorCall) {
+		if ((Boolean) aggregatorCall.getContext()[0]) {
+			return;
+		}
+		long taskNumber = 0;
+		if (flowProcess instanceof HadoopFlowProcess) {
+			taskNumber = ((HadoopFlowProcess) flowProcess).getCurrentTaskNum();
+		}
+		long id = (generation << 48) | ((taskNumber & 0xFFFF) << 32) | (counter & 0xFFFFFFFFL);
+		counter++;
+		aggregatorCall.getOutputCollector().add(new Tuple((Comparable) aggregatorCall.getContext()[1], new LongTermWritable(id)));
+	}
+
+}
@@ -13,53 +13,40 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-package eu.larkc.iris.imports;
+package eu.larkc.iris.indexing;
 
 import cascading.flow.FlowProcess;
 import cascading.operation.BaseOperation;
 import cascading.operation.Function;
 import cascading.operation.FunctionCall;
+import cascading.tuple.Fields;
 import cascading.tuple.Tuple;
-import eu.larkc.iris.storage.IRIWritable;
-import eu.larkc.iris.storage.StringTermWritable;
 
 /**
- * User defined cascading function used to import data from n-triple format, text based files
+ * User defined cascading function emitting each term of a fact as a tuple of its own.
+ * Used to collect the terms for the terms dictionary.
  * 
  * @author valer.roman@softgress.com
  *
  */
 @SuppressWarnings(value = "unchecked")
-public class TextImporterFunction extends BaseOperation implements Function {
+public class DictionaryTermsFunction extends BaseOperation implements Function {
 
 	/**
 	 * serialVersionUID
 	 */
-	private static final long serialVersionUID = -7477883423115109241L;
+	private static final long serialVersionUID = 4402710351880734180L;
 
+	public DictionaryTermsFunction(Fields fieldDeclaration) {
+		super(fieldDeclaration);
+	}
+	
 	@Override
 	public void operate(FlowProcess flowProcess, FunctionCall functionCall) {
 		Tuple tuple = functionCall.getArguments().getTuple();
-		Tuple outTuple = new Tuple();
 		for (int i = 0; i < tuple.size(); i++) {
-			String value = tuple.getString(i);
-			if ((value.startsWith("<") && value.endsWith(">") || value.startsWith("_:node"))) {
-				IRIWritable iriWritable = new IRIWritable();
-				String aValue = null;
-				if (value.startsWith("_:node")) {
-					aValue = "http://www.w3.org/2011/node#" + value.substring(2);
-				} else {
-					aValue = value.substring(1, value.length() - 1);
-				}
-				iriWritable.setValue(aValue);
-				outTuple.add(iriWritable);
-			} else {
-				StringTermWritable stWritable = new StringTermWritable();
-				stWritable.setValue(value);
-				outTuple.add(stWritable);
-			}
+			functionCall.getOutputCollector().add(new Tuple(tuple.get(i)));
 		}
-		functionCall.getOutputCollector().add(outTuple);
 	}
 
 }
@@ -15,21 +15,39 @@
  */
 package eu.larkc.iris.indexing;
 
-import java.io.EOFException;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-import org.apache.hadoop.fs.FSDataInputStream;
-import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableComparable;
 import org.deri.iris.api.basics.IPredicate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cascading.flow.Flow;
+import cascading.flow.FlowConnector;
+import cascading.operation.aggregator.Count;
+import cascading.pipe.Every;
+import cascading.pipe.GroupBy;
+import cascading.pipe.Pipe;
+import cascading.scheme.Scheme;
+import cascading.scheme.SequenceFile;
+import cascading.tap.Hfs;
+import cascading.tap.MultiSourceTap;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
 import eu.larkc.iris.Configuration;
 import eu.larkc.iris.rules.compiler.LiteralFields;
+import eu.larkc.iris.storage.ColumnarScheme;
 import eu.larkc.iris.storage.IRIWritable;
 
 /**
@@ -46,7 +64,7 @@ public class DistributedFileSystemManager {
 	/**
 	 * The minimum number of records for a predicate, to allow it to be stored on a location of it own
 	 */
-	public final static Long BLOCK_MIN_RECORDS = new Long(1024);
+	public final static Long BLOCK_MIN_RECORDS = 1024L;
 
 	public static final String FACTS_FOLDER = "facts";
 	public static final String PREDICATES_FOLDER = "predicates";
@@ -54,36 +72,23 @@ public class DistributedFileSystemManager {
 	public static final String PREDICATE_COUNT_FOLDER = "count";
 	public static final String TMP_FOLDER = "_tmp";
 	public static final String INFERENCES_FOLDER = "inferences";
+	public static final String DICTIONARY_FOLDER = "dictionary";
+	public static final String RAW_FOLDER = "raw";
+	public static final String EXPORTS_FOLDER = "exports";
+	public static final String ERRORS_FOLDER = "errors";
+	public static final String PARTS_FOLDER = "parts";
 	
-	private Configuration configuration;
+	/**
+	 * The identificator of the compacted inferences
+	 */
+	public static final String COMPACTED_IDENTIFICATOR = "_compacted_";
+	
+	private static final long DEFAULT_BLOCK_SIZE = 64 * 1024 * 1024;
 	
-	private List<PredicateData> predicatesConfig;
+	private Configuration configuration;
 	
 	public DistributedFileSystemManager(Configuration configuration) {
 		this.configuration = configuration;
-		try {
-			List<PredicateData> aPredicatesConfig = new ArrayList<PredicateData>();
-			FileSystem fs = FileSystem.get(configuration.hadoopConfiguration);
-			Path predicatesConfigFilePath = new Path(getPredicatesConfigFilePath(configuration.project));
-			if (!fs.exists(predicatesConfigFilePath)) {
-				this.predicatesConfig = aPredicatesConfig;
-				return;
-			}
-			FSDataInputStream predicatesConfigInputStream = fs.open(predicatesConfigFilePath);
-			try {
-				while (true) {
-					PredicateData predicateData = PredicateData.read(predicatesConfigInputStream);
-					aPredicatesConfig.add(predicateData);
-				}
-			} catch (EOFException e) {
-				logger.debug("eof exception no more data");
-			}
-			predicatesConfigInputStream.close();
-			this.predicatesConfig = aPredicatesConfig;
-		} catch (IOException e) {
-			logger.error("io exception", e);
-			throw new RuntimeException("io exception", e);
-		}
 	}
 	
 	/**
@@ -92,7 +97,83 @@ public class DistributedFileSystemManager {
 	 * @return list of {@code PredicateData}
 	 */
 	public List<PredicateData> getPredicateData() {
-		return predicatesConfig;
+		return configuration.predicateCatalog.getPredicateData();
+	}
+	
+	/**
+	 * Returns the scheme with which the facts and the inferences are stored
+	 * 
+	 * @param fields the fields of the scheme
+	 * @return the scheme
+	 */
+	public Scheme getScheme(Fields fields) {
+		if (configuration.doColumnarStorage) {
+			return new ColumnarScheme(fields);
+		}
+		return new SequenceFile(fields);
+	}
+	
+	/**
+	 * Returns the scheme with which the facts of a literal are read. 
+	 * With columnar storage the blocks which do not contain the constants of the literal are skipped.
+	 * 
+	 * @param fields the fields of the scheme
+	 * @param literalFields the literal
+	 * @return the scheme
+	 */
+	@SuppressWarnings("rawtypes")
+	public Scheme getScheme(Fields fields, LiteralFields literalFields) {
+		if (!configuration.doColumnarStorage) {
+			return new SequenceFile(fields);
+		}
+		return new ColumnarScheme(fields, getConstants(literalFields));
+	}
+	
+	/**
+	 * Returns the constants of a literal by their position in the stored tuples
+	 * 
+	 * @param literalFields the literal
+	 * @return the constants by position
+	 */
+	@SuppressWarnings("rawtypes")
+	public Map<Integer, Writable> getConstants(LiteralFields literalFields) {
+		Map<Integer, Writable> constants = new HashMap<Integer, Writable>();
+		for (Map.Entry<String, WritableComparable> constant : literalFields.getConstantTerms().entrySet()) {
+			constants.put(literalFields.getFields().getPos(constant.getKey()), constant.getValue());
+		}
+		return constants;
+	}
+	
+	/**
+	 * Estimates the number of records of a predicate having some constants, from the statistics of the columnar storage. 
+	 * Without predicate indexing all the facts and the inferences are searched, so the predicate should be one of the constants.
+	 * 
+	 * @param predicate the predicate, null if predicate indexing is not used
+	 * @param constants the constants by position in the stored tuples
+	 * @return the estimated number of records or null if there are no statistics
+	 */
+	public Long estimateCount(IPredicate predicate, Map<Integer, Writable> constants) {
+		if (!configuration.doColumnarStorage) {
+			return null;
+		}
+		List<String> paths = new ArrayList<String>();
+		if (configuration.doPredicateIndexing) {
+			PredicateData predicateData = (predicate != null) ? getPredicateData(new IRIWritable(predicate)) : null;
+			if (predicateData == null) {
+				return null;
+			}
+			paths.add(getPredicateFactsPath(predicateData.getLocation()));
+			paths.add(getInferencesPath(predicateData));
+		} else {
+			paths.add(getFactsPath());
+			paths.add(getInferencesPath());
+		}
+		try {
+			return configuration.columnarStatistics.estimateCount(configuration.hadoopConfiguration, paths, constants);
+		} catch (IOException e) {
+			logger.error("io exception", e);
+			throw new RuntimeException("io exception", e);
+		}
 	}
 	
 	/**
@@ -173,6 +254,18 @@ public class DistributedFileSystemManager {
 		return getInferencesPath(fields) + resultName + "/" + resultName + flowIdentificator + "/";
 	}
 
+	/**
+	 * Returns the path where to store the inferences of a flow for a {@code PredicateData} location
+	 * 
+	 * @param predicateData the predicate data, null if predicate indexing is not used
+	 * @param resultName the results name
+	 * @param flowIdentificator the flow identificator
+	 * @return path to inferences
+	 */
+	public String getInferencesPath(PredicateData predicateData, String resultName, String flowIdentificator) {
+		return getInferencesPath(predicateData) + resultName + "/" + resultName + flowIdentificator + "/";
+	}
+
 	public String getPredicateInferencesPath(Integer predicateLocation) {
 		return configuration.project + "/" + DistributedFileSystemManager.INFERENCES_FOLDER + "/" + String.valueOf(predicateLocation) + "/";
 	}
@@ -189,6 +282,65 @@ public class DistributedFileSystemManager {
 		}
 	}
 	
+	/**
+	 * Returns the path where the lines of an import which could not be parsed are stored
+	 * 
+	 * @param importName the name of the import
+	 * @return path to the import errors
+	 */
+	public String getImportErrorsPath(String importName) {
+		return configuration.project + "/" + DistributedFileSystemManager.ERRORS_FOLDER + "/" + importName;
+	}
+	
+	/**
+	 * Returns the path of the terms dictionary
+	 * 
+	 * @return path to the dictionary
+	 */
+	public String getDictionaryPath() {
+		return configuration.project + "/" + DistributedFileSystemManager.DICTIONARY_FOLDER + "/";
+	}
+
+	/**
+	 * Returns the path of a generation of the terms dictionary
+	 * 
+	 * @param generation the generation
+	 * @return path to the dictionary generation
+	 */
+	public String getDictionaryPath(int generation) {
+		return getDictionaryPath() + String.valueOf(generation) + "/";
+	}
+
+	/**
+	 * Returns the temporary path where facts are stored before being encoded by the terms dictionary
+	 * 
+	 * @param importName the import name
+	 * @return path to the not encoded facts
+	 */
+	public String getRawImportPath(String importName) {
+		return configuration.project + "/" + DistributedFileSystemManager.TMP_FOLDER + "/" + DistributedFileSystemManager.RAW_FOLDER + "/" + importName;
+	}
+
+	/**
+	 * Returns the temporary path where the decoded inferences are stored before export
+	 * 
+	 * @param resultsName the results name
+	 * @return path to the decoded inferences
+	 */
+	public String getExportTempPath(String resultsName) {
+		return configuration.project + "/" + DistributedFileSystemManager.TMP_FOLDER + "/" + DistributedFileSystemManager.EXPORTS_FOLDER + "/" + resultsName;
+	}
+
+	/**
+	 * Returns the temporary path where the part files of an export are written before they are merged
+	 * 
+	 * @param resultsName the results name
+	 * @return path to the part files
+	 */
+	public String getExportPartsPath(String resultsName) {
+		return configuration.project + "/" + DistributedFileSystemManager.TMP_FOLDER + "/" + DistributedFileSystemManager.EXPORTS_FOLDER + "/" + DistributedFileSystemManager.PARTS_FOLDER + "/" + resultsName;
+	}
+
 	public String getPredicateGroupsTempPath(String importName) {
 		return configuration.project + "/" + DistributedFileSystemManager.TMP_FOLDER + "/" + DistributedFileSystemManager.PREDICATES_FOLDER + "/" + importName;
 	}
@@ -214,76 +366,109 @@ public class DistributedFileSystemManager {
 	}
 
 	public PredicateData getPredicateData(IRIWritable predicate) {
-		for (PredicateData predicateData : predicatesConfig) {
-			if (predicateData.getValue().equals(predicate.getValue())) {
-				return predicateData;
-			}
-		}
-		return null;
+		return configuration.predicateCatalog.getPredicateData(predicate);
 	}
 
 	public void savePredicateConfig() {
-		try {
-			FileSystem fs = FileSystem.get(configuration.hadoopConfiguration);
-			String predicatesConfigFileTemp = getPredicatesConfigFilePath(configuration.project);
-			Path predicatesConfigFileTempPath = new Path(predicatesConfigFileTemp + "_"); 
-			FSDataOutputStream predicatesConfigOutputStream = null;
-			if (fs.exists(predicatesConfigFileTempPath)) {
-				logger.error("path " + predicatesConfigFileTemp + " exists already!");
-				throw new RuntimeException("path " + predicatesConfigFileTemp + " exists already!");
-			}
-			predicatesConfigOutputStream = fs.create(predicatesConfigFileTempPath);
-			for (PredicateData predicateData : predicatesConfig) {
-				predicateData.write(predicatesConfigOutputStream);
-			}
-			predicatesConfigOutputStream.close();
-			fs.delete(new Path(predicatesConfigFileTemp), true);
-			fs.rename(predicatesConfigFileTempPath, new Path(predicatesConfigFileTemp));
-		} catch (IOException e) {
-			logger.error("io exception", e);
-			throw new RuntimeException("io exception", e);
-		}
+		configuration.predicateCatalog.save();
 	}
 
 	public Integer getMaxLocationId() {
-		Integer maxId = new Integer(0);
-		for (PredicateData predicateData : predicatesConfig) {
-			maxId = Math.max(maxId, predicateData.getLocation());
-		}
-		return maxId;
+		return configuration.predicateCatalog.getMaxLocationId();
 	}
 
 	public Integer getMaxId() {
-		Integer maxId = new Integer(0);
-		for (PredicateData predicateData : predicatesConfig) {
-			maxId = Math.max(maxId, predicateData.getId());
-		}
-		return maxId;
+		return configuration.predicateCatalog.getMaxId();
 	}
 
 	public void addPredicates(List<PredicateCount> predicateCounts) {
-		for (PredicateCount predicateCount : predicateCounts) {
-			IRIWritable predicate = predicateCount.getPredicate();
-			Long count = predicateCount.getCount();
-			boolean found = false;
-			for (PredicateData predicateData : predicatesConfig) {
-				if (predicateData.getValue().equals(predicate.getValue())) {
-					predicateData.setCount(predicateData.getCount() + count);
-					found = true;
-					break;
-				}
+		configuration.predicateCatalog.addPredicates(predicateCounts);
+	}
+
+	public void addFacts(List<PredicateCount> predicateCounts) {
+		configuration.predicateCatalog.addFacts(predicateCounts);
+	}
+
+	/**
+	 * Compacts the inferences of all the locations which have more files than {@code Configuration.compactionFilesThreshold}.
+	 * Must not be called during the evaluation of a stratum, the paths of the compacted inferences are not valid 
+	 * anymore for the delta of semi-naive evaluation.
+	 * The predicates of the compacted locations are recorded in the catalog with distinct inferences, 
+	 * the evaluations eliminate the existing results so no inference is a fact.
+	 */
+	public void compactInferences() {
+		String resultName = configuration.resultsName != null ? configuration.resultsName : "inference";
+		if (!configuration.doPredicateIndexing) {
+			compactInferences(null, resultName);
+			return;
+		}
+		Set<Integer> locations = new HashSet<Integer>();
+		boolean compacted = false;
+		for (PredicateData predicateData : getPredicateData()) {
+			if (locations.add(predicateData.getLocation()) && compactInferences(predicateData, resultName)) {
+				configuration.predicateCatalog.setDistinctInferences(predicateData.getLocation());
+				compacted = true;
 			}
-			if (!found) {
-				Integer locationId = new Integer(0);
-				if (count >= BLOCK_MIN_RECORDS) {
-					locationId = getMaxLocationId() + 1;
-				}
-				PredicateData predicateData = new PredicateData(predicate.getValue(), getMaxId() + 1, locationId, count);
-				predicatesConfig.add(predicateData);				
+		}
+		if (compacted) {
+			savePredicateConfig();
+		}
+	}
+	
+	/**
+	 * Merges all the inferences stored for the location of {@code predicateData} into sorted, duplicates free files
+	 * of about the size of a block, if the location has more files than {@code Configuration.compactionFilesThreshold}
+	 * 
+	 * @param predicateData the predicate data of the location, null if predicate indexing is not used
+	 * @param resultName the results name
+	 * @return true if the inferences were compacted
+	 */
+	public boolean compactInferences(PredicateData predicateData, String resultName) {
+		try {
+			FileSystem fs = FileSystem.get(configuration.hadoopConfiguration);
+			Path resultsPath = new Path(getInferencesPath(predicateData) + resultName + "/");
+			if (!fs.exists(resultsPath)) {
+				return false;
+			}
+			ContentSummary contentSummary = fs.getContentSummary(resultsPath);
+			if (contentSummary.getFileCount() < configuration.compactionFilesThreshold) {
+				return false;
+			}
+			FileStatus[] results = fs.listStatus(resultsPath);
+			if (results.length < 2) {
+				return false;
 			}
+			
+			List<Tap> sources = new ArrayList<Tap>();
+			for (FileStatus result : results) {
+				sources.add(new Hfs(getScheme(new Fields(0, 1, 2)), result.getPath().toString()));
+			}
+			long blockSize = configuration.hadoopConfiguration.getLong("dfs.blocksize", DEFAULT_BLOCK_SIZE);
+			int parts = (int) Math.max(1, (contentSummary.getLength() + blockSize - 1) / blockSize);
+			Scheme sinkScheme = getScheme(new Fields(0, 1, 2));
+			sinkScheme.setNumSinkParts(parts);
+			String compactedPath = getInferencesPath(predicateData, resultName, COMPACTED_IDENTIFICATOR + System.currentTimeMillis());
+			Tap sink = new Hfs(sinkScheme, compactedPath, true);
+			
+			Pipe pipe = new Pipe("compaction");
+			pipe = new GroupBy(pipe, new Fields(0, 1, 2)); //eliminate duplicates and sort
+			pipe = new Every(pipe, new Count(), new Fields(0, 1, 2));
+			
+			logger.info("compact " + contentSummary.getFileCount() + " files from " + resultsPath + " into " + parts + " files");
+			Flow flow = new FlowConnector(configuration.flowProperties).connect("compaction", 
+					new MultiSourceTap(sources.toArray(new Tap[0])), sink, pipe);
+			flow.complete();
+			
+			for (FileStatus result : results) {
+				fs.delete(result.getPath(), true);
+			}
+			return true;
+		} catch (IOException e) {
+			logger.error("io exception", e);
+			throw new RuntimeException("io exception", e);
 		}
 	}
-
+	
 	/*
 	public void group(int[] values) {
 		int size = values.length;
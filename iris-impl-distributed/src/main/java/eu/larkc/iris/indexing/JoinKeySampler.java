@@ -0,0 +1,154 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.indexing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.WritableComparable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cascading.scheme.Scheme;
+import cascading.tap.Hfs;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryIterator;
+import eu.larkc.iris.Configuration;
+import eu.larkc.iris.rules.compiler.LiteralFields;
+
+/**
+ * Finds the hot join keys of a literal, the values of the join fields found in so many records that they would overload a reducer.
+ * The records are sampled from the facts and the inferences of the literal's predicate in the indexed storage, 
+ * an equal number of records from the beginning of each file, so the sample is not taken only from the first keys of a sorted file.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+@SuppressWarnings("unchecked")
+public class JoinKeySampler {
+
+	private static final Logger logger = LoggerFactory.getLogger(JoinKeySampler.class);
+	
+	private Configuration configuration;
+	
+	public JoinKeySampler(Configuration configuration) {
+		this.configuration = configuration;
+	}
+	
+	/**
+	 * Returns the keys found in at least {@code Configuration.skewThreshold} of the sampled records of a literal.
+	 * 
+	 * @param literalFields the literal
+	 * @param keyFields the literal's fields to join on
+	 * @return the hot keys, the values in the order of the key fields
+	 */
+	public Set<Tuple> getHotKeys(LiteralFields literalFields, Fields keyFields) {
+		Set<Tuple> hotKeys = new HashSet<Tuple>();
+		if (configuration.skewSampleSize <= 0 || keyFields.size() == 0) {
+			return hotKeys;
+		}
+		DistributedFileSystemManager distributedFileSystemManager = new DistributedFileSystemManager(configuration);
+		Scheme scheme = distributedFileSystemManager.getScheme(literalFields.getFields(), literalFields);
+		Map<String, WritableComparable> constants = literalFields.getConstantTerms();
+		
+		Map<Tuple, Integer> frequencies = new HashMap<Tuple, Integer>();
+		int sampled = 0;
+		try {
+			FileSystem fs = FileSystem.get(configuration.hadoopConfiguration);
+			List<Path> files = new ArrayList<Path>();
+			listFiles(fs, new Path(distributedFileSystemManager.getFactsPath(literalFields)), files);
+			listFiles(fs, new Path(distributedFileSystemManager.getInferencesPath(literalFields)), files);
+			if (files.isEmpty()) {
+				return hotKeys;
+			}
+			int fileSampleSize = Math.max(1, configuration.skewSampleSize / files.size());
+			for (Path file : files) {
+				Tap tap = new Hfs(scheme, file.toString());
+				TupleEntryIterator iterator = tap.openForRead(configuration.jobConf);
+				try {
+					int fileSampled = 0;
+					while (fileSampled < fileSampleSize && iterator.hasNext()) {
+						TupleEntry tupleEntry = iterator.next();
+						if (!matchesConstants(tupleEntry, constants)) {
+							continue;
+						}
+						Tuple key = new Tuple(tupleEntry.selectTuple(keyFields));
+						Integer frequency = frequencies.get(key);
+						frequencies.put(key, (frequency == null) ? 1 : frequency + 1);
+						fileSampled++;
+					}
+					sampled += fileSampled;
+				} finally {
+					iterator.close();
+				}
+			}
+		} catch (IOException e) {
+			logger.error("io exception", e);
+			throw new RuntimeException("io exception", e);
+		}
+		
+		for (Map.Entry<Tuple, Integer> entry : frequencies.entrySet()) {
+			if (entry.getValue() >= configuration.skewThreshold * sampled) {
+				hotKeys.add(entry.getKey());
+			}
+		}
+		logger.info("hot keys of " + literalFields.getId() + " on " + keyFields + " in " + sampled + " sampled records : " + hotKeys);
+		return hotKeys;
+	}
+	
+	/*
+	 * lists the data files under a path, the hidden files (as _SUCCESS or _logs) are skipped
+	 */
+	private void listFiles(FileSystem fs, Path path, List<Path> files) throws IOException {
+		if (!fs.exists(path)) {
+			return;
+		}
+		for (FileStatus fileStatus : fs.listStatus(path)) {
+			String name = fileStatus.getPath().getName();
+			if (name.startsWith("_") || name.startsWith(".")) {
+				continue;
+			}
+			if (fileStatus.isDirectory()) {
+				listFiles(fs, fileStatus.getPath(), files);
+			} else {
+				files.add(fileStatus.getPath());
+			}
+		}
+	}
+	
+	/*
+	 * checks if the record has the constants of the literal
+	 */
+	private boolean matchesConstants(TupleEntry tupleEntry, Map<String, WritableComparable> constants) {
+		for (String fieldName : constants.keySet()) {
+			if (!tupleEntry.get(fieldName).equals(constants.get(fieldName))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
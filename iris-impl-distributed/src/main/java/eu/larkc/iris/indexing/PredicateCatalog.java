@@ -0,0 +1,308 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.indexing;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import eu.larkc.iris.Configuration;
+import eu.larkc.iris.storage.IRIWritable;
+
+/**
+ * The configuration data of all the predicates in a predicate indexing enabled environment.
+ * It is read once from the storage and kept in memory, indexed by the predicate value, and shared by all the
+ * {@code DistributedFileSystemManager} of an evaluation.
+ * Each save writes a new version of the configuration file, which is committed by an atomic rename, 
+ * so the configuration on the storage is never missing or partially written.
+ * The configuration files start with a header if the predicates are written with their layout, 
+ * the files written before have no header and are read without the layout.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class PredicateCatalog {
+
+	private static final Logger logger = LoggerFactory.getLogger(PredicateCatalog.class);
+	
+	private static final String VERSION_SEPARATOR = ".";
+	
+	private static final String TEMP_PREFIX = "_";
+	
+	//not a predicate value, the values are IRIs
+	private static final String LAYOUT_HEADER = "#layout";
+	
+	private Configuration configuration;
+	
+	//the predicates data by predicate value, null until the catalog is loaded
+	private Map<String, PredicateData> predicates = null;
+	
+	private Integer maxId = 0;
+	private Integer maxLocationId = 0;
+	
+	//the version of the configuration file the catalog was loaded from or saved to
+	private long version = 0;
+	
+	public PredicateCatalog(Configuration configuration) {
+		this.configuration = configuration;
+	}
+	
+	/*
+	 * returns the path to a version of the configuration file, version 0 is the not versioned file
+	 */
+	private Path getVersionPath(long aVersion) {
+		String path = configuration.project + "/" + DistributedFileSystemManager.PREDICATES_CONFIG_FILE;
+		return new Path(aVersion == 0 ? path : path + VERSION_SEPARATOR + aVersion);
+	}
+	
+	/*
+	 * returns the version of a configuration file, -1 if the file is not a configuration file
+	 */
+	private long getVersion(Path path) {
+		String name = path.getName();
+		if (name.equals(DistributedFileSystemManager.PREDICATES_CONFIG_FILE)) {
+			return 0;
+		}
+		try {
+			return Long.parseLong(name.substring(DistributedFileSystemManager.PREDICATES_CONFIG_FILE.length() + VERSION_SEPARATOR.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+	
+	/*
+	 * returns all the configuration files
+	 */
+	private FileStatus[] listVersions(FileSystem fs) throws IOException {
+		Path projectPath = new Path(configuration.project);
+		if (!fs.exists(projectPath)) {
+			return new FileStatus[0];
+		}
+		return fs.listStatus(projectPath, new PathFilter() {
+			@Override
+			public boolean accept(Path path) {
+				return path.getName().startsWith(DistributedFileSystemManager.PREDICATES_CONFIG_FILE);
+			}
+		});
+	}
+	
+	/*
+	 * loads the catalog, if not loaded yet
+	 */
+	private void load() {
+		if (predicates != null) {
+			return;
+		}
+		predicates = new LinkedHashMap<String, PredicateData>();
+		maxId = 0;
+		maxLocationId = 0;
+		version = 0;
+		try {
+			FileSystem fs = FileSystem.get(configuration.hadoopConfiguration);
+			long lastVersion = -1;
+			for (FileStatus fileStatus : listVersions(fs)) {
+				lastVersion = Math.max(lastVersion, getVersion(fileStatus.getPath()));
+			}
+			if (lastVersion == -1) {
+				return;
+			}
+			version = lastVersion;
+			FSDataInputStream predicatesConfigInputStream = fs.open(getVersionPath(version));
+			try {
+				boolean withLayout = LAYOUT_HEADER.equals(predicatesConfigInputStream.readUTF());
+				if (!withLayout) {
+					//no header, the first predicate was read
+					predicatesConfigInputStream.seek(0);
+				}
+				while (true) {
+					put(PredicateData.read(predicatesConfigInputStream, withLayout));
+				}
+			} catch (EOFException e) {
+				logger.debug("eof exception no more data");
+			}
+			predicatesConfigInputStream.close();
+			logger.info("loaded " + predicates.size() + " predicates, version " + version);
+		} catch (IOException e) {
+			logger.error("io exception", e);
+			throw new RuntimeException("io exception", e);
+		}
+	}
+	
+	private void put(PredicateData predicateData) {
+		predicates.put(predicateData.getValue(), predicateData);
+		maxId = Math.max(maxId, predicateData.getId());
+		maxLocationId = Math.max(maxLocationId, predicateData.getLocation());
+	}
+	
+	/**
+	 * Drops the data in memory, the catalog is read again from the storage on the next access
+	 */
+	public synchronized void reload() {
+		predicates = null;
+	}
+	
+	/**
+	 * Returns the data of all the predicates
+	 * 
+	 * @return list of {@code PredicateData}
+	 */
+	public synchronized List<PredicateData> getPredicateData() {
+		load();
+		return new ArrayList<PredicateData>(predicates.values());
+	}
+	
+	/**
+	 * Returns the data of a predicate
+	 * 
+	 * @param predicate the predicate
+	 * @return the predicate data or null if the predicate is not in the catalog
+	 */
+	public synchronized PredicateData getPredicateData(IRIWritable predicate) {
+		load();
+		return predicates.get(predicate.getValue());
+	}
+	
+	public synchronized Integer getMaxLocationId() {
+		load();
+		return maxLocationId;
+	}
+
+	public synchronized Integer getMaxId() {
+		load();
+		return maxId;
+	}
+	
+	/**
+	 * @return the version of the configuration file the catalog was loaded from or saved to
+	 */
+	public synchronized long getVersion() {
+		load();
+		return version;
+	}
+	
+	/**
+	 * Adds the counts to the predicates, the new predicates are assigned an id and a location.
+	 * The changes are only in memory until {@link #save()} is called.
+	 * 
+	 * @param predicateCounts the predicates and their counts
+	 */
+	public synchronized void addPredicates(List<PredicateCount> predicateCounts) {
+		addPredicates(predicateCounts, false);
+	}
+	
+	/**
+	 * Adds the counts of imported facts to the predicates, as {@link #addPredicates(List)}. 
+	 * The import writes the facts sorted and free of duplicates, this is recorded for the new predicates. 
+	 * The facts of a predicate imported again can have records in common with the ones imported before.
+	 * 
+	 * @param predicateCounts the predicates and the counts of their imported facts
+	 */
+	public synchronized void addFacts(List<PredicateCount> predicateCounts) {
+		addPredicates(predicateCounts, true);
+	}
+	
+	private void addPredicates(List<PredicateCount> predicateCounts, boolean facts) {
+		load();
+		for (PredicateCount predicateCount : predicateCounts) {
+			IRIWritable predicate = predicateCount.getPredicate();
+			Long count = predicateCount.getCount();
+			PredicateData predicateData = predicates.get(predicate.getValue());
+			if (predicateData != null) {
+				predicateData.setCount(predicateData.getCount() + count);
+				if (facts) {
+					predicateData.setDistinctFacts(false);
+				}
+				//the new inferences can duplicate the existing ones, the new facts can be among the existing inferences
+				predicateData.setDistinctInferences(false);
+			} else {
+				Integer locationId = 0;
+				if (count >= DistributedFileSystemManager.BLOCK_MIN_RECORDS) {
+					locationId = maxLocationId + 1;
+				}
+				predicateData = new PredicateData(predicate.getValue(), maxId + 1, locationId, count);
+				//a predicate added with its inferences has no facts, one added with its facts has no inferences
+				predicateData.setDistinctFacts(true);
+				predicateData.setDistinctInferences(facts);
+				put(predicateData);
+			}
+		}
+	}
+	
+	/**
+	 * Records that the inferences of the predicates stored in a location are free of duplicates and none of them is a fact, 
+	 * as the compaction of the location writes them. The changes are only in memory until {@link #save()} is called.
+	 * 
+	 * @param location the location
+	 */
+	public synchronized void setDistinctInferences(Integer location) {
+		load();
+		for (PredicateData predicateData : predicates.values()) {
+			if (predicateData.getLocation().equals(location)) {
+				predicateData.setDistinctInferences(true);
+			}
+		}
+	}
+	
+	/**
+	 * Saves the catalog as a new version of the configuration file.
+	 * Fails if another version was committed in the meantime.
+	 */
+	public synchronized void save() {
+		load();
+		try {
+			FileSystem fs = FileSystem.get(configuration.hadoopConfiguration);
+			long newVersion = version + 1;
+			Path versionPath = getVersionPath(newVersion);
+			Path tempPath = new Path(versionPath.getParent(), TEMP_PREFIX + versionPath.getName());
+			FSDataOutputStream predicatesConfigOutputStream = fs.create(tempPath, true);
+			predicatesConfigOutputStream.writeUTF(LAYOUT_HEADER);
+			for (PredicateData predicateData : predicates.values()) {
+				predicateData.write(predicatesConfigOutputStream);
+			}
+			predicatesConfigOutputStream.close();
+			//the rename of the local file system replaces an existing file
+			if (fs.exists(versionPath) || !fs.rename(tempPath, versionPath)) {
+				fs.delete(tempPath, false);
+				logger.error("version " + newVersion + " of the predicates configuration was already committed!");
+				throw new RuntimeException("version " + newVersion + " of the predicates configuration was already committed!");
+			}
+			version = newVersion;
+			
+			//the older versions are not needed anymore
+			for (FileStatus fileStatus : listVersions(fs)) {
+				long aVersion = getVersion(fileStatus.getPath());
+				if (aVersion >= 0 && aVersion < version) {
+					fs.delete(fileStatus.getPath(), false);
+				}
+			}
+		} catch (IOException e) {
+			logger.error("io exception", e);
+			throw new RuntimeException("io exception", e);
+		}
+	}
+}
@@ -48,6 +48,24 @@ public class PredicateData {
 	 * The number of facts for this predicate
 	 */
 	private Long count;
+	
+	/**
+	 * The layout of the facts: true if they are sorted and free of duplicates, as the import writes the facts of a new predicate.
+	 * False if they are not known to be, e.g. the facts of several imports can have common records
+	 */
+	private boolean distinctFacts = false;
+	
+	/**
+	 * The layout of the inferences: true if they are free of duplicates and none of them is a fact, as the compaction writes them, 
+	 * or if there are none. False if they are not known to be, e.g. the inferences of several evaluations can have common records
+	 */
+	private boolean distinctInferences = false;
+	
+	/*
+	 * The bits of the layout as written in the predicates configuration, the first one is compatible with the boolean written for the facts only
+	 */
+	private static final int DISTINCT_FACTS = 1;
+	private static final int DISTINCT_INFERENCES = 2;
 
 	public PredicateData(String value, Integer id, Integer location, Long count) {
 		this.value = value;
@@ -67,18 +85,26 @@ public class PredicateData {
 		fsDataOutputStream.writeInt(getId());
 		fsDataOutputStream.writeInt(getLocation());
 		fsDataOutputStream.writeLong(getCount());
+		fsDataOutputStream.writeByte((isDistinctFacts() ? DISTINCT_FACTS : 0) | (isDistinctInferences() ? DISTINCT_INFERENCES : 0));
 	}
 	
 	/**
 	 * Reads a predicate data from an input stream
 	 * 
 	 * @param fsDataInputStream the input stream
+	 * @param withLayout true if the predicate data was written with its layout, false for the data written before the layout was recorded
 	 * @return the predicate data
 	 * @throws IOException
 	 */
-	public static PredicateData read(FSDataInputStream fsDataInputStream) throws IOException {
-		return new PredicateData(fsDataInputStream.readUTF(), fsDataInputStream.readInt(), 
+	public static PredicateData read(FSDataInputStream fsDataInputStream, boolean withLayout) throws IOException {
+		PredicateData predicateData = new PredicateData(fsDataInputStream.readUTF(), fsDataInputStream.readInt(), 
 				fsDataInputStream.readInt(), fsDataInputStream.readLong());
+		if (withLayout) {
+			byte layout = fsDataInputStream.readByte();
+			predicateData.setDistinctFacts((layout & DISTINCT_FACTS) != 0);
+			predicateData.setDistinctInferences((layout & DISTINCT_INFERENCES) != 0);
+		}
+		return predicateData;
 	}
 	
 	/* (non-Javadoc)
@@ -86,7 +112,7 @@ public class PredicateData {
 	 */
 	@Override
 	public String toString() {
-		return "predicateData[" + value + "," + id + "," + location + "," + count + "]";
+		return "predicateData[" + value + "," + id + "," + location + "," + count + "," + distinctFacts + "," + distinctInferences + "]";
 	}
 
 	/**
@@ -139,6 +165,34 @@ public class PredicateData {
 	public void setCount(Long count) {
 		this.count = count;
 	}
+
+	/**
+	 * @return true if the facts are sorted and free of duplicates
+	 */
+	public boolean isDistinctFacts() {
+		return distinctFacts;
+	}
+
+	/**
+	 * @param distinctFacts true if the facts are sorted and free of duplicates
+	 */
+	public void setDistinctFacts(boolean distinctFacts) {
+		this.distinctFacts = distinctFacts;
+	}
+
+	/**
+	 * @return true if the inferences are free of duplicates and none of them is a fact
+	 */
+	public boolean isDistinctInferences() {
+		return distinctInferences;
+	}
+
+	/**
+	 * @param distinctInferences true if the inferences are free of duplicates and none of them is a fact
+	 */
+	public void setDistinctInferences(boolean distinctInferences) {
+		this.distinctInferences = distinctInferences;
+	}
 	
 	
 }
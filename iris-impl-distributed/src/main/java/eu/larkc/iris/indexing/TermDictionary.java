@@ -0,0 +1,351 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.indexing;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cascading.flow.Flow;
+import cascading.flow.FlowConnector;
+import cascading.operation.Identity;
+import cascading.pipe.CoGroup;
+import cascading.pipe.Each;
+import cascading.pipe.Every;
+import cascading.pipe.GroupBy;
+import cascading.pipe.Pipe;
+import cascading.pipe.assembly.CountBy;
+import cascading.pipe.assembly.Rename;
+import cascading.pipe.cogroup.InnerJoin;
+import cascading.pipe.cogroup.LeftJoin;
+import cascading.tap.Hfs;
+import cascading.tap.MultiSourceTap;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntryCollector;
+import cascading.tuple.TupleEntryIterator;
+import eu.larkc.iris.Configuration;
+import eu.larkc.iris.storage.LongTermWritable;
+import eu.larkc.iris.storage.WritableComparable;
+
+/**
+ * Dictionary encoding the terms of the facts into {@code LongTermWritable} ids.
+ * The rules are evaluated on the encoded facts, the terms are decoded only at export.
+ * 
+ * The dictionary is stored in generations, one folder per generation, each containing (term, id) pairs.
+ * A new generation is created for the new terms of each import. 
+ * The terms looked up on the client side (the constants of the rules) are found in the generations loaded in memory, 
+ * each generation is read only once. The new terms looked up are kept pending and written together in a new generation 
+ * by {@link #flush()}.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class TermDictionary {
+
+	private static final Logger logger = LoggerFactory.getLogger(TermDictionary.class);
+	
+	public static final String TERM_FIELD = "term";
+	public static final String ID_FIELD = "id";
+	
+	private static final String FACT_FIELD_PREFIX = "F";
+	private static final String DICTIONARY_TERM_FIELD_PREFIX = "T";
+	private static final String DICTIONARY_ID_FIELD_PREFIX = "I";
+	private static final String TERMS_COUNT_FIELD = "C";
+	
+	//predicate, subject, object
+	private static final int FACT_SIZE = 3;
+	
+	private static final int GENERATION_SHIFT = 48;
+	
+	private Configuration configuration;
+	
+	//the terms of the generations loaded on the client side, for looking up the constants of the rules
+	private Map<WritableComparable, LongTermWritable> ids = new HashMap<WritableComparable, LongTermWritable>();
+	private Map<LongTermWritable, WritableComparable> terms = new HashMap<LongTermWritable, WritableComparable>();
+	private Set<Integer> loadedGenerations = new HashSet<Integer>();
+	
+	//the new terms looked up on the client side, not yet written, all in the same new generation
+	private Map<WritableComparable, LongTermWritable> pendingIds = new LinkedHashMap<WritableComparable, LongTermWritable>();
+	private int pendingGeneration = 0;
+	
+	public TermDictionary(Configuration configuration) {
+		this.configuration = configuration;
+	}
+	
+	/**
+	 * Adds to the dictionary the terms of the facts stored at {@code factsPath} which do not have an id yet.
+	 * 
+	 * @param factsPath the path of the facts
+	 */
+	public void build(String factsPath) {
+		//the pending terms take the next generation
+		flush();
+		DistributedFileSystemManager distributedFileSystemManager = new DistributedFileSystemManager(configuration);
+		List<Integer> generations = getGenerations();
+		int generation = generations.isEmpty() ? 1 : generations.get(generations.size() - 1) + 1;
+		
+		Map<String, Tap> sources = new HashMap<String, Tap>();
+		sources.put("terms", new Hfs(new Fields(0, 1, 2), factsPath));
+		
+		Pipe termsPipe = new Each(new Pipe("terms"), new DictionaryTermsFunction(new Fields(TERM_FIELD)));
+		if (configuration.partialAggregationCapacity > 0) {
+			//a term is in many facts, the duplicates are removed on the map side so only the distinct terms are grouped
+			termsPipe = new CountBy(termsPipe, new Fields(TERM_FIELD), new Fields(TERMS_COUNT_FIELD), configuration.partialAggregationCapacity);
+			termsPipe = new Each(termsPipe, new Fields(TERM_FIELD), new Identity());
+		}
+		Pipe dictionaryPipe = null;
+		if (generations.isEmpty()) {
+			dictionaryPipe = new GroupBy(termsPipe, new Fields(TERM_FIELD));
+		} else {
+			//keep the terms already in the dictionary in the group, so they do not get a new id
+			//the terms are on the left side, it is streamed, the right side of a group is accumulated (and spilled) in memory
+			sources.put("dictionary", getDictionaryTap());
+			Pipe existingPipe = new Rename(new Pipe("dictionary"), Fields.ALL, new Fields(DICTIONARY_TERM_FIELD_PREFIX, DICTIONARY_ID_FIELD_PREFIX));
+			dictionaryPipe = new CoGroup(termsPipe, new Fields(TERM_FIELD), existingPipe, new Fields(DICTIONARY_TERM_FIELD_PREFIX), new LeftJoin());
+		}
+		Fields dictionaryFields = new Fields(TERM_FIELD, ID_FIELD);
+		dictionaryPipe = new Every(dictionaryPipe, new DictionaryIdAggregator(dictionaryFields, generation), Fields.RESULTS);
+		
+		Tap sink = new Hfs(dictionaryFields, distributedFileSystemManager.getDictionaryPath(generation), true);
+		
+		Flow flow = new FlowConnector(configuration.flowProperties).connect("dictionary" + generation, sources, sink, dictionaryPipe);
+		flow.complete();
+		logger.info("dictionary generation " + generation + " created");
+	}
+	
+	/**
+	 * Replaces the terms of the facts stored at {@code factsPath} by their ids and stores the result at {@code outputPath}
+	 * 
+	 * @param factsPath the path of the facts to encode
+	 * @param outputPath the path of the encoded facts
+	 */
+	public void encode(String factsPath, String outputPath) {
+		translate(new Hfs(new Fields(0, 1, 2), factsPath), outputPath, true);
+	}
+
+	/**
+	 * Replaces the ids of the facts read from {@code source} by their terms and stores the result at {@code outputPath}
+	 * 
+	 * @param source the encoded facts
+	 * @param outputPath the path of the decoded facts
+	 */
+	public void decode(Tap source, String outputPath) {
+		//the facts can contain the ids of the pending terms (the constants of the rules)
+		flush();
+		translate(source, outputPath, false);
+	}
+	
+	/*
+	 * Joins each position of the facts with the dictionary to replace the term by the id or the reverse
+	 */
+	private void translate(Tap source, String outputPath, boolean encode) {
+		Fields factFields = new Fields();
+		for (int i = 0; i < FACT_SIZE; i++) {
+			factFields = factFields.append(new Fields(FACT_FIELD_PREFIX + i));
+		}
+		
+		Map<String, Tap> sources = new HashMap<String, Tap>();
+		sources.put("facts", source);
+		
+		Pipe pipe = new Rename(new Pipe("facts"), Fields.ALL, factFields);
+		for (int i = 0; i < FACT_SIZE; i++) {
+			String dictionaryName = "dictionary" + i;
+			sources.put(dictionaryName, getDictionaryTap());
+			
+			Fields termField = new Fields(DICTIONARY_TERM_FIELD_PREFIX + i);
+			Fields idField = new Fields(DICTIONARY_ID_FIELD_PREFIX + i);
+			Pipe dictionaryPipe = new Rename(new Pipe(dictionaryName), Fields.ALL, termField.append(idField));
+			
+			//the facts are on the left side, it is streamed, the right side of a group is accumulated (and spilled) in memory, 
+			//it has only the one dictionary entry of the term
+			pipe = new CoGroup(pipe, new Fields(FACT_FIELD_PREFIX + i), dictionaryPipe, encode ? termField : idField, new InnerJoin());
+			
+			Fields selectFields = new Fields();
+			for (int j = 0; j < FACT_SIZE; j++) {
+				if (j == i) {
+					selectFields = selectFields.append(encode ? idField : termField);
+				} else {
+					selectFields = selectFields.append(new Fields(FACT_FIELD_PREFIX + j));
+				}
+			}
+			pipe = new Each(pipe, selectFields, new Identity(factFields));
+		}
+		
+		Tap sink = new Hfs(new Fields(0, 1, 2), outputPath, true);
+		Flow flow = new FlowConnector(configuration.flowProperties).connect((encode ? "encode" : "decode"), sources, sink, pipe);
+		flow.complete();
+	}
+	
+	/**
+	 * Returns the id of a term, used on the client side to encode the constants of the rules.
+	 * If the term is not yet in the dictionary it gets an id in a new generation, written by {@link #flush()}.
+	 * 
+	 * @param term the term
+	 * @return the id of the term
+	 */
+	public synchronized LongTermWritable getId(WritableComparable term) {
+		LongTermWritable id = lookupId(term);
+		if (id == null) {
+			//the generations written since the last lookup
+			for (Integer generation : getGenerations()) {
+				load(generation);
+			}
+			id = lookupId(term);
+		}
+		if (id == null) {
+			if (pendingIds.isEmpty()) {
+				List<Integer> generations = getGenerations();
+				pendingGeneration = generations.isEmpty() ? 1 : generations.get(generations.size() - 1) + 1;
+			}
+			id = new LongTermWritable((((long) pendingGeneration) << GENERATION_SHIFT) | pendingIds.size());
+			pendingIds.put(term, id);
+			terms.put(id, term);
+		}
+		return id;
+	}
+	
+	/**
+	 * Returns the term of an id, used on the client side to decode the few ids needed by the driver (e.g. predicates)
+	 * 
+	 * @param id the id
+	 * @return the term or null if the id is not in the dictionary
+	 */
+	public synchronized WritableComparable getTerm(LongTermWritable id) {
+		if (!terms.containsKey(id)) {
+			//the generation is part of the id, so only one generation has to be loaded
+			load((int) (id.getId() >>> GENERATION_SHIFT));
+		}
+		return terms.get(id);
+	}
+	
+	/**
+	 * Writes the pending terms, the new terms looked up since the last flush, in one new generation. 
+	 * Called after the rules are compiled and after an import.
+	 */
+	public synchronized void flush() {
+		if (pendingIds.isEmpty()) {
+			return;
+		}
+		DistributedFileSystemManager distributedFileSystemManager = new DistributedFileSystemManager(configuration);
+		try {
+			Tap tap = new Hfs(new Fields(TERM_FIELD, ID_FIELD), distributedFileSystemManager.getDictionaryPath(pendingGeneration), true);
+			TupleEntryCollector collector = tap.openForWrite(configuration.jobConf);
+			for (Map.Entry<WritableComparable, LongTermWritable> entry : pendingIds.entrySet()) {
+				collector.add(new Tuple(entry.getKey(), entry.getValue()));
+			}
+			collector.close();
+		} catch (IOException e) {
+			logger.error("io exception", e);
+			throw new RuntimeException("io exception", e);
+		}
+		logger.info("dictionary generation " + pendingGeneration + " created with " + pendingIds.size() + " terms");
+		ids.putAll(pendingIds);
+		loadedGenerations.add(pendingGeneration);
+		pendingIds.clear();
+	}
+	
+	private LongTermWritable lookupId(WritableComparable term) {
+		LongTermWritable id = ids.get(term);
+		return (id != null) ? id : pendingIds.get(term);
+	}
+	
+	/*
+	 * Reads a generation of the dictionary in memory, if not already loaded
+	 */
+	private void load(int generation) {
+		if (loadedGenerations.contains(generation)) {
+			return;
+		}
+		DistributedFileSystemManager distributedFileSystemManager = new DistributedFileSystemManager(configuration);
+		try {
+			Tap tap = new Hfs(new Fields(0, 1), distributedFileSystemManager.getDictionaryPath(generation));
+			if (!tap.pathExists(configuration.jobConf)) {
+				return;
+			}
+			TupleEntryIterator iterator = tap.openForRead(configuration.jobConf);
+			try {
+				while (iterator.hasNext()) {
+					Tuple tuple = iterator.next().getTuple();
+					WritableComparable term = (WritableComparable) tuple.getObject(0);
+					LongTermWritable id = (LongTermWritable) tuple.getObject(1);
+					ids.put(term, id);
+					terms.put(id, term);
+				}
+			} finally {
+				iterator.close();
+			}
+		} catch (IOException e) {
+			logger.error("io exception", e);
+			throw new RuntimeException("io exception", e);
+		}
+		loadedGenerations.add(generation);
+	}
+	
+	/*
+	 * Returns a tap reading all the generations of the dictionary
+	 */
+	private Tap getDictionaryTap() {
+		DistributedFileSystemManager distributedFileSystemManager = new DistributedFileSystemManager(configuration);
+		List<Tap> taps = new ArrayList<Tap>();
+		for (Integer generation : getGenerations()) {
+			taps.add(new Hfs(new Fields(0, 1), distributedFileSystemManager.getDictionaryPath(generation)));
+		}
+		if (taps.isEmpty()) {
+			logger.error("the terms dictionary is empty, the facts were not imported with term encoding");
+			throw new RuntimeException("the terms dictionary is empty, the facts were not imported with term encoding");
+		}
+		return new MultiSourceTap(taps.toArray(new Tap[0]));
+	}
+	
+	/*
+	 * Returns the existing generations of the dictionary, sorted
+	 */
+	private List<Integer> getGenerations() {
+		DistributedFileSystemManager distributedFileSystemManager = new DistributedFileSystemManager(configuration);
+		List<Integer> generations = new ArrayList<Integer>();
+		try {
+			FileSystem fs = FileSystem.get(configuration.hadoopConfiguration);
+			Path dictionaryPath = new Path(distributedFileSystemManager.getDictionaryPath());
+			if (!fs.exists(dictionaryPath)) {
+				return generations;
+			}
+			for (FileStatus fileStatus : fs.listStatus(dictionaryPath)) {
+				if (fileStatus.isDirectory()) {
+					generations.add(Integer.valueOf(fileStatus.getPath().getName()));
+				}
+			}
+		} catch (IOException e) {
+			logger.error("io exception", e);
+			throw new RuntimeException("io exception", e);
+		}
+		Collections.sort(generations);
+		return generations;
+	}
+}
@@ -84,7 +84,7 @@ public class CascadingCompiledRule implements IDistributedCompiledRule {
 			throws EvaluationException {
 
 		throw new NotImplementedException(
-				"Semi-naive evaluation is not supported.");
+				"Semi-naive evaluation is done through evaluate(EvaluationContext) when Configuration.doSemiNaiveEvaluation is set.");
 	}
 
 	/*
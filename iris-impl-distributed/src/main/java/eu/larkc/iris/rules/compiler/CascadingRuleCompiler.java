@@ -15,24 +15,43 @@
  */
 package eu.larkc.iris.rules.compiler;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
 
+import org.apache.commons.lang.NotImplementedException;
 import org.deri.iris.EvaluationException;
 import org.deri.iris.api.basics.ILiteral;
 import org.deri.iris.api.basics.IPredicate;
 import org.deri.iris.api.basics.IRule;
+import org.deri.iris.api.builtins.IBuiltinAtom;
+import org.deri.iris.api.terms.ITerm;
+import org.deri.iris.api.terms.IVariable;
 
+import cascading.operation.Identity;
 import cascading.operation.Insert;
-import cascading.operation.aggregator.Count;
-import cascading.pipe.CoGroup;
+import cascading.operation.state.Counter;
 import cascading.pipe.Each;
-import cascading.pipe.Every;
-import cascading.pipe.GroupBy;
+import cascading.pipe.Group;
 import cascading.pipe.Pipe;
-import cascading.pipe.cogroup.InnerJoin;
+import cascading.scheme.Scheme;
 import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import eu.larkc.iris.evaluation.BuiltinEvaluator;
+import eu.larkc.iris.evaluation.BuiltinFilter;
+import eu.larkc.iris.evaluation.BuiltinFunction;
+import eu.larkc.iris.evaluation.EvaluationCounters;
+import eu.larkc.iris.indexing.DistributedFileSystemManager;
+import eu.larkc.iris.indexing.JoinKeySampler;
+import eu.larkc.iris.indexing.PredicateData;
 import eu.larkc.iris.storage.IRIWritable;
+import eu.larkc.iris.storage.WritableFactory;
 
 /**
  * 
@@ -50,6 +69,11 @@ public class CascadingRuleCompiler implements IDistributedRuleCompiler {
 	 * Field name used for head predicate
 	 */
 	private static final String HEAD_PREDICATE_FIELD = "HPF";
+	
+	/*
+	 * Prefix of the field names used for the variables computed by built-ins
+	 */
+	private static final String BUILTIN_FIELD_PREFIX = "BV";
 
 	private RuleStreams ruleStreams = null;
 	private eu.larkc.iris.rules.compiler.PipeFields headFields = null;
@@ -65,6 +89,23 @@ public class CascadingRuleCompiler implements IDistributedRuleCompiler {
 		this.mConfiguration = configuration;
 	}
 
+	/* (non-Javadoc)
+	 * @see eu.larkc.iris.rules.compiler.IDistributedRuleCompiler#setEvaluatedRules(java.util.List)
+	 */
+	@Override
+	public void setEvaluatedRules(List<IRule> rules) {
+		derivingRules = new HashMap<IPredicate, Integer>();
+		derivesAnyPredicate = false;
+		for (IRule rule : rules) {
+			IPredicate predicate = rule.getHead().get(0).getAtom().getPredicate();
+			if (predicate.getPredicateSymbol().equals(LiteralFields.RIF_HAS_VALUE)) {
+				derivesAnyPredicate = true;
+			}
+			Integer count = derivingRules.get(predicate);
+			derivingRules.put(predicate, (count == null) ? 1 : count + 1);
+		}
+	}
+	
 	/**
 	 * Compiles an individual rule to a Cascading Flow. TODO (fisf,
 	 * optimization): Maybe this should only be compiled to an pipe assembly so
@@ -91,15 +132,49 @@ public class CascadingRuleCompiler implements IDistributedRuleCompiler {
 		}
 		
 		headFields = ruleStreams.getHeadStream();
+		groupReducers = new IdentityHashMap<Pipe, Integer>();
+		compiledRule = rule;
 		
 		eu.larkc.iris.rules.compiler.PipeFields bodyPipe = compileBody(ruleStreams);
 		
 		FlowAssembly compiledCascadingRuleFlowAssembly = attachTaps(ruleStreams, bodyPipe);
+		compiledCascadingRuleFlowAssembly.setRule(rule);
 
+		if (mConfiguration.doSemiNaiveEvaluation) {
+			compileDeltaVariants(rule, compiledCascadingRuleFlowAssembly);
+		}
+		
 		return new CascadingCompiledRule(rule, compiledCascadingRuleFlowAssembly,
 				mConfiguration);
 	}
 
+	/**
+	 * Compiles one variant of the rule for each body literal, used for semi-naive evaluation.
+	 * In a variant the body literal reads only the delta (the inferences of the previous iterations) and all the 
+	 * other literals the full relations. The union of the variants gives all the new inferences of the rule.
+	 * 
+	 * @param rule the rule
+	 * @param flowAssembly the flow assembly of the rule, to which the variants are added
+	 */
+	protected void compileDeltaVariants(IRule rule, FlowAssembly flowAssembly) {
+		for (int i = 0; i < rule.getBody().size(); i++) {
+			ILiteral literal = rule.getBody().get(i);
+			if (!literal.isPositive() || literal.getAtom().isBuiltin()) {
+				//the negated predicates are completely evaluated in a lower stratum and the built-ins have no data, there is no delta for them
+				continue;
+			}
+			RuleStreams deltaRuleStreams = new RuleStreams(mConfiguration, mainPipe, rule, i);
+			headFields = deltaRuleStreams.getHeadStream();
+			
+			eu.larkc.iris.rules.compiler.PipeFields resultFields = selectHeadFields(deltaRuleStreams, compileBody(deltaRuleStreams));
+			
+			//rename the fields to the ones of the full evaluation, to be able to merge the variants
+			Pipe deltaPipe = new Each(resultFields.getPipe(), resultFields.getFields(), new Identity(flowAssembly.getFields()));
+			deltaPipe = new Each(deltaPipe, new Counter(EvaluationCounters.CANDIDATES));
+			flowAssembly.addDeltaVariant(deltaRuleStreams, deltaPipe);
+		}
+	}
+
 	/**
 	 * In this function we have to actually compile the body. For that purpose
 	 * we iterate over all the literals in the body and chain pipes accordingly.
@@ -120,9 +195,34 @@ public class CascadingRuleCompiler implements IDistributedRuleCompiler {
 		eu.larkc.iris.rules.compiler.PipeFields result;
 
 		result = setupJoins(ruleStreams);
+		
+		result = setupAntiJoins(ruleStreams, result);
 
 		return result;
 	}
+	
+	/**
+	 * Negation as failure: the join of the positive literals is anti joined with each negated literal.
+	 * The negated literals read the full relations, they must be completely evaluated before (be in a lower stratum).
+	 * A small negated literal is loaded in memory and anti joined on the map side, otherwise the anti join is a CoGroup.
+	 * A negated literal without common variables is always anti joined on the map side, only its first record is read.
+	 * 
+	 * @param ruleStreams the streams of the rule
+	 * @param lhsJoin the join of the positive literals
+	 * @return the stream with the records which have no match in any of the negated literals
+	 */
+	protected eu.larkc.iris.rules.compiler.PipeFields setupAntiJoins(RuleStreams ruleStreams, eu.larkc.iris.rules.compiler.PipeFields lhsJoin) {
+		for (LiteralFields negatedStream : ruleStreams.getNegatedStreams()) {
+			eu.larkc.iris.rules.compiler.FieldPairs commonFields = lhsJoin.getCommonFields(negatedStream);
+			//no common variables (e.g. not p(a)), every record is removed if the negated literal has any record
+			if (canBeReplicated(negatedStream) || commonFields.isEmpty()) {
+				lhsJoin = lhsJoin.replicatedAntiJoin(negatedStream, getReplicatedScheme(negatedStream), getReplicatedPaths(negatedStream));
+			} else {
+				lhsJoin = lhsJoin.antiJoin(negatedStream);
+			}
+		}
+		return lhsJoin;
+	}
 		
 	private eu.larkc.iris.rules.compiler.PipeFields eliminateOldInferencedData(eu.larkc.iris.rules.compiler.PipeFields lhsJoin) {
 		if (lhsJoin == null) {
@@ -134,10 +234,24 @@ public class CascadingRuleCompiler implements IDistributedRuleCompiler {
 			return null;
 		}
 
+		if (!hasExistingResults()) {
+			//the head literal is not read
+			((LiteralFields) headFields).setSource(false);
+			return lhsJoin;
+		}
+		if (canReplicateExistingResults()) {
+			return lhsJoin.replicatedEliminateExistingResults((LiteralFields) headFields, getReplicatedScheme((LiteralFields) headFields), getReplicatedPaths((LiteralFields) headFields));
+		}
 		return lhsJoin.eliminateExistingResults(headFields);
 	}
 
 	public eu.larkc.iris.rules.compiler.PipeFields buildJoin(boolean leftJoinApplied, eu.larkc.iris.rules.compiler.PipeFields lhsJoin, ListIterator<eu.larkc.iris.rules.compiler.LiteralFields> fieldsIterator) {
+		//the built-ins and the elimination of the existing results only filter or extend the records, they keep them distinct
+		boolean distinct = isDistinct(lhsJoin);
+		
+		//the built-ins are evaluated as soon as their variables are bound, to reduce the data to join
+		lhsJoin = applyBuiltins(lhsJoin);
+		
 		eu.larkc.iris.rules.compiler.PipeFields leftJoin = null;
 		if (!leftJoinApplied) {
 			leftJoin = eliminateOldInferencedData(lhsJoin);
@@ -151,33 +265,293 @@ public class CascadingRuleCompiler implements IDistributedRuleCompiler {
 			}
 			return lhsJoin;
 		}
-		eu.larkc.iris.rules.compiler.PipeFields stream = fieldsIterator.next();
 		lhsJoin = (leftJoin == null) ? lhsJoin : leftJoin;
+		LiteralFields next = nextStream(lhsJoin, fieldsIterator);
+		distinct &= isDistinct(next);
+		eu.larkc.iris.rules.compiler.PipeFields stream = applyBuiltins(next);
 		
 		eu.larkc.iris.rules.compiler.PipeFields join = null;
 		if (lhsJoin.canBeInnerJoined(stream)) {
-			join = lhsJoin.innerJoin(stream);
+			join = innerJoin(lhsJoin, stream);
 		} else {
-			//this is not effective, joining without common fields, but it has to be done for some unoptimized rules
-			lhsJoin.add(new Field("LCF", new Integer(1)));
-			Pipe lhsPipe = new Each(lhsJoin.getPipe(), new Insert(new Fields("LCF"), new Integer(1)), lhsJoin.getFields());
-			
-			stream.add(new Field("RCF", new Integer(1)));
-			Pipe rhsPipe = new Each(stream.getPipe(), new Insert(new Fields("RCF"), new Integer(1)), stream.getFields());
-
-			Pipe joinPipe = new CoGroup(lhsPipe, new Fields("LCF"), rhsPipe, new Fields("RCF"), new InnerJoin());
-			
-			join = new PipeFields(joinPipe, lhsJoin, stream, lhsJoin.getCount()*stream.getCount());
+			//joining without common fields, the streams are disconnected in the rule
+			join = crossProduct(lhsJoin, stream);
 		}
 		
 		join = join.getUniqueVariableFields();
 		
-		join = join.eliminateDuplicates();
+		//the join keeps all the variables, a join of two streams free of duplicates has no duplicates
+		if (distinct) {
+			distinctStreams.put(join, true);
+		} else {
+			join = join.eliminateDuplicates(mConfiguration.partialAggregationCapacity);
+		}
 		
 		return buildJoin(leftJoinApplied, join, fieldsIterator);
 		
 	}
 	
+	/*
+	 * Returns the streams in the same order, except the ones with no common variables with any other stream, which are moved at the end. 
+	 * These can only be cross joined, doing it last keeps the other joins small.
+	 */
+	private List<LiteralFields> deferDisconnectedStreams(List<LiteralFields> streams) {
+		List<LiteralFields> ordered = new ArrayList<LiteralFields>();
+		List<LiteralFields> disconnected = new ArrayList<LiteralFields>();
+		for (LiteralFields stream : streams) {
+			boolean connected = false;
+			for (LiteralFields other : streams) {
+				connected |= (other != stream) && stream.canBeInnerJoined(other);
+			}
+			if (connected) {
+				ordered.add(stream);
+			} else {
+				disconnected.add(stream);
+			}
+		}
+		ordered.addAll(disconnected);
+		return ordered;
+	}
+	
+	/*
+	 * Returns the next stream to join, the first one left having common variables with the join so far. 
+	 * The streams without common variables are deferred (swapped with the returned stream), 
+	 * so for unoptimized rules the cross products are done last, on the smallest joins.
+	 */
+	private LiteralFields nextStream(eu.larkc.iris.rules.compiler.PipeFields lhsJoin, ListIterator<LiteralFields> fieldsIterator) {
+		LiteralFields next = fieldsIterator.next();
+		if (lhsJoin.canBeInnerJoined(next)) {
+			return next;
+		}
+		int nextIndex = fieldsIterator.previousIndex();
+		LiteralFields joinable = null;
+		while (joinable == null && fieldsIterator.hasNext()) {
+			LiteralFields candidate = fieldsIterator.next();
+			if (lhsJoin.canBeInnerJoined(candidate)) {
+				//the deferred stream takes the place of the joinable one
+				fieldsIterator.set(next);
+				joinable = candidate;
+			}
+		}
+		while (fieldsIterator.previousIndex() > nextIndex) {
+			fieldsIterator.previous();
+		}
+		return (joinable == null) ? next : joinable;
+	}
+	
+	/*
+	 * Joins two streams without common fields, on the map side if one of them is a small enough literal, 
+	 * otherwise spread over a grid of reducers
+	 */
+	private eu.larkc.iris.rules.compiler.PipeFields crossProduct(eu.larkc.iris.rules.compiler.PipeFields lhsJoin, eu.larkc.iris.rules.compiler.PipeFields stream) {
+		if (canBeReplicated(stream) || canBeReplicated(lhsJoin)) {
+			return innerJoin(lhsJoin, stream);
+		}
+		eu.larkc.iris.rules.compiler.PipeFields join = lhsJoin.crossProduct(stream, mConfiguration.crossProductCells);
+		//there are no more cells than reducers to group them
+		setReducers(join.getPipe(), join.getCount(), mConfiguration.crossProductCells);
+		return join;
+	}
+	
+	/*
+	 * Joins two streams, on the map side if one of them is a small enough literal, with a CoGroup otherwise
+	 */
+	private eu.larkc.iris.rules.compiler.PipeFields innerJoin(eu.larkc.iris.rules.compiler.PipeFields lhsJoin, eu.larkc.iris.rules.compiler.PipeFields stream) {
+		boolean replicateLhs = canBeReplicated(lhsJoin);
+		boolean replicateStream = canBeReplicated(stream);
+		if (replicateStream && (!replicateLhs || stream.getCount() <= lhsJoin.getCount())) {
+			return lhsJoin.replicatedJoin((LiteralFields) stream, getReplicatedScheme((LiteralFields) stream), getReplicatedPaths((LiteralFields) stream));
+		} else if (replicateLhs) {
+			return stream.replicatedJoin((LiteralFields) lhsJoin, getReplicatedScheme((LiteralFields) lhsJoin), getReplicatedPaths((LiteralFields) lhsJoin));
+		}
+		
+		Set<Tuple> hotKeys = getHotKeys(lhsJoin, stream);
+		eu.larkc.iris.rules.compiler.PipeFields join = null;
+		if (hotKeys.isEmpty()) {
+			join = lhsJoin.innerJoin(stream);
+		} else {
+			join = lhsJoin.skewedInnerJoin(stream, hotKeys, mConfiguration.skewSplits);
+		}
+		setReducers(join.getPipe(), sumCounts(lhsJoin.getCount(), stream.getCount()), mConfiguration.maxReducers);
+		return join;
+	}
+	
+	/*
+	 * Returns the join keys of two streams found in so many records that they would overload a reducer. 
+	 * The keys are sampled from the streams which are literals read from the indexed storage, 
+	 * the literal reading the delta has no fixed source so it is not sampled.
+	 */
+	private Set<Tuple> getHotKeys(eu.larkc.iris.rules.compiler.PipeFields lhsJoin, eu.larkc.iris.rules.compiler.PipeFields stream) {
+		Set<Tuple> hotKeys = new HashSet<Tuple>();
+		if (!mConfiguration.doPredicateIndexing || mConfiguration.skewSampleSize <= 0) {
+			return hotKeys;
+		}
+		JoinKeySampler joinKeySampler = new JoinKeySampler(mConfiguration);
+		eu.larkc.iris.rules.compiler.FieldPairs commonFields = lhsJoin.getCommonFields(stream);
+		if (canBeSampled(lhsJoin)) {
+			hotKeys.addAll(joinKeySampler.getHotKeys((LiteralFields) lhsJoin, commonFields.getLeftFields().getFields()));
+		}
+		if (canBeSampled(stream)) {
+			hotKeys.addAll(joinKeySampler.getHotKeys((LiteralFields) stream, commonFields.getRightFields().getFields()));
+		}
+		return hotKeys;
+	}
+	
+	private boolean canBeSampled(eu.larkc.iris.rules.compiler.PipeFields stream) {
+		return (stream instanceof LiteralFields) && stream != deltaStream && ((LiteralFields) stream).getPredicate() != null;
+	}
+	
+	/*
+	 * Chooses the reducers of the group a stream ends with by the number of records to be grouped, 
+	 * one reducer for each Configuration.reducerRecords records but not more than the limit. 
+	 * If the count is not known the reducers of the job configuration are used.
+	 */
+	private void setReducers(Pipe pipe, Long records, int limit) {
+		if (mConfiguration.reducerRecords <= 0 || records == Long.MAX_VALUE) {
+			return;
+		}
+		//the fields added for grouping are removed after the group
+		Pipe group = pipe;
+		while (!(group instanceof Group) && group.getPrevious().length == 1) {
+			group = group.getPrevious()[0];
+		}
+		long reducers = records / mConfiguration.reducerRecords + 1;
+		groupReducers.put(group, (int) Math.max(1, Math.min(Math.min(limit, mConfiguration.maxReducers), reducers)));
+	}
+	
+	/*
+	 * The sum of two counts, Long.MAX_VALUE (unknown) if one of them is not known
+	 */
+	private Long sumCounts(Long count1, Long count2) {
+		if (count1 == Long.MAX_VALUE || count2 == Long.MAX_VALUE) {
+			return Long.MAX_VALUE;
+		}
+		return count1 + count2;
+	}
+	
+	/*
+	 * A stream can be joined (or anti joined) on the map side if it is a literal read from the indexed storage, 
+	 * which has less records than the threshold. The literal reading the delta is never replicated, it's source is not fixed.
+	 * The predicates derived by the evaluated rules are not replicated, the flow assembly is reused over the iterations 
+	 * and their size can grow over the threshold.
+	 * The schema predicates closed by the schema closure are always replicated, the closure was already held in memory.
+	 */
+	private boolean canBeReplicated(eu.larkc.iris.rules.compiler.PipeFields stream) {
+		if (!mConfiguration.doPredicateIndexing) {
+			return false;
+		}
+		if (!(stream instanceof LiteralFields) || stream == deltaStream) {
+			return false;
+		}
+		LiteralFields literalFields = (LiteralFields) stream;
+		if (literalFields.getPredicate() == null || isDerived(literalFields.getPredicate())) {
+			return false;
+		}
+		if (mConfiguration.closedSchemaPredicates.contains(literalFields.getPredicate().getPredicateSymbol())) {
+			return true;
+		}
+		return mConfiguration.replicatedJoinThreshold > 0 && literalFields.getCount() >= 0 
+				&& literalFields.getCount() <= mConfiguration.replicatedJoinThreshold;
+	}
+	
+	/*
+	 * A stream is free of duplicates if it is a join of streams free of duplicates, or a literal read from the indexed storage 
+	 * with distinct facts and distinct inferences, see PredicateData. The predicates derived by the evaluated rules 
+	 * get new inferences during the evaluation, their layout is not known.
+	 */
+	private boolean isDistinct(eu.larkc.iris.rules.compiler.PipeFields stream) {
+		if (distinctStreams.containsKey(stream)) {
+			return true;
+		}
+		if (!mConfiguration.doPredicateIndexing || !(stream instanceof LiteralFields) || stream == deltaStream) {
+			return false;
+		}
+		IPredicate predicate = ((LiteralFields) stream).getPredicate();
+		if (predicate == null || isDerived(predicate)) {
+			return false;
+		}
+		PredicateData predicateData = new DistributedFileSystemManager(mConfiguration).getPredicateData(new IRIWritable(predicate));
+		return predicateData != null && predicateData.isDistinctFacts() && predicateData.isDistinctInferences();
+	}
+	
+	/*
+	 * true if the predicate can be derived by the evaluated rules
+	 */
+	private boolean isDerived(IPredicate predicate) {
+		return derivesAnyPredicate || derivingRules.containsKey(predicate);
+	}
+	
+	/*
+	 * The existing results of the head are loaded in memory only if they do not grow during the evaluation of the rule, 
+	 * see isHeadFixed
+	 */
+	private boolean canReplicateExistingResults() {
+		if (mConfiguration.replicatedJoinThreshold <= 0 || !isHeadFixed()) {
+			return false;
+		}
+		LiteralFields literalFields = (LiteralFields) headFields;
+		return literalFields.getCount() >= 0 && literalFields.getCount() <= mConfiguration.replicatedJoinThreshold;
+	}
+	
+	/*
+	 * A head with no records in the indexed storage, which does not grow during the evaluation of the rule, has no existing results to eliminate
+	 */
+	private boolean hasExistingResults() {
+		if (!isHeadFixed()) {
+			return true;
+		}
+		IPredicate predicate = ((LiteralFields) headFields).getPredicate();
+		PredicateData predicateData = new DistributedFileSystemManager(mConfiguration).getPredicateData(new IRIWritable(predicate));
+		return predicateData != null && predicateData.getCount() > 0;
+	}
+	
+	/*
+	 * The head does not grow during the evaluation of the rule if no other evaluated rule derives it and the rule is not recursive 
+	 * (no body literal is derived by the evaluated rules), so the rule is evaluated only once. In a recursive stratum the head grows with every iteration.
+	 */
+	private boolean isHeadFixed() {
+		if (!mConfiguration.doPredicateIndexing || !(headFields instanceof LiteralFields)) {
+			return false;
+		}
+		IPredicate predicate = ((LiteralFields) headFields).getPredicate();
+		if (predicate == null || derivesAnyPredicate) {
+			return false;
+		}
+		Integer rules = derivingRules.get(predicate);
+		if (rules != null && rules > 1) {
+			return false;
+		}
+		for (ILiteral literal : compiledRule.getBody()) {
+			if (literal.isPositive() && !literal.getAtom().isBuiltin() && isDerived(literal.getAtom().getPredicate())) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/*
+	 * Returns the paths of the facts and of the inferences of a literal
+	 */
+	private String[] getReplicatedPaths(LiteralFields literalFields) {
+		DistributedFileSystemManager distributedFileSystemManager = new DistributedFileSystemManager(mConfiguration);
+		if (!mConfiguration.doPredicateIndexing) {
+			return new String[] {distributedFileSystemManager.getFactsPath(), distributedFileSystemManager.getInferencesPath()};
+		}
+		if (distributedFileSystemManager.getPredicateData(new IRIWritable(literalFields.getPredicate())) == null) {
+			//the predicate has no records
+			return new String[0];
+		}
+		return new String[] {distributedFileSystemManager.getFactsPath(literalFields), distributedFileSystemManager.getInferencesPath(literalFields)};
+	}
+	
+	/*
+	 * Returns the scheme the facts and the inferences of a literal are stored with
+	 */
+	private Scheme getReplicatedScheme(LiteralFields literalFields) {
+		DistributedFileSystemManager distributedFileSystemManager = new DistributedFileSystemManager(mConfiguration);
+		return distributedFileSystemManager.getScheme(literalFields.getFields(), literalFields);
+	}
+	
 	/**
 	 * Optimization: When joining two streams via a CoGroup Pipe, attempt to
 	 * place the largest of the streams in the left most argument to the
@@ -209,8 +583,94 @@ public class CascadingRuleCompiler implements IDistributedRuleCompiler {
 				"Cannot setup joins with no subgoals.");			
 		}
 
-		ListIterator<eu.larkc.iris.rules.compiler.LiteralFields> listIteratorFields = ruleStreams.getBodyStreamIterator();
-		return buildJoin(false, listIteratorFields.next(), listIteratorFields);
+		deltaStream = ruleStreams.getDeltaStream();
+		pendingBuiltins = new ArrayList<ILiteral>(ruleStreams.getBuiltinLiterals());
+		distinctStreams = new IdentityHashMap<eu.larkc.iris.rules.compiler.PipeFields, Boolean>();
+		
+		//the join order may be changed while joining, so the rule's streams are not iterated directly
+		ListIterator<eu.larkc.iris.rules.compiler.LiteralFields> listIteratorFields = deferDisconnectedStreams(ruleStreams.getPositiveStreams()).listIterator();
+		eu.larkc.iris.rules.compiler.PipeFields join = buildJoin(false, listIteratorFields.next(), listIteratorFields);
+		
+		if (!pendingBuiltins.isEmpty()) {
+			throw new IllegalArgumentException("Built-ins with unbound variables: " + pendingBuiltins);
+		}
+		return join;
+	}
+	
+	/**
+	 * Evaluates on a stream the built-ins which have their variables bound by the stream. A built-in with all the variables bound 
+	 * filters the stream, a built-in with only one unbound variable adds to the stream a field with the value computed for the variable. 
+	 * The other built-ins are left for a later join, where more variables are bound.
+	 * A literal joined on the map side is loaded from the storage, so no built-in is evaluated on it, the built-ins are evaluated after the join.
+	 * 
+	 * @param stream the stream
+	 * @return the stream with the built-ins applied
+	 */
+	protected eu.larkc.iris.rules.compiler.PipeFields applyBuiltins(eu.larkc.iris.rules.compiler.PipeFields stream) {
+		if (pendingBuiltins.isEmpty() || canBeReplicated(stream)) {
+			return stream;
+		}
+		if (mConfiguration.doTermEncoding) {
+			throw new NotImplementedException("Built-ins are not supported with term encoding");
+		}
+		
+		//a computed variable can bind the variables of another built-in
+		boolean applied = true;
+		while (applied) {
+			applied = false;
+			for (Iterator<ILiteral> iterator = pendingBuiltins.iterator(); iterator.hasNext();) {
+				ILiteral literal = iterator.next();
+				IBuiltinAtom builtin = (IBuiltinAtom) literal.getAtom();
+				
+				List<IVariable> boundVariables = new ArrayList<IVariable>();
+				List<IVariable> unboundVariables = new ArrayList<IVariable>();
+				eu.larkc.iris.rules.compiler.Fields argumentFields = new eu.larkc.iris.rules.compiler.Fields();
+				for (ITerm term : builtin.getTuple()) {
+					if (!(term instanceof IVariable) || boundVariables.contains(term) || unboundVariables.contains(term)) {
+						continue;
+					}
+					Field field = getVariableField(stream, (IVariable) term);
+					if (field == null) {
+						unboundVariables.add((IVariable) term);
+					} else {
+						boundVariables.add((IVariable) term);
+						argumentFields.add(field);
+					}
+				}
+				Fields arguments = argumentFields.isEmpty() ? Fields.ALL : argumentFields.getFields();
+				
+				Pipe pipe = null;
+				eu.larkc.iris.rules.compiler.Fields streamFields = new eu.larkc.iris.rules.compiler.Fields(stream);
+				if (unboundVariables.isEmpty()) {
+					pipe = new Each(stream.getPipe(), arguments, new BuiltinFilter(new BuiltinEvaluator(builtin, boundVariables), literal.isPositive()));
+				} else if (unboundVariables.size() == 1 && literal.isPositive() && builtin.maxUnknownVariables() > 0) {
+					Field field = new Field(BUILTIN_FIELD_PREFIX + unboundVariables.get(0).getValue(), unboundVariables.get(0));
+					pipe = new Each(stream.getPipe(), arguments, new BuiltinFunction(new BuiltinEvaluator(builtin, boundVariables), new Fields(field.getName())), Fields.ALL);
+					streamFields.add(field);
+				} else {
+					continue;
+				}
+				
+				Long count = stream.getCount();
+				stream = new eu.larkc.iris.rules.compiler.PipeFields(pipe, streamFields);
+				stream.count = count;
+				iterator.remove();
+				applied = true;
+			}
+		}
+		return stream;
+	}
+	
+	/*
+	 * Returns the field of a stream for a variable, null if the variable is not bound by the stream
+	 */
+	private Field getVariableField(eu.larkc.iris.rules.compiler.PipeFields stream, IVariable variable) {
+		for (Field field : stream.getVariableFields()) {
+			if (field.getSource().equals(variable)) {
+				return field;
+			}
+		}
+		return null;
 	}
 
 	/**
@@ -224,28 +684,45 @@ public class CascadingRuleCompiler implements IDistributedRuleCompiler {
 	 * @return
 	 */
 	protected FlowAssembly attachTaps(RuleStreams ruleStreams, eu.larkc.iris.rules.compiler.PipeFields pipeFields) {
+		eu.larkc.iris.rules.compiler.PipeFields resultStream = selectHeadFields(ruleStreams, pipeFields);
+		
+		Fields resultFields = resultStream.getFields();
+		
+		//count the tuples before duplicates elimination, for the evaluation metrics
+		Pipe rulePipe = new Each(resultStream.getPipe(), new Counter(EvaluationCounters.CANDIDATES));
+		rulePipe = new PipeFields(rulePipe, resultStream)
+				.eliminateDuplicates(mConfiguration.partialAggregationCapacity).getPipe();
+
+		FlowAssembly flowAssembly = new FlowAssembly(mConfiguration, ruleStreams, resultFields, rulePipe);//, countPipe);
+		//the delta variants are compiled later, their groups are added to the same map
+		flowAssembly.setGroupReducers(groupReducers);
+		return flowAssembly;
+	}
+	
+	/**
+	 * Selects from the body stream the fields needed to build the head literal
+	 * 
+	 * @param ruleStreams the streams of the rule
+	 * @param pipeFields the body stream
+	 * @return the stream with the head fields
+	 */
+	protected eu.larkc.iris.rules.compiler.PipeFields selectHeadFields(RuleStreams ruleStreams, eu.larkc.iris.rules.compiler.PipeFields pipeFields) {
 		LiteralFields headStream = ruleStreams.getHeadStream();
 		
 		//it could be that the head literal has several times the same variable p(x,x)
 		//we have to insert in the result stream another field for the second variable x, to be able to select then both x
-		pipeFields = pipeFields.generateHeadVariablesInStream(headFields);
+		pipeFields = pipeFields.generateHeadVariablesInStream(headStream);
 		
-		eu.larkc.iris.rules.compiler.Fields inBodyHeadFields = headFields.getCommonFields(false, pipeFields).getRightFields();
+		eu.larkc.iris.rules.compiler.Fields inBodyHeadFields = headStream.getCommonFields(false, pipeFields).getRightFields();
 		
 		Pipe rulePipe = pipeFields.getPipe();
 		IPredicate predicate = headStream.getPredicate();
 		if (predicate != null) {
 			inBodyHeadFields.add(0, new Field(HEAD_PREDICATE_FIELD, predicate));
-			rulePipe = new Each( rulePipe, new Insert( new Fields(HEAD_PREDICATE_FIELD), new IRIWritable(predicate)), inBodyHeadFields.getFields());
+			rulePipe = new Each( rulePipe, new Insert( new Fields(HEAD_PREDICATE_FIELD), WritableFactory.fromPredicate(mConfiguration, predicate)), inBodyHeadFields.getFields());
 		}
 		
-		Fields resultFields = inBodyHeadFields.getFields();
-		
-		rulePipe = new GroupBy(rulePipe, resultFields); //eliminate duplicates
-		rulePipe = new Every(rulePipe, new Count(), resultFields);
-
-		FlowAssembly flowAssembly = new FlowAssembly(mConfiguration, ruleStreams, resultFields, rulePipe);//, countPipe);
-		return flowAssembly;
+		return new eu.larkc.iris.rules.compiler.PipeFields(rulePipe, inBodyHeadFields);
 	}
 	
 	/**
@@ -255,4 +732,24 @@ public class CascadingRuleCompiler implements IDistributedRuleCompiler {
 	
 	private Pipe mainPipe = null;
 	
+	//the literal reading the delta in the rule variant being compiled
+	private LiteralFields deltaStream = null;
+	
+	//the built-ins of the rule variant being compiled, not yet evaluated
+	private List<ILiteral> pendingBuiltins = new ArrayList<ILiteral>();
+	
+	//the joins of the rule variant being compiled which are free of duplicates, see isDistinct
+	private Map<eu.larkc.iris.rules.compiler.PipeFields, Boolean> distinctStreams = new IdentityHashMap<eu.larkc.iris.rules.compiler.PipeFields, Boolean>();
+	
+	//the predicates derived by the rules evaluated together with the compiled rules and the number of rules deriving them, 
+	//see setEvaluatedRules
+	private Map<IPredicate, Integer> derivingRules = new HashMap<IPredicate, Integer>();
+	private boolean derivesAnyPredicate = false;
+	
+	//the rule being compiled
+	private IRule compiledRule = null;
+	
+	//the number of reducers chosen for the groups of the rule being compiled
+	private Map<Pipe, Integer> groupReducers = new IdentityHashMap<Pipe, Integer>();
+	
 }
\ No newline at end of file
@@ -18,30 +18,48 @@ package eu.larkc.iris.rules.compiler;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.mapred.JobConf;
 import org.deri.iris.api.basics.IPredicate;
+import org.deri.iris.api.basics.IRule;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import cascading.flow.Flow;
 import cascading.flow.FlowConnector;
+import cascading.flow.FlowStep;
+import cascading.operation.aggregator.Count;
+import cascading.operation.state.Counter;
+import cascading.pipe.Each;
+import cascading.pipe.Every;
+import cascading.pipe.GroupBy;
 import cascading.pipe.Pipe;
 import cascading.scheme.Scheme;
-import cascading.scheme.SequenceFile;
 import cascading.tap.Hfs;
 import cascading.tap.MultiSourceTap;
 import cascading.tap.Tap;
 import cascading.tuple.Fields;
 import cascading.tuple.TupleEntryIterator;
+import cascading.tuple.hadoop.TupleSerialization;
 import eu.larkc.iris.Configuration;
 import eu.larkc.iris.Utils;
+import eu.larkc.iris.evaluation.DeltaTracker;
 import eu.larkc.iris.evaluation.EvaluationContext;
+import eu.larkc.iris.evaluation.EvaluationCounters;
 import eu.larkc.iris.indexing.DistributedFileSystemManager;
 import eu.larkc.iris.indexing.PredicateCount;
+import eu.larkc.iris.indexing.PredicateData;
+import eu.larkc.iris.storage.ColumnarBlock;
+import eu.larkc.iris.storage.IRIWritable;
 
 /**
  * The pipes for a rule are evaluated using this flow assembly.
@@ -63,8 +81,43 @@ public class FlowAssembly {
 	private Fields fields;
 	private Pipe pipe;
 	
+	//the variants of the rule used for semi-naive evaluation, one per body literal
+	private List<RuleStreams> deltaRuleStreams = new ArrayList<RuleStreams>();
+	private List<Pipe> deltaPipes = new ArrayList<Pipe>();
+	
+	//the tail of the last evaluated flow
+	private Pipe tail = null;
+	
 	private Flow flow = null;
 	private String path = null;
+	private String resultName = null;
+	private String flowIdentificator = null;
+	
+	//the version of the delta tracker before the current evaluation
+	private long versionBefore = DeltaTracker.NO_VERSION;
+	
+	//the rule evaluated, for the evaluation metrics
+	private IRule rule = null;
+	
+	//the time spent to plan the current flow, in milliseconds
+	private long planningTime = 0;
+	
+	//the pipe assemblies and the source taps are built once and reused by the evaluations of all the iterations,
+	//the source taps are built again only when the input layout (the paths read) changes.
+	//the flow itself is planned again for each evaluation : a cascading (1.2) flow is started only once
+	//and its steps are bound to the sink path, which is new for each iteration
+	//(the iteration is part of the flow identificator)
+	private Map<Pipe, Pipe> tails = new IdentityHashMap<Pipe, Pipe>();
+	private Map<Pipe, Pipe> predicateCountPipes = new IdentityHashMap<Pipe, Pipe>();
+	private Map<String, Pipe> deltaGroupPipes = new HashMap<String, Pipe>();
+	private Map<RuleStreams, List<String>> sourceLayouts = new IdentityHashMap<RuleStreams, List<String>>();
+	private Map<RuleStreams, Map<String, Tap>> sourceTaps = new IdentityHashMap<RuleStreams, Map<String, Tap>>();
+	
+	//the inferences folders known to exist, a folder is not deleted once created so it is checked only until it exists
+	private Set<String> existingInferencesPaths = new HashSet<String>();
+	
+	//the reducers chosen for the groups of the pipe assembly
+	private Map<Pipe, Integer> groupReducers = new IdentityHashMap<Pipe, Integer>();
 	
 	public FlowAssembly (Configuration configuration, RuleStreams ruleStreams, Fields fields, Pipe pipe) {
 		this.mConfiguration = configuration;
@@ -73,11 +126,51 @@ public class FlowAssembly {
 		this.pipe = pipe;
 	}
 	
+	/**
+	 * Adds a variant of the rule where one of the body literals reads only the delta.
+	 * The pipe of the variant must produce the same fields as this flow assembly.
+	 * 
+	 * @param ruleStreams the streams of the variant
+	 * @param deltaPipe the pipe of the variant, before duplicates elimination
+	 */
+	public void addDeltaVariant(RuleStreams ruleStreams, Pipe deltaPipe) {
+		deltaRuleStreams.add(ruleStreams);
+		deltaPipes.add(deltaPipe);
+	}
+	
+	/**
+	 * Sets the number of reducers chosen for the groups (joins) of the pipe assembly, 
+	 * the groups not in the map use the reducers of the job configuration
+	 * 
+	 * @param groupReducers the reducers by group
+	 */
+	public void setGroupReducers(Map<Pipe, Integer> groupReducers) {
+		this.groupReducers = groupReducers;
+	}
+	
+	/**
+	 * Sets the rule evaluated by this flow assembly, reported in the evaluation metrics
+	 * 
+	 * @param rule the rule
+	 */
+	public void setRule(IRule rule) {
+		this.rule = rule;
+	}
+	
+	/**
+	 * Returns the fields produced by this flow assembly
+	 * 
+	 * @return the result fields
+	 */
+	public Fields getFields() {
+		return fields;
+	}
+	
 	/*
 	 * creates a pipe for predicate counts
 	 */
-	private void setupPredicateCounts(Pipe pipe, Map<String, Tap> sinks, List<Pipe> pipes) throws IOException {
-		String predicateGroupsTempPath = distributedFileSystemManager.getPredicateGroupsTempPath(mConfiguration.resultsName);
+	private void setupPredicateCounts(String predicateGroupsName, Pipe pipe, Map<String, Tap> sinks, List<Pipe> pipes) throws IOException {
+		String predicateGroupsTempPath = distributedFileSystemManager.getPredicateGroupsTempPath(predicateGroupsName);
 
 		FileSystem fs = FileSystem.get(mConfiguration.hadoopConfiguration);
 		if (fs.exists(new Path(predicateGroupsTempPath))) {
@@ -85,22 +178,31 @@ public class FlowAssembly {
 		}
 
 		Tap predicatesSink = new Hfs(new Fields(0, 1), predicateGroupsTempPath);
-		Pipe predicatesPipe = Utils.buildPredicateCountPipe(pipe);
+		Pipe predicatesPipe = predicateCountPipes.get(pipe);
+		if (predicatesPipe == null) {
+			predicatesPipe = Utils.buildPredicateCountPipe(mConfiguration, pipe);
+			predicateCountPipes.put(pipe, predicatesPipe);
+		}
 		
 		sinks.put("predicatesPipe", predicatesSink);
 		pipes.add(predicatesPipe);
 	}
 	
 	/*
-	 * creates and processes a flow identified by {@code flowIdentificator}
+	 * creates a flow identified by {@code flowIdentificator}
 	 * results are stored at {@code output} under the result named {@code resultName}
 	 */
-	private boolean processFlow(String resultName, String flowIdentificator, String output) throws IOException {
-		boolean hasNewInferences = false;
+	private Flow connectFlow(String resultName, String flowIdentificator, String output, Map<String, Tap> sources, Pipe pipe) throws IOException {
 		String flowName = resultName + flowIdentificator;
-		Map<String, Tap> sources = prepareSourceTaps();
+		//count the inferences, so the results are not opened to check if there are new inferences
+		tail = tails.get(pipe);
+		if (tail == null) {
+			tail = new Each(pipe, new Counter(EvaluationCounters.INFERENCES));
+			tails.put(pipe, tail);
+		}
+		pipe = tail;
 		
-		SequenceFile sinkScheme = new SequenceFile(fields);
+		Scheme sinkScheme = distributedFileSystemManager.getScheme(fields);
 		//sinkScheme.setNumSinkParts(1); //FIXME
 		Tap headSink = new Hfs(sinkScheme, output, true );
 
@@ -111,58 +213,52 @@ public class FlowAssembly {
 		if (mConfiguration.doPredicateIndexing) {
 			//calculate the count of the result and write it in the configuration
 			//if the predicate is a variable then we have to split also the result and put it in the right location
-			setupPredicateCounts(pipe, sinks, pipes);
+			setupPredicateCounts(flowName, pipe, sinks, pipes);
 		}
 		
-		flow = new FlowConnector(mConfiguration.flowProperties).connect(flowName, sources, sinks, pipes.toArray(new Pipe[0]));
+		Flow flow = new FlowConnector(mConfiguration.flowProperties).connect(flowName, sources, sinks, pipes.toArray(new Pipe[0]));
 		if(flow != null) {
 			//flow.writeDOT("flow.dot");
+			setStepReducers(flow);
 		}
-		flow.complete();
-		
-		try {
-			TupleEntryIterator iterator = flow.openSink(pipe.getName());
-			if(iterator.hasNext()) {
-				hasNewInferences = true;
+		return flow;
+	}
+	
+	/*
+	 * sets the reducers of the steps grouping on a group with chosen reducers
+	 */
+	private void setStepReducers(Flow flow) {
+		for (FlowStep flowStep : flow.getSteps()) {
+			Integer reducers = groupReducers.get(flowStep.group);
+			if (reducers != null) {
+				logger.info(reducers + " reducers for " + flowStep.getStepName());
+				flowStep.getProperties().put("mapred.reduce.tasks", reducers.toString());
 			}
-			iterator.close();
-		} catch (IOException e) {
-			logger.error("io exception", e);
-			throw new RuntimeException("io exception", e);
 		}
+	}
+	
+	/*
+	 * processes the results of the completed flow identified by {@code flowIdentificator}
+	 * results are stored at {@code output} under the result named {@code resultName}
+	 */
+	private boolean processInferences(String resultName, String flowIdentificator, String output) throws IOException {
+		Scheme sinkScheme = distributedFileSystemManager.getScheme(fields);
+		
+		long inferencesCount = flow.getFlowStats().getCounterValue(EvaluationCounters.INFERENCES);
+		logger.info("new inferences for " + resultName + flowIdentificator + " : " + inferencesCount);
+		boolean hasNewInferences = inferencesCount > 0;
 		if (!hasNewInferences) {
 			deleteResults(new Path(path));
 		} else {
 			//merge part files FIXME
-			FileSystem fs = FileSystem.get(mConfiguration.hadoopConfiguration);
-			
-			//delete empty results (could be from reducers running on no data)
-			int index = 0;
-			while (true) {
-				String value = String.valueOf(index);
-				String file = path + "/" + "part-" + "00000".substring(0, 5 - value.length()) + value;
-				Path filePath = new Path(file);
-				if (fs.exists(filePath)) {
-					Tap source = new Hfs(new Fields(0, 1, 2), file);
-					TupleEntryIterator tei = source.openForRead(mConfiguration.jobConf);
-					boolean noData = !tei.hasNext();
-					tei.close();
-					if (noData) {
-						logger.info("delete empty result : " + file);
-						fs.delete(filePath, false);	
-					}
-				} else {
-					break;
-				}
-				index++;
-			}
+			deleteEmptyParts(new Path(path));
 		}
 
 		if (hasNewInferences && mConfiguration.doPredicateIndexing) {
 			FileSystem fs = FileSystem.get(mConfiguration.hadoopConfiguration);
 			
 			//update counts in configuration
-			List<PredicateCount> predicateCounts = Utils.readPredicateCounts(flow, "predicatesPipe");
+			List<PredicateCount> predicateCounts = Utils.readPredicateCounts(mConfiguration, flow, "predicatesPipe");
 			
 			distributedFileSystemManager.addPredicates(predicateCounts);
 			
@@ -172,39 +268,150 @@ public class FlowAssembly {
 				Utils.splitStreamPerPredicates(mConfiguration, distributedFileSystemManager, source, predicateCounts, resultName, flowIdentificator);
 				
 				fs.delete(new Path(output), true);
+				
+				if (mConfiguration.doSemiNaiveEvaluation) {
+					for (PredicateCount predicateCount : predicateCounts) {
+						Integer location = distributedFileSystemManager.getPredicateData(predicateCount.getPredicate()).getLocation();
+						mConfiguration.deltaTracker.register(location, distributedFileSystemManager.getPredicateInferencesPath(location, resultName, flowIdentificator));
+					}
+				}
+			} else if (mConfiguration.doSemiNaiveEvaluation) {
+				Integer location = distributedFileSystemManager.getPredicateData(new IRIWritable(ruleStreams.getHeadStream().getPredicate())).getLocation();
+				mConfiguration.deltaTracker.register(location, output);
 			}
 			
 			distributedFileSystemManager.savePredicateConfig();
-			String predicateGroupsTempPath = distributedFileSystemManager.getPredicateGroupsTempPath(mConfiguration.resultsName);
+			String predicateGroupsTempPath = distributedFileSystemManager.getPredicateGroupsTempPath(resultName + flowIdentificator);
 			fs.delete(new Path(predicateGroupsTempPath), true);
+		} else if (hasNewInferences && mConfiguration.doSemiNaiveEvaluation) {
+			mConfiguration.deltaTracker.register(null, output);
 		}
 				
 		return hasNewInferences;
 	}
 	
-	/**
-	 * Evaluates this flow assembly
-	 * 
-	 * @param evaluationContext the evaluation context, stratum, iteration, rule number
-	 * @return true if new inferences were stored, false otherwise
+	/*
+	 * creates the flow evaluating this flow assembly, without running it, null if there is nothing to evaluate
 	 */
-	public boolean evaluate(EvaluationContext evaluationContext) {
-		this.distributedFileSystemManager = new DistributedFileSystemManager(mConfiguration);
+	private Flow createFlow(EvaluationContext evaluationContext) {
+		long start = System.currentTimeMillis();
+		if (distributedFileSystemManager == null) {
+			distributedFileSystemManager = new DistributedFileSystemManager(mConfiguration);
+		}
 
-		String flowIdentificator = "_" + evaluationContext.getStratumNumber() + "_" + evaluationContext.getIterationNumber() + "_" + evaluationContext.getRuleNumber();
-		String resultName = mConfiguration.resultsName != null ? mConfiguration.resultsName : "inference";
+		flowIdentificator = "_" + evaluationContext.getStratumNumber() + "_" + evaluationContext.getIterationNumber() + "_" + evaluationContext.getRuleNumber();
+		resultName = mConfiguration.resultsName != null ? mConfiguration.resultsName : "inference";
 		if (ruleStreams.getHeadStream().getPredicate() != null || !mConfiguration.doPredicateIndexing) {
 			path = distributedFileSystemManager.getInferencesPath(ruleStreams.getHeadStream(), resultName, flowIdentificator);
 		} else {
 			path = distributedFileSystemManager.getTempInferencesPath(resultName, flowIdentificator);
 		}
 		
+		//the version is taken before the evaluation, so the inferences of this evaluation are part of the next delta
+		versionBefore = mConfiguration.deltaTracker.getVersion();
 		try {
-			return processFlow(resultName, flowIdentificator, path);
+			if (!mConfiguration.doSemiNaiveEvaluation || evaluationContext.getDeltaVersion() == DeltaTracker.NO_VERSION) {
+				//the first evaluation of a rule is a naive one
+				flow = connectFlow(resultName, flowIdentificator, path, prepareSourceTaps(ruleStreams), pipe);
+			} else {
+				flow = connectDeltaFlow(resultName, flowIdentificator, path, evaluationContext.getDeltaVersion());
+			}
 		} catch (IOException e) {
 			logger.error("io exception creating flow", e);
 			throw new RuntimeException("io exception creating flow", e);
 		}
+		planningTime = System.currentTimeMillis() - start;
+		return flow;
+	}
+	
+	/*
+	 * processes the results of the flow created by createFlow, once the flow was completed
+	 */
+	private boolean processResults(EvaluationContext evaluationContext) {
+		boolean hasNewInferences = false;
+		if (flow != null) {
+			try {
+				mConfiguration.evaluationMetrics.record(evaluationContext, (rule != null) ? rule.toString() : null, flow.getName(), 
+						planningTime, flow.getFlowStats(), FileSystem.get(mConfiguration.hadoopConfiguration));
+				hasNewInferences = processInferences(resultName, flowIdentificator, path);
+			} catch (IOException e) {
+				logger.error("io exception processing results", e);
+				throw new RuntimeException("io exception processing results", e);
+			}
+		}
+		if (mConfiguration.doSemiNaiveEvaluation) {
+			evaluationContext.setDeltaVersion(versionBefore);
+		}
+		return hasNewInferences;
+	}
+	
+	/**
+	 * Evaluates this flow assembly
+	 * 
+	 * @param evaluationContext the evaluation context, stratum, iteration, rule number
+	 * @return true if new inferences were stored, false otherwise
+	 */
+	public boolean evaluate(EvaluationContext evaluationContext) {
+		//the planning and the processing of the results update the state shared by the rules evaluated concurrently, 
+		//only the flows run at the same time
+		Flow flow = null;
+		synchronized (mConfiguration) {
+			flow = createFlow(evaluationContext);
+		}
+		if (flow != null) {
+			flow.complete();
+		}
+		synchronized (mConfiguration) {
+			return processResults(evaluationContext);
+		}
+	}
+	
+	/*
+	 * creates a flow containing only the variants of the rule which have a non empty delta
+	 */
+	private Flow connectDeltaFlow(String resultName, String flowIdentificator, String output, long deltaVersion) throws IOException {
+		Map<String, Tap> sources = new HashMap<String, Tap>();
+		List<Pipe> variantPipes = new ArrayList<Pipe>();
+		StringBuilder variants = new StringBuilder();
+		for (int i = 0; i < deltaRuleStreams.size(); i++) {
+			RuleStreams variantStreams = deltaRuleStreams.get(i);
+			LiteralFields deltaStream = variantStreams.getDeltaStream();
+			Scheme sourceScheme = distributedFileSystemManager.getScheme(fields, deltaStream);
+			Integer location = null;
+			if (mConfiguration.doPredicateIndexing && deltaStream.getPredicate() != null) {
+				PredicateData predicateData = distributedFileSystemManager.getPredicateData(new IRIWritable(deltaStream.getPredicate()));
+				location = predicateData != null ? predicateData.getLocation() : null;
+			}
+			List<String> deltaPaths = mConfiguration.deltaTracker.getDeltaPaths(location, deltaVersion);
+			List<Tap> deltaTaps = new ArrayList<Tap>();
+			FileSystem fs = FileSystem.get(mConfiguration.hadoopConfiguration);
+			for (String deltaPath : deltaPaths) {
+				if (fs.exists(new Path(deltaPath))) {
+					deltaTaps.add(new Hfs(sourceScheme, deltaPath));
+				}
+			}
+			if (deltaTaps.isEmpty()) {
+				continue;
+			}
+			sources.putAll(prepareSourceTaps(variantStreams));
+			sources.put(variantStreams.getDeltaSourceName(mConfiguration), new MultiSourceTap(deltaTaps.toArray(new Tap[0])));
+			variantPipes.add(deltaPipes.get(i));
+			variants.append(i).append(",");
+		}
+		if (variantPipes.isEmpty()) {
+			logger.info("no delta for " + resultName + flowIdentificator + ", skip evaluation");
+			return null;
+		}
+		
+		//the same variants (with a non empty delta) give the same pipe assembly
+		Pipe deltaPipe = deltaGroupPipes.get(variants.toString());
+		if (deltaPipe == null) {
+			deltaPipe = new GroupBy(pipe.getName(), variantPipes.toArray(new Pipe[0]), fields); //eliminate duplicates
+			deltaPipe = new Every(deltaPipe, new Count(), fields);
+			deltaGroupPipes.put(variants.toString(), deltaPipe);
+		}
+		
+		return connectFlow(resultName, flowIdentificator, output, sources, deltaPipe);
 	}
 	
 	/**
@@ -217,7 +424,7 @@ public class FlowAssembly {
 		if (flow == null) {
 			return null;
 		}
-		return flow.openSink(pipe.getName());
+		return flow.openSink(tail.getName());
 		//Hfs hfs = new Hfs(Fields.ALL, path);
 		//return hfs.openForRead(mConfiguration.jobConf);
 	}
@@ -225,7 +432,12 @@ public class FlowAssembly {
 	/*
 	 * Put into the sources the taps for the predicate indexed storage
 	 */
-	private void prepareIndexedSource(SequenceFile sourceScheme, Map<String, List<Tap>> sources, LiteralFields fields) {
+	private void prepareIndexedSource(Map<String, List<Tap>> sources, RuleStreams ruleStreams, LiteralFields fields) {
+		if (fields.isReplicated() || !fields.isSource()) {
+			//loaded in memory by a map side join, or not read at all
+			return;
+		}
+		Scheme sourceScheme = distributedFileSystemManager.getScheme(this.fields, fields);
 		IPredicate predicate = fields.getPredicate();
 		String literalId = fields.getId().toString();
 		sources.put(literalId, new ArrayList<Tap>());
@@ -234,7 +446,7 @@ public class FlowAssembly {
 		} else {
 			sources.get(literalId).add(new Hfs(sourceScheme, distributedFileSystemManager.getFactsPath(fields)));
 		}
-		Map<String, Tap> inferencesTaps = getInferencesTap(sourceScheme);
+		Map<String, Tap> inferencesTaps = getInferencesTap(ruleStreams);
 		if (inferencesTaps.containsKey(literalId)) {
 			sources.get(literalId).add(inferencesTaps.get(literalId));
 		}
@@ -243,35 +455,61 @@ public class FlowAssembly {
 	/*
 	 * Prepares the source taps
 	 */
-	private Map<String, Tap> prepareSourceTaps() {
-		SequenceFile sourceScheme = new SequenceFile(fields);
+	private Map<String, Tap> prepareSourceTaps(RuleStreams ruleStreams) {
 		Map<String, List<Tap>> sources = new HashMap<String, List<Tap>>();
 		if (mConfiguration.doPredicateIndexing) {
 			LiteralFields headStream = ruleStreams.getHeadStream();
-			prepareIndexedSource(sourceScheme, sources, headStream);
+			prepareIndexedSource(sources, ruleStreams, headStream);
 			for (LiteralFields fields : ruleStreams.getBodyStreams()) {
-				prepareIndexedSource( sourceScheme, sources, fields);
+				prepareIndexedSource(sources, ruleStreams, fields);
 			}
 		} else {
+			Scheme sourceScheme = distributedFileSystemManager.getScheme(fields);
 			Tap factsTap = new Hfs(sourceScheme, distributedFileSystemManager.getFactsPath());
 			sources.put("main", new ArrayList<Tap>());
 			sources.get("main").add(factsTap);
-			Map<String, Tap> inferencesTaps = getInferencesTap(sourceScheme);
+			Map<String, Tap> inferencesTaps = getInferencesTap(ruleStreams);
 			if (inferencesTaps.containsKey("main")) {
 				sources.get("main").add(inferencesTaps.get("main"));
 			}
 		}
-		Map<String, Tap> sourceTaps = new HashMap<String, Tap>();
+		List<String> layout = new ArrayList<String>();
+		for (Map.Entry<String, List<Tap>> source : sources.entrySet()) {
+			for (Tap tap : source.getValue()) {
+				layout.add(source.getKey() + "=" + tap.getPath());
+			}
+		}
+		if (layout.equals(sourceLayouts.get(ruleStreams))) {
+			return sourceTaps.get(ruleStreams);
+		}
+		Map<String, Tap> taps = new HashMap<String, Tap>();
 		for (String name : sources.keySet()) {
-			sourceTaps.put(name, new MultiSourceTap(sources.get(name).toArray(new Tap[0]))); //we can assume that the number of fields are the same as the head;s tuple size + 1 (the predicate)
+			taps.put(name, new MultiSourceTap(sources.get(name).toArray(new Tap[0]))); //we can assume that the number of fields are the same as the head;s tuple size + 1 (the predicate)
+		}
+		logger.info("input layout changed for " + ruleStreams.getHeadStream().getId() + ", source taps rebuilt");
+		sourceLayouts.put(ruleStreams, layout);
+		sourceTaps.put(ruleStreams, taps);
+		return taps;		
+	}
+	
+	/*
+	 * Checks if an inferences folder exists, the folders found once are not checked again
+	 */
+	private boolean inferencesExist(FileSystem fs, String path) throws IOException {
+		if (existingInferencesPaths.contains(path)) {
+			return true;
 		}
-		return sourceTaps;		
+		if (fs.exists(new Path(path))) {
+			existingInferencesPaths.add(path);
+			return true;
+		}
+		return false;
 	}
 	
 	/*
 	 * Returns the tap for inferences
 	 */
-	private Map<String, Tap> getInferencesTap(Scheme scheme) {
+	private Map<String, Tap> getInferencesTap(RuleStreams ruleStreams) {
 		Map<String, Tap> inferencesTap = new HashMap<String, Tap>();
 		try {
 			String path = null;
@@ -279,19 +517,19 @@ public class FlowAssembly {
 			if (mConfiguration.doPredicateIndexing) {
 				LiteralFields headStream = ruleStreams.getHeadStream();
 				path = distributedFileSystemManager.getInferencesPath(headStream);
-				if (fs.exists(new Path(path))) {
-					inferencesTap.put(headStream.getId().toString(), new Hfs(scheme, path));
+				if (inferencesExist(fs, path)) {
+					inferencesTap.put(headStream.getId().toString(), new Hfs(distributedFileSystemManager.getScheme(this.fields, headStream), path));
 				}
 				for (LiteralFields fields : ruleStreams.getBodyStreams()) {
 					path = distributedFileSystemManager.getInferencesPath(fields);
-					if (fs.exists(new Path(path))) {
-						inferencesTap.put(fields.getId().toString(), new Hfs(scheme, path));
+					if (inferencesExist(fs, path)) {
+						inferencesTap.put(fields.getId().toString(), new Hfs(distributedFileSystemManager.getScheme(this.fields, fields), path));
 					}
 				}
 			} else {
 				path = distributedFileSystemManager.getInferencesPath();
-				if (fs.exists(new Path(path))) {
-					inferencesTap.put("main", new Hfs(scheme, path));
+				if (inferencesExist(fs, path)) {
+					inferencesTap.put("main", new Hfs(distributedFileSystemManager.getScheme(fields), path));
 				}
 			}
 		} catch (IOException e) {
@@ -301,6 +539,40 @@ public class FlowAssembly {
 		return inferencesTap;
 	}
 
+	/*
+	 * Deletes the empty part files of a result (could be from reducers running on no data).
+	 * An empty part file has only the sequence file header, all the part files of a result have the same header,
+	 * so only the header of the first part is read and the other parts are checked by their length.
+	 * With columnar storage the header is only the magic bytes.
+	 */
+	private void deleteEmptyParts(Path resultsPath) throws IOException {
+		FileSystem fs = FileSystem.get(mConfiguration.hadoopConfiguration);
+		FileStatus[] parts = fs.listStatus(resultsPath, new PathFilter() {
+			@Override
+			public boolean accept(Path path) {
+				return path.getName().startsWith("part-");
+			}
+		});
+		if (parts == null || parts.length == 0) {
+			return;
+		}
+		long headerLength = ColumnarBlock.MAGIC.length;
+		if (!mConfiguration.doColumnarStorage) {
+			//the parts hold cascading tuples, the reader needs their serialization
+			JobConf jobConf = new JobConf(mConfiguration.jobConf);
+			TupleSerialization.setSerializations(jobConf);
+			org.apache.hadoop.io.SequenceFile.Reader reader = new org.apache.hadoop.io.SequenceFile.Reader(fs, parts[0].getPath(), jobConf);
+			headerLength = reader.getPosition();
+			reader.close();
+		}
+		for (FileStatus part : parts) {
+			if (part.getLen() <= headerLength) {
+				logger.info("delete empty result : " + part.getPath());
+				fs.delete(part.getPath(), false);
+			}
+		}
+	}
+
 	/*
 	 * Delete the folder created for a result
 	 */
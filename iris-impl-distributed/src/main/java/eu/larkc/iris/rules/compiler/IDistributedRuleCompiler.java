@@ -15,6 +15,8 @@
  */
 package eu.larkc.iris.rules.compiler;
 
+import java.util.List;
+
 import org.deri.iris.EvaluationException;
 import org.deri.iris.api.basics.IRule;
 
@@ -37,4 +39,12 @@ public interface IDistributedRuleCompiler {
 	public abstract IDistributedCompiledRule compile(IRule rule)
 			throws EvaluationException;
 
+	/**
+	 * Sets the rules evaluated together with the compiled rules (e.g. a stratum). 
+	 * The predicates derived by these rules grow during the evaluation, their sizes at compile time are not used.
+	 * 
+	 * @param rules the rules evaluated together
+	 */
+	public abstract void setEvaluatedRules(List<IRule> rules);
+
 }
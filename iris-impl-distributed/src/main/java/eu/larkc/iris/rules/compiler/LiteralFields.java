@@ -18,15 +18,12 @@ package eu.larkc.iris.rules.compiler;
 import java.util.HashMap;
 import java.util.Map;
 
-import org.apache.commons.lang.NotImplementedException;
 import org.apache.commons.lang.builder.EqualsBuilder;
 import org.apache.commons.lang.builder.HashCodeBuilder;
 import org.apache.hadoop.io.WritableComparable;
 import org.deri.iris.api.basics.IAtom;
 import org.deri.iris.api.basics.ILiteral;
 import org.deri.iris.api.basics.IPredicate;
-import org.deri.iris.api.builtins.IBuiltinAtom;
-import org.deri.iris.api.terms.IConstructedTerm;
 import org.deri.iris.api.terms.IStringTerm;
 import org.deri.iris.api.terms.ITerm;
 import org.deri.iris.api.terms.IVariable;
@@ -40,6 +37,7 @@ import eu.larkc.iris.evaluation.ConstantFilter;
 import eu.larkc.iris.indexing.DistributedFileSystemManager;
 import eu.larkc.iris.indexing.PredicateData;
 import eu.larkc.iris.rules.compiler.RuleStreams.LiteralId;
+import eu.larkc.iris.rules.optimisation.JoinOptimizer;
 import eu.larkc.iris.storage.IRIWritable;
 import eu.larkc.iris.storage.WritableFactory;
 
@@ -64,6 +62,15 @@ public class LiteralFields extends eu.larkc.iris.rules.compiler.PipeFields {
 	
 	private LiteralId id;
 	
+	//the constants this literal is filtered by
+	private Map<String, WritableComparable> constantTerms = new HashMap<String, WritableComparable>();
+	
+	//true if this literal is not a source of the flow, but is loaded in memory by a map side join
+	private boolean replicated = false;
+	
+	//false if the records of this literal are not read by the flow, e.g. a head literal with no existing results to eliminate
+	private boolean source = true;
+	
 	public class TermId {
 		private LiteralId literalId;
 		private String prefix;
@@ -115,7 +122,6 @@ public class LiteralFields extends eu.larkc.iris.rules.compiler.PipeFields {
 	
 	LiteralFields(Configuration configuration, Pipe mainPipe, LiteralId literalId, ILiteral literal) {
 		this.id = literalId;
-		this.count = calculateCount(configuration);
 		IAtom atom = literal.getAtom();
 		IPredicate predicate = atom.getPredicate();
 		if (!predicate.getPredicateSymbol().equals(RIF_HAS_VALUE)) {
@@ -131,6 +137,7 @@ public class LiteralFields extends eu.larkc.iris.rules.compiler.PipeFields {
 				add(new LiteralField(new TermId(literalId, CONSTANT_PREFIX, i), term));
 			}
 		}
+		this.count = calculateCount(configuration);
 		
 		if (mainPipe != null) {
 			pipe = new Pipe(getId().toString(), mainPipe);
@@ -140,7 +147,7 @@ public class LiteralFields extends eu.larkc.iris.rules.compiler.PipeFields {
 		//pipe = new Rename(pipe, new cascading.tuple.Fields(0, 1, 2), getFields());
 		pipe = new Rename(pipe, cascading.tuple.Fields.ALL, getFields());
 		
-		pipe = filterConstants(pipe);
+		pipe = filterConstants(configuration, pipe);
 	}
 
 	LiteralFields(Configuration configuration, LiteralId literalId, ILiteral literal) {
@@ -155,46 +162,79 @@ public class LiteralFields extends eu.larkc.iris.rules.compiler.PipeFields {
 	 * Gets the record count for a predicate from indexed predicate storage
 	 */
 	private Long calculateCount(Configuration configuration) {
-		DistributedFileSystemManager dfsm = new DistributedFileSystemManager(configuration);
 		IPredicate predicate = this.getPredicate();
-		if (predicate != null) {
-			PredicateData predicateData = dfsm.getPredicateData(new IRIWritable(predicate));
-			return predicateData.getCount();
+		if (predicate == null || !configuration.doPredicateIndexing) {
+			return Long.MAX_VALUE;
 		}
-		return Long.MAX_VALUE;
+		DistributedFileSystemManager dfsm = new DistributedFileSystemManager(configuration);
+		PredicateData predicateData = dfsm.getPredicateData(new IRIWritable(predicate));
+		if (predicateData == null) {
+			return Long.MAX_VALUE;
+		}
+		return predicateData.getCount();
 	}
 
-	public boolean fromBuiltInAtom() {
-		return false;
+	/*
+	 * Estimates the number of records left after filtering by the constants. The statistics of the columnar storage are used 
+	 * if available, otherwise each constant not already accounted by the records count of the predicate keeps a fixed 
+	 * fraction of the records, same as the estimation of the join optimizer. An unknown records count stays unknown.
+	 */
+	private Long estimateCount(Configuration configuration, boolean hasPredicateFilter) {
+		DistributedFileSystemManager dfsm = new DistributedFileSystemManager(configuration);
+		Long estimate = dfsm.estimateCount(getPredicate(), dfsm.getConstants(this));
+		if (estimate != null) {
+			return estimate;
+		}
+		if (this.count == Long.MAX_VALUE) {
+			//unknown count, a fraction of it would look like a real estimation
+			return this.count;
+		}
+		//the count of an indexed predicate already has only the records of the predicate
+		int filters = constantTerms.size() - (hasPredicateFilter ? 1 : 0);
+		return (long) Math.max(1, this.count * Math.pow(JoinOptimizer.CONSTANT_SELECTIVITY, filters));
 	}
-	
+
 	/**
-	 * Converts a built-in atom to a suitable cascading operation per the RIF
-	 * specs. This is currently a stub implementation.
+	 * Returns the constants this literal is filtered by
 	 * 
-	 * @param atom
+	 * @return map of field names and their constant values
 	 */
-	protected void processBuiltin(IBuiltinAtom atom) {
+	public Map<String, WritableComparable> getConstantTerms() {
+		return constantTerms;
+	}
 
-		boolean constructedTerms = false;
-		for (ITerm term : atom.getTuple()) {
-			if (term instanceof IConstructedTerm) {
-				constructedTerms = true;
-				break;
-			}
-		}
-		
-	
-		if (constructedTerms) {
-			// function symbol
-			throw new NotImplementedException(
-					"Function Symbols are not supported");
-		} else {
-			// ordinary built-in, those WILL be handled
-			throw new NotImplementedException("Builtins not implemented yet");
-		}
+	/**
+	 * @return true if this literal is loaded in memory by a map side join
+	 */
+	public boolean isReplicated() {
+		return replicated;
+	}
+
+	/**
+	 * @param replicated true if this literal is loaded in memory by a map side join
+	 */
+	public void setReplicated(boolean replicated) {
+		this.replicated = replicated;
+	}
+
+	/**
+	 * @return false if the records of this literal are not read by the flow
+	 */
+	public boolean isSource() {
+		return source;
+	}
+
+	/**
+	 * @param source false if the records of this literal are not read by the flow
+	 */
+	public void setSource(boolean source) {
+		this.source = source;
 	}
 
+	public boolean fromBuiltInAtom() {
+		return false;
+	}
+	
 	/* (non-Javadoc)
 	 * @see eu.larkc.iris.rules.compiler.PipeFields#getPipe()
 	 */
@@ -207,43 +247,31 @@ public class LiteralFields extends eu.larkc.iris.rules.compiler.PipeFields {
 	 * This filters constants by providing in tuple streams according to the
 	 * original rule defintion.
 	 * 
+	 * @param configuration
 	 * @param attachTo
-	 * @param tuple
 	 * @return
 	 */
 	@SuppressWarnings("unchecked")
-	protected Pipe filterConstants(Pipe attachTo) {
-		Map<String, WritableComparable> constantTerms = new HashMap<String, WritableComparable>();
+	protected Pipe filterConstants(Configuration configuration, Pipe attachTo) {
+		constantTerms = new HashMap<String, WritableComparable>();
 
 		boolean hasPredicateFilter = false;
-		boolean hasConstantFilter = false;
 		for (Field field : this) {
 			if (field.getSource() instanceof IPredicate) {
-				constantTerms.put(field.getName(), WritableFactory.fromPredicate((IPredicate) field.getSource())); //added one because of the predicate field
+				constantTerms.put(field.getName(), WritableFactory.fromPredicate(configuration, (IPredicate) field.getSource())); //added one because of the predicate field
 				hasPredicateFilter = true;
 			} else if (field.getSource() instanceof ITerm) {
 				ITerm term = (ITerm) field.getSource();
 				// not a variable, we filter the tuples
 				if (term.isGround()) {
-					constantTerms.put(field.getName(), WritableFactory.fromTerm(term)); //added one because of the predicate field
-					hasConstantFilter = true;
+					constantTerms.put(field.getName(), WritableFactory.fromTerm(configuration, term)); //added one because of the predicate field
 				}
 			}
 		}
 
 		// did we actually find at least one constant?
 		if (!constantTerms.isEmpty()) {
-			if (this.count == Long.MAX_VALUE) {
-				if (hasPredicateFilter) {
-					if (hasConstantFilter) {
-						this.count = new Long(-3);
-					} else {
-						this.count = new Long(-1); //a filter by predicate might have less results than a predicate by subject or object
-					}
-				} else {
-					this.count = new Long(-2);
-				}
-			}
+			this.count = estimateCount(configuration, hasPredicateFilter);
 			Pipe filter = new Each(attachTo, new ConstantFilter(constantTerms));
 			return filter;
 		}
@@ -31,8 +31,15 @@ import cascading.pipe.Each;
 import cascading.pipe.Every;
 import cascading.pipe.GroupBy;
 import cascading.pipe.Pipe;
+import cascading.pipe.assembly.CountBy;
 import cascading.pipe.cogroup.InnerJoin;
 import cascading.pipe.cogroup.LeftJoin;
+import cascading.scheme.Scheme;
+import cascading.tuple.Tuple;
+import eu.larkc.iris.evaluation.CrossProductTile;
+import eu.larkc.iris.evaluation.ReplicatedAntiJoin;
+import eu.larkc.iris.evaluation.ReplicatedJoin;
+import eu.larkc.iris.evaluation.SkewSalt;
 
 /**
  * Streams resulted from joining other streams
@@ -50,6 +57,23 @@ public class PipeFields extends Fields {
 
 	private static final Logger logger = LoggerFactory.getLogger(PipeFields.class);
 	
+	/*
+	 * Field names used for the cell of the records in a cross product
+	 */
+	private static final String CROSS_PRODUCT_LEFT_FIELD = "LTF";
+	private static final String CROSS_PRODUCT_RIGHT_FIELD = "RTF";
+	
+	/*
+	 * Field names used for the split of the records in a join with hot keys
+	 */
+	private static final String SKEW_LEFT_FIELD = "LSF";
+	private static final String SKEW_RIGHT_FIELD = "RSF";
+	
+	/*
+	 * Field name used for the count of the duplicates of a record
+	 */
+	private static final String DUPLICATES_COUNT_FIELD = "DCF";
+	
 	protected Pipe pipe = null;
 	
 	//the maximal possible number of records that this stream can contained, is calculated from the joins of 
@@ -98,6 +122,124 @@ public class PipeFields extends Fields {
 		return new PipeFields(join, this, fields, Math.min(getCount(), fields.getCount()));
 	}
 
+	/**
+	 * Joins this stream with another one, as {@link #innerJoin(PipeFields)}, when some join keys are found in many records. 
+	 * The records of a hot key are grouped by several reducers instead of one: the records of the bigger stream are spread 
+	 * over the splits and the records of the smaller stream are copied to all the splits. The other keys are grouped as usual.
+	 * 
+	 * @param fields the stream to join with
+	 * @param hotKeys the hot keys, the values in the order of the common fields
+	 * @param splits the number of splits of a hot key
+	 * @return the joined stream
+	 */
+	public PipeFields skewedInnerJoin(PipeFields fields, Set<Tuple> hotKeys, int splits) {
+		FieldPairs fieldGroup = getCommonFields(fields);
+		cascading.tuple.Fields leftFields = fieldGroup.getLeftFields().getFields();
+		cascading.tuple.Fields rightFields = fieldGroup.getRightFields().getFields();
+		boolean spreadLeft = getCount() >= fields.getCount();
+		
+		Pipe lhsPipe = new Each(getPipe(), leftFields, new SkewSalt(new cascading.tuple.Fields(SKEW_LEFT_FIELD), hotKeys, splits, spreadLeft), cascading.tuple.Fields.ALL);
+		Pipe rhsPipe = new Each(fields.getPipe(), rightFields, new SkewSalt(new cascading.tuple.Fields(SKEW_RIGHT_FIELD), hotKeys, splits, !spreadLeft), cascading.tuple.Fields.ALL);
+		
+		Pipe join = new CoGroup(lhsPipe, leftFields.append(new cascading.tuple.Fields(SKEW_LEFT_FIELD)), 
+				rhsPipe, rightFields.append(new cascading.tuple.Fields(SKEW_RIGHT_FIELD)), new InnerJoin());
+		
+		return dropGroupingFields(join, fields, Math.min(getCount(), fields.getCount()));
+	}
+
+	/**
+	 * Joins this stream with a small literal on the map side. The literal is loaded in memory from the storage, 
+	 * so this stream is not shuffled. The literal is not a source of the flow anymore.
+	 * 
+	 * @param fields the small literal
+	 * @param scheme the scheme the records of the literal are stored with
+	 * @param paths the paths where the records of the literal are stored
+	 * @return the joined stream
+	 */
+	public PipeFields replicatedJoin(LiteralFields fields, Scheme scheme, String... paths) {
+		FieldPairs fieldGroup = getCommonFields(fields);
+		
+		ReplicatedJoin replicatedJoin = new ReplicatedJoin(scheme, fieldGroup.getRightFields().getFields(), fields.getConstantTerms(), paths);
+		Pipe join = new Each(getPipe(), getArgumentFields(fieldGroup), replicatedJoin, cascading.tuple.Fields.ALL);
+		fields.setReplicated(true);
+		
+		Long joinCount = fieldGroup.isEmpty() ? crossProductCount(getCount(), fields.getCount()) : Math.min(getCount(), fields.getCount());
+		return new PipeFields(join, this, fields, joinCount);
+	}
+
+	/**
+	 * Joins this stream with a stream with no common fields, each record with each record. 
+	 * The records of both streams are spread over a grid of cells, the records of this stream over the rows, 
+	 * the records of the other stream over the columns, and the streams are grouped on the cell, 
+	 * so the cross product is computed by as many reducers as cells instead of a single one. 
+	 * The grid's shape is chosen so that the side with more records is copied to less cells.
+	 * 
+	 * @param fields the stream to join with
+	 * @param cells the number of cells of the grid
+	 * @return the joined stream
+	 */
+	public PipeFields crossProduct(PipeFields fields, int cells) {
+		int rows = getCrossProductRows(getCount(), fields.getCount(), Math.max(1, cells));
+		int columns = Math.max(1, cells / rows);
+		logger.info("cross product on a grid of " + rows + "x" + columns + " cells");
+		
+		Pipe lhsPipe = new Each(getPipe(), new CrossProductTile(new cascading.tuple.Fields(CROSS_PRODUCT_LEFT_FIELD), rows, columns, true), cascading.tuple.Fields.ALL);
+		Pipe rhsPipe = new Each(fields.getPipe(), new CrossProductTile(new cascading.tuple.Fields(CROSS_PRODUCT_RIGHT_FIELD), rows, columns, false), cascading.tuple.Fields.ALL);
+		
+		Pipe join = new CoGroup(lhsPipe, new cascading.tuple.Fields(CROSS_PRODUCT_LEFT_FIELD), rhsPipe, new cascading.tuple.Fields(CROSS_PRODUCT_RIGHT_FIELD), new InnerJoin());
+		
+		return dropGroupingFields(join, fields, crossProductCount(getCount(), fields.getCount()));
+	}
+	
+	/*
+	 * The stream of a join of this stream with another one on fields added only for grouping (the split of a hot key 
+	 * or the cell of a cross product), the added fields are removed so the joined stream has only the fields of the two streams
+	 */
+	private PipeFields dropGroupingFields(Pipe join, PipeFields fields, Long joinCount) {
+		PipeFields joinFields = new PipeFields(join, this, fields, joinCount);
+		joinFields.pipe = new Each(join, joinFields.getFields(), new Identity());
+		return joinFields;
+	}
+	
+	/*
+	 * The number of rows for a cross product of leftCount x rightCount records on a grid of cells.
+	 * Each left record is copied to all the columns and each right record to all the rows, 
+	 * the copies (leftCount * columns + rightCount * rows) are the least when rows = sqrt(cells * leftCount / rightCount). 
+	 * If the counts are not known the grid is a square.
+	 */
+	private static int getCrossProductRows(Long leftCount, Long rightCount, int cells) {
+		double ratio = 1;
+		if (leftCount != Long.MAX_VALUE && rightCount != Long.MAX_VALUE) {
+			ratio = ((double) Math.max(1, leftCount)) / Math.max(1, rightCount);
+		}
+		long rows = Math.round(Math.sqrt(cells * ratio));
+		return (int) Math.max(1, Math.min(cells, rows));
+	}
+	
+	/*
+	 * The count of a cross product, Long.MAX_VALUE (unknown) if it overflows
+	 */
+	private static Long crossProductCount(Long leftCount, Long rightCount) {
+		if (leftCount == 0 || rightCount == 0) {
+			return 0l;
+		}
+		if (leftCount > Long.MAX_VALUE / rightCount) {
+			return Long.MAX_VALUE;
+		}
+		return leftCount * rightCount;
+	}
+	
+	/*
+	 * The arguments of a map side (anti) join, all the fields if there are no common fields, 
+	 * the relation is then joined without a key
+	 */
+	private cascading.tuple.Fields getArgumentFields(FieldPairs fieldGroup) {
+		if (fieldGroup.isEmpty()) {
+			return cascading.tuple.Fields.ALL;
+		}
+		return fieldGroup.getLeftFields().getFields();
+	}
+
 	@SuppressWarnings({ "unchecked" })
 	/**
 	 * Gets the unique variable fields for this stream
@@ -129,8 +271,26 @@ public class PipeFields extends Fields {
 	 * @return new stream with no duplciates
 	 */
 	public PipeFields eliminateDuplicates() {
-		Pipe join = new GroupBy(getPipe(), getFields()); //eliminate duplicates
-		join = new Every(join, new Count(), getFields());
+		return eliminateDuplicates(0);
+	}
+	
+	/**
+	 * Returns a new stream where the duplicates founded on this stream were removed. 
+	 * With a partial capacity the duplicates are counted in memory before the shuffle, 
+	 * among the last {@code partialCapacity} distinct records of a task, the count itself is not kept.
+	 * 
+	 * @param partialCapacity the number of records kept in memory for removing duplicates before the shuffle, 0 for none
+	 * @return new stream with no duplciates
+	 */
+	public PipeFields eliminateDuplicates(int partialCapacity) {
+		Pipe join = getPipe();
+		if (partialCapacity > 0) {
+			join = new CountBy(join, getFields(), new cascading.tuple.Fields(DUPLICATES_COUNT_FIELD), partialCapacity);
+			join = new Each(join, getFields(), new Identity());
+		} else {
+			join = new GroupBy(join, getFields()); //eliminate duplicates
+			join = new Every(join, new Count(), getFields());
+		}
 		PipeFields fields = new PipeFields(this);
 		fields.pipe = join;
 		return fields;
@@ -149,14 +309,63 @@ public class PipeFields extends Fields {
 		//only applies to predicate indexing
 		//remember also to remove the source from flow processing for the head's literal
 		
-		FieldPairs fieldGroup = getCommonFields(headFields);
+		return antiJoin(headFields);
+	}
+
+	/**
+	 * Anti joins this stream with another stream, on their common fields. Only the records of this stream 
+	 * without a match in the other stream are kept. Used for negated literals and for eliminating existing results.
+	 * The other stream is left joined to this one and the joined records are filtered out.
+	 * 
+	 * @param fields the stream to anti join with
+	 * @return a new stream with the records of this stream not found in {@code fields}
+	 */
+	public PipeFields antiJoin(PipeFields fields) {
+		FieldPairs fieldGroup = getCommonFields(fields);
 		
-		Pipe leftJoin = new CoGroup(getPipe(), fieldGroup.getLeftFields().getFields(), headFields.getPipe(), fieldGroup.getRightFields().getFields(), new LeftJoin());
+		Pipe leftJoin = new CoGroup(getPipe(), fieldGroup.getLeftFields().getFields(), fields.getPipe(), fieldGroup.getRightFields().getFields(), new LeftJoin());
 		
-		leftJoin = new Each( leftJoin, headFields.getFields(), new FilterNotNull());	// outgoing -> "keepField"
+		leftJoin = new Each( leftJoin, fields.getFields(), new FilterNotNull());	// outgoing -> "keepField"
 		leftJoin = new Each( leftJoin, this.getFields(), new Identity());	// outgoing -> "keepField"
 		
-		return new PipeFields(leftJoin, this);
+		PipeFields result = new PipeFields(leftJoin, this);
+		result.count = getCount();
+		return result;
+	}
+
+	/**
+	 * Same as {@link #eliminateExistingResults(PipeFields)} but on the map side, the data of the head literal 
+	 * is loaded in memory from the storage so this stream is not shuffled. The head literal is not a source of the flow anymore.
+	 * 
+	 * @param headFields the fields for which to search if the same values are in the storage
+	 * @param scheme the scheme the records of the head literal are stored with
+	 * @param paths the paths where the records of the head literal are stored
+	 * @return a new stream with only data that is not already in the storage
+	 */
+	public PipeFields replicatedEliminateExistingResults(LiteralFields headFields, Scheme scheme, String... paths) {
+		return replicatedAntiJoin(headFields, scheme, paths);
+	}
+
+	/**
+	 * Same as {@link #antiJoin(PipeFields)} but on the map side, the records of the small literal are loaded in memory 
+	 * from the storage in a hash table so this stream is not shuffled. The literal is not a source of the flow anymore.
+	 * Without common fields all the records are removed if the literal has any record.
+	 * 
+	 * @param fields the small literal to anti join with
+	 * @param scheme the scheme the records of the literal are stored with
+	 * @param paths the paths where the records of the literal are stored
+	 * @return a new stream with the records of this stream not found in the literal
+	 */
+	public PipeFields replicatedAntiJoin(LiteralFields fields, Scheme scheme, String... paths) {
+		FieldPairs fieldGroup = getCommonFields(fields);
+		
+		ReplicatedAntiJoin antiJoin = new ReplicatedAntiJoin(scheme, fieldGroup.getRightFields().getFields(), fields.getConstantTerms(), paths);
+		Pipe pipe = new Each(getPipe(), getArgumentFields(fieldGroup), antiJoin);
+		fields.setReplicated(true);
+		
+		PipeFields result = new PipeFields(pipe, this);
+		result.count = getCount();
+		return result;
 	}
 
 	/**
@@ -38,9 +38,23 @@ public class RuleStreams {
 	
 	private static final String HEAD_LITERAL_PREFIX = "HL";
 	private static final String BODY_LITERAL_PREFIX = "L";
+	private static final String DELTA_PREFIX = "D";
+	
+	//the prefix of the pipe reading the delta, when predicate indexing is not used
+	private static final String DELTA_PIPE_PREFIX = "delta";
+	
+	//the index of the body literal reading only the delta (semi-naive evaluation), -1 if all literals read the full relations
+	private int deltaLiteral = -1;
 	
 	private LiteralFields headStream = null;
 	private List<LiteralFields> bodyStreams = new ArrayList<LiteralFields>();
+	//the streams of the positive body literals, these are joined
+	private List<LiteralFields> positiveStreams = new ArrayList<LiteralFields>();
+	//the streams of the negated body literals, these are anti joined with the join of the positive literals
+	private List<LiteralFields> negatedStreams = new ArrayList<LiteralFields>();
+	//the built-in body literals, these have no stream, they are evaluated on the join of the other literals
+	private List<ILiteral> builtinLiterals = new ArrayList<ILiteral>();
+	private LiteralFields deltaStream = null;
 	
 	/**
 	 * Identificator class used for fields of iris literal
@@ -62,7 +76,7 @@ public class RuleStreams {
 		 */
 		@Override
 		public String toString() {
-			return getPrefix() + ((index == -1) ? "" : index);
+			return ((deltaLiteral == -1) ? "" : DELTA_PREFIX + deltaLiteral) + getPrefix() + ((index == -1) ? "" : index);
 		}
 		
 		private String getPrefix() {
@@ -82,8 +96,7 @@ public class RuleStreams {
 				return false;
 			}
 			LiteralId literalId = (LiteralId) obj;
-			return new EqualsBuilder().append(getPrefix(), literalId.getPrefix())
-				.append(index, literalId.index).isEquals();
+			return new EqualsBuilder().append(toString(), literalId.toString()).isEquals();
 		}
 
 		/* (non-Javadoc)
@@ -91,31 +104,68 @@ public class RuleStreams {
 		 */
 		@Override
 		public int hashCode() {
-			return new HashCodeBuilder().append(getPrefix()).append(index).hashCode();
+			return new HashCodeBuilder().append(toString()).hashCode();
 		}
 	}
 	
 	public RuleStreams(Configuration configuration, Pipe mainPipe, IRule rule) {
+		this(configuration, mainPipe, rule, -1);
+	}
+
+	/**
+	 * Creates the streams of a rule where the body literal at {@code deltaLiteral} reads only the delta (the new inferences) 
+	 * while all the other literals read the full relations. Used for semi-naive evaluation.
+	 * 
+	 * @param configuration the configuration
+	 * @param mainPipe the pipe from where all the literals read the data, when predicate indexing is not used
+	 * @param rule the rule
+	 * @param deltaLiteral the index of the body literal reading the delta, -1 if none
+	 */
+	public RuleStreams(Configuration configuration, Pipe mainPipe, IRule rule, int deltaLiteral) {
+		this.deltaLiteral = deltaLiteral;
 		ILiteral headLiteral = rule.getHead().get(0);
 		if (!configuration.doPredicateIndexing) {
 			headStream = new LiteralFields(configuration, mainPipe, new LiteralId(), headLiteral);
 		} else {
 			headStream = new LiteralFields(configuration, new LiteralId(), headLiteral);
 		}
+		//the built-ins are evaluated on the data of the ordinary literals, a rule with only built-ins 
+		//has no data to be evaluated on so its built-ins are read as ordinary literals (no data is found for them)
+		boolean hasOrdinaryLiteral = false;
+		for (ILiteral literal : rule.getBody()) {
+			hasOrdinaryLiteral |= literal.isPositive() && !literal.getAtom().isBuiltin();
+		}
 		for (int i = 0; i < rule.getBody().size(); i++) {
 			ILiteral literal = rule.getBody().get(i);
 			
-			// we shouldn't even have to check for that if we do not deal
-			// with negation, this is basically a double check for the
-			// parser
-			if (!literal.isPositive()) {
-				throw new IllegalArgumentException("Negation is not supported: " + literal);
+			if (literal.getAtom().isBuiltin() && hasOrdinaryLiteral) {
+				if (i == deltaLiteral) {
+					throw new IllegalArgumentException("A built-in can not read the delta: " + literal);
+				}
+				builtinLiterals.add(literal);
+				continue;
 			}
 			
+			LiteralFields literalFields = null;
 			if (!configuration.doPredicateIndexing) {
-				bodyStreams.add(new LiteralFields(configuration, mainPipe, new LiteralId(i), literal));
+				Pipe literalMainPipe = (i == deltaLiteral) ? new Pipe(getDeltaPipeName()) : mainPipe;
+				literalFields = new LiteralFields(configuration, literalMainPipe, new LiteralId(i), literal);
+			} else {
+				literalFields = new LiteralFields(configuration, new LiteralId(i), literal);
+			}
+			bodyStreams.add(literalFields);
+			if (i == deltaLiteral) {
+				deltaStream = literalFields;
+			}
+			
+			//a negated literal is evaluated only after its predicate was completely evaluated (it is in a lower stratum), 
+			//so it never reads the delta
+			if (literal.isPositive()) {
+				positiveStreams.add(literalFields);
+			} else if (i == deltaLiteral) {
+				throw new IllegalArgumentException("A negated literal can not read the delta: " + literal);
 			} else {
-				bodyStreams.add(new LiteralFields(configuration, new LiteralId(i), literal));
+				negatedStreams.add(literalFields);
 			}
 		}
 	}
@@ -128,11 +178,76 @@ public class RuleStreams {
 		return headStream;
 	}
 	
+	/**
+	 * Returns the streams of all the body literals, positive and negated, in the order of the rule's body.
+	 * The built-ins have no stream.
+	 * 
+	 * @return the body streams
+	 */
 	public List<LiteralFields> getBodyStreams() {
 		return bodyStreams;
 	}
 
+	/**
+	 * Returns an iterator over the streams of the positive body literals, the ones to be joined
+	 * 
+	 * @return iterator over the positive body streams
+	 */
 	public ListIterator<LiteralFields> getBodyStreamIterator() {
-		return bodyStreams.listIterator();
+		return positiveStreams.listIterator();
+	}
+	
+	/**
+	 * Returns the streams of the positive body literals
+	 * 
+	 * @return the positive streams
+	 */
+	public List<LiteralFields> getPositiveStreams() {
+		return positiveStreams;
+	}
+	
+	/**
+	 * Returns the streams of the negated body literals
+	 * 
+	 * @return the negated streams, empty if the rule has no negation
+	 */
+	public List<LiteralFields> getNegatedStreams() {
+		return negatedStreams;
+	}
+
+	/**
+	 * Returns the built-in body literals
+	 * 
+	 * @return the built-ins, empty if the rule has none
+	 */
+	public List<ILiteral> getBuiltinLiterals() {
+		return builtinLiterals;
+	}
+
+	/**
+	 * Returns the stream of the body literal reading only the delta
+	 * 
+	 * @return the delta stream or null if all the literals read the full relations
+	 */
+	public LiteralFields getDeltaStream() {
+		return deltaStream;
+	}
+
+	/**
+	 * Returns the name of the source to which the delta is bound.
+	 * With predicate indexing this is the delta stream itself, otherwise the pipe the delta stream is reading from.
+	 * 
+	 * @param configuration the configuration
+	 * @return the name of the delta source
+	 */
+	public String getDeltaSourceName(Configuration configuration) {
+		if (configuration.doPredicateIndexing) {
+			return getDeltaStream().getId().toString();
+		}
+		return getDeltaPipeName();
+	}
+	
+	private String getDeltaPipeName() {
+		return DELTA_PIPE_PREFIX + deltaLiteral;
 	}
 }
@@ -16,28 +16,40 @@
 package eu.larkc.iris.rules.optimisation;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Iterator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-import org.deri.iris.api.basics.IAtom;
+import org.apache.hadoop.io.Writable;
 import org.deri.iris.api.basics.ILiteral;
+import org.deri.iris.api.basics.IPredicate;
 import org.deri.iris.api.basics.IRule;
 import org.deri.iris.api.basics.ITuple;
+import org.deri.iris.api.terms.IStringTerm;
+import org.deri.iris.api.terms.ITerm;
 import org.deri.iris.api.terms.IVariable;
+import org.deri.iris.api.terms.concrete.IIri;
 import org.deri.iris.basics.BasicFactory;
 import org.deri.iris.rules.IRuleOptimiser;
 import org.deri.iris.utils.TermMatchingAndSubstitution;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import eu.larkc.iris.Configuration;
+import eu.larkc.iris.indexing.DistributedFileSystemManager;
+import eu.larkc.iris.indexing.PredicateData;
+import eu.larkc.iris.rules.compiler.LiteralFields;
+import eu.larkc.iris.storage.WritableFactory;
+
 /**
  * It does a re-ordering of the rule body literals and find the best way to join the literals.
- * The main optimization is avoiding the cartesian joins.
- * The literals with the more common variables are set first in the body.
- * TODO for predicate indexing environment set to the left of the body the literals with smaller amount of records, 
- * to filter the date from the first joins. This should not be done by breaking the first two optimizations.
+ * The order is found by dynamic programming over the sets of literals, keeping for each set the cheapest left deep join order.
+ * The main optimization is avoiding the cartesian joins, then the order with the smallest estimated intermediate results is chosen.
+ * In a predicate indexing environment the estimations use the records count of the predicates, 
+ * so the literals with smaller amount of records are set to the left of the body, to filter the data from the first joins.
+ * With columnar storage the records of the literals with constants are estimated from the statistics of the stored blocks.
  * 
  * @author valer.roman@softgress
  *
@@ -46,120 +58,200 @@ public class JoinOptimizer implements IRuleOptimiser {
 
 	private static final Logger logger = LoggerFactory.getLogger(JoinOptimizer.class);
 	
-	private List<ILiteral> literals = new ArrayList<ILiteral>();
+	//above this number of literals the order is found greedy, the sets of literals are too many
+	private static final int MAX_DP_LITERALS = 16;
 	
-	private class LiteralsList extends ArrayList<Literals> {
-
-		/**
-		 * serialVersionUID
-		 */
-		private static final long serialVersionUID = -6262585543568013544L;
-
-		public LiteralsList() {	
-		}
-		
-		public LiteralsList(int size) {
-			for (int i = 0; i < size; i++) {
-				add(new Literals());
-			}
-		}
-	}
+	/**
+	 * The estimated fraction of the records of a literal kept by a constant, when there are no statistics
+	 */
+	public static final double CONSTANT_SELECTIVITY = 0.1;
 	
-	private class Literals extends ArrayList<ILiteral> implements Comparable<Literals> {
-		/**
-		 * serialVersionUID
-		 */
-		private static final long serialVersionUID = 182805402714142508L;
-		
-		private Integer score = 0;
-		
-		public Literals() {
-			super();
-		}
+	private Configuration configuration = null;
+	
+	/**
+	 * The join order, the number of cartesian joins and the estimated cost of a set of literals
+	 */
+	private class Plan {
+		private List<ILiteral> literals = new ArrayList<ILiteral>();
+		private Set<IVariable> variables = new HashSet<IVariable>();
+		private int cartesians = 0;
+		private double cardinality = 0;
+		private double cost = 0;
 		
-		public Literals(Collection<ILiteral> collection) {
-			addAll(collection);
+		private boolean isCheaperThan(Plan plan) {
+			if (plan == null) {
+				return true;
+			}
+			if (cartesians != plan.cartesians) {
+				return cartesians < plan.cartesians;
+			}
+			return cost < plan.cost;
 		}
 		
 		/* (non-Javadoc)
-		 * @see java.util.AbstractCollection#toString()
+		 * @see java.lang.Object#toString()
 		 */
 		@Override
 		public String toString() {
-			return "score:" + score + super.toString();
+			return "cartesians:" + cartesians + ",cost:" + cost + literals;
 		}
+	}
+	
+	/**
+	 * Creates an optimizer without statistics, only the variables of the literals are used
+	 */
+	public JoinOptimizer() {
+	}
+	
+	/**
+	 * Creates an optimizer using the records count of the predicates, when predicate indexing is enabled
+	 * 
+	 * @param configuration the configuration
+	 */
+	public JoinOptimizer(Configuration configuration) {
+		this.configuration = configuration;
+	}
 
-		/* (non-Javadoc)
-		 * @see java.lang.Comparable#compareTo(java.lang.Object)
-		 */
-		@Override
-		public int compareTo(Literals o) {
-			return -(score.compareTo(o.score));
+	/*
+	 * Reads the records count of the predicates, empty if no statistics are available
+	 */
+	private Map<String, Long> readPredicateCounts() {
+		Map<String, Long> predicateCounts = new HashMap<String, Long>();
+		if (configuration == null || !configuration.doPredicateIndexing || configuration.hadoopConfiguration == null) {
+			return predicateCounts;
 		}
-		
+		for (PredicateData predicateData : new DistributedFileSystemManager(configuration).getPredicateData()) {
+			predicateCounts.put(predicateData.getValue(), predicateData.getCount());
+		}
+		return predicateCounts;
 	}
-
-	private List<IVariable> commonVariables(List<IVariable> variables1, List<IVariable> variables2) {
-		List<IVariable> result = new ArrayList<IVariable>();
-		for (int i = 0; i < variables1.size(); i++) {
-			IVariable variable1 = variables1.get(i);
-			if (variables2.contains(variable1)) {
-				result.add(variable1);
+	
+	/*
+	 * Estimates the number of records of a literal from the statistics of the columnar storage, null if there are no statistics
+	 */
+	private Long estimateFromStatistics(ILiteral literal) {
+		if (configuration == null || !configuration.doColumnarStorage || configuration.hadoopConfiguration == null) {
+			return null;
+		}
+		IPredicate predicate = literal.getAtom().getPredicate();
+		if (predicate.getPredicateSymbol().equals(LiteralFields.RIF_HAS_VALUE)) {
+			return null;
+		}
+		//the positions of the constants in the stored tuples, same as for the fields of the literal
+		Map<Integer, Writable> constants = new HashMap<Integer, Writable>();
+		constants.put(0, WritableFactory.fromPredicate(configuration, predicate));
+		ITuple tuple = literal.getAtom().getTuple();
+		for (int i = 0; i < tuple.size(); i++) {
+			ITerm term = tuple.get(i);
+			if (term instanceof IVariable) {
+				continue;
 			}
+			if (!(term instanceof IIri) && !(term instanceof IStringTerm)) {
+				return null;
+			}
+			constants.put(i + 1, WritableFactory.fromTerm(configuration, term));
 		}
-		return result;
+		return new DistributedFileSystemManager(configuration).estimateCount(predicate, constants);
 	}
-
-	private LiteralsList findPath(int depth, ILiteral literal, List<ILiteral> processedLiterals) {
-		List<IVariable> variables = new ArrayList<IVariable>();
-		List<ILiteral> aProcessedLiterals = new ArrayList<ILiteral>(processedLiterals);
-		if (literal != null) {
-			variables = TermMatchingAndSubstitution.getVariables(literal.getAtom().getTuple(), true);
-			aProcessedLiterals.add(literal);
+	
+	/*
+	 * Estimates the number of records of a literal
+	 */
+	private double estimateCardinality(ILiteral literal, Map<String, Long> predicateCounts, double totalCount) {
+		Long estimate = estimateFromStatistics(literal);
+		if (estimate != null) {
+			return Math.max(estimate, 1);
 		}
+		Long count = predicateCounts.get(literal.getAtom().getPredicate().getPredicateSymbol());
+		double cardinality = (count != null) ? count : totalCount;
+		for (ITerm term : literal.getAtom().getTuple()) {
+			if (term.isGround()) {
+				cardinality *= CONSTANT_SELECTIVITY;
+			}
+		}
+		return Math.max(cardinality, 1);
+	}
+	
+	/*
+	 * Joins a new literal to a plan
+	 */
+	private Plan join(Plan plan, ILiteral literal, double literalCardinality) {
+		List<IVariable> variables = TermMatchingAndSubstitution.getVariables(literal.getAtom().getTuple(), true);
 		
-		LiteralsList theLiteralsList = new LiteralsList();
-		
-		boolean hadLiteralsToProcess = false;
-		Literals theLiterals = new Literals(literals);
-		theLiterals.removeAll(aProcessedLiterals);
-		for (Iterator<ILiteral> literalIterator = theLiterals.iterator(); literalIterator.hasNext();) {
-			int aDepth = depth;
-			ILiteral aLiteral = literalIterator.next();
-			List<Literals> literalsList = null;
-			int aScore = 0;
-			if (literal == null) {
-				literalsList = findPath(aDepth - 1, aLiteral, aProcessedLiterals);
+		Plan aPlan = new Plan();
+		aPlan.literals.addAll(plan.literals);
+		aPlan.literals.add(literal);
+		aPlan.variables.addAll(plan.variables);
+		aPlan.variables.addAll(variables);
+		aPlan.cartesians = plan.cartesians;
+		if (plan.literals.isEmpty()) {
+			aPlan.cardinality = literalCardinality;
+		} else {
+			boolean hasCommonVariables = false;
+			for (IVariable variable : variables) {
+				if (plan.variables.contains(variable)) {
+					hasCommonVariables = true;
+					break;
+				}
+			}
+			if (hasCommonVariables) {
+				//same estimation as for the streams count in the rule compiler
+				aPlan.cardinality = Math.min(plan.cardinality, literalCardinality);
 			} else {
-				IAtom aAtom = aLiteral.getAtom();
-				ITuple aTuple = aAtom.getTuple();
-				
-				List<IVariable> aVariables = TermMatchingAndSubstitution.getVariables(aTuple, true);
-				
-				List<IVariable> commonVariables = commonVariables(variables, aVariables);
-				
-				int commonVariablesNb = commonVariables.size();
-				
-				aScore += commonVariablesNb > 0 ? (commonVariablesNb * depth) : -depth;
-				
-				literalsList = findPath(aDepth - 1, aLiteral, aProcessedLiterals);
+				aPlan.cartesians++;
+				aPlan.cardinality = plan.cardinality * literalCardinality;
+			}
+		}
+		aPlan.cost = plan.cost + literalCardinality + aPlan.cardinality;
+		return aPlan;
+	}
+	
+	/*
+	 * Finds the cheapest join order for the literals
+	 */
+	private Plan findPlan(List<ILiteral> literals, double[] cardinalities) {
+		int size = literals.size();
+		if (size > MAX_DP_LITERALS) {
+			//greedy, join each time the cheapest literal
+			Plan plan = new Plan();
+			List<Integer> remaining = new ArrayList<Integer>();
+			for (int i = 0; i < size; i++) {
+				remaining.add(i);
 			}
-			for (Literals literals : literalsList) {
-				logger.info("depth : " + aDepth + ", processed literals : " + aProcessedLiterals + ", literal : " + aLiteral + ", score : " + aScore + ", total score : " + (literals.score + aScore));
-				literals.add(0, aLiteral);
-				literals.score += aScore;
+			while (!remaining.isEmpty()) {
+				Plan best = null;
+				Integer bestIndex = null;
+				for (Integer index : remaining) {
+					Plan aPlan = join(plan, literals.get(index), cardinalities[index]);
+					if (aPlan.isCheaperThan(best)) {
+						best = aPlan;
+						bestIndex = index;
+					}
+				}
+				plan = best;
+				remaining.remove(bestIndex);
 			}
-			
-			theLiteralsList.addAll(literalsList);
-			
-			hadLiteralsToProcess = !literalsList.isEmpty();
+			return plan;
 		}
-		if (!hadLiteralsToProcess) {
-			return new LiteralsList(1);
-		} else {
-			Collections.sort(theLiteralsList);
-			return theLiteralsList;
+		
+		Plan[] plans = new Plan[1 << size];
+		plans[0] = new Plan();
+		for (int set = 0; set < plans.length; set++) {
+			if (plans[set] == null) {
+				continue;
+			}
+			for (int i = 0; i < size; i++) {
+				if ((set & (1 << i)) != 0) {
+					continue;
+				}
+				int aSet = set | (1 << i);
+				Plan aPlan = join(plans[set], literals.get(i), cardinalities[i]);
+				if (aPlan.isCheaperThan(plans[aSet])) {
+					plans[aSet] = aPlan;
+				}
+			}
 		}
+		return plans[plans.length - 1];
 	}
 	
 	/* (non-Javadoc)
@@ -169,15 +261,36 @@ public class JoinOptimizer implements IRuleOptimiser {
 	public IRule optimise(IRule rule) {
 		logger.info("optimize rule : " + rule);
 		
-		IRule aRule = null;
-		literals = rule.getBody();
-		List<Literals> resultLiterals = findPath(literals.size(), null, new ArrayList<ILiteral>());
-		if (!resultLiterals.isEmpty()) {
-			logger.info("results : " + resultLiterals);
-			//TODO pick from the to score rules the one having on the left side the predicates with 
-			//fewer counts to filter most of the data from the beginning of the rule evaluation
-			aRule = BasicFactory.getInstance().createRule(rule.getHead(), resultLiterals.get(0));
+		//only the positive ordinary literals are reordered, the others are kept at the end where all their variables are bound
+		List<ILiteral> literals = new ArrayList<ILiteral>();
+		List<ILiteral> otherLiterals = new ArrayList<ILiteral>();
+		for (ILiteral literal : rule.getBody()) {
+			if (literal.isPositive() && !literal.getAtom().isBuiltin()) {
+				literals.add(literal);
+			} else {
+				otherLiterals.add(literal);
+			}
+		}
+		
+		Map<String, Long> predicateCounts = readPredicateCounts();
+		double totalCount = 1;
+		if (!predicateCounts.isEmpty()) {
+			totalCount = 0;
+			for (Long count : predicateCounts.values()) {
+				totalCount += count;
+			}
+		}
+		double[] cardinalities = new double[literals.size()];
+		for (int i = 0; i < literals.size(); i++) {
+			cardinalities[i] = estimateCardinality(literals.get(i), predicateCounts, totalCount);
 		}
+		
+		Plan plan = findPlan(literals, cardinalities);
+		logger.info("plan : " + plan);
+		
+		List<ILiteral> body = new ArrayList<ILiteral>(plan.literals);
+		body.addAll(otherLiterals);
+		IRule aRule = BasicFactory.getInstance().createRule(rule.getHead(), body);
 
 		logger.info("optimized rule : " + aRule);
 		
@@ -75,8 +75,13 @@ public class DependencyMinimizingStratifier implements IRuleStratifier {
 	public List<List<IRule>> stratify(List<IRule> rules) {		
 		String methodName = "stratify(List<IRule>)";
 		
+		//nothing to order, a single rule is a stratum of its own, no rules have no strata
 		if(rules.size() < 2) {
-			throw new IllegalArgumentException("Cannot order less than 2 rules...");
+			List<List<IRule>> result = new ArrayList<List<IRule>>();
+			if(!rules.isEmpty()) {
+				result.add(new ArrayList<IRule>(rules));
+			}
+			return result;
 		}
 		
 		predicateGraph = graphFactory.createPredicateGraph(rules);	
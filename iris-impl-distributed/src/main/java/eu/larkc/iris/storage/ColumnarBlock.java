@@ -0,0 +1,497 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.apache.hadoop.util.hash.Hash;
+
+import cascading.tuple.Tuple;
+
+/**
+ * A block of tuples stored by columns, the format of the files written with {@link ColumnarScheme}.
+ * <p>
+ * A file starts with {@link #MAGIC} followed by the blocks. Each block has a header with the number of rows and, 
+ * for each column, the minimum and the maximum value, the number of distinct values and a bloom filter of the values, 
+ * followed by the deflate compressed columns.
+ * Each column is stored as a dictionary of its distinct values followed by the run lengths of the dictionary indexes, 
+ * so a column with the same value on all the rows (the predicate of a predicate location) is stored once per block.
+ * The header is not compressed, so a block can be skipped only by reading its statistics.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class ColumnarBlock {
+
+	/**
+	 * The first bytes of a columnar file
+	 */
+	public static final byte[] MAGIC = new byte[] {'I', 'R', 'I', 'S', 'C', 'O', 'L', '1'};
+	
+	/**
+	 * The maximum number of rows in a block
+	 */
+	public static final int MAX_ROWS = 64 * 1024;
+	
+	//the size of the bloom filters, about 2% false positives
+	private static final int BLOOM_BITS_PER_VALUE = 8;
+	private static final int BLOOM_HASH_COUNT = 5;
+	
+	private int rows = 0;
+	
+	//the values of the block, by column, each as dictionary indexes
+	private List<Object[]> dictionaries = new ArrayList<Object[]>();
+	private List<int[]> columns = new ArrayList<int[]>();
+	
+	//the statistics of the columns, null for the columns with values which can not be compared
+	private List<Comparable<Object>> minimums = new ArrayList<Comparable<Object>>();
+	private List<Comparable<Object>> maximums = new ArrayList<Comparable<Object>>();
+	
+	private ColumnarBlock() {}
+	
+	/**
+	 * Creates a block from a list of tuples of the same size
+	 * 
+	 * @param tuples the tuples
+	 * @return the block
+	 */
+	public static ColumnarBlock fromTuples(List<Tuple> tuples) {
+		ColumnarBlock block = new ColumnarBlock();
+		block.rows = tuples.size();
+		int columnsCount = tuples.isEmpty() ? 0 : tuples.get(0).size();
+		for (int c = 0; c < columnsCount; c++) {
+			Map<Object, Integer> dictionary = new HashMap<Object, Integer>();
+			List<Object> values = new ArrayList<Object>();
+			int[] column = new int[block.rows];
+			for (int r = 0; r < block.rows; r++) {
+				Object value = tuples.get(r).get(c);
+				Integer index = dictionary.get(value);
+				if (index == null) {
+					index = values.size();
+					dictionary.put(value, index);
+					values.add(value);
+				}
+				column[r] = index;
+			}
+			block.dictionaries.add(values.toArray());
+			block.columns.add(column);
+			block.computeStatistics(c);
+		}
+		return block;
+	}
+	
+	/*
+	 * computes the minimum and maximum of a column, if all its values are of the same comparable class
+	 */
+	@SuppressWarnings("unchecked")
+	private void computeStatistics(int column) {
+		Object[] dictionary = dictionaries.get(column);
+		Comparable<Object> minimum = null;
+		Comparable<Object> maximum = null;
+		for (Object value : dictionary) {
+			if (!(value instanceof Comparable) || value.getClass() != dictionary[0].getClass()) {
+				minimum = null;
+				maximum = null;
+				break;
+			}
+			Comparable<Object> comparable = (Comparable<Object>) value;
+			if (minimum == null || comparable.compareTo(minimum) < 0) {
+				minimum = comparable;
+			}
+			if (maximum == null || comparable.compareTo(maximum) > 0) {
+				maximum = comparable;
+			}
+		}
+		minimums.add(minimum);
+		maximums.add(maximum);
+	}
+	
+	public int getRows() {
+		return rows;
+	}
+	
+	/**
+	 * Returns the tuple at a row of the block
+	 * 
+	 * @param row the row
+	 * @return the tuple
+	 */
+	public Tuple getTuple(int row) {
+		Tuple tuple = new Tuple();
+		getValues(row, Tuple.elements(tuple));
+		return tuple;
+	}
+	
+	/**
+	 * Adds the values at a row of the block to a list, used to fill a reused tuple
+	 * 
+	 * @param row the row
+	 * @param values the list where the values are added
+	 */
+	public void getValues(int row, List<Object> values) {
+		for (int c = 0; c < columns.size(); c++) {
+			values.add(dictionaries.get(c)[columns.get(c)[row]]);
+		}
+	}
+	
+	/**
+	 * Writes the block
+	 * 
+	 * @param out the output
+	 * @throws IOException
+	 */
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, rows);
+		WritableUtils.writeVInt(out, columns.size());
+		for (int c = 0; c < columns.size(); c++) {
+			boolean hasStatistics = minimums.get(c) != null;
+			out.writeBoolean(hasStatistics);
+			if (hasStatistics) {
+				Text.writeString(out, minimums.get(c).getClass().getName());
+				writeValue(out, minimums.get(c));
+				writeValue(out, maximums.get(c));
+			}
+			Object[] dictionary = dictionaries.get(c);
+			WritableUtils.writeVInt(out, dictionary.length);
+			//with one value the range is enough
+			if (dictionary.length > 1) {
+				DataOutputBuffer bloomFilter = new DataOutputBuffer();
+				createBloomFilter(dictionary).write(bloomFilter);
+				WritableUtils.writeVInt(out, bloomFilter.getLength());
+				out.write(bloomFilter.getData(), 0, bloomFilter.getLength());
+			}
+		}
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream body = new DataOutputStream(new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_SPEED)));
+		for (int c = 0; c < columns.size(); c++) {
+			writeColumn(body, dictionaries.get(c), columns.get(c));
+		}
+		body.close();
+		WritableUtils.writeVInt(out, bytes.size());
+		out.write(bytes.toByteArray());
+	}
+	
+	/*
+	 * creates a bloom filter with the distinct values of a column
+	 */
+	private BloomFilter createBloomFilter(Object[] dictionary) throws IOException {
+		BloomFilter bloomFilter = new BloomFilter(Math.max(64, dictionary.length * BLOOM_BITS_PER_VALUE), BLOOM_HASH_COUNT, Hash.MURMUR_HASH);
+		for (Object value : dictionary) {
+			bloomFilter.add(getKey(value));
+		}
+		return bloomFilter;
+	}
+	
+	/*
+	 * the key of a value in the bloom filters, its serialized bytes
+	 */
+	private static Key getKey(Object value) throws IOException {
+		DataOutputBuffer buffer = new DataOutputBuffer();
+		Text.writeString(buffer, value.getClass().getName());
+		if (!(value instanceof Writable)) {
+			throw new IOException("only writable values can be stored, not " + value.getClass().getName());
+		}
+		((Writable) value).write(buffer);
+		return new Key(Arrays.copyOf(buffer.getData(), buffer.getLength()));
+	}
+	
+	/*
+	 * writes a column as its dictionary and the run lengths of the dictionary indexes
+	 */
+	private void writeColumn(DataOutput out, Object[] dictionary, int[] column) throws IOException {
+		Map<Class<?>, Integer> classes = new HashMap<Class<?>, Integer>();
+		List<Class<?>> classesList = new ArrayList<Class<?>>();
+		for (Object value : dictionary) {
+			if (!classes.containsKey(value.getClass())) {
+				classes.put(value.getClass(), classesList.size());
+				classesList.add(value.getClass());
+			}
+		}
+		WritableUtils.writeVInt(out, classesList.size());
+		for (Class<?> aClass : classesList) {
+			Text.writeString(out, aClass.getName());
+		}
+		WritableUtils.writeVInt(out, dictionary.length);
+		for (Object value : dictionary) {
+			WritableUtils.writeVInt(out, classes.get(value.getClass()));
+			writeValue(out, value);
+		}
+		
+		List<int[]> runs = new ArrayList<int[]>();
+		for (int r = 0; r < column.length; r++) {
+			if (!runs.isEmpty() && runs.get(runs.size() - 1)[1] == column[r]) {
+				runs.get(runs.size() - 1)[0]++;
+			} else {
+				runs.add(new int[] {1, column[r]});
+			}
+		}
+		WritableUtils.writeVInt(out, runs.size());
+		for (int[] run : runs) {
+			WritableUtils.writeVInt(out, run[0]);
+			WritableUtils.writeVInt(out, run[1]);
+		}
+	}
+	
+	private void writeValue(DataOutput out, Object value) throws IOException {
+		if (!(value instanceof Writable)) {
+			throw new IOException("only writable values can be stored, not " + value.getClass().getName());
+		}
+		((Writable) value).write(out);
+	}
+	
+	/**
+	 * Reads the header of the next block, returns null at the end of the input
+	 * 
+	 * @param in the input
+	 * @return the header or null if there are no more blocks
+	 * @throws IOException
+	 */
+	public static Header readHeader(DataInputStream in) throws IOException {
+		return readHeader(in, true);
+	}
+	
+	/**
+	 * Reads the header of the next block, returns null at the end of the input.
+	 * Without the bloom filters the header takes less memory, but checks the values only by the range of the columns.
+	 * 
+	 * @param in the input
+	 * @param readBloomFilters true to read the bloom filters of the columns, false to skip them
+	 * @return the header or null if there are no more blocks
+	 * @throws IOException
+	 */
+	public static Header readHeader(DataInputStream in, boolean readBloomFilters) throws IOException {
+		int first = in.read();
+		if (first == -1) {
+			return null;
+		}
+		Header header = new Header();
+		//the first byte of the rows count was already read
+		header.rows = readVInt((byte) first, in);
+		int columnsCount = WritableUtils.readVInt(in);
+		for (int c = 0; c < columnsCount; c++) {
+			if (in.readBoolean()) {
+				Class<?> aClass = getClass(Text.readString(in));
+				header.minimums.add(readValue(in, aClass));
+				header.maximums.add(readValue(in, aClass));
+			} else {
+				header.minimums.add(null);
+				header.maximums.add(null);
+			}
+			int distinct = WritableUtils.readVInt(in);
+			header.distincts.add(distinct);
+			if (distinct > 1) {
+				int length = WritableUtils.readVInt(in);
+				if (readBloomFilters) {
+					BloomFilter bloomFilter = new BloomFilter();
+					bloomFilter.readFields(in);
+					header.bloomFilters.add(bloomFilter);
+				} else {
+					WritableUtils.skipFully(in, length);
+					header.bloomFilters.add(null);
+				}
+			} else {
+				header.bloomFilters.add(null);
+			}
+		}
+		header.length = WritableUtils.readVInt(in);
+		return header;
+	}
+	
+	private static int readVInt(byte first, DataInput in) throws IOException {
+		int size = WritableUtils.decodeVIntSize(first);
+		if (size == 1) {
+			return first;
+		}
+		long value = 0;
+		for (int i = 0; i < size - 1; i++) {
+			value = (value << 8) | (in.readByte() & 0xFF);
+		}
+		return (int) (WritableUtils.isNegativeVInt(first) ? (value ^ -1L) : value);
+	}
+	
+	/**
+	 * Reads the columns of a block, after its header
+	 * 
+	 * @param header the header of the block
+	 * @param in the input
+	 * @return the block
+	 * @throws IOException
+	 */
+	public static ColumnarBlock read(Header header, DataInputStream in) throws IOException {
+		byte[] bytes = new byte[header.length];
+		in.readFully(bytes);
+		DataInputStream body = new DataInputStream(new InflaterInputStream(new java.io.ByteArrayInputStream(bytes)));
+		ColumnarBlock block = new ColumnarBlock();
+		block.rows = header.rows;
+		for (int c = 0; c < header.minimums.size(); c++) {
+			int classesCount = WritableUtils.readVInt(body);
+			Class<?>[] classes = new Class<?>[classesCount];
+			for (int i = 0; i < classesCount; i++) {
+				classes[i] = getClass(Text.readString(body));
+			}
+			Object[] dictionary = new Object[WritableUtils.readVInt(body)];
+			for (int i = 0; i < dictionary.length; i++) {
+				dictionary[i] = readValue(body, classes[WritableUtils.readVInt(body)]);
+			}
+			int[] column = new int[header.rows];
+			int runsCount = WritableUtils.readVInt(body);
+			int row = 0;
+			for (int i = 0; i < runsCount; i++) {
+				int length = WritableUtils.readVInt(body);
+				int index = WritableUtils.readVInt(body);
+				for (int j = 0; j < length; j++) {
+					column[row++] = index;
+				}
+			}
+			block.dictionaries.add(dictionary);
+			block.columns.add(column);
+		}
+		body.close();
+		block.minimums.addAll(header.minimums);
+		block.maximums.addAll(header.maximums);
+		return block;
+	}
+	
+	private static Class<?> getClass(String className) throws IOException {
+		try {
+			return Class.forName(className);
+		} catch (ClassNotFoundException e) {
+			throw new IOException("class not found " + className, e);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static Comparable<Object> readValue(DataInput in, Class<?> aClass) throws IOException {
+		//the values are plain writables, they need no configuration, the constructors are cached by the reflection utils
+		Writable value = (Writable) ReflectionUtils.newInstance(aClass, null);
+		value.readFields(in);
+		return (Comparable<Object>) value;
+	}
+	
+	/**
+	 * The header of a block, the statistics of its columns
+	 */
+	public static class Header {
+		private int rows;
+		private int length;
+		private List<Comparable<Object>> minimums = new ArrayList<Comparable<Object>>();
+		private List<Comparable<Object>> maximums = new ArrayList<Comparable<Object>>();
+		private List<Integer> distincts = new ArrayList<Integer>();
+		private List<BloomFilter> bloomFilters = new ArrayList<BloomFilter>();
+		
+		public int getRows() {
+			return rows;
+		}
+		
+		/**
+		 * @param column the column
+		 * @return the number of distinct values of the column in the block
+		 */
+		public int getDistinct(int column) {
+			return distincts.get(column);
+		}
+		
+		/**
+		 * @return the length of the compressed columns which follow the header
+		 */
+		public int getLength() {
+			return length;
+		}
+		
+		/**
+		 * Checks if a column of the block could have a value. 
+		 * 
+		 * @param column the column
+		 * @param value the value
+		 * @return false if the value is out of the range of the column or not in its bloom filter, so it is not in the block
+		 */
+		public boolean mayContain(int column, Object value) {
+			if (column >= minimums.size()) {
+				return true;
+			}
+			if (minimums.get(column) != null && value.getClass() == minimums.get(column).getClass()) {
+				if (minimums.get(column).compareTo(value) > 0 || maximums.get(column).compareTo(value) < 0) {
+					return false;
+				}
+			}
+			BloomFilter bloomFilter = bloomFilters.get(column);
+			if (bloomFilter == null || !(value instanceof Writable)) {
+				return true;
+			}
+			try {
+				return bloomFilter.membershipTest(getKey(value));
+			} catch (IOException e) {
+				return true;
+			}
+		}
+		
+		/**
+		 * Checks if the block could have rows with all the constants
+		 * 
+		 * @param constants the constants, by column
+		 * @return false if at least one of the constants is not in the block
+		 */
+		public boolean mayContain(Map<Integer, ? extends Object> constants) {
+			for (Map.Entry<Integer, ? extends Object> constant : constants.entrySet()) {
+				if (!mayContain(constant.getKey(), constant.getValue())) {
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		/**
+		 * Estimates the number of rows of the block having all the constants, 
+		 * assuming the values of a column are uniformly distributed and the columns are independent
+		 * 
+		 * @param constants the constants, by column
+		 * @return the estimated number of rows
+		 */
+		public double estimateRows(Map<Integer, ? extends Object> constants) {
+			if (!mayContain(constants)) {
+				return 0;
+			}
+			double estimate = rows;
+			for (Integer column : constants.keySet()) {
+				if (column < distincts.size()) {
+					estimate /= Math.max(1, distincts.get(column));
+				}
+			}
+			return estimate;
+		}
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.SequenceFileRecordReader;
+import org.apache.hadoop.util.ReflectionUtils;
+import org.apache.hadoop.util.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An InputFormat reading the tuples of columnar files, see {@link ColumnarBlock}.
+ * The files are not split, a file is read by one task. When the tuples are filtered by constants the files 
+ * whose block statistics do not contain the constants are not read at all, no task is created for them.
+ * The files which are not columnar are read as sequence files, so data stored before 
+ * the columnar storage was enabled can still be read.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+@SuppressWarnings("rawtypes")
+public class ColumnarInputFormat extends FileInputFormat {
+
+	private static final Logger logger = LoggerFactory.getLogger(ColumnarInputFormat.class);
+	
+	private static final String CONSTANTS = "eu.larkc.iris.columnar.constants";
+	
+	private static final String SEPARATOR = ",";
+	
+	/**
+	 * Sets the constants the tuples are filtered by, the blocks which do not contain them are skipped.
+	 * Cascading (1.2) has no way to push a filter down to the scheme, so the constants are passed in the job configuration.
+	 * 
+	 * @param jobConf the configuration of the job
+	 * @param constants the constants, by their position in the tuple
+	 * @throws IOException
+	 */
+	public static void setConstants(JobConf jobConf, Map<Integer, Writable> constants) throws IOException {
+		StringBuilder value = new StringBuilder();
+		for (Map.Entry<Integer, Writable> constant : constants.entrySet()) {
+			DataOutputBuffer buffer = new DataOutputBuffer();
+			constant.getValue().write(buffer);
+			if (value.length() > 0) {
+				value.append(SEPARATOR);
+			}
+			value.append(constant.getKey()).append(SEPARATOR).append(constant.getValue().getClass().getName()).append(SEPARATOR)
+				.append(StringUtils.byteToHexString(Arrays.copyOf(buffer.getData(), buffer.getLength())));
+		}
+		jobConf.set(CONSTANTS, value.toString());
+	}
+	
+	/*
+	 * returns the constants the tuples are filtered by
+	 */
+	private static Map<Integer, Object> getConstants(JobConf jobConf) throws IOException {
+		Map<Integer, Object> constants = new HashMap<Integer, Object>();
+		String value = jobConf.get(CONSTANTS, "");
+		if (value.isEmpty()) {
+			return constants;
+		}
+		String[] values = value.split(SEPARATOR);
+		for (int i = 0; i + 2 < values.length; i += 3) {
+			try {
+				Writable constant = (Writable) ReflectionUtils.newInstance(Class.forName(values[i + 1]), jobConf);
+				byte[] bytes = StringUtils.hexStringToByte(values[i + 2]);
+				DataInputBuffer buffer = new DataInputBuffer();
+				buffer.reset(bytes, bytes.length);
+				constant.readFields(buffer);
+				constants.put(Integer.valueOf(values[i]), constant);
+			} catch (Exception e) {
+				throw new IOException("can not read the constant " + values[i + 1], e);
+			}
+		}
+		return constants;
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.apache.hadoop.mapred.FileInputFormat#listStatus(org.apache.hadoop.mapred.JobConf)
+	 */
+	@Override
+	protected FileStatus[] listStatus(JobConf job) throws IOException {
+		FileStatus[] files = super.listStatus(job);
+		Map<Integer, Object> constants = getConstants(job);
+		if (constants.isEmpty()) {
+			return files;
+		}
+		List<FileStatus> selectedFiles = new ArrayList<FileStatus>();
+		for (FileStatus file : files) {
+			if (file.isDirectory() || ColumnarStatistics.mayContain(file.getPath().getFileSystem(job), file.getPath(), constants)) {
+				selectedFiles.add(file);
+			}
+		}
+		if (selectedFiles.size() < files.length) {
+			logger.info("skipped " + (files.length - selectedFiles.size()) + " of " + files.length + " files not containing " + constants);
+		}
+		return selectedFiles.toArray(new FileStatus[selectedFiles.size()]);
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.apache.hadoop.mapred.FileInputFormat#isSplitable(org.apache.hadoop.fs.FileSystem, org.apache.hadoop.fs.Path)
+	 */
+	@Override
+	protected boolean isSplitable(FileSystem fs, Path filename) {
+		return false;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.hadoop.mapred.FileInputFormat#getRecordReader(org.apache.hadoop.mapred.InputSplit, org.apache.hadoop.mapred.JobConf, org.apache.hadoop.mapred.Reporter)
+	 */
+	@Override
+	public RecordReader getRecordReader(InputSplit split, JobConf job, Reporter reporter) throws IOException {
+		FileSplit fileSplit = (FileSplit) split;
+		Path path = fileSplit.getPath();
+		FileSystem fs = path.getFileSystem(job);
+		FSDataInputStream in = fs.open(path);
+		byte[] magic = new byte[ColumnarBlock.MAGIC.length];
+		boolean columnar = true;
+		try {
+			in.readFully(magic);
+			columnar = Arrays.equals(magic, ColumnarBlock.MAGIC);
+		} catch (java.io.EOFException e) {
+			columnar = false;
+		}
+		if (!columnar) {
+			in.close();
+			return new SequenceFileRecordReader(job, fileSplit);
+		}
+		return new ColumnarRecordReader(in, fs.getFileStatus(path).getLen(), getConstants(job));
+	}
+}
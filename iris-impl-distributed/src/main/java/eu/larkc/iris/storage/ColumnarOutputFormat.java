@@ -0,0 +1,46 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.storage;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapred.FileOutputFormat;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.util.Progressable;
+
+import cascading.tuple.Tuple;
+
+/**
+ * An OutputFormat writing the tuples to columnar files, see {@link ColumnarBlock}
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class ColumnarOutputFormat extends FileOutputFormat<Tuple, Tuple> {
+
+	/* (non-Javadoc)
+	 * @see org.apache.hadoop.mapred.FileOutputFormat#getRecordWriter(org.apache.hadoop.fs.FileSystem, org.apache.hadoop.mapred.JobConf, java.lang.String, org.apache.hadoop.util.Progressable)
+	 */
+	@Override
+	public RecordWriter<Tuple, Tuple> getRecordWriter(FileSystem ignored, JobConf job, String name, Progressable progress) throws IOException {
+		Path file = FileOutputFormat.getTaskOutputPath(job, name);
+		FileSystem fs = file.getFileSystem(job);
+		return new ColumnarRecordWriter(fs.create(file, progress));
+	}
+}
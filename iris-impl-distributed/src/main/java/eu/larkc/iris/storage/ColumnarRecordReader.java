@@ -0,0 +1,120 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.storage;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapred.RecordReader;
+
+import cascading.tuple.Tuple;
+
+/**
+ * Reads the tuples of a columnar file. The blocks whose statistics show they do not contain 
+ * the expected constants are skipped without being decompressed.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class ColumnarRecordReader implements RecordReader<LongWritable, Tuple> {
+
+	private FSDataInputStream in;
+	private long length;
+	
+	//the constants the tuples are filtered by, by their position
+	private Map<Integer, Object> constants;
+	
+	private ColumnarBlock block = null;
+	private int row = 0;
+	
+	private long rowNumber = 0;
+	
+	/**
+	 * @param in the input, positioned after the magic bytes
+	 * @param length the length of the file
+	 * @param constants the constants the tuples are filtered by, by their position
+	 */
+	public ColumnarRecordReader(FSDataInputStream in, long length, Map<Integer, Object> constants) {
+		this.in = in;
+		this.length = length;
+		this.constants = constants;
+	}
+	
+	/*
+	 * reads the next block which could contain the constants, returns false at the end of the file
+	 */
+	private boolean nextBlock() throws IOException {
+		while (true) {
+			ColumnarBlock.Header header = ColumnarBlock.readHeader(in);
+			if (header == null) {
+				return false;
+			}
+			if (header.mayContain(constants)) {
+				block = ColumnarBlock.read(header, in);
+				row = 0;
+				return true;
+			}
+			WritableUtils.skipFully(in, header.getLength());
+		}
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.apache.hadoop.mapred.RecordReader#next(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public boolean next(LongWritable key, Tuple value) throws IOException {
+		while (block == null || row >= block.getRows()) {
+			if (!nextBlock()) {
+				return false;
+			}
+		}
+		//the tuple may be marked unmodifiable by the tap reading it, same as the sequence file deserializer the elements are replaced directly
+		List<Object> elements = Tuple.elements(value);
+		elements.clear();
+		block.getValues(row++, elements);
+		key.set(rowNumber++);
+		return true;
+	}
+
+	@Override
+	public LongWritable createKey() {
+		return new LongWritable();
+	}
+
+	@Override
+	public Tuple createValue() {
+		return new Tuple();
+	}
+
+	@Override
+	public long getPos() throws IOException {
+		return in.getPos();
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	@Override
+	public float getProgress() throws IOException {
+		return length == 0 ? 1.0f : Math.min(1.0f, in.getPos() / (float) length);
+	}
+}
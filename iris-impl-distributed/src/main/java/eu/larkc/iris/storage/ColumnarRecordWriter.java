@@ -0,0 +1,73 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.storage;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.mapred.RecordWriter;
+import org.apache.hadoop.mapred.Reporter;
+
+import cascading.tuple.Tuple;
+
+/**
+ * Writes the tuples to a columnar file, in blocks of at most {@code ColumnarBlock.MAX_ROWS} tuples.
+ * Only the values are written, the keys are ignored.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class ColumnarRecordWriter implements RecordWriter<Tuple, Tuple> {
+
+	private DataOutputStream out;
+	
+	private List<Tuple> tuples = new ArrayList<Tuple>();
+	
+	public ColumnarRecordWriter(DataOutputStream out) throws IOException {
+		this.out = out;
+		out.write(ColumnarBlock.MAGIC);
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.apache.hadoop.mapred.RecordWriter#write(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public void write(Tuple key, Tuple value) throws IOException {
+		tuples.add(new Tuple(value));
+		if (tuples.size() >= ColumnarBlock.MAX_ROWS) {
+			writeBlock();
+		}
+	}
+
+	private void writeBlock() throws IOException {
+		if (tuples.isEmpty()) {
+			return;
+		}
+		ColumnarBlock.fromTuples(tuples).write(out);
+		tuples.clear();
+	}
+	
+	/* (non-Javadoc)
+	 * @see org.apache.hadoop.mapred.RecordWriter#close(org.apache.hadoop.mapred.Reporter)
+	 */
+	@Override
+	public void close(Reporter reporter) throws IOException {
+		writeBlock();
+		out.close();
+	}
+}
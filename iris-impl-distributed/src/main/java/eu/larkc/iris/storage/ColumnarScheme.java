@@ -0,0 +1,116 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.storage;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.OutputCollector;
+
+import cascading.scheme.Scheme;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.Tuples;
+
+/**
+ * Scheme storing the facts by columns, in compressed blocks with the statistics of their columns, see {@link ColumnarBlock}.
+ * When the scheme is created with constants, the blocks which do not contain them are skipped when reading.
+ * The tuples of the blocks which are read are not filtered, a {@code ConstantFilter} is still needed.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class ColumnarScheme extends Scheme {
+
+	/**
+	 * serialVersionUID
+	 */
+	private static final long serialVersionUID = -4286421830571385123L;
+
+	//the constants the blocks are filtered by, by their position in the tuple
+	private HashMap<Integer, Writable> constants = new HashMap<Integer, Writable>();
+	
+	public ColumnarScheme(Fields fields) {
+		super(fields, fields);
+	}
+	
+	/**
+	 * @param fields the fields
+	 * @param constants the constants the blocks are filtered by, by their position in the tuple
+	 */
+	public ColumnarScheme(Fields fields, Map<Integer, Writable> constants) {
+		this(fields);
+		this.constants.putAll(constants);
+	}
+	
+	/* (non-Javadoc)
+	 * @see cascading.scheme.Scheme#sourceInit(cascading.tap.Tap, org.apache.hadoop.mapred.JobConf)
+	 */
+	@Override
+	public void sourceInit(Tap tap, JobConf conf) throws IOException {
+		conf.setInputFormat(ColumnarInputFormat.class);
+		ColumnarInputFormat.setConstants(conf, constants);
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.scheme.Scheme#sinkInit(cascading.tap.Tap, org.apache.hadoop.mapred.JobConf)
+	 */
+	@Override
+	public void sinkInit(Tap tap, JobConf conf) throws IOException {
+		conf.setOutputKeyClass(Tuple.class);
+		conf.setOutputValueClass(Tuple.class);
+		conf.setOutputFormat(ColumnarOutputFormat.class);
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.scheme.Scheme#source(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public Tuple source(Object key, Object value) {
+		return (Tuple) value;
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.scheme.Scheme#sink(cascading.tuple.TupleEntry, org.apache.hadoop.mapred.OutputCollector)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public void sink(TupleEntry tupleEntry, OutputCollector outputCollector) throws IOException {
+		Tuple result = getSinkFields() != null ? tupleEntry.selectTuple(getSinkFields()) : tupleEntry.getTuple();
+		outputCollector.collect(Tuples.NULL, result);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof ColumnarScheme)) {
+			return false;
+		}
+		ColumnarScheme rhs = (ColumnarScheme) obj;
+		return new EqualsBuilder().appendSuper(super.equals(obj)).append(constants, rhs.constants).isEquals();
+	}
+
+	@Override
+	public int hashCode() {
+		return new HashCodeBuilder().appendSuper(super.hashCode()).append(constants).toHashCode();
+	}
+}
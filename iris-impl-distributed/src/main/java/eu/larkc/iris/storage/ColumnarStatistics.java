@@ -0,0 +1,172 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.storage;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Reads the statistics kept in the block headers of the columnar files, see {@link ColumnarBlock}.
+ * They are used to skip the files which do not contain the constants of a literal and to estimate 
+ * the number of records of a literal with constants.
+ * The headers read for the estimations are kept without their bloom filters, until the file changes.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class ColumnarStatistics {
+
+	private class FileHeaders {
+		private long modificationTime;
+		private long length;
+		private List<ColumnarBlock.Header> headers;
+	}
+	
+	private Map<Path, FileHeaders> cache = new HashMap<Path, FileHeaders>();
+	
+	/**
+	 * Reads the headers of the blocks of a file, skipping the compressed columns
+	 * 
+	 * @param fs the file system
+	 * @param path the path of the file
+	 * @param readBloomFilters true to read also the bloom filters of the columns
+	 * @return the headers or null if the file is not a columnar file
+	 * @throws IOException
+	 */
+	public static List<ColumnarBlock.Header> readHeaders(FileSystem fs, Path path, boolean readBloomFilters) throws IOException {
+		FSDataInputStream in = fs.open(path);
+		try {
+			byte[] magic = new byte[ColumnarBlock.MAGIC.length];
+			try {
+				in.readFully(magic);
+			} catch (EOFException e) {
+				return null;
+			}
+			if (!Arrays.equals(magic, ColumnarBlock.MAGIC)) {
+				return null;
+			}
+			List<ColumnarBlock.Header> headers = new ArrayList<ColumnarBlock.Header>();
+			ColumnarBlock.Header header = null;
+			while ((header = ColumnarBlock.readHeader(in, readBloomFilters)) != null) {
+				headers.add(header);
+				WritableUtils.skipFully(in, header.getLength());
+			}
+			return headers;
+		} finally {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Checks if a file could have rows with all the constants
+	 * 
+	 * @param fs the file system
+	 * @param path the path of the file
+	 * @param constants the constants, by column
+	 * @return false if no block of the file contains the constants, true otherwise or if the file is not a columnar file
+	 * @throws IOException
+	 */
+	public static boolean mayContain(FileSystem fs, Path path, Map<Integer, ? extends Object> constants) throws IOException {
+		List<ColumnarBlock.Header> headers = readHeaders(fs, path, true);
+		if (headers == null) {
+			return true;
+		}
+		for (ColumnarBlock.Header header : headers) {
+			if (header.mayContain(constants)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Estimates the number of records with all the constants, stored in the files under some paths
+	 * 
+	 * @param configuration the hadoop configuration
+	 * @param paths the paths, files or folders searched recursively
+	 * @param constants the constants, by column
+	 * @return the estimated number of records, null if some of the files are not columnar files so there are no statistics
+	 * @throws IOException
+	 */
+	public synchronized Long estimateCount(Configuration configuration, List<String> paths, Map<Integer, Writable> constants) throws IOException {
+		double estimate = 0;
+		for (String path : paths) {
+			Path aPath = new Path(path);
+			FileSystem fs = aPath.getFileSystem(configuration);
+			if (!fs.exists(aPath)) {
+				continue;
+			}
+			for (FileStatus fileStatus : listFiles(fs, aPath)) {
+				List<ColumnarBlock.Header> headers = getHeaders(fs, fileStatus);
+				if (headers == null) {
+					return null;
+				}
+				for (ColumnarBlock.Header header : headers) {
+					estimate += header.estimateRows(constants);
+				}
+			}
+		}
+		return (long) Math.ceil(estimate);
+	}
+	
+	/*
+	 * returns the headers of a file, read again only if the file was changed
+	 */
+	private List<ColumnarBlock.Header> getHeaders(FileSystem fs, FileStatus fileStatus) throws IOException {
+		FileHeaders fileHeaders = cache.get(fileStatus.getPath());
+		if (fileHeaders == null || fileHeaders.modificationTime != fileStatus.getModificationTime() 
+				|| fileHeaders.length != fileStatus.getLen()) {
+			fileHeaders = new FileHeaders();
+			fileHeaders.modificationTime = fileStatus.getModificationTime();
+			fileHeaders.length = fileStatus.getLen();
+			fileHeaders.headers = readHeaders(fs, fileStatus.getPath(), false);
+			cache.put(fileStatus.getPath(), fileHeaders);
+		}
+		return fileHeaders.headers;
+	}
+	
+	/*
+	 * lists recursively the data files under a path, the hidden files (starting with _ or .) are ignored
+	 */
+	private List<FileStatus> listFiles(FileSystem fs, Path path) throws IOException {
+		List<FileStatus> files = new ArrayList<FileStatus>();
+		for (FileStatus fileStatus : fs.listStatus(path)) {
+			String name = fileStatus.getPath().getName();
+			if (name.startsWith("_") || name.startsWith(".")) {
+				continue;
+			}
+			if (fileStatus.isDirectory()) {
+				files.addAll(listFiles(fs, fileStatus.getPath()));
+			} else {
+				files.add(fileStatus);
+			}
+		}
+		return files;
+	}
+}
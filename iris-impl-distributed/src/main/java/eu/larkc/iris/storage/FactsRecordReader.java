@@ -32,7 +32,7 @@ public class FactsRecordReader<T extends AtomRecord> implements RecordReader<Lon
 	private JobConf job;
 	private InputSplit split;
 
-	private long pos = 0;
+	protected long pos = 0;
 	protected FactsStorage factsStorage;
 
 	public FactsRecordReader(InputSplit split, Class<T> inputClass, JobConf job) {
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.storage;
+
+import java.io.Serializable;
+import java.util.Comparator;
+
+import cascading.tuple.Hasher;
+import cascading.tuple.StreamComparator;
+import cascading.tuple.hadoop.BufferedInputStream;
+
+/**
+ * Comparator for the {@code LongTermWritable} ids, comparing the serialized longs without deserializing them.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class LongTermComparator implements StreamComparator<BufferedInputStream>, Hasher<Object>, Comparator<Object>, Serializable {
+
+	/**
+	 * serialVersionUID
+	 */
+	private static final long serialVersionUID = 3155727375337719466L;
+
+	/* (non-Javadoc)
+	 * @see cascading.tuple.StreamComparator#compare(java.io.InputStream, java.io.InputStream)
+	 */
+	@Override
+	public int compare(BufferedInputStream lhsStream, BufferedInputStream rhsStream) {
+		long lhs = readLong(lhsStream.getBuffer(), lhsStream.getPosition());
+		long rhs = readLong(rhsStream.getBuffer(), rhsStream.getPosition());
+		
+		//move the streams after the ids
+		lhsStream.skip(8);
+		rhsStream.skip(8);
+		
+		return (lhs < rhs) ? -1 : ((lhs == rhs) ? 0 : 1);
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public int compare(Object lhs, Object rhs) {
+		return ((Comparable<Object>) lhs).compareTo(rhs);
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.tuple.Hasher#hashCode(java.lang.Object)
+	 */
+	@Override
+	public int hashCode(Object value) {
+		long id = ((LongTermWritable) value).getId();
+		return UTFTermComparator.mix((int) (id ^ (id >>> 32)));
+	}
+	
+	static long readLong(byte[] buffer, int position) {
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | (buffer[position + i] & 0xFF);
+		}
+		return value;
+	}
+}
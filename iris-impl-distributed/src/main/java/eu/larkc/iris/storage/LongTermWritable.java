@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.commons.lang.builder.EqualsBuilder;
+import org.apache.commons.lang.builder.HashCodeBuilder;
+
+/**
+ * A term encoded by the terms dictionary into a long id.
+ * Used instead of {@code IRIWritable} and {@code StringTermWritable} when term encoding is enabled, 
+ * to have small keys on the joins and sorts of the rules evaluation.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class LongTermWritable extends eu.larkc.iris.storage.WritableComparable {
+
+	/**
+	 * serialVersionUID
+	 */
+	private static final long serialVersionUID = 5207484718376525513L;
+
+	private long id;
+	
+	public LongTermWritable() {
+	}
+	
+	public LongTermWritable(long id) {
+		this.id = id;
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public void setId(long id) {
+		this.id = id;
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.larkc.iris.storage.WritableComparable#compareTo(eu.larkc.iris.storage.WritableComparable)
+	 */
+	@Override
+	public int compareTo(WritableComparable o) {
+		if (!(o instanceof LongTermWritable)) {
+			return super.compareTo(o);
+		}
+		long otherId = ((LongTermWritable) o).id;
+		return (id < otherId) ? -1 : ((id == otherId) ? 0 : 1);
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.larkc.iris.storage.WritableComparable#getCompareValue()
+	 */
+	@Override
+	protected String getCompareValue() {
+		return String.valueOf(id);
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		out.writeLong(id);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		id = in.readLong();
+	}
+	
+	public static LongTermWritable read(DataInput in) throws IOException {
+		LongTermWritable longTermWritable = new LongTermWritable();
+		longTermWritable.id = in.readLong();
+		return longTermWritable;
+	}
+
+	@Override
+	public String toString() {
+		return "id[" + id + "]";
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (!(obj instanceof LongTermWritable)) {
+			return false;
+		}
+		LongTermWritable i = (LongTermWritable) obj;
+		return new EqualsBuilder().append(id, i.id).isEquals();
+	}
+
+	@Override
+	public int hashCode() {
+		return new HashCodeBuilder().append(id).hashCode();
+	}
+
+}
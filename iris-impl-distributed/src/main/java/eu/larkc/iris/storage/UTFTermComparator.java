@@ -0,0 +1,109 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.storage;
+
+import java.io.Serializable;
+import java.util.Comparator;
+
+import cascading.tuple.Hasher;
+import cascading.tuple.StreamComparator;
+import cascading.tuple.hadoop.BufferedInputStream;
+
+/**
+ * Comparator for the terms serialized with {@code writeUTF} ({@code IRIWritable} and {@code StringTermWritable}).
+ * The serialized terms are compared byte by byte, without deserializing them, the order of the modified UTF-8 bytes 
+ * being the same as the order of the strings.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class UTFTermComparator implements StreamComparator<BufferedInputStream>, Hasher<Object>, Comparator<Object>, Serializable {
+
+	/**
+	 * serialVersionUID
+	 */
+	private static final long serialVersionUID = -6393950127006003457L;
+
+	/* (non-Javadoc)
+	 * @see cascading.tuple.StreamComparator#compare(java.io.InputStream, java.io.InputStream)
+	 */
+	@Override
+	public int compare(BufferedInputStream lhsStream, BufferedInputStream rhsStream) {
+		byte[] lhsBuffer = lhsStream.getBuffer();
+		int lhsPosition = lhsStream.getPosition();
+		byte[] rhsBuffer = rhsStream.getBuffer();
+		int rhsPosition = rhsStream.getPosition();
+		
+		//the length of the UTF bytes is written on the first two bytes
+		int lhsLength = readUnsignedShort(lhsBuffer, lhsPosition);
+		int rhsLength = readUnsignedShort(rhsBuffer, rhsPosition);
+		
+		int result = compareBytes(lhsBuffer, lhsPosition + 2, lhsLength, rhsBuffer, rhsPosition + 2, rhsLength);
+		
+		//move the streams after the terms
+		lhsStream.skip(2 + lhsLength);
+		rhsStream.skip(2 + rhsLength);
+		
+		return result;
+	}
+
+	/* (non-Javadoc)
+	 * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public int compare(Object lhs, Object rhs) {
+		return ((Comparable<Object>) lhs).compareTo(rhs);
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.tuple.Hasher#hashCode(java.lang.Object)
+	 */
+	@Override
+	public int hashCode(Object value) {
+		String term = ((WritableComparable) value).getCompareValue();
+		return mix(term == null ? 0 : term.hashCode());
+	}
+	
+	/*
+	 * Spreads the bits of the string hash code, the IRIs sharing long prefixes have poor low bits.
+	 * Only depends on the value, so the partitioning is the same on every JVM
+	 */
+	static int mix(int hash) {
+		hash ^= (hash >>> 16);
+		hash *= 0x85ebca6b;
+		hash ^= (hash >>> 13);
+		hash *= 0xc2b2ae35;
+		hash ^= (hash >>> 16);
+		return hash;
+	}
+	
+	static int readUnsignedShort(byte[] buffer, int position) {
+		return ((buffer[position] & 0xFF) << 8) | (buffer[position + 1] & 0xFF);
+	}
+	
+	static int compareBytes(byte[] lhsBuffer, int lhsStart, int lhsLength, byte[] rhsBuffer, int rhsStart, int rhsLength) {
+		int length = Math.min(lhsLength, rhsLength);
+		for (int i = 0; i < length; i++) {
+			int lhsByte = lhsBuffer[lhsStart + i] & 0xFF;
+			int rhsByte = rhsBuffer[rhsStart + i] & 0xFF;
+			if (lhsByte != rhsByte) {
+				return lhsByte - rhsByte;
+			}
+		}
+		return lhsLength - rhsLength;
+	}
+}
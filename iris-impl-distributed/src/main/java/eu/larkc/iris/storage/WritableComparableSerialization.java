@@ -0,0 +1,55 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.storage;
+
+import java.util.Comparator;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.serializer.WritableSerialization;
+
+import cascading.tuple.Comparison;
+
+/**
+ * Hadoop serialization for the terms writables, providing the raw comparators used by cascading 
+ * to sort and group the tuples without deserializing the terms.
+ * Must be registered in {@code io.serializations} before the default {@code WritableSerialization}.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class WritableComparableSerialization extends WritableSerialization implements Comparison<Writable> {
+
+	/* (non-Javadoc)
+	 * @see org.apache.hadoop.io.serializer.WritableSerialization#accept(java.lang.Class)
+	 */
+	@Override
+	public boolean accept(Class<?> c) {
+		return WritableComparable.class.isAssignableFrom(c);
+	}
+
+	/* (non-Javadoc)
+	 * @see cascading.tuple.Comparison#getComparator(java.lang.Class)
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Override
+	public Comparator<Writable> getComparator(Class<Writable> type) {
+		if (LongTermWritable.class.isAssignableFrom(type)) {
+			return (Comparator) new LongTermComparator();
+		}
+		return (Comparator) new UTFTermComparator();
+	}
+
+}
@@ -17,9 +17,26 @@ package eu.larkc.iris.storage;
 
 import org.apache.hadoop.io.WritableComparable;
 import org.deri.iris.api.basics.IPredicate;
+import org.deri.iris.api.terms.IConcreteTerm;
 import org.deri.iris.api.terms.IStringTerm;
 import org.deri.iris.api.terms.ITerm;
+import org.deri.iris.api.terms.concrete.IDecimalTerm;
+import org.deri.iris.api.terms.concrete.IDoubleTerm;
+import org.deri.iris.api.terms.concrete.IFloatTerm;
+import org.deri.iris.api.terms.concrete.IIntTerm;
+import org.deri.iris.api.terms.concrete.IIntegerTerm;
 import org.deri.iris.api.terms.concrete.IIri;
+import org.deri.iris.api.terms.concrete.ILongTerm;
+import org.deri.iris.builtins.datatype.ToBooleanBuiltin;
+import org.deri.iris.builtins.datatype.ToDecimalBuiltin;
+import org.deri.iris.builtins.datatype.ToDoubleBuiltin;
+import org.deri.iris.builtins.datatype.ToFloatBuiltin;
+import org.deri.iris.builtins.datatype.ToIntBuiltin;
+import org.deri.iris.builtins.datatype.ToIntegerBuiltin;
+import org.deri.iris.builtins.datatype.ToLongBuiltin;
+import org.deri.iris.factory.Factory;
+
+import eu.larkc.iris.Configuration;
 
 /**
  * @author valer
@@ -27,19 +44,168 @@ import org.deri.iris.api.terms.concrete.IIri;
  */
 public class WritableFactory {
 
+	private static final String LITERAL_QUOTE = "\"";
+	private static final String DATATYPE_SEPARATOR = "^^";
+	private static final String BOOLEAN_DATATYPE_URI = "http://www.w3.org/2001/XMLSchema#boolean";
+
+	/**
+	 * Creates the writable for a term. The typed terms (numbers, booleans...) are kept as literals 
+	 * with their datatype, in the form they are imported from n-triples ("5"^^&lt;xsd:integer&gt;).
+	 * 
+	 * @param term the term
+	 * @return the writable, null if the term is not a concrete term
+	 */
 	@SuppressWarnings("rawtypes")
 	public static WritableComparable fromTerm(ITerm term) {
 		if (term instanceof IIri) {
 			return new IRIWritable((IIri) term);
 		} else if (term instanceof IStringTerm) {
 			return new StringTermWritable((IStringTerm) term);
+		} else if (term instanceof IConcreteTerm) {
+			IConcreteTerm concreteTerm = (IConcreteTerm) term;
+			StringTermWritable literal = new StringTermWritable();
+			literal.setValue(LITERAL_QUOTE + escape(concreteTerm.toCanonicalString()) + LITERAL_QUOTE 
+					+ DATATYPE_SEPARATOR + "<" + concreteTerm.getDatatypeIRI() + ">");
+			return literal;
 		}
 		return null;
 	}
 
+	/**
+	 * Creates the term of a writable, the reverse of {@link #fromTerm(ITerm)}. A literal with one of the numeric 
+	 * or the boolean datatypes is converted to the typed term, so it can be used by the built-ins. 
+	 * Any other literal, with or without language tag or datatype, is kept as a string term with the text of the literal.
+	 * 
+	 * @param writable the writable
+	 * @return the term
+	 * @throws IllegalArgumentException if the writable is an encoded term
+	 */
+	public static ITerm toTerm(Object writable) {
+		if (writable instanceof IRIWritable) {
+			return Factory.CONCRETE.createIri(((IRIWritable) writable).getValue());
+		} else if (writable instanceof StringTermWritable) {
+			String value = ((StringTermWritable) writable).getValue();
+			int datatypeIndex = value.lastIndexOf(LITERAL_QUOTE + DATATYPE_SEPARATOR + "<");
+			if (!value.startsWith(LITERAL_QUOTE) || datatypeIndex <= 0 || !value.endsWith(">")) {
+				return Factory.TERM.createString(value);
+			}
+			IStringTerm lexical = Factory.TERM.createString(unescape(value.substring(1, datatypeIndex)));
+			String datatype = value.substring(datatypeIndex + 4, value.length() - 1);
+			ITerm term = toTypedTerm(lexical, datatype);
+			//an unknown datatype or a lexical form not valid for the datatype is kept as text
+			return (term != null) ? term : Factory.TERM.createString(value);
+		}
+		throw new IllegalArgumentException("Can not create a term from " + writable);
+	}
+
 	@SuppressWarnings("rawtypes")
 	public static WritableComparable fromPredicate(IPredicate predicate) {
 		return new IRIWritable(predicate);
 	}
 
+	/**
+	 * Creates the writable for a term as stored in the facts, encoded to its id if term encoding is enabled
+	 * 
+	 * @param configuration the configuration
+	 * @param term the term
+	 * @return the writable
+	 */
+	@SuppressWarnings("rawtypes")
+	public static WritableComparable fromTerm(Configuration configuration, ITerm term) {
+		return encode(configuration, fromTerm(term));
+	}
+
+	/**
+	 * Creates the writable for a predicate as stored in the facts, encoded to its id if term encoding is enabled
+	 * 
+	 * @param configuration the configuration
+	 * @param predicate the predicate
+	 * @return the writable
+	 */
+	@SuppressWarnings("rawtypes")
+	public static WritableComparable fromPredicate(Configuration configuration, IPredicate predicate) {
+		return encode(configuration, fromPredicate(predicate));
+	}
+	
+	@SuppressWarnings("rawtypes")
+	private static WritableComparable encode(Configuration configuration, WritableComparable writable) {
+		if (!configuration.doTermEncoding || writable == null) {
+			return writable;
+		}
+		return configuration.termDictionary.getId((eu.larkc.iris.storage.WritableComparable) writable);
+	}
+
+	/*
+	 * converts the lexical form of a literal to a term of the datatype, null if the datatype is not supported
+	 */
+	private static ITerm toTypedTerm(IStringTerm lexical, String datatype) {
+		try {
+			if (datatype.equals(IIntegerTerm.DATATYPE_URI)) {
+				return ToIntegerBuiltin.toInteger(lexical);
+			} else if (datatype.equals(IIntTerm.DATATYPE_URI)) {
+				return ToIntBuiltin.toInt(lexical);
+			} else if (datatype.equals(ILongTerm.DATATYPE_URI)) {
+				return ToLongBuiltin.toLong(lexical);
+			} else if (datatype.equals(IDecimalTerm.DATATYPE_URI)) {
+				return ToDecimalBuiltin.toDecimal(lexical);
+			} else if (datatype.equals(IDoubleTerm.DATATYPE_URI)) {
+				return ToDoubleBuiltin.toDouble(lexical);
+			} else if (datatype.equals(IFloatTerm.DATATYPE_URI)) {
+				return ToFloatBuiltin.toFloat(lexical);
+			} else if (datatype.equals(BOOLEAN_DATATYPE_URI)) {
+				return ToBooleanBuiltin.toBoolean(lexical);
+			}
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		return null;
+	}
+
+	/*
+	 * escapes the lexical form of a n-triples literal
+	 */
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+
+	/*
+	 * unescapes the lexical form of a n-triples literal
+	 */
+	private static String unescape(String value) {
+		if (value.indexOf('\\') < 0) {
+			return value;
+		}
+		StringBuilder unescaped = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c != '\\' || i == value.length() - 1) {
+				unescaped.append(c);
+				continue;
+			}
+			c = value.charAt(++i);
+			switch (c) {
+			case 't':
+				unescaped.append('\t');
+				break;
+			case 'n':
+				unescaped.append('\n');
+				break;
+			case 'r':
+				unescaped.append('\r');
+				break;
+			case 'u':
+				unescaped.append((char) Integer.parseInt(value.substring(i + 1, i + 5), 16));
+				i += 4;
+				break;
+			case 'U':
+				unescaped.appendCodePoint(Integer.parseInt(value.substring(i + 1, i + 9), 16));
+				i += 8;
+				break;
+			default:
+				unescaped.append(c);
+			}
+		}
+		return unescaped.toString();
+	}
+
 }
@@ -16,28 +16,50 @@
 
 package eu.larkc.iris.storage.rdf;
 
+import java.io.IOException;
+
 import org.apache.hadoop.mapred.InputSplit;
 import org.apache.hadoop.mapred.JobConf;
 import org.ontoware.rdf2go.model.ModelSet;
 
+import cascading.tuple.Tuple;
 import eu.larkc.iris.storage.AtomRecord;
 import eu.larkc.iris.storage.FactsConfigurationFactory;
-import eu.larkc.iris.storage.FactsInputSplit;
 import eu.larkc.iris.storage.FactsRecordReader;
-import eu.larkc.iris.storage.IFactsConfiguration;
 
 public class RdfFactsRecordReader<LongWritable, T extends AtomRecord> extends FactsRecordReader<T> {
 	
 	public RdfFactsRecordReader(InputSplit split, Class<T> inputClass, JobConf job) {
 		super(split, inputClass, job);
 		
-		FactsInputSplit factsInputSplit = (FactsInputSplit) split;
+		RdfInputSplit rdfInputSplit = (RdfInputSplit) split;
 		factsStorage = new RdfStorage();
 		RdfFactsConfiguration rdfFactsConfiguration = (RdfFactsConfiguration) FactsConfigurationFactory.getFactsConfiguration(job);
 		ModelSet modelSet = rdfFactsConfiguration.getModelSet(true);
 		((RdfStorage) factsStorage).setModel(modelSet);
-		((RdfStorage) factsStorage).setPredicateFilter(job.get(IFactsConfiguration.PREDICATE_FILTER));
-		((RdfStorage) factsStorage).setLimit(factsInputSplit.getLimit());
-		((RdfStorage) factsStorage).setOffset(factsInputSplit.getOffset());
+		((RdfStorage) factsStorage).setPredicates(rdfInputSplit.getPredicates());
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.larkc.iris.storage.FactsRecordReader#next(org.apache.hadoop.io.LongWritable, eu.larkc.iris.storage.AtomRecord)
+	 */
+	@Override
+	public boolean next(org.apache.hadoop.io.LongWritable key, T value) throws IOException {
+		//the statements are converted directly to writables, no atoms are created
+		Tuple tuple = ((RdfStorage) factsStorage).nextTuple();
+		if (tuple == null) {
+			return false;
+		}
+		value.setTuple(tuple);
+		pos++;
+		return true;
+	}
+
+	/* (non-Javadoc)
+	 * @see eu.larkc.iris.storage.FactsRecordReader#close()
+	 */
+	@Override
+	public void close() throws IOException {
+		((RdfStorage) factsStorage).close();
 	}
 }
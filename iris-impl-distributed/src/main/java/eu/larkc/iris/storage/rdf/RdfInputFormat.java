@@ -17,21 +17,152 @@
 package eu.larkc.iris.storage.rdf;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringTokenizer;
 
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.mapred.InputSplit;
 import org.apache.hadoop.mapred.JobConf;
 import org.apache.hadoop.mapred.RecordReader;
 import org.apache.hadoop.mapred.Reporter;
+import org.ontoware.aifbcommons.collection.ClosableIterator;
 import org.ontoware.rdf2go.model.ModelSet;
+import org.ontoware.rdf2go.model.QueryRow;
+import org.ontoware.rdf2go.model.node.Variable;
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import eu.larkc.iris.storage.AtomRecord;
 import eu.larkc.iris.storage.FactsConfigurationFactory;
 import eu.larkc.iris.storage.FactsInputFormat;
-import eu.larkc.iris.storage.FactsInputSplit;
+import eu.larkc.iris.storage.IFactsConfiguration;
 
+/**
+ * Splits the statements of a RDF repository by predicate.
+ * The predicates are distributed in groups of about the same number of statements and each group is a split, 
+ * so each predicate is read once, with its own cursor, independently of the other splits.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
 public class RdfInputFormat<T extends AtomRecord> extends FactsInputFormat<T> {
 
+	private static final Logger logger = LoggerFactory.getLogger(RdfInputFormat.class);
+	
+	/**
+	 * The number of statements targeted for a split. The statements of a predicate are not divided, 
+	 * a predicate with more statements is read by a split of its own.
+	 */
+	public static long RECORDS_PER_SPLIT = 1000000;
+	
+	@Override
+	public InputSplit[] getSplits(JobConf job, int numSplits)
+			throws IOException {
+		Map<String, Long> predicateCounts = getPredicateCounts(job);
+		if (predicateCounts.isEmpty()) {
+			logger.info("returning 0 splits, no predicates");
+			return new RdfInputSplit[0];
+		}
+		long size = 0;
+		for (Long count : predicateCounts.values()) {
+			size += count;
+		}
+		int nbSplits = (int) Math.max(1, (size + RECORDS_PER_SPLIT - 1) / RECORDS_PER_SPLIT);
+		List<RdfInputSplit> splits = groupPredicates(predicateCounts, Math.min(nbSplits, predicateCounts.size()));
+		
+		logger.info("returning " + splits.size() + " splits for " + predicateCounts.size() + " predicates with " + size + " statements");
+		return splits.toArray(new RdfInputSplit[0]);
+	}
+	
+	/**
+	 * Distributes the predicates in groups with about the same number of statements, 
+	 * the predicates with the most statements first, each one to the group with the least statements so far.
+	 * 
+	 * @param predicateCounts the number of statements of each predicate
+	 * @param groups the number of groups
+	 * @return a split for each group with predicates
+	 */
+	static List<RdfInputSplit> groupPredicates(Map<String, Long> predicateCounts, int groups) {
+		List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(predicateCounts.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+			@Override
+			public int compare(Map.Entry<String, Long> entry1, Map.Entry<String, Long> entry2) {
+				return entry2.getValue().compareTo(entry1.getValue());
+			}
+		});
+		List<List<String>> predicateGroups = new ArrayList<List<String>>();
+		long[] groupCounts = new long[groups];
+		for (int i = 0; i < groups; i++) {
+			predicateGroups.add(new ArrayList<String>());
+		}
+		for (Map.Entry<String, Long> entry : entries) {
+			int smallest = 0;
+			for (int i = 1; i < groups; i++) {
+				if (groupCounts[i] < groupCounts[smallest]) {
+					smallest = i;
+				}
+			}
+			predicateGroups.get(smallest).add(entry.getKey());
+			groupCounts[smallest] += entry.getValue();
+		}
+		
+		List<RdfInputSplit> splits = new ArrayList<RdfInputSplit>();
+		for (int i = 0; i < groups; i++) {
+			if (!predicateGroups.get(i).isEmpty()) {
+				splits.add(new RdfInputSplit(predicateGroups.get(i).toArray(new String[0]), groupCounts[i]));
+			}
+		}
+		return splits;
+	}
+	
+	/**
+	 * Returns the number of statements of each predicate to import, the ones of the predicate filter or all the predicates of the repository
+	 * 
+	 * @param jobConf the job configuration
+	 * @return the number of statements by predicate
+	 */
+	private Map<String, Long> getPredicateCounts(JobConf jobConf) {
+		RdfFactsConfiguration rdfFactsConfiguration = (RdfFactsConfiguration) FactsConfigurationFactory.getFactsConfiguration(jobConf);
+		ModelSet modelSet = rdfFactsConfiguration.getModelSet(true);
+		if (!modelSet.isOpen()) {
+			modelSet.open();
+		}
+		
+		List<String> predicates = new ArrayList<String>();
+		String predicateFilter = jobConf.get(IFactsConfiguration.PREDICATE_FILTER);
+		if (predicateFilter != null && !"".equals(predicateFilter)) {
+			StringTokenizer st = new StringTokenizer(predicateFilter, ",");
+			while (st.hasMoreTokens()) {
+				predicates.add(st.nextToken());
+			}
+		} else {
+			ClosableIterator<QueryRow> rows = modelSet.sparqlSelect("SELECT DISTINCT ?p WHERE {?s ?p ?o}").iterator();
+			while (rows.hasNext()) {
+				predicates.add(rows.next().getValue("p").toString());
+			}
+			rows.close();
+		}
+		
+		Map<String, Long> predicateCounts = new LinkedHashMap<String, Long>();
+		for (String predicate : predicates) {
+			long count = modelSet.countStatements(modelSet.createQuadPattern(Variable.ANY, Variable.ANY, new URIImpl(predicate), Variable.ANY));
+			if (count > 0) {
+				predicateCounts.put(predicate, count);
+			}
+		}
+		
+		if (modelSet.isOpen()) {
+			modelSet.close();
+		}
+		return predicateCounts;
+	}
+
 	@Override
 	public long getTotalSize(JobConf jobConf) {
 		RdfFactsConfiguration rdfFactsConfiguration = (RdfFactsConfiguration) FactsConfigurationFactory.getFactsConfiguration(jobConf);
@@ -55,7 +186,7 @@ public class RdfInputFormat<T extends AtomRecord> extends FactsInputFormat<T> {
 	public RecordReader<LongWritable, T> getRecordReader(InputSplit split,
 			JobConf job, Reporter reporter) throws IOException {
 		Class inputClass = job.getClass(RdfFactsConfiguration.INPUT_CLASS_PROPERTY, FactsInputFormat.NullAtomWritable.class);
-		return new RdfFactsRecordReader((FactsInputSplit) split, inputClass, job);
+		return new RdfFactsRecordReader(split, inputClass, job);
 	}
 
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.storage.rdf;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapred.InputSplit;
+
+/**
+ * A split of the statements of a RDF repository: all the statements of a group of predicates.
+ * The splits of an import are disjoint, so they can be read concurrently.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class RdfInputSplit implements InputSplit {
+
+	private String[] predicates = new String[0];
+	private long length = 0;
+	
+	public RdfInputSplit() {
+	}
+	
+	/**
+	 * @param predicates the predicates of the statements read by the split
+	 * @param length the number of statements of the split
+	 */
+	public RdfInputSplit(String[] predicates, long length) {
+		this.predicates = predicates;
+		this.length = length;
+	}
+	
+	public String[] getPredicates() {
+		return predicates;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.hadoop.mapred.InputSplit#getLength()
+	 */
+	@Override
+	public long getLength() throws IOException {
+		return length;
+	}
+
+	/* (non-Javadoc)
+	 * @see org.apache.hadoop.mapred.InputSplit#getLocations()
+	 */
+	@Override
+	public String[] getLocations() throws IOException {
+		return new String[] {};
+	}
+
+	@Override
+	public void write(DataOutput out) throws IOException {
+		WritableUtils.writeVInt(out, predicates.length);
+		for (String predicate : predicates) {
+			Text.writeString(out, predicate);
+		}
+		WritableUtils.writeVLong(out, length);
+	}
+
+	@Override
+	public void readFields(DataInput in) throws IOException {
+		predicates = new String[WritableUtils.readVInt(in)];
+		for (int i = 0; i < predicates.length; i++) {
+			predicates[i] = Text.readString(in);
+		}
+		length = WritableUtils.readVLong(in);
+	}
+}
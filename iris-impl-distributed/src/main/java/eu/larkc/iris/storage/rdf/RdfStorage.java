@@ -16,8 +16,6 @@
 
 package eu.larkc.iris.storage.rdf;
 
-import java.util.StringTokenizer;
-
 import org.deri.iris.api.basics.IAtom;
 import org.deri.iris.api.factory.IBasicFactory;
 import org.deri.iris.api.factory.IConcreteFactory;
@@ -29,13 +27,24 @@ import org.deri.iris.terms.concrete.ConcreteFactory;
 import org.ontoware.aifbcommons.collection.ClosableIterator;
 import org.ontoware.rdf2go.model.ModelSet;
 import org.ontoware.rdf2go.model.Statement;
+import org.ontoware.rdf2go.model.node.Node;
 import org.ontoware.rdf2go.model.node.Resource;
+import org.ontoware.rdf2go.model.node.Variable;
+import org.ontoware.rdf2go.model.node.impl.URIImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cascading.tuple.Tuple;
+import eu.larkc.iris.imports.NTriplesParser;
 import eu.larkc.iris.storage.FactsStorage;
+import eu.larkc.iris.storage.IRIWritable;
+import eu.larkc.iris.storage.StringTermWritable;
 
 /**
+ * Reads the statements of a RDF repository for a {@link RdfInputSplit}.
+ * The statements are streamed with one cursor per predicate of the split, each predicate is read once, by one split only. 
+ * Only one statement is kept in memory at a time.
+ * 
  * @author valer
  *
  */
@@ -43,71 +52,111 @@ public class RdfStorage implements FactsStorage {
 
 	private static final Logger logger = LoggerFactory.getLogger(RdfStorage.class);
 	
-	private long limit;
-	private long offset;
+	private static final String BLANK_NODE_PREFIX = "_:";
+	
+	private String[] predicates = new String[0];
 	
 	private ModelSet model;
-	private String predicateFilter;
 
+	//the index of the predicate the cursor is reading
+	private int current = -1;
+	private IRIWritable predicate;
 	private ClosableIterator<Statement> iterator;
 	
-	@Override
-	public IAtom next() {
-		if (!model.isOpen()) {
-			model.open();
-		}
-		if (iterator == null) {
-			StringBuilder sb = new StringBuilder();
-			sb.append(" CONSTRUCT {?s ?p ?o} ");
-			sb.append(" WHERE {?s ?p ?o. ");
-			if (predicateFilter != null && !"".equals(predicateFilter)) {
-				sb.append(" FILTER (");
-				sb.append(" 1 = 0 ");
-				StringTokenizer st = new StringTokenizer(predicateFilter, ",");
-				while (st.hasMoreTokens()) {
-					sb.append(" || ?p = <" + st.nextToken() + "> ");
+	/**
+	 * Returns the next statement of the split as a tuple (predicate, subject, object)
+	 * 
+	 * @return the tuple or null if there are no more statements
+	 */
+	public Tuple nextTuple() {
+		while (true) {
+			if (iterator == null) {
+				if (!openNextPredicate()) {
+					return null;
+				}
+			}
+			while (iterator.hasNext()) {
+				Statement statement = iterator.next();
+				Tuple tuple = new Tuple();
+				tuple.add(predicate);
+				tuple.add(createIri(statement.getSubject().toString()));
+				Node object = statement.getObject();
+				if (object instanceof Resource) {
+					tuple.add(createIri(object.toString()));
+				} else {
+					StringTermWritable literal = new StringTermWritable();
+					literal.setValue(object.toString());
+					tuple.add(literal);
 				}
-				sb.append(")");
+				return tuple;
 			}
-			sb.append("}");
-			sb.append(" LIMIT " + limit + " OFFSET " + offset);
-			logger.info("sparql : " + sb.toString());
-			iterator = model.sparqlConstruct(sb.toString()).iterator();
+			iterator.close();
+			iterator = null;
 		}
-		if (!iterator.hasNext()) {
-			//iterator.close();
+	}
+	
+	private boolean openNextPredicate() {
+		current++;
+		if (current >= predicates.length) {
 			if (model.isOpen()) {
 				model.close();
 			}
-			logger.info("returning null, no more data");
+			return false;
+		}
+		if (!model.isOpen()) {
+			model.open();
+		}
+		predicate = new IRIWritable();
+		predicate.setValue(predicates[current]);
+		logger.info("reading predicate " + predicates[current]);
+		iterator = model.findStatements(Variable.ANY, Variable.ANY, new URIImpl(predicates[current]), Variable.ANY);
+		return true;
+	}
+	
+	private IRIWritable createIri(String value) {
+		IRIWritable iri = new IRIWritable();
+		if (value.startsWith(BLANK_NODE_PREFIX)) {
+			value = NTriplesParser.BLANK_NODE_NAMESPACE + value.substring(BLANK_NODE_PREFIX.length());
+		}
+		iri.setValue(value);
+		return iri;
+	}
+	
+	/* (non-Javadoc)
+	 * @see eu.larkc.iris.storage.FactsStorage#next()
+	 */
+	@Override
+	public IAtom next() {
+		Tuple tuple = nextTuple();
+		if (tuple == null) {
 			return null;
 		}
-		Statement statement = iterator.next();
 		ITermFactory termFactory = TermFactory.getInstance();
 		IBasicFactory basicFactory = BasicFactory.getInstance();
 		IConcreteFactory concreteFactory = ConcreteFactory.getInstance();
 		ITerm object = null;
-		if (statement.getObject() instanceof Resource) {
-			String value = statement.getObject().toString();
-			if (value.startsWith("_:node")) {
-				value = "http://www.w3.org/2011/node#" + value.substring(2);
-			}
-			object = concreteFactory.createIri(value);
+		if (tuple.getObject(2) instanceof IRIWritable) {
+			object = concreteFactory.createIri(((IRIWritable) tuple.getObject(2)).getValue());
 		} else {
-			object = termFactory.createString(statement.getObject().toString());
+			object = termFactory.createString(((StringTermWritable) tuple.getObject(2)).getValue());
 		}
-		String subject = statement.getSubject().toString();
-		if (subject.startsWith("_:node")) {
-			subject = "http://www.w3.org/2011/node#" + subject.substring(2);
+		return basicFactory.createAtom(basicFactory.createPredicate(predicate.getValue(), 2), 
+				basicFactory.createTuple(concreteFactory.createIri(((IRIWritable) tuple.getObject(1)).getValue()), object));
+	}
+
+	/**
+	 * Releases the cursor and the repository connection, if the split was not read to the end
+	 */
+	public void close() {
+		if (iterator != null) {
+			iterator.close();
+			iterator = null;
 		}
-		IAtom atom = basicFactory.createAtom(basicFactory.createPredicate(statement.getPredicate().toString(), 2), 
-				basicFactory.createTuple(concreteFactory.createIri(subject), object));
-		if (logger.isInfoEnabled()) {
-			logger.info("returning atom : " + atom);
+		if (model != null && model.isOpen()) {
+			model.close();
 		}
-		return atom;
 	}
-
+	
 	public ModelSet getModel() {
 		return model;
 	}
@@ -116,28 +165,24 @@ public class RdfStorage implements FactsStorage {
 		this.model = model;
 	}
 
+	@Override
 	public String getPredicateFilter() {
-		return predicateFilter;
-	}
-
-	public void setPredicateFilter(String predicatefilter) {
-		this.predicateFilter = predicatefilter;
-	}
-
-	public long getLimit() {
-		return limit;
+		StringBuilder sb = new StringBuilder();
+		for (String predicate : predicates) {
+			if (sb.length() > 0) {
+				sb.append(",");
+			}
+			sb.append(predicate);
+		}
+		return sb.toString();
 	}
 
-	public void setLimit(long limit) {
-		this.limit = limit;
+	public String[] getPredicates() {
+		return predicates;
 	}
 
-	public long getOffset() {
-		return offset;
+	public void setPredicates(String[] predicates) {
+		this.predicates = predicates;
 	}
 
-	public void setOffset(long offset) {
-		this.offset = offset;
-	}
-	
 }
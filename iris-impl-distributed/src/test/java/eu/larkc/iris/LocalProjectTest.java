@@ -0,0 +1,106 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris;
+
+import java.io.File;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.fs.FileUtil;
+import org.apache.hadoop.io.serializer.WritableSerialization;
+import org.apache.hadoop.mapred.JobConf;
+
+import cascading.flow.MultiMapReducePlanner;
+import eu.larkc.iris.storage.WritableComparableSerialization;
+
+/**
+ * A test on a project of its own in the temporary folder of the local file system, deleted after each test.
+ * The configuration is set up as by {@link Main}, so the flows of the test run with the local job runner.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public abstract class LocalProjectTest extends TestCase {
+
+	protected File project;
+	
+	protected Configuration configuration;
+	
+	public LocalProjectTest(String name) {
+		super(name);
+	}
+	
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		project = createProject(getClass());
+		configuration = createConfiguration(project);
+	}
+	
+	/* (non-Javadoc)
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	@Override
+	protected void tearDown() throws Exception {
+		FileUtil.fullyDelete(project);
+		super.tearDown();
+	}
+	
+	/**
+	 * Returns a new configuration of the project of the test, as for a new evaluation
+	 * 
+	 * @return the configuration
+	 */
+	protected Configuration createConfiguration() {
+		return createConfiguration(project);
+	}
+	
+	/**
+	 * Returns a new project folder for a test, the folder is not created
+	 * 
+	 * @param testClass the class of the test
+	 * @return the project folder
+	 */
+	public static File createProject(Class<?> testClass) {
+		return new File(System.getProperty("java.io.tmpdir"), testClass.getSimpleName() + "_test_" + System.currentTimeMillis());
+	}
+	
+	/**
+	 * Returns a new configuration of a project, with the serializations, the serialization tokens 
+	 * and the recursive input folders set as by {@link Main}
+	 * 
+	 * @param project the project folder
+	 * @return the configuration
+	 */
+	public static Configuration createConfiguration(File project) {
+		Configuration configuration = new Configuration();
+		configuration.project = project.getAbsolutePath();
+		configuration.hadoopConfiguration = new org.apache.hadoop.conf.Configuration();
+		JobConf jobConf = new JobConf(configuration.hadoopConfiguration);
+		jobConf.set("io.serializations", WritableComparableSerialization.class.getName() + "," + WritableSerialization.class.getName());
+		configuration.flowProperties.put("io.serializations", jobConf.get("io.serializations"));
+		jobConf.set("cascading.serialization.tokens", "130=eu.larkc.iris.storage.IRIWritable,131=eu.larkc.iris.storage.StringTermWritable,132=eu.larkc.iris.storage.LongTermWritable");
+		configuration.flowProperties.put("cascading.serialization.tokens", jobConf.get("cascading.serialization.tokens"));
+		//the results of the evaluations are folders under the inferences
+		jobConf.setBoolean("mapred.input.dir.recursive", true);
+		MultiMapReducePlanner.setJobConf(configuration.flowProperties, jobConf);
+		configuration.jobConf = jobConf;
+		return configuration;
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.evaluation;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.deri.iris.api.basics.ITuple;
+import org.deri.iris.api.builtins.IBuiltinAtom;
+import org.deri.iris.api.terms.IVariable;
+import org.deri.iris.factory.Factory;
+
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+import eu.larkc.iris.storage.IRIWritable;
+import eu.larkc.iris.storage.StringTermWritable;
+import eu.larkc.iris.storage.WritableFactory;
+
+/**
+ * Tests the evaluation of built-ins on the stored terms
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class BuiltinEvaluatorTest extends TestCase {
+
+	private IVariable x = Factory.TERM.createVariable("X");
+	private IVariable y = Factory.TERM.createVariable("Y");
+	
+	public BuiltinEvaluatorTest(String name) {
+		super(name);
+	}
+
+	public void testComparison() {
+		IBuiltinAtom less = Factory.BUILTIN.createLess(x, Factory.CONCRETE.createInteger(10));
+		BuiltinEvaluator builtin = new BuiltinEvaluator(less, Arrays.asList(x));
+		BuiltinEvaluator.Instance instance = builtin.create();
+		
+		assertNotNull(builtin.evaluate(instance, entry(literal("\"5\"^^<http://www.w3.org/2001/XMLSchema#integer>"))));
+		assertNull(builtin.evaluate(instance, entry(literal("\"11\"^^<http://www.w3.org/2001/XMLSchema#integer>"))));
+		//not comparable with a number
+		assertNull(builtin.evaluate(instance, entry(new IRIWritable(Factory.CONCRETE.createIri("http://larkc.eu/a")))));
+	}
+
+	public void testComputedVariable() {
+		IBuiltinAtom add = Factory.BUILTIN.createAddBuiltin(x, Factory.CONCRETE.createInteger(1), y);
+		BuiltinEvaluator builtin = new BuiltinEvaluator(add, Arrays.asList(x));
+		BuiltinEvaluator.Instance instance = builtin.create();
+		
+		ITuple result = builtin.evaluate(instance, entry(literal("\"5\"^^<http://www.w3.org/2001/XMLSchema#integer>")));
+		assertEquals(1, result.size());
+		assertEquals(literal("\"6\"^^<http://www.w3.org/2001/XMLSchema#integer>"), WritableFactory.fromTerm(result.get(0)));
+	}
+	
+	private StringTermWritable literal(String value) {
+		StringTermWritable literal = new StringTermWritable();
+		literal.setValue(value);
+		return literal;
+	}
+	
+	private TupleEntry entry(Comparable value) {
+		return new TupleEntry(new Fields("X"), new Tuple(value));
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.evaluation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+import cascading.operation.ConcreteCall;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryCollector;
+
+/**
+ * Tests the spreading of the cross product's sides over the grid of cells
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class CrossProductTileTest extends TestCase {
+
+	public CrossProductTileTest(String name) {
+		super(name);
+	}
+
+	public void testEachPairMeetsInOneCell() {
+		int rows = 3;
+		int columns = 4;
+		CrossProductTile left = new CrossProductTile(new Fields("LTF"), rows, columns, true);
+		CrossProductTile right = new CrossProductTile(new Fields("RTF"), rows, columns, false);
+		for (int i = 0; i < 20; i++) {
+			List<Integer> leftCells = cells(left, "a" + i);
+			assertEquals(columns, leftCells.size());
+			for (int j = 0; j < 20; j++) {
+				List<Integer> rightCells = cells(right, "b" + j);
+				assertEquals(rows, rightCells.size());
+				rightCells.retainAll(leftCells);
+				assertEquals(1, rightCells.size());
+			}
+		}
+	}
+
+	public void testInvalidGrid() {
+		try {
+			new CrossProductTile(new Fields("LTF"), 0, 4, true);
+			fail("a grid without rows is not valid");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private List<Integer> cells(CrossProductTile tile, String value) {
+		final List<Integer> cells = new ArrayList<Integer>();
+		TupleEntryCollector collector = new TupleEntryCollector(tile.getFieldDeclaration()) {
+			@Override
+			protected void collect(Tuple tuple) {
+				cells.add(tuple.getInteger(0));
+			}
+		};
+		tile.operate(null, new ConcreteCall(new TupleEntry(new Fields("V"), new Tuple(value)), collector));
+		return cells;
+	}
+}
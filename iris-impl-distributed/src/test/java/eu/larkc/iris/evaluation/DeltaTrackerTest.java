@@ -0,0 +1,58 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.evaluation;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the delta paths returned by the {@code DeltaTracker}
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class DeltaTrackerTest extends TestCase {
+
+	public DeltaTrackerTest(String name) {
+		super(name);
+	}
+
+	public void testDeltaSinceVersion() {
+		DeltaTracker deltaTracker = new DeltaTracker();
+		assertEquals(0, deltaTracker.getVersion());
+		
+		long version = deltaTracker.register(null, "inferences/result_1_1_1");
+		deltaTracker.register(null, "inferences/result_1_1_2");
+		
+		assertEquals(2, deltaTracker.getDeltaPaths(null, DeltaTracker.NO_VERSION).size());
+		List<String> paths = deltaTracker.getDeltaPaths(null, version);
+		assertEquals(1, paths.size());
+		assertEquals("inferences/result_1_1_2", paths.get(0));
+		assertTrue(deltaTracker.getDeltaPaths(null, deltaTracker.getVersion()).isEmpty());
+	}
+
+	public void testDeltaPerLocation() {
+		DeltaTracker deltaTracker = new DeltaTracker();
+		deltaTracker.register(1, "inferences/1/result_1_1_1");
+		deltaTracker.register(2, "inferences/2/result_1_1_2");
+		
+		List<String> paths = deltaTracker.getDeltaPaths(2, DeltaTracker.NO_VERSION);
+		assertEquals(1, paths.size());
+		assertEquals("inferences/2/result_1_1_2", paths.get(0));
+		assertEquals(2, deltaTracker.getDeltaPaths(null, DeltaTracker.NO_VERSION).size());
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.evaluation;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.mapreduce.TaskCounter;
+
+import cascading.stats.FlowStats;
+import eu.larkc.iris.LocalProjectTest;
+
+/**
+ * Tests the metrics recorded from the flow statistics and the report of the {@code EvaluationMetrics}
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class EvaluationMetricsTest extends LocalProjectTest {
+
+	private File report;
+	
+	private EvaluationMetrics evaluationMetrics;
+	
+	private FileSystem fileSystem;
+	
+	public EvaluationMetricsTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		evaluationMetrics = new EvaluationMetrics();
+		fileSystem = FileSystem.getLocal(configuration.hadoopConfiguration);
+		report = new File(project, "evaluation_metrics");
+	}
+	
+	/*
+	 * the statistics of a completed flow, with the given counters
+	 */
+	private FlowStats flowStats(final Map<String, Long> counters, final int steps, final long duration) {
+		return new FlowStats("flow", "id") {
+			@Override
+			public long getCounterValue(Enum counter) {
+				return getCounterValue(counter.getDeclaringClass().getName(), counter.name());
+			}
+			
+			@Override
+			public long getCounterValue(String group, String counter) {
+				Long value = counters.get(group + ":" + counter);
+				return (value != null) ? value : 0;
+			}
+			
+			@Override
+			public int getStepsCount() {
+				return steps;
+			}
+			
+			@Override
+			public long getDuration() {
+				return duration;
+			}
+		};
+	}
+	
+	private static String counter(Enum<?> counter) {
+		return counter.getDeclaringClass().getName() + ":" + counter.name();
+	}
+	
+	private EvaluationMetrics.RuleMetrics record(int iteration, String rule, long candidates, long inferences) {
+		Map<String, Long> counters = new HashMap<String, Long>();
+		counters.put(counter(EvaluationCounters.CANDIDATES), candidates);
+		counters.put(counter(EvaluationCounters.INFERENCES), inferences);
+		counters.put(counter(TaskCounter.MAP_INPUT_RECORDS), 100L);
+		counters.put(counter(TaskCounter.REDUCE_INPUT_RECORDS), 50L);
+		counters.put("FileSystemCounters:FILE_BYTES_READ", 4096L);
+		counters.put("FileSystemCounters:FILE_BYTES_WRITTEN", 1024L);
+		return evaluationMetrics.record(new EvaluationContext(1, iteration, 1), rule, "inference_1_" + iteration + "_1", 20, 
+				flowStats(counters, 2, 1000L * iteration), fileSystem);
+	}
+	
+	public void testRecord() {
+		EvaluationMetrics.RuleMetrics ruleMetrics = record(1, "p(?X) :- q(?X).", 40, 10);
+		assertEquals(1, ruleMetrics.getStratum());
+		assertEquals(1, ruleMetrics.getIteration());
+		assertEquals(1, ruleMetrics.getRule());
+		assertEquals(20, ruleMetrics.getPlanningTime());
+		assertEquals(2, ruleMetrics.getJobs());
+		assertEquals(1000, ruleMetrics.getWallTime());
+		assertEquals(100, ruleMetrics.getInputRecords());
+		assertEquals(50, ruleMetrics.getShuffleRecords());
+		//the bytes are counted for the scheme of the file system
+		assertEquals(4096, ruleMetrics.getInputBytes());
+		assertEquals(1024, ruleMetrics.getOutputBytes());
+		assertEquals(40, ruleMetrics.getCandidates());
+		assertEquals(10, ruleMetrics.getInferences());
+		assertEquals(0.75, ruleMetrics.getDuplicatesRatio(), 0.0001);
+		
+		assertSame(ruleMetrics, evaluationMetrics.getMetrics(new EvaluationContext(1, 1, 1)));
+		assertNull(evaluationMetrics.getMetrics(new EvaluationContext(1, 2, 1)));
+		
+		//no tuples produced
+		assertEquals(0, record(2, "p(?X) :- q(?X).", 0, 0).getDuplicatesRatio(), 0);
+		assertEquals(2, evaluationMetrics.getMetrics().size());
+	}
+	
+	public void testReevaluation() {
+		//the dependency aware evaluator evaluates a rule again in the same context, until it derives nothing new
+		EvaluationMetrics.RuleMetrics first = record(1, "p(?X) :- p(?Y), q(?Y, ?X).", 40, 10);
+		EvaluationMetrics.RuleMetrics second = record(1, "p(?X) :- p(?Y), q(?Y, ?X).", 10, 0);
+		assertEquals(1, first.getEvaluation());
+		assertEquals(2, second.getEvaluation());
+		assertEquals(Arrays.asList(first, second), evaluationMetrics.getMetrics());
+		assertSame(second, evaluationMetrics.getMetrics(new EvaluationContext(1, 1, 1)));
+	}
+	
+	public void testCsvReport() throws Exception {
+		record(1, "p(?X) :- q(?X, \"a\").", 40, 10);
+		record(2, "p(?X) :- q(?X, \"a\").", 10, 0);
+		evaluationMetrics.writeReport(configuration.hadoopConfiguration, report.getAbsolutePath());
+		
+		List<String> lines = readReport();
+		assertEquals(3, lines.size());
+		assertEquals("stratum,iteration,rule,evaluation,flow,planningTime,jobs,wallTime,inputBytes,inputRecords,shuffleBytes,shuffleRecords,"
+				+ "outputBytes,outputRecords,candidates,inferences,duplicatesRatio,text", lines.get(0));
+		//the quotes of the rule are doubled
+		assertEquals("1,1,1,1,\"inference_1_1_1\",20,2,1000,4096,100,0,50,1024,0,40,10,0.75,\"p(?X) :- q(?X, \"\"a\"\").\"", lines.get(1));
+		assertTrue(lines.get(2).startsWith("1,2,1,2,\"inference_1_2_1\","));
+	}
+	
+	public void testJsonReport() throws Exception {
+		report = new File(report.getAbsolutePath() + ".json");
+		record(1, "p(?X) :- q(?X, \"a\").", 40, 10);
+		record(2, "p(?X) :- q(?X, \"a\").", 10, 0);
+		evaluationMetrics.writeReport(configuration.hadoopConfiguration, report.getAbsolutePath());
+		
+		List<String> lines = readReport();
+		assertEquals(4, lines.size());
+		assertEquals("[", lines.get(0));
+		assertEquals("{\"stratum\": 1, \"iteration\": 1, \"rule\": 1, \"evaluation\": 1, \"flow\": \"inference_1_1_1\", \"planningTime\": 20, \"jobs\": 2, "
+				+ "\"wallTime\": 1000, \"inputBytes\": 4096, \"inputRecords\": 100, \"shuffleBytes\": 0, \"shuffleRecords\": 50, "
+				+ "\"outputBytes\": 1024, \"outputRecords\": 0, \"candidates\": 40, \"inferences\": 10, \"duplicatesRatio\": 0.75, "
+				+ "\"text\": \"p(?X) :- q(?X, \\\"a\\\").\"},", lines.get(1));
+		assertTrue(lines.get(2).startsWith("{\"stratum\": 1, \"iteration\": 2,"));
+		assertEquals("]", lines.get(3));
+	}
+	
+	private List<String> readReport() throws Exception {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(report), "UTF-8"));
+		String line = null;
+		while ((line = reader.readLine()) != null) {
+			lines.add(line);
+		}
+		reader.close();
+		return lines;
+	}
+}
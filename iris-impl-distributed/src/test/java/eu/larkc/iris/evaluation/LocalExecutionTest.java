@@ -0,0 +1,89 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.evaluation;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.mapred.JobConf;
+import org.deri.iris.factory.Factory;
+
+import eu.larkc.iris.LocalProjectTest;
+import eu.larkc.iris.indexing.PredicateCount;
+import eu.larkc.iris.storage.IRIWritable;
+
+/**
+ * Tests when the flows run in process and that the {@code LocalExecution} restores the configuration
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class LocalExecutionTest extends LocalProjectTest {
+
+	private JobConf jobConf;
+	
+	public LocalExecutionTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		//the job configuration of a cluster
+		jobConf = configuration.jobConf;
+		jobConf.set("mapred.job.tracker", "cluster:8021");
+		jobConf.setNumReduceTasks(8);
+		
+		configuration.doPredicateIndexing = true;
+		configuration.predicateCatalog.addPredicates(Arrays.asList(
+				new PredicateCount(new IRIWritable(Factory.BASIC.createPredicate("p", 2)), 600L), 
+				new PredicateCount(new IRIWritable(Factory.BASIC.createPredicate("q", 2)), 400L)));
+	}
+	
+	public void testIsSmall() {
+		assertFalse(new LocalExecution(configuration).isSmall());
+		configuration.localExecutionThreshold = 1000;
+		assertFalse(new LocalExecution(configuration).isSmall());
+		configuration.localExecutionThreshold = 1001;
+		assertTrue(new LocalExecution(configuration).isSmall());
+		//without predicate indexing the data size is not known
+		configuration.doPredicateIndexing = false;
+		assertFalse(new LocalExecution(configuration).isSmall());
+	}
+	
+	public void testSetupAndTeardown() {
+		Map<Object, Object> flowProperties = new HashMap<Object, Object>(configuration.flowProperties);
+		
+		LocalExecution localExecution = new LocalExecution(configuration);
+		localExecution.setup();
+		assertNotSame(jobConf, configuration.jobConf);
+		assertEquals("local", configuration.jobConf.get("mapred.job.tracker"));
+		assertEquals(1, configuration.jobConf.getNumReduceTasks());
+		assertFalse(flowProperties.equals(configuration.flowProperties));
+		//the job configuration of the cluster is not changed
+		assertEquals("cluster:8021", jobConf.get("mapred.job.tracker"));
+		assertEquals(8, jobConf.getNumReduceTasks());
+		
+		localExecution.teardown();
+		assertSame(jobConf, configuration.jobConf);
+		assertEquals(flowProperties, configuration.flowProperties);
+		
+		//nothing to restore a second time
+		localExecution.teardown();
+		assertSame(jobConf, configuration.jobConf);
+	}
+}
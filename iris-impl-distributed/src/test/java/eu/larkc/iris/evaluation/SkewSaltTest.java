@@ -0,0 +1,91 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.evaluation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import cascading.flow.FlowProcess;
+import cascading.operation.ConcreteCall;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntry;
+import cascading.tuple.TupleEntryCollector;
+
+/**
+ * Tests the assignment of the records of the hot keys to the splits of a skewed join
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class SkewSaltTest extends TestCase {
+
+	private Set<Tuple> hotKeys = new HashSet<Tuple>(Arrays.asList(new Tuple("hot")));
+	
+	public SkewSaltTest(String name) {
+		super(name);
+	}
+
+	public void testSpreadSide() {
+		SkewSalt salt = new SkewSalt(new Fields("LSF"), hotKeys, 3, true);
+		ConcreteCall<int[]> call = new ConcreteCall<int[]>();
+		salt.prepare(FlowProcess.NULL, call);
+		//the records of a hot key go to the splits in turn
+		List<Integer> splits = new ArrayList<Integer>();
+		for (int i = 0; i < 7; i++) {
+			splits.addAll(splits(salt, call, "hot"));
+		}
+		assertEquals(Arrays.asList(0, 1, 2, 0, 1, 2, 0), splits);
+		//the other keys are all in the split 0
+		assertEquals(Arrays.asList(0), splits(salt, call, "cold"));
+	}
+	
+	public void testCopiedSide() {
+		SkewSalt salt = new SkewSalt(new Fields("RSF"), hotKeys, 3, false);
+		ConcreteCall<int[]> call = new ConcreteCall<int[]>();
+		salt.prepare(FlowProcess.NULL, call);
+		assertEquals(Arrays.asList(0, 1, 2), splits(salt, call, "hot"));
+		assertEquals(Arrays.asList(0), splits(salt, call, "cold"));
+	}
+
+	public void testInvalidSplits() {
+		try {
+			new SkewSalt(new Fields("LSF"), hotKeys, 0, true);
+			fail("a hot key needs at least one split");
+		} catch (IllegalArgumentException e) {
+			//expected
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private List<Integer> splits(SkewSalt salt, ConcreteCall<int[]> call, String key) {
+		final List<Integer> splits = new ArrayList<Integer>();
+		TupleEntryCollector collector = new TupleEntryCollector(salt.getFieldDeclaration()) {
+			@Override
+			protected void collect(Tuple tuple) {
+				splits.add(tuple.getInteger(0));
+			}
+		};
+		call.setArguments(new TupleEntry(new Fields("K"), new Tuple(key)));
+		call.setOutputCollector(collector);
+		salt.operate(FlowProcess.NULL, call);
+		return splits;
+	}
+}
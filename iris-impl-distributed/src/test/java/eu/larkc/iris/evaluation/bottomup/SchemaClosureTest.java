@@ -0,0 +1,177 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.evaluation.bottomup;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.deri.iris.api.basics.ILiteral;
+import org.deri.iris.api.basics.IPredicate;
+import org.deri.iris.api.basics.IRule;
+import org.deri.iris.api.terms.ITerm;
+import org.deri.iris.factory.Factory;
+
+import cascading.tap.Hfs;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntryCollector;
+import cascading.tuple.TupleEntryIterator;
+import eu.larkc.iris.LocalProjectTest;
+import eu.larkc.iris.indexing.DistributedFileSystemManager;
+import eu.larkc.iris.indexing.PredicateCount;
+import eu.larkc.iris.indexing.PredicateData;
+import eu.larkc.iris.rules.compiler.LiteralFields;
+import eu.larkc.iris.storage.IRIWritable;
+
+/**
+ * Tests the classification of the schema rules and the in memory closure of the schema, on the local file system
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class SchemaClosureTest extends LocalProjectTest {
+
+	private static final String RDF = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+	private static final String RDFS = "http://www.w3.org/2000/01/rdf-schema#";
+	
+	private IPredicate subClassOf = Factory.BASIC.createPredicate(RDFS + "subClassOf", 2);
+	private IPredicate subPropertyOf = Factory.BASIC.createPredicate(RDFS + "subPropertyOf", 2);
+	private IPredicate type = Factory.BASIC.createPredicate(RDF + "type", 2);
+	private IPredicate hasValue = Factory.BASIC.createPredicate(LiteralFields.RIF_HAS_VALUE, 3);
+	
+	private ITerm x = Factory.TERM.createVariable("X");
+	private ITerm y = Factory.TERM.createVariable("Y");
+	private ITerm z = Factory.TERM.createVariable("Z");
+	
+	//subClassOf(X, Z) :- subClassOf(X, Y), subClassOf(Y, Z) (rdfs11)
+	private IRule subClassTransitivity = rule(literal(subClassOf, x, z), literal(subClassOf, x, y), literal(subClassOf, y, z));
+	//type(X, Z) :- subClassOf(Y, Z), type(X, Y) (rdfs9)
+	private IRule typeInheritance = rule(literal(type, x, z), literal(subClassOf, y, z), literal(type, x, y));
+	//subPropertyOf(X, X) :- type(X, rdf:Property) (rdfs6)
+	private IRule subPropertyReflexivity = rule(literal(subPropertyOf, x, x), literal(type, x, iri(RDF + "Property")));
+	//RIF_HAS_VALUE(Z, X, Y) :- RIF_HAS_VALUE(Z1, X, Y), subPropertyOf(Z1, Z) (rdfs7)
+	private IRule subPropertyInheritance = rule(literal(hasValue, z, x, y), literal(hasValue, Factory.TERM.createVariable("Z1"), x, y), 
+			literal(subPropertyOf, Factory.TERM.createVariable("Z1"), z));
+	
+	public SchemaClosureTest(String name) {
+		super(name);
+	}
+
+	private static ITerm iri(String iri) {
+		return Factory.CONCRETE.createIri(iri);
+	}
+	
+	private static ILiteral literal(IPredicate predicate, ITerm... terms) {
+		return Factory.BASIC.createLiteral(true, predicate, Factory.BASIC.createTuple(terms));
+	}
+	
+	private static IRule rule(ILiteral head, ILiteral... body) {
+		return Factory.BASIC.createRule(Arrays.asList(head), Arrays.asList(body));
+	}
+	
+	public void testClassification() {
+		SchemaClosure schemaClosure = new SchemaClosure(configuration);
+		assertTrue(schemaClosure.isSchemaRule(subClassTransitivity));
+		assertFalse(schemaClosure.isSchemaRule(typeInheritance));
+		assertFalse(schemaClosure.isSchemaRule(subPropertyReflexivity));
+		
+		assertFalse(schemaClosure.canDeriveSchemaFacts(typeInheritance));
+		assertTrue(schemaClosure.canDeriveSchemaFacts(subPropertyReflexivity));
+		//the predicate of the head is a variable
+		assertTrue(schemaClosure.canDeriveSchemaFacts(subPropertyInheritance));
+		assertFalse(schemaClosure.canDeriveSchemaFacts(rule(literal(hasValue, iri(RDF + "type"), x, y), literal(type, x, y))));
+		assertTrue(schemaClosure.canDeriveSchemaFacts(rule(literal(hasValue, iri(RDFS + "subClassOf"), x, y), literal(type, x, y))));
+	}
+	
+	public void testClosure() throws Exception {
+		writeFacts(new Tuple[] {subClassOf("a", "b"), subClassOf("b", "c"), subClassOf("c", "d")});
+		
+		List<IRule> rules = new SchemaClosure(configuration).evaluate(Arrays.asList(subClassTransitivity, typeInheritance));
+		assertEquals(Arrays.asList(typeInheritance), rules);
+		
+		Set<Tuple> expected = new HashSet<Tuple>(Arrays.asList(subClassOf("a", "c"), subClassOf("b", "d"), subClassOf("a", "d")));
+		assertEquals(expected, readInferences());
+		//the instance rules join the closed schema on the map side
+		assertEquals(new HashSet<String>(Arrays.asList(RDFS + "subClassOf")), configuration.closedSchemaPredicates);
+	}
+	
+	public void testSchemaRulesKept() throws Exception {
+		writeFacts(new Tuple[] {subClassOf("a", "b"), subClassOf("b", "c")});
+		
+		List<IRule> rules = Arrays.asList(subClassTransitivity, typeInheritance, subPropertyInheritance);
+		assertEquals(rules, new SchemaClosure(configuration).evaluate(rules));
+		assertEquals(new HashSet<Tuple>(Arrays.asList(subClassOf("a", "c"))), readInferences());
+		//subClassOf is derived by the distributed evaluation too, it is not closed
+		assertTrue(configuration.closedSchemaPredicates.isEmpty());
+	}
+	
+	public void testNewPredicateLocation() throws Exception {
+		configuration.doPredicateIndexing = true;
+		configuration.predicateCatalog.addPredicates(Arrays.asList(new PredicateCount(new IRIWritable(subClassOf), 2L)));
+		writeFacts(new Tuple[] {subClassOf("a", "b"), subClassOf("b", "c")});
+		
+		//subPropertyOf(X, Z) :- subClassOf(X, Y), subClassOf(Y, Z), the head predicate has no facts yet
+		new SchemaClosure(configuration).evaluate(Arrays.asList(rule(literal(subPropertyOf, x, z), literal(subClassOf, x, y), literal(subClassOf, y, z))));
+		PredicateData predicateData = configuration.predicateCatalog.getPredicateData(new IRIWritable(subPropertyOf));
+		assertNotNull(predicateData);
+		assertEquals(new Long(1), predicateData.getCount());
+		
+		//the inferences are in the location of the new predicate
+		Set<Tuple> inferences = readInferences(DistributedFileSystemManager.INFERENCES_FOLDER + "/" + predicateData.getLocation());
+		assertEquals(1, inferences.size());
+		assertEquals(new IRIWritable(subPropertyOf), inferences.iterator().next().get(0));
+	}
+	
+	private Tuple subClassOf(String subClass, String superClass) {
+		return new Tuple(new IRIWritable(subClassOf), new IRIWritable(Factory.CONCRETE.createIri("http://larkc.eu/" + subClass)), 
+				new IRIWritable(Factory.CONCRETE.createIri("http://larkc.eu/" + superClass)));
+	}
+	
+	private void writeFacts(Tuple[] tuples) throws Exception {
+		DistributedFileSystemManager distributedFileSystemManager = new DistributedFileSystemManager(configuration);
+		String path = distributedFileSystemManager.getFactsPath();
+		if (configuration.doPredicateIndexing) {
+			path = distributedFileSystemManager.getPredicateFactsPath(distributedFileSystemManager.getPredicateData(new IRIWritable(subClassOf)).getLocation());
+		}
+		Tap sink = new Hfs(distributedFileSystemManager.getScheme(new Fields(0, 1, 2)), path, true);
+		TupleEntryCollector collector = sink.openForWrite(configuration.jobConf);
+		for (Tuple tuple : tuples) {
+			collector.add(tuple);
+		}
+		collector.close();
+	}
+	
+	private Set<Tuple> readInferences() throws Exception {
+		return readInferences(DistributedFileSystemManager.INFERENCES_FOLDER);
+	}
+	
+	private Set<Tuple> readInferences(String inferencesFolder) throws Exception {
+		Set<Tuple> tuples = new HashSet<Tuple>();
+		for (File result : new File(project, inferencesFolder + "/inference").listFiles()) {
+			Tap source = new Hfs(new DistributedFileSystemManager(configuration).getScheme(new Fields(0, 1, 2)), result.getAbsolutePath());
+			TupleEntryIterator iterator = source.openForRead(configuration.jobConf);
+			while (iterator.hasNext()) {
+				tuples.add(new Tuple(iterator.next().getTuple())); //the iterator reuses the tuple
+			}
+			iterator.close();
+		}
+		return tuples;
+	}
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.evaluation.bottomup.naive;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.deri.iris.EvaluationException;
+import org.deri.iris.api.basics.IPredicate;
+import org.deri.iris.api.basics.IRule;
+import org.deri.iris.api.terms.ITerm;
+import org.deri.iris.facts.IFacts;
+import org.deri.iris.factory.Factory;
+import org.deri.iris.storage.IRelation;
+
+import eu.larkc.iris.LocalProjectTest;
+import eu.larkc.iris.evaluation.EvaluationContext;
+import eu.larkc.iris.indexing.PredicateCount;
+import eu.larkc.iris.rules.compiler.FlowAssembly;
+import eu.larkc.iris.rules.compiler.IDistributedCompiledRule;
+import eu.larkc.iris.storage.IRIWritable;
+
+/**
+ * Tests that {@code ConcurrentRules} runs a rule only after the earlier rules writing the locations it reads
+ *
+ * @author valer.roman@softgress.com
+ *
+ */
+public class ConcurrentRulesTest extends LocalProjectTest {
+
+	private List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+	public ConcurrentRulesTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		configuration.maxConcurrentRules = 3;
+		configuration.doPredicateIndexing = true;
+		//each predicate on a location of its own
+		List<PredicateCount> predicateCounts = new ArrayList<PredicateCount>();
+		for (String predicate : new String[] {"p", "q", "s", "t", "u"}) {
+			predicateCounts.add(new PredicateCount(new IRIWritable(predicate(predicate)), 10000L));
+		}
+		configuration.predicateCatalog.addPredicates(predicateCounts);
+	}
+
+	private static IPredicate predicate(String symbol) {
+		return Factory.BASIC.createPredicate(symbol, 1);
+	}
+
+	//head(X) :- body(X)
+	private static IRule rule(String head, String body) {
+		ITerm x = Factory.TERM.createVariable("X");
+		return Factory.BASIC.createRule(
+				Arrays.asList(Factory.BASIC.createLiteral(true, predicate(head), Factory.BASIC.createTuple(x))),
+				Arrays.asList(Factory.BASIC.createLiteral(true, predicate(body), Factory.BASIC.createTuple(x))));
+	}
+
+	private Map<IDistributedCompiledRule, EvaluationContext> contexts(List<IDistributedCompiledRule> rules) {
+		Map<IDistributedCompiledRule, EvaluationContext> contextMap = new HashMap<IDistributedCompiledRule, EvaluationContext>();
+		for (int i = 0; i < rules.size(); i++) {
+			contextMap.put(rules.get(i), new EvaluationContext(1, 1, i + 1));
+		}
+		return contextMap;
+	}
+
+	public void testReaderWaitsForWriter() throws Exception {
+		final CountDownLatch independentStarted = new CountDownLatch(1);
+		//q(X) :- p(X) runs together with t(X) :- u(X), s(X) :- q(X) waits for it
+		RecordingRule writer = new RecordingRule("writer", rule("q", "p")) {
+			@Override
+			protected void run() throws Exception {
+				assertTrue(independentStarted.await(10, TimeUnit.SECONDS));
+			}
+		};
+		RecordingRule reader = new RecordingRule("reader", rule("s", "q"));
+		RecordingRule independent = new RecordingRule("independent", rule("t", "u")) {
+			@Override
+			protected void run() throws Exception {
+				independentStarted.countDown();
+			}
+		};
+		List<IDistributedCompiledRule> rules = Arrays.<IDistributedCompiledRule>asList(writer, reader, independent);
+
+		Map<IDistributedCompiledRule, Boolean> deltas = ConcurrentRules.evaluate(rules, contexts(rules), configuration);
+		assertEquals(3, deltas.size());
+		assertTrue(events.indexOf("end writer") < events.indexOf("start reader"));
+	}
+
+	public void testWriterWaitsForEarlierReader() throws Exception {
+		//q(X) :- p(X) must not write the location of q while s(X) :- q(X) reads it
+		RecordingRule reader = new RecordingRule("reader", rule("s", "q"));
+		RecordingRule writer = new RecordingRule("writer", rule("q", "p"));
+		List<IDistributedCompiledRule> rules = Arrays.<IDistributedCompiledRule>asList(reader, writer);
+
+		ConcurrentRules.evaluate(rules, contexts(rules), configuration);
+		assertTrue(events.indexOf("end reader") < events.indexOf("start writer"));
+	}
+
+	public void testLocations() {
+		assertTrue(ConcurrentRules.intersect(ConcurrentRules.getWrittenLocations(rule("q", "p"), configuration),
+				ConcurrentRules.getReadLocations(rule("s", "q"), configuration)));
+		assertFalse(ConcurrentRules.intersect(ConcurrentRules.getWrittenLocations(rule("q", "p"), configuration),
+				ConcurrentRules.getReadLocations(rule("t", "u"), configuration)));
+		//without predicate indexing all the inferences are in the same location
+		configuration.doPredicateIndexing = false;
+		assertTrue(ConcurrentRules.intersect(ConcurrentRules.getWrittenLocations(rule("q", "p"), configuration),
+				ConcurrentRules.getReadLocations(rule("t", "u"), configuration)));
+	}
+
+	/*
+	 * a compiled rule recording the start and the end of its evaluation
+	 */
+	private class RecordingRule implements IDistributedCompiledRule {
+
+		private String name;
+
+		private IRule rule;
+
+		RecordingRule(String name, IRule rule) {
+			this.name = name;
+			this.rule = rule;
+		}
+
+		protected void run() throws Exception {
+		}
+
+		@Override
+		public boolean evaluate(EvaluationContext evaluationContext) throws EvaluationException {
+			events.add("start " + name);
+			try {
+				run();
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+			events.add("end " + name);
+			return true;
+		}
+
+		@Override
+		public void evaluate(Integer ruleNumber) throws EvaluationException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public IRelation evaluateIteratively(IFacts deltas) throws EvaluationException {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public FlowAssembly getFlowAssembly() {
+			return null;
+		}
+
+		@Override
+		public IRule getRule() {
+			return rule;
+		}
+	}
+}
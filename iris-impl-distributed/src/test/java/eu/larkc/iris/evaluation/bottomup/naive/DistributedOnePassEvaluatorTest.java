@@ -0,0 +1,135 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.evaluation.bottomup.naive;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.deri.iris.api.basics.ILiteral;
+import org.deri.iris.api.basics.IPredicate;
+import org.deri.iris.api.basics.IRule;
+import org.deri.iris.api.terms.ITerm;
+import org.deri.iris.api.terms.concrete.IIri;
+import org.deri.iris.factory.Factory;
+
+import cascading.tap.Hfs;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntryCollector;
+import cascading.tuple.TupleEntryIterator;
+import eu.larkc.iris.LocalProjectTest;
+import eu.larkc.iris.indexing.DistributedFileSystemManager;
+import eu.larkc.iris.rules.compiler.CascadingRuleCompiler;
+import eu.larkc.iris.rules.compiler.IDistributedCompiledRule;
+import eu.larkc.iris.storage.IRIWritable;
+
+/**
+ * Evaluates non recursive rules with negation with the {@code DistributedOnePassEvaluator}, on the local file system
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class DistributedOnePassEvaluatorTest extends LocalProjectTest {
+
+	private IPredicate p = Factory.BASIC.createPredicate("p", 2);
+	private IPredicate q = Factory.BASIC.createPredicate("q", 2);
+	private IPredicate r = Factory.BASIC.createPredicate("r", 2);
+	
+	private ITerm x = Factory.TERM.createVariable("X");
+	private ITerm y = Factory.TERM.createVariable("Y");
+	
+	public DistributedOnePassEvaluatorTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		writeFacts(new Tuple[] {tuple(p, "a", "b"), tuple(p, "b", "c"), tuple(q, "b", "c")});
+	}
+	
+	private static IIri iri(String iri) {
+		return Factory.CONCRETE.createIri("http://larkc.eu/" + iri);
+	}
+	
+	private static ILiteral literal(boolean positive, IPredicate predicate, ITerm... terms) {
+		return Factory.BASIC.createLiteral(positive, predicate, Factory.BASIC.createTuple(terms));
+	}
+	
+	private static IRule rule(ILiteral head, ILiteral... body) {
+		return Factory.BASIC.createRule(Arrays.asList(head), Arrays.asList(body));
+	}
+	
+	private static Tuple tuple(IPredicate predicate, String first, String second) {
+		return new Tuple(new IRIWritable(predicate), new IRIWritable(iri(first)), new IRIWritable(iri(second)));
+	}
+	
+	public void testNegation() throws Exception {
+		//r(X, Y) :- p(X, Y), not q(X, Y)
+		evaluate(rule(literal(true, r, x, y), literal(true, p, x, y), literal(false, q, x, y)));
+		assertEquals(new HashSet<Tuple>(Arrays.asList(tuple(r, "a", "b"))), readInferences());
+	}
+	
+	public void testNegationWithoutCommonVariables() throws Exception {
+		//r(X, Y) :- p(X, Y), not q(b, c), q(b, c) exists so nothing is inferred
+		evaluate(rule(literal(true, r, x, y), literal(true, p, x, y), literal(false, q, iri("b"), iri("c"))));
+		assertTrue(readInferences().isEmpty());
+
+		//r(X, Y) :- p(X, Y), not q(a, b)
+		evaluate(rule(literal(true, r, x, y), literal(true, p, x, y), literal(false, q, iri("a"), iri("b"))));
+		assertEquals(new HashSet<Tuple>(Arrays.asList(tuple(r, "a", "b"), tuple(r, "b", "c"))), readInferences());
+	}
+	
+	private void evaluate(IRule rule) throws Exception {
+		CascadingRuleCompiler compiler = new CascadingRuleCompiler(configuration);
+		compiler.setEvaluatedRules(Arrays.asList(rule));
+		List<IDistributedCompiledRule> compiledRules = new ArrayList<IDistributedCompiledRule>();
+		compiledRules.add(compiler.compile(rule));
+		new DistributedOnePassEvaluator().evaluateRules(1, compiledRules, configuration);
+	}
+	
+	private void writeFacts(Tuple[] tuples) throws Exception {
+		DistributedFileSystemManager distributedFileSystemManager = new DistributedFileSystemManager(configuration);
+		Tap sink = new Hfs(distributedFileSystemManager.getScheme(new Fields(0, 1, 2)), distributedFileSystemManager.getFactsPath(), true);
+		TupleEntryCollector collector = sink.openForWrite(configuration.jobConf);
+		for (Tuple tuple : tuples) {
+			collector.add(tuple);
+		}
+		collector.close();
+	}
+	
+	private Set<Tuple> readInferences() throws Exception {
+		Set<Tuple> tuples = new HashSet<Tuple>();
+		File inferences = new File(project, DistributedFileSystemManager.INFERENCES_FOLDER + "/inference");
+		if (!inferences.exists()) {
+			return tuples;
+		}
+		for (File result : inferences.listFiles()) {
+			Tap source = new Hfs(new DistributedFileSystemManager(configuration).getScheme(new Fields(0, 1, 2)), result.getAbsolutePath());
+			TupleEntryIterator iterator = source.openForRead(configuration.jobConf);
+			while (iterator.hasNext()) {
+				tuples.add(new Tuple(iterator.next().getTuple())); //the iterator reuses the tuple
+			}
+			iterator.close();
+		}
+		return tuples;
+	}
+}
@@ -63,6 +63,33 @@ public class DistributedDependencyAwareEvaluatorTest extends LangFeaturesTest {
 		assertEquals(3, edgeHead.getEvaluations());	
 	}
 	
+	public void testEvaluateRulesConcurrently() throws Exception	{
+		program = "path(?X, ?Y) :- edge(?X, ?Y)."
+			+ "edge(?X, ?Y) :- path(?X, ?Z).";
+		parser.parse(program);
+		rules = createRules();
+
+		compile();
+		
+		int stratum = 1;		
+		IDistributedRuleEvaluator eval = new DistributedDependencyAwareEvaluator();
+		DistributedCompiledRuleMock pathHead = ((DistributedCompiledRuleMock)compiledRules.get(0));
+		pathHead.setMaxEvaluations(3);
+		DistributedCompiledRuleMock edgeHead = ((DistributedCompiledRuleMock)compiledRules.get(1));
+		edgeHead.setMaxEvaluations(3);
+		
+		defaultConfiguration.maxConcurrentRules = 2;
+		try {
+			eval.evaluateRules(stratum, compiledRules, super.defaultConfiguration);
+		} finally {
+			defaultConfiguration.maxConcurrentRules = 1;
+		}
+			
+		//both rules are evaluated in every round, the third round returns no new inferences
+		assertEquals(3, pathHead.getEvaluations()); 
+		assertEquals(3, edgeHead.getEvaluations());	
+	}
+	
 	public void testEvaluateSingleRule() throws Exception {
 		program = "path(?X, ?Y) :- edge(?X, ?Y).";
 		parser.parse(program);
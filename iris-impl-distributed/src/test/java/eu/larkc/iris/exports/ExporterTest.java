@@ -0,0 +1,147 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.exports;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.deri.iris.factory.Factory;
+
+import cascading.tap.Hfs;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntryCollector;
+import eu.larkc.iris.LocalProjectTest;
+import eu.larkc.iris.indexing.DistributedFileSystemManager;
+import eu.larkc.iris.indexing.PredicateData;
+import eu.larkc.iris.storage.IRIWritable;
+import eu.larkc.iris.storage.StringTermWritable;
+
+/**
+ * Tests the n-triple exports of the {@code Exporter}, on the local file system
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class ExporterTest extends LocalProjectTest {
+
+	private static final String RESULT_NAME = "inference";
+	
+	public ExporterTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		writeInferences(new Tuple[] {new Tuple(iri("p"), iri("a"), iri("b")), new Tuple(iri("p"), iri("b"), literal("\"café\"@fr"))});
+	}
+	
+	private static IRIWritable iri(String iri) {
+		return new IRIWritable(Factory.CONCRETE.createIri("http://larkc.eu/" + iri));
+	}
+	
+	private static StringTermWritable literal(String value) {
+		StringTermWritable literal = new StringTermWritable();
+		literal.setValue(value);
+		return literal;
+	}
+	
+	/*
+	 * the expected n-triple lines, in order
+	 */
+	private static List<String> triples() {
+		return Arrays.asList("<http://larkc.eu/a> <http://larkc.eu/p> <http://larkc.eu/b> .", 
+				"<http://larkc.eu/b> <http://larkc.eu/p> \"café\"@fr .");
+	}
+	
+	public void testStreamingExport() throws Exception {
+		configuration.doStreamingExport = true;
+		File export = new File(project, "export.nt");
+		new Exporter(configuration).exportToFile(export.getAbsolutePath(), RESULT_NAME);
+		//the lines are encoded in UTF-8, whatever the default charset
+		assertEquals(triples(), readLines(new FileInputStream(export)));
+	}
+	
+	public void testMergedExport() throws Exception {
+		//merged and not compressed by default
+		File export = new File(project, "export.nt");
+		new Exporter(configuration).exportToFile(export.getAbsolutePath(), RESULT_NAME);
+		//the export is written at the given path, the part files are removed
+		List<String> lines = readLines(new FileInputStream(export));
+		Collections.sort(lines);
+		assertEquals(triples(), lines);
+		assertFalse(new File(new DistributedFileSystemManager(configuration).getExportPartsPath(RESULT_NAME)).exists());
+	}
+	
+	public void testCompressedExport() throws Exception {
+		configuration.doExportMerge = true;
+		configuration.doExportCompression = true;
+		File export = new File(project, "export.nt.gz");
+		new Exporter(configuration).exportToFile(export.getAbsolutePath(), RESULT_NAME);
+		//the gzip members of the part files are concatenated
+		List<String> lines = readLines(new GZIPInputStream(new FileInputStream(export)));
+		Collections.sort(lines);
+		assertEquals(triples(), lines);
+	}
+	
+	public void testNotMergedExport() throws Exception {
+		configuration.doExportMerge = false;
+		configuration.doExportCompression = false;
+		File export = new File(project, "export");
+		new Exporter(configuration).exportToFile(export.getAbsolutePath(), RESULT_NAME);
+		//the export is a folder of part files
+		List<String> lines = new ArrayList<String>();
+		for (File part : export.listFiles()) {
+			if (part.getName().startsWith("part-")) {
+				lines.addAll(readLines(new FileInputStream(part)));
+			}
+		}
+		Collections.sort(lines);
+		assertEquals(triples(), lines);
+	}
+	
+	private void writeInferences(Tuple[] tuples) throws Exception {
+		DistributedFileSystemManager distributedFileSystemManager = new DistributedFileSystemManager(configuration);
+		String path = distributedFileSystemManager.getInferencesPath((PredicateData) null, RESULT_NAME, "_1_1_1");
+		Tap sink = new Hfs(distributedFileSystemManager.getScheme(new Fields(0, 1, 2)), path, true);
+		TupleEntryCollector collector = sink.openForWrite(configuration.jobConf);
+		for (Tuple tuple : tuples) {
+			collector.add(tuple);
+		}
+		collector.close();
+	}
+	
+	private List<String> readLines(InputStream inputStream) throws Exception {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, "UTF-8"));
+		String line = null;
+		while ((line = reader.readLine()) != null) {
+			lines.add(line);
+		}
+		reader.close();
+		return lines;
+	}
+}
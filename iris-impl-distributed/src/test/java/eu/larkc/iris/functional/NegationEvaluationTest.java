@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.functional;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.deri.iris.api.basics.ILiteral;
+import org.deri.iris.api.basics.IPredicate;
+import org.deri.iris.api.basics.IRule;
+import org.deri.iris.api.terms.ITerm;
+import org.deri.iris.api.terms.IVariable;
+import org.deri.iris.factory.Factory;
+
+import cascading.tap.Hfs;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntryIterator;
+import eu.larkc.iris.LocalProjectTest;
+import eu.larkc.iris.imports.Importer;
+import eu.larkc.iris.indexing.DistributedFileSystemManager;
+import eu.larkc.iris.storage.IRIWritable;
+
+/**
+ * Evaluates a stratified program with negation over imported facts with the {@code DistributedBottomUpEvaluationStrategy}, 
+ * on the local file system. The negated predicate is recursive, it must reach its fixpoint before the rule negating it is evaluated.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class NegationEvaluationTest extends LocalProjectTest {
+
+	private static final String ONTOLOGY = "http://dbpedia.org/ontology/";
+	
+	private IPredicate edge = Factory.BASIC.createPredicate("http://larkc.eu/edge", 2);
+	private IPredicate link = Factory.BASIC.createPredicate("http://larkc.eu/link", 2);
+	private IPredicate path = Factory.BASIC.createPredicate("http://larkc.eu/path", 2);
+	private IPredicate direct = Factory.BASIC.createPredicate("http://larkc.eu/direct", 2);
+	
+	private ITerm x = Factory.TERM.createVariable("X");
+	private ITerm y = Factory.TERM.createVariable("Y");
+	private ITerm z = Factory.TERM.createVariable("Z");
+	
+	public NegationEvaluationTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		//edge(1, 2), edge(2, 3), link(1, 3), link(3, 1)
+		new Importer(configuration).processNTriple(getClass().getResource("/facts/negation.nt").getPath(), "import");
+	}
+	
+	private static ILiteral literal(boolean positive, IPredicate predicate, ITerm... terms) {
+		return Factory.BASIC.createLiteral(positive, predicate, Factory.BASIC.createTuple(terms));
+	}
+	
+	private static IRule rule(ILiteral head, ILiteral... body) {
+		return Factory.BASIC.createRule(Arrays.asList(head), Arrays.asList(body));
+	}
+	
+	private Tuple tuple(IPredicate predicate, int first, int second) {
+		return new Tuple(new IRIWritable(predicate), new IRIWritable(Factory.CONCRETE.createIri(ONTOLOGY + first)), 
+				new IRIWritable(Factory.CONCRETE.createIri(ONTOLOGY + second)));
+	}
+	
+	public void testStratifiedNegation() throws Exception {
+		List<IRule> rules = new ArrayList<IRule>();
+		//direct(X, Y) :- link(X, Y), not path(X, Y), given first, the strata and not the order of the rules decide
+		rules.add(rule(literal(true, direct, x, y), literal(true, link, x, y), literal(false, path, x, y)));
+		//path(X, Y) :- edge(X, Y)
+		rules.add(rule(literal(true, path, x, y), literal(true, edge, x, y)));
+		//path(X, Z) :- path(X, Y), edge(Y, Z)
+		rules.add(rule(literal(true, path, x, z), literal(true, path, x, y), literal(true, edge, y, z)));
+		
+		configuration.evaluationStrategyFactory.createEvaluator(rules, configuration).evaluateQuery(null, new ArrayList<IVariable>());
+		
+		//link(1, 3) is a path, only link(3, 1) is direct
+		Set<Tuple> expected = new HashSet<Tuple>(Arrays.asList(tuple(path, 1, 2), tuple(path, 2, 3), tuple(path, 1, 3), 
+				tuple(direct, 3, 1)));
+		assertEquals(expected, readInferences());
+	}
+	
+	private Set<Tuple> readInferences() throws Exception {
+		Set<Tuple> tuples = new HashSet<Tuple>();
+		for (File result : new File(project, DistributedFileSystemManager.INFERENCES_FOLDER + "/inference").listFiles()) {
+			Tap source = new Hfs(new DistributedFileSystemManager(configuration).getScheme(new Fields(0, 1, 2)), result.getAbsolutePath());
+			TupleEntryIterator iterator = source.openForRead(configuration.jobConf);
+			while (iterator.hasNext()) {
+				tuples.add(new Tuple(iterator.next().getTuple())); //the iterator reuses the tuple
+			}
+			iterator.close();
+		}
+		return tuples;
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.functional;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.deri.iris.api.basics.ILiteral;
+import org.deri.iris.api.basics.IPredicate;
+import org.deri.iris.api.basics.IRule;
+import org.deri.iris.api.terms.ITerm;
+import org.deri.iris.api.terms.IVariable;
+import org.deri.iris.factory.Factory;
+
+import cascading.tap.Hfs;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntryIterator;
+import eu.larkc.iris.Configuration;
+import eu.larkc.iris.LocalProjectTest;
+import eu.larkc.iris.imports.Importer;
+import eu.larkc.iris.indexing.DistributedFileSystemManager;
+import eu.larkc.iris.storage.IRIWritable;
+
+/**
+ * Evaluates a recursive rule over imported facts, from the evaluation strategy down to the flows, 
+ * naively and semi-naively, on the local file system. Both evaluations must reach the same fixpoint.
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class SemiNaiveEvaluationTest extends LocalProjectTest {
+
+	private static final String ONTOLOGY = "http://dbpedia.org/ontology/";
+	
+	private IPredicate p = Factory.BASIC.createPredicate("http://www.w3.org/2000/01/rdf-schema#p", 2);
+	
+	private ITerm x = Factory.TERM.createVariable("X");
+	private ITerm y = Factory.TERM.createVariable("Y");
+	private ITerm z = Factory.TERM.createVariable("Z");
+	
+	//p(X, Z) :- p(X, Y), p(Y, Z), needs several iterations over the chain 1 -> 2 -> 3 -> 4 -> 5 of the facts
+	private IRule transitivity = rule(literal(p, x, z), literal(p, x, y), literal(p, y, z));
+	
+	public SemiNaiveEvaluationTest(String name) {
+		super(name);
+	}
+
+	private static ILiteral literal(IPredicate predicate, ITerm... terms) {
+		return Factory.BASIC.createLiteral(true, predicate, Factory.BASIC.createTuple(terms));
+	}
+	
+	private static IRule rule(ILiteral head, ILiteral... body) {
+		return Factory.BASIC.createRule(Arrays.asList(head), Arrays.asList(body));
+	}
+	
+	private Tuple tuple(int first, int second) {
+		return new Tuple(new IRIWritable(p), new IRIWritable(Factory.CONCRETE.createIri(ONTOLOGY + first)), 
+				new IRIWritable(Factory.CONCRETE.createIri(ONTOLOGY + second)));
+	}
+	
+	private Set<Tuple> closure() {
+		//the facts are not inferred again
+		return new HashSet<Tuple>(Arrays.asList(tuple(1, 3), tuple(2, 4), tuple(3, 5), tuple(1, 4), tuple(2, 5), tuple(1, 5)));
+	}
+	
+	public void testSameFixpoint() throws Exception {
+		Set<Tuple> naive = evaluate(new File(project, "naive"), false);
+		Set<Tuple> semiNaive = evaluate(new File(project, "semi-naive"), true);
+		assertEquals(closure(), naive);
+		assertEquals(naive, semiNaive);
+	}
+	
+	private Set<Tuple> evaluate(File folder, boolean semiNaive) throws Exception {
+		Configuration configuration = createConfiguration(folder);
+		configuration.doSemiNaiveEvaluation = semiNaive;
+		new Importer(configuration).processNTriple(getClass().getResource("/facts/chain.nt").getPath(), "import");
+		List<IRule> rules = new ArrayList<IRule>(Arrays.asList(transitivity));
+		configuration.evaluationStrategyFactory.createEvaluator(rules, configuration).evaluateQuery(null, new ArrayList<IVariable>());
+		return readInferences(folder, configuration);
+	}
+	
+	private Set<Tuple> readInferences(File folder, Configuration configuration) throws Exception {
+		Set<Tuple> tuples = new HashSet<Tuple>();
+		for (File result : new File(folder, DistributedFileSystemManager.INFERENCES_FOLDER + "/inference").listFiles()) {
+			Tap source = new Hfs(new DistributedFileSystemManager(configuration).getScheme(new Fields(0, 1, 2)), result.getAbsolutePath());
+			TupleEntryIterator iterator = source.openForRead(configuration.jobConf);
+			while (iterator.hasNext()) {
+				tuples.add(new Tuple(iterator.next().getTuple())); //the iterator reuses the tuple
+			}
+			iterator.close();
+		}
+		return tuples;
+	}
+}
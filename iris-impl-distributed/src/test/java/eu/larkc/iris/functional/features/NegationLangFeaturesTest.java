@@ -0,0 +1,96 @@
+/**
+ *
+ */
+package eu.larkc.iris.functional.features;
+
+import java.util.List;
+
+import org.deri.iris.ProgramNotStratifiedException;
+import org.deri.iris.api.basics.IRule;
+
+import eu.larkc.iris.evaluation.bottomup.DistributedBottomUpEvaluationStrategy;
+import eu.larkc.iris.evaluation.bottomup.naive.DistributedEvaluatorFactory;
+
+/**
+ * Tests for negation as failure in stratified Datalog programs.
+ *
+ * @author valer.roman@softgress.com
+ */
+public class NegationLangFeaturesTest extends LangFeaturesTest {
+
+	public NegationLangFeaturesTest(String string) {
+		super(string);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+	}
+
+	/**
+	 * Test for a negated literal sharing variables with the positive literals, compiled to an anti join.
+	 */
+	public void testNegatedLiteral() throws Exception {
+		program = "p(?X, ?Y) :- q(?X, ?Y), not r(?Y)." + "?- p(?X, ?Y).";
+		parser.parse(program);
+		rules = createRules();
+
+		compile();
+	}
+
+	/**
+	 * Test for a negated literal without common variables with the positive literals.
+	 */
+	public void testNegatedLiteralWithoutCommonVariables() throws Exception {
+		program = "p(?X) :- q(?X), not r('a')." + "?- p(?X).";
+		parser.parse(program);
+		rules = createRules();
+
+		compile();
+	}
+
+	/**
+	 * Test that the rules negating a predicate are evaluated in a stratum after the rules deriving the predicate.
+	 */
+	public void testNegationStrata() throws Exception {
+		program = "unreachable(?X, ?Y) :- node(?X), node(?Y), not path(?X, ?Y)."
+				+ "path(?X, ?Y) :- edge(?X, ?Y)."
+				+ "path(?X, ?Y) :- path(?X, ?Z), edge(?Z, ?Y)." + "?- unreachable(?X, ?Y).";
+		parser.parse(program);
+		rules = createRules();
+
+		List<List<IRule>> strata = new NegationStrata().stratifyNegation(rules);
+		assertEquals(2, strata.size());
+		assertEquals(2, strata.get(0).size());
+		assertEquals(1, strata.get(1).size());
+		assertEquals("unreachable", strata.get(1).get(0).getHead().get(0).getAtom().getPredicate().getPredicateSymbol());
+	}
+
+	/**
+	 * Test that a program with negation through recursion is rejected.
+	 */
+	public void testNegationThroughRecursion() throws Exception {
+		program = "p(?X) :- q(?X), not p(?X)." + "?- p(?X).";
+		parser.parse(program);
+		rules = createRules();
+
+		try {
+			new NegationStrata().stratifyNegation(rules);
+			fail("program with negation through recursion must not be stratified");
+		} catch (ProgramNotStratifiedException e) {
+			//expected
+		}
+	}
+
+	private class NegationStrata extends DistributedBottomUpEvaluationStrategy {
+
+		public NegationStrata() {
+			super(defaultConfiguration, new DistributedEvaluatorFactory(), rules);
+		}
+
+		@Override
+		public List<List<IRule>> stratifyNegation(List<IRule> rules) throws ProgramNotStratifiedException {
+			return super.stratifyNegation(rules);
+		}
+	}
+}
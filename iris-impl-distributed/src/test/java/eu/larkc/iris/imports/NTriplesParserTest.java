@@ -0,0 +1,86 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.imports;
+
+import java.text.ParseException;
+
+import junit.framework.TestCase;
+import eu.larkc.iris.storage.IRIWritable;
+import eu.larkc.iris.storage.StringTermWritable;
+
+/**
+ * Tests the parsing of n-triple lines by the {@code NTriplesParser}
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class NTriplesParserTest extends TestCase {
+
+	public NTriplesParserTest(String name) {
+		super(name);
+	}
+
+	private String value(Object writable) {
+		if (writable instanceof IRIWritable) {
+			return ((IRIWritable) writable).getValue();
+		}
+		return ((StringTermWritable) writable).getValue();
+	}
+	
+	public void testTriples() throws ParseException {
+		NTriplesParser parser = new NTriplesParser();
+		assertTrue(parser.parse("<http://a.org/s> <http://a.org/p> <http://a.org/o> ."));
+		assertEquals("http://a.org/s", value(parser.getSubject()));
+		assertEquals("http://a.org/p", value(parser.getPredicate()));
+		assertEquals("http://a.org/o", value(parser.getObject()));
+		IRIWritable predicate = parser.getPredicate();
+		
+		assertTrue(parser.parse("_:node15n67 <http://a.org/p> \"a \\\"quoted\\\" text\"@en-GB .  # comment"));
+		assertEquals(NTriplesParser.BLANK_NODE_NAMESPACE + "node15n67", value(parser.getSubject()));
+		assertSame(predicate, parser.getPredicate());
+		assertTrue(parser.getObject() instanceof StringTermWritable);
+		assertEquals("\"a \\\"quoted\\\" text\"@en-GB", value(parser.getObject()));
+		
+		assertTrue(parser.parse("<http://a.org/s>\t<http://a.org/p>\t\"1\"^^<http://www.w3.org/2001/XMLSchema#int>\t<http://a.org/graph>."));
+		assertEquals("\"1\"^^<http://www.w3.org/2001/XMLSchema#int>", value(parser.getObject()));
+		
+		assertTrue(parser.parse("<http://a.org/s> <http://a.org/p> _:b1."));
+		assertEquals(NTriplesParser.BLANK_NODE_NAMESPACE + "b1", value(parser.getObject()));
+		
+		assertFalse(parser.parse("   "));
+		assertFalse(parser.parse("# a comment"));
+	}
+	
+	public void testErrors() {
+		String[] lines = new String[] {
+				"<http://a.org/s> <http://a.org/p> <http://a.org/o>", 
+				"<http://a.org/s> <http://a.org/p> \"unterminated .", 
+				"<http://a.org/s> <http://a.org/p> \"bad \\q escape\" .", 
+				"<http://a.org/s> \"literal\" <http://a.org/o> .", 
+				"<http://a.org/s> <http://a.org/p> \"text\"@ .", 
+				"<http://a.org/s> <http://a.org/p> <http://a.org/o> . <http://a.org/x>", 
+				"<http://a.org/s s> <http://a.org/p> <http://a.org/o> ."};
+		NTriplesParser parser = new NTriplesParser();
+		for (String line : lines) {
+			try {
+				parser.parse(line);
+				fail("parsed invalid line " + line);
+			} catch (ParseException e) {
+				assertTrue(e.getErrorOffset() >= 0);
+			}
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.indexing;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.deri.iris.api.basics.IPredicate;
+import org.deri.iris.factory.Factory;
+
+import cascading.tap.Hfs;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntryCollector;
+import cascading.tuple.TupleEntryIterator;
+import eu.larkc.iris.LocalProjectTest;
+import eu.larkc.iris.storage.IRIWritable;
+
+/**
+ * Tests the compaction of the inferences, on the local file system
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class DistributedFileSystemManagerTest extends LocalProjectTest {
+
+	private static final String RESULT_NAME = "inference";
+	
+	private IPredicate p = Factory.BASIC.createPredicate("p", 2);
+	
+	private DistributedFileSystemManager distributedFileSystemManager;
+	
+	public DistributedFileSystemManagerTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		distributedFileSystemManager = new DistributedFileSystemManager(configuration);
+		
+		//the same inference in the results of two evaluations
+		writeInferences(null, "_1_1_1", new Tuple[] {tuple("a", "b"), tuple("b", "c")});
+		writeInferences(null, "_1_2_1", new Tuple[] {tuple("b", "c"), tuple("c", "d")});
+	}
+	
+	private Tuple tuple(String first, String second) {
+		return new Tuple(new IRIWritable(p), new IRIWritable(Factory.CONCRETE.createIri("http://larkc.eu/" + first)), 
+				new IRIWritable(Factory.CONCRETE.createIri("http://larkc.eu/" + second)));
+	}
+	
+	public void testCompaction() throws Exception {
+		configuration.compactionFilesThreshold = 2;
+		assertTrue(distributedFileSystemManager.compactInferences(null, RESULT_NAME));
+		
+		//the results of the evaluations are replaced by the compacted inferences, without duplicates
+		File[] results = getResults();
+		assertEquals(1, results.length);
+		assertTrue(results[0].getName().startsWith(RESULT_NAME + DistributedFileSystemManager.COMPACTED_IDENTIFICATOR));
+		List<Tuple> inferences = readInferences(results[0]);
+		assertEquals(3, inferences.size());
+		assertEquals(new HashSet<Tuple>(Arrays.asList(tuple("a", "b"), tuple("b", "c"), tuple("c", "d"))), new HashSet<Tuple>(inferences));
+	}
+	
+	public void testBelowThreshold() throws Exception {
+		configuration.compactionFilesThreshold = 1000;
+		assertFalse(distributedFileSystemManager.compactInferences(null, RESULT_NAME));
+		assertEquals(2, getResults().length);
+		
+		Set<Tuple> inferences = new HashSet<Tuple>();
+		for (File result : getResults()) {
+			inferences.addAll(readInferences(result));
+		}
+		assertEquals(3, inferences.size());
+	}
+	
+	public void testNoInferences() throws Exception {
+		configuration.compactionFilesThreshold = 2;
+		assertFalse(distributedFileSystemManager.compactInferences(null, "other"));
+	}
+	
+	public void testDistinctInferences() throws Exception {
+		configuration.doPredicateIndexing = true;
+		configuration.compactionFilesThreshold = 2;
+		distributedFileSystemManager.addPredicates(Arrays.asList(new PredicateCount(new IRIWritable(p), 4L)));
+		PredicateData predicateData = distributedFileSystemManager.getPredicateData(new IRIWritable(p));
+		writeInferences(predicateData, "_1_1_1", new Tuple[] {tuple("a", "b"), tuple("b", "c")});
+		writeInferences(predicateData, "_1_2_1", new Tuple[] {tuple("b", "c"), tuple("c", "d")});
+		assertFalse(predicateData.isDistinctInferences());
+		
+		distributedFileSystemManager.compactInferences();
+		
+		//the compacted location is recorded in the saved catalog
+		assertTrue(createConfiguration().predicateCatalog.getPredicateData(new IRIWritable(p)).isDistinctInferences());
+	}
+	
+	private void writeInferences(PredicateData predicateData, String flowIdentificator, Tuple[] tuples) throws Exception {
+		String path = distributedFileSystemManager.getInferencesPath(predicateData, RESULT_NAME, flowIdentificator);
+		Tap sink = new Hfs(distributedFileSystemManager.getScheme(new Fields(0, 1, 2)), path, true);
+		TupleEntryCollector collector = sink.openForWrite(configuration.jobConf);
+		for (Tuple tuple : tuples) {
+			collector.add(tuple);
+		}
+		collector.close();
+	}
+	
+	private File[] getResults() {
+		return new File(project, DistributedFileSystemManager.INFERENCES_FOLDER + "/" + RESULT_NAME).listFiles();
+	}
+	
+	private List<Tuple> readInferences(File result) throws Exception {
+		List<Tuple> tuples = new ArrayList<Tuple>();
+		Tap source = new Hfs(distributedFileSystemManager.getScheme(new Fields(0, 1, 2)), result.getAbsolutePath());
+		TupleEntryIterator iterator = source.openForRead(configuration.jobConf);
+		while (iterator.hasNext()) {
+			tuples.add(new Tuple(iterator.next().getTuple()));
+		}
+		iterator.close();
+		return tuples;
+	}
+}
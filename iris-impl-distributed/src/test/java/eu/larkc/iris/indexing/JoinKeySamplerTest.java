@@ -0,0 +1,126 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.indexing;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.deri.iris.api.basics.ILiteral;
+import org.deri.iris.api.basics.IPredicate;
+import org.deri.iris.api.basics.IRule;
+import org.deri.iris.api.terms.ITerm;
+import org.deri.iris.factory.Factory;
+
+import cascading.tap.Hfs;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntryCollector;
+import eu.larkc.iris.LocalProjectTest;
+import eu.larkc.iris.rules.compiler.LiteralFields;
+import eu.larkc.iris.rules.compiler.RuleStreams;
+import eu.larkc.iris.storage.IRIWritable;
+
+/**
+ * Tests the detection of the hot join keys of a literal from a sample of its records, on the local file system
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class JoinKeySamplerTest extends LocalProjectTest {
+
+	private IPredicate p = Factory.BASIC.createPredicate("p", 2);
+	
+	private ITerm x = Factory.TERM.createVariable("X");
+	private ITerm y = Factory.TERM.createVariable("Y");
+	
+	public JoinKeySamplerTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		configuration.doPredicateIndexing = true;
+		configuration.skewSampleSize = 100;
+		configuration.skewThreshold = 0.5;
+		configuration.predicateCatalog.addPredicates(Arrays.asList(new PredicateCount(new IRIWritable(p), 10L)));
+		
+		//the subject hot is found in 6 of the 10 records
+		Tuple[] tuples = new Tuple[10];
+		for (int i = 0; i < tuples.length; i++) {
+			tuples[i] = tuple((i < 6) ? "hot" : "cold" + i, "o" + i);
+		}
+		writeFacts(tuples);
+	}
+	
+	private static IRIWritable iri(String iri) {
+		return new IRIWritable(Factory.CONCRETE.createIri("http://larkc.eu/" + iri));
+	}
+	
+	private Tuple tuple(String subject, String object) {
+		return new Tuple(new IRIWritable(p), iri(subject), iri(object));
+	}
+	
+	private LiteralFields literal(ITerm subject, ITerm object) {
+		//h(X, Y) :- p(subject, object)
+		ILiteral head = Factory.BASIC.createLiteral(true, Factory.BASIC.createPredicate("h", 2), Factory.BASIC.createTuple(x, y));
+		ILiteral body = Factory.BASIC.createLiteral(true, p, Factory.BASIC.createTuple(subject, object));
+		IRule rule = Factory.BASIC.createRule(Arrays.asList(head), Arrays.asList(body));
+		return new RuleStreams(configuration, null, rule).getBodyStreams().get(0);
+	}
+	
+	private Fields variableField(LiteralFields literalFields, int variable) {
+		return new Fields(literalFields.getVariableFields().get(variable).getName());
+	}
+	
+	public void testHotKeys() {
+		LiteralFields literalFields = literal(x, y);
+		JoinKeySampler joinKeySampler = new JoinKeySampler(configuration);
+		Set<Tuple> expected = new HashSet<Tuple>(Arrays.asList(new Tuple(iri("hot"))));
+		assertEquals(expected, joinKeySampler.getHotKeys(literalFields, variableField(literalFields, 0)));
+		//each object is found in only one record
+		assertTrue(joinKeySampler.getHotKeys(literalFields, variableField(literalFields, 1)).isEmpty());
+		
+		//not sampled
+		configuration.skewSampleSize = 0;
+		assertTrue(joinKeySampler.getHotKeys(literalFields, variableField(literalFields, 0)).isEmpty());
+	}
+	
+	public void testConstants() {
+		//p(X, o0), only the first record has the constant so its subject is the only key in the sample
+		LiteralFields literalFields = literal(x, Factory.CONCRETE.createIri("http://larkc.eu/o0"));
+		Set<Tuple> expected = new HashSet<Tuple>(Arrays.asList(new Tuple(iri("hot"))));
+		assertEquals(expected, new JoinKeySampler(configuration).getHotKeys(literalFields, variableField(literalFields, 0)));
+		
+		//p(X, o9)
+		literalFields = literal(x, Factory.CONCRETE.createIri("http://larkc.eu/o9"));
+		expected = new HashSet<Tuple>(Arrays.asList(new Tuple(iri("cold9"))));
+		assertEquals(expected, new JoinKeySampler(configuration).getHotKeys(literalFields, variableField(literalFields, 0)));
+	}
+	
+	private void writeFacts(Tuple[] tuples) throws Exception {
+		DistributedFileSystemManager distributedFileSystemManager = new DistributedFileSystemManager(configuration);
+		String path = distributedFileSystemManager.getPredicateFactsPath(distributedFileSystemManager.getPredicateData(new IRIWritable(p)).getLocation());
+		Tap sink = new Hfs(distributedFileSystemManager.getScheme(new Fields(0, 1, 2)), path, true);
+		TupleEntryCollector collector = sink.openForWrite(configuration.jobConf);
+		for (Tuple tuple : tuples) {
+			collector.add(tuple);
+		}
+		collector.close();
+	}
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.indexing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.deri.iris.factory.Factory;
+
+import eu.larkc.iris.LocalProjectTest;
+import eu.larkc.iris.storage.IRIWritable;
+
+/**
+ * Tests the versions of the predicates configuration saved by the {@code PredicateCatalog}, on the local file system
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class PredicateCatalogTest extends LocalProjectTest {
+
+	public PredicateCatalogTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		project.mkdirs();
+	}
+	
+	/*
+	 * a new catalog of the project, as for a new evaluation
+	 */
+	private PredicateCatalog catalog() {
+		return createConfiguration().predicateCatalog;
+	}
+	
+	private static IRIWritable predicate(String symbol) {
+		return new IRIWritable(Factory.BASIC.createPredicate(symbol, 2));
+	}
+	
+	/*
+	 * the names of the configuration files of the project
+	 */
+	private List<String> configurationFiles() {
+		List<String> names = new ArrayList<String>();
+		for (String name : project.list()) {
+			if (name.contains(DistributedFileSystemManager.PREDICATES_CONFIG_FILE) && !name.endsWith(".crc")) {
+				names.add(name);
+			}
+		}
+		return names;
+	}
+	
+	public void testVersions() {
+		PredicateCatalog catalog = catalog();
+		assertEquals(0, catalog.getVersion());
+		assertTrue(catalog.getPredicateData().isEmpty());
+		
+		catalog.addPredicates(Arrays.asList(new PredicateCount(predicate("p"), 10L), new PredicateCount(predicate("q"), 2000L)));
+		catalog.save();
+		assertEquals(1, catalog.getVersion());
+		assertEquals(Arrays.asList(DistributedFileSystemManager.PREDICATES_CONFIG_FILE + ".1"), configurationFiles());
+		
+		catalog.addPredicates(Arrays.asList(new PredicateCount(predicate("p"), 5L)));
+		catalog.save();
+		assertEquals(2, catalog.getVersion());
+		//the older version is removed after the commit
+		assertEquals(Arrays.asList(DistributedFileSystemManager.PREDICATES_CONFIG_FILE + ".2"), configurationFiles());
+		
+		//a new catalog reads the last version
+		PredicateCatalog loaded = catalog();
+		assertEquals(2, loaded.getVersion());
+		assertEquals(2, loaded.getPredicateData().size());
+		PredicateData p = loaded.getPredicateData(predicate("p"));
+		assertEquals(new Long(15), p.getCount());
+		assertEquals(new Integer(0), p.getLocation());
+		PredicateData q = loaded.getPredicateData(predicate("q"));
+		assertEquals(new Long(2000), q.getCount());
+		assertEquals(new Integer(1), q.getLocation());
+		assertEquals(new Integer(2), loaded.getMaxId());
+		assertEquals(new Integer(1), loaded.getMaxLocationId());
+	}
+	
+	public void testNotVersionedFile() throws Exception {
+		//the configuration file written before the versions is read as version 0
+		FileSystem fs = FileSystem.get(configuration.hadoopConfiguration);
+		//with the predicates written without their layout
+		FSDataOutputStream outputStream = fs.create(new Path(project.getAbsolutePath(), DistributedFileSystemManager.PREDICATES_CONFIG_FILE));
+		outputStream.writeUTF(predicate("p").getValue());
+		outputStream.writeInt(1);
+		outputStream.writeInt(0);
+		outputStream.writeLong(10L);
+		outputStream.close();
+		
+		PredicateCatalog catalog = catalog();
+		assertEquals(0, catalog.getVersion());
+		assertEquals(new Long(10), catalog.getPredicateData(predicate("p")).getCount());
+		assertFalse(catalog.getPredicateData(predicate("p")).isDistinctFacts());
+		
+		catalog.save();
+		assertEquals(1, catalog.getVersion());
+		assertEquals(Arrays.asList(DistributedFileSystemManager.PREDICATES_CONFIG_FILE + ".1"), configurationFiles());
+	}
+	
+	public void testDistinctFacts() {
+		PredicateCatalog catalog = catalog();
+		//p is imported, q is derived and has no facts
+		catalog.addFacts(Arrays.asList(new PredicateCount(predicate("p"), 10L)));
+		catalog.addPredicates(Arrays.asList(new PredicateCount(predicate("q"), 20L)));
+		catalog.save();
+		
+		PredicateCatalog loaded = catalog();
+		assertTrue(loaded.getPredicateData(predicate("p")).isDistinctFacts());
+		assertTrue(loaded.getPredicateData(predicate("q")).isDistinctFacts());
+		
+		//the inferences do not change the layout of the facts, a second import does
+		loaded.addPredicates(Arrays.asList(new PredicateCount(predicate("p"), 5L)));
+		assertTrue(loaded.getPredicateData(predicate("p")).isDistinctFacts());
+		loaded.addFacts(Arrays.asList(new PredicateCount(predicate("p"), 5L), new PredicateCount(predicate("q"), 5L)));
+		loaded.save();
+		assertFalse(catalog().getPredicateData(predicate("p")).isDistinctFacts());
+		assertFalse(catalog().getPredicateData(predicate("q")).isDistinctFacts());
+	}
+	
+	public void testDistinctInferences() {
+		PredicateCatalog catalog = catalog();
+		//p is imported and has no inferences, q is derived
+		catalog.addFacts(Arrays.asList(new PredicateCount(predicate("p"), 10L)));
+		catalog.addPredicates(Arrays.asList(new PredicateCount(predicate("q"), 20L)));
+		assertTrue(catalog.getPredicateData(predicate("p")).isDistinctInferences());
+		assertFalse(catalog.getPredicateData(predicate("q")).isDistinctInferences());
+		
+		//the compaction of a location makes the inferences of all its predicates distinct
+		catalog.setDistinctInferences(catalog.getPredicateData(predicate("q")).getLocation());
+		catalog.save();
+		PredicateCatalog loaded = catalog();
+		assertTrue(loaded.getPredicateData(predicate("p")).isDistinctInferences());
+		assertTrue(loaded.getPredicateData(predicate("q")).isDistinctInferences());
+		assertTrue(loaded.getPredicateData(predicate("q")).isDistinctFacts());
+		
+		//new inferences and new facts are not known to be distinct from the existing inferences
+		loaded.addPredicates(Arrays.asList(new PredicateCount(predicate("q"), 5L)));
+		loaded.addFacts(Arrays.asList(new PredicateCount(predicate("p"), 5L)));
+		loaded.save();
+		assertFalse(catalog().getPredicateData(predicate("p")).isDistinctInferences());
+		assertFalse(catalog().getPredicateData(predicate("q")).isDistinctInferences());
+	}
+	
+	public void testConcurrentCommit() {
+		PredicateCatalog catalog = catalog();
+		catalog.save();
+		
+		//two evaluations loaded the same version
+		PredicateCatalog first = catalog();
+		PredicateCatalog second = catalog();
+		first.addPredicates(Arrays.asList(new PredicateCount(predicate("p"), 10L)));
+		second.addPredicates(Arrays.asList(new PredicateCount(predicate("q"), 20L)));
+		assertEquals(1, second.getVersion());
+		first.save();
+		try {
+			second.save();
+			fail("the version was already committed");
+		} catch (RuntimeException e) {
+			//expected
+		}
+		
+		//the committed version is kept, the temporary file is removed
+		assertEquals(Arrays.asList(DistributedFileSystemManager.PREDICATES_CONFIG_FILE + ".2"), configurationFiles());
+		PredicateCatalog loaded = catalog();
+		assertNotNull(loaded.getPredicateData(predicate("p")));
+		assertNull(loaded.getPredicateData(predicate("q")));
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.indexing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.deri.iris.factory.Factory;
+
+import cascading.tap.Hfs;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntryCollector;
+import cascading.tuple.TupleEntryIterator;
+import eu.larkc.iris.LocalProjectTest;
+import eu.larkc.iris.storage.IRIWritable;
+import eu.larkc.iris.storage.LongTermWritable;
+
+/**
+ * Tests the lookup of the client side terms and the encoding flows of the {@code TermDictionary}, on the local file system
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class TermDictionaryTest extends LocalProjectTest {
+
+	public TermDictionaryTest(String name) {
+		super(name);
+	}
+
+	private IRIWritable iri(String iri) {
+		return new IRIWritable(Factory.CONCRETE.createIri(iri));
+	}
+	
+	private Tuple fact(String predicate, String subject, String object) {
+		return new Tuple(iri("http://larkc.eu/" + predicate), iri("http://larkc.eu/" + subject), iri("http://larkc.eu/" + object));
+	}
+	
+	private void write(String path, Tuple... tuples) throws IOException {
+		TupleEntryCollector collector = new Hfs(new Fields(0, 1, 2), path, true).openForWrite(configuration.jobConf);
+		for (Tuple tuple : tuples) {
+			collector.add(tuple);
+		}
+		collector.close();
+	}
+	
+	private Set<Tuple> read(Tap source) throws IOException {
+		Set<Tuple> tuples = new HashSet<Tuple>();
+		TupleEntryIterator iterator = source.openForRead(configuration.jobConf);
+		while (iterator.hasNext()) {
+			tuples.add(new Tuple(iterator.next().getTuple())); //the iterator reuses the tuple
+		}
+		iterator.close();
+		return tuples;
+	}
+	
+	private Set<Tuple> readGeneration(File generation) throws IOException {
+		return read(new Hfs(new Fields(TermDictionary.TERM_FIELD, TermDictionary.ID_FIELD), generation.getAbsolutePath()));
+	}
+	
+	public void testEncodeDecode() throws IOException {
+		String factsPath = new File(project, "facts").getAbsolutePath();
+		write(factsPath, fact("p", "a", "b"), fact("p", "b", "c"), fact("q", "a", "c"));
+		TermDictionary dictionary = configuration.termDictionary;
+		dictionary.build(factsPath);
+		
+		//one id for each of the 5 distinct terms
+		File[] generations = new File(project, DistributedFileSystemManager.DICTIONARY_FOLDER).listFiles();
+		assertEquals(1, generations.length);
+		File firstGeneration = generations[0];
+		Set<Tuple> entries = readGeneration(firstGeneration);
+		assertEquals(5, entries.size());
+		Set<Object> ids = new HashSet<Object>();
+		for (Tuple entry : entries) {
+			ids.add(entry.get(1));
+		}
+		assertEquals(5, ids.size());
+		
+		//the facts joined with the dictionary on each position
+		String encodedPath = new File(project, "encoded").getAbsolutePath();
+		dictionary.encode(factsPath, encodedPath);
+		Set<Tuple> expected = new HashSet<Tuple>();
+		for (Tuple fact : new Tuple[] {fact("p", "a", "b"), fact("p", "b", "c"), fact("q", "a", "c")}) {
+			expected.add(new Tuple(dictionary.getId((IRIWritable) fact.get(0)), dictionary.getId((IRIWritable) fact.get(1)), 
+					dictionary.getId((IRIWritable) fact.get(2))));
+		}
+		assertEquals(expected, read(new Hfs(new Fields(0, 1, 2), encodedPath)));
+		
+		String decodedPath = new File(project, "decoded").getAbsolutePath();
+		dictionary.decode(new Hfs(new Fields(0, 1, 2), encodedPath), decodedPath);
+		assertEquals(new HashSet<Tuple>(Arrays.asList(fact("p", "a", "b"), fact("p", "b", "c"), fact("q", "a", "c"))), 
+				read(new Hfs(new Fields(0, 1, 2), decodedPath)));
+		
+		//only the term not yet in the dictionary goes in the next generation
+		String newFactsPath = new File(project, "new_facts").getAbsolutePath();
+		write(newFactsPath, fact("p", "c", "d"), fact("p", "c", "d"));
+		dictionary.build(newFactsPath);
+		generations = new File(project, DistributedFileSystemManager.DICTIONARY_FOLDER).listFiles();
+		assertEquals(2, generations.length);
+		Set<Tuple> newEntries = readGeneration(generations[0].equals(firstGeneration) ? generations[1] : generations[0]);
+		assertEquals(1, newEntries.size());
+		assertEquals(iri("http://larkc.eu/d"), newEntries.iterator().next().get(0));
+	}
+	
+	public void testRoundTrip() {
+		TermDictionary dictionary = configuration.termDictionary;
+		LongTermWritable a = dictionary.getId(iri("http://larkc.eu/a"));
+		LongTermWritable b = dictionary.getId(iri("http://larkc.eu/b"));
+		assertFalse(a.equals(b));
+		assertEquals(a, dictionary.getId(iri("http://larkc.eu/a")));
+		assertEquals(iri("http://larkc.eu/b"), dictionary.getTerm(b));
+		
+		//nothing is written before the flush, then both terms are written in the same generation
+		assertFalse(new File(project, DistributedFileSystemManager.DICTIONARY_FOLDER).exists());
+		dictionary.flush();
+		File[] generations = new File(project, DistributedFileSystemManager.DICTIONARY_FOLDER).listFiles();
+		assertEquals(1, generations.length);
+		assertEquals(a.getId() >>> 48, b.getId() >>> 48);
+		
+		//a new client reads the terms from the written generation
+		TermDictionary reloaded = createConfiguration().termDictionary;
+		assertEquals(a, reloaded.getId(iri("http://larkc.eu/a")));
+		assertEquals(b, reloaded.getId(iri("http://larkc.eu/b")));
+		assertEquals(iri("http://larkc.eu/a"), reloaded.getTerm(a));
+		assertNull(reloaded.getTerm(new LongTermWritable(((a.getId() >>> 48) + 1) << 48)));
+		
+		//the new terms of the second client go in the next generation
+		LongTermWritable c = reloaded.getId(iri("http://larkc.eu/c"));
+		assertEquals((a.getId() >>> 48) + 1, c.getId() >>> 48);
+		reloaded.flush();
+		assertEquals(2, new File(project, DistributedFileSystemManager.DICTIONARY_FOLDER).listFiles().length);
+		assertEquals(iri("http://larkc.eu/c"), createConfiguration().termDictionary.getTerm(c));
+	}
+}
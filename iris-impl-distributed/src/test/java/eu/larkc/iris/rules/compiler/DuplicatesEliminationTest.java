@@ -0,0 +1,141 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.rules.compiler;
+
+import java.util.Arrays;
+
+import org.deri.iris.api.basics.ILiteral;
+import org.deri.iris.api.basics.IRule;
+import org.deri.iris.api.terms.ITerm;
+import org.deri.iris.factory.Factory;
+
+import cascading.pipe.GroupBy;
+import cascading.pipe.Pipe;
+import cascading.pipe.assembly.CountBy;
+import eu.larkc.iris.LocalProjectTest;
+import eu.larkc.iris.indexing.PredicateCount;
+import eu.larkc.iris.storage.IRIWritable;
+
+/**
+ * Tests when the {@code CascadingRuleCompiler} eliminates the duplicates of the joins and the existing results of the head
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class DuplicatesEliminationTest extends LocalProjectTest {
+
+	private ITerm x = Factory.TERM.createVariable("X");
+	private ITerm y = Factory.TERM.createVariable("Y");
+	private ITerm z = Factory.TERM.createVariable("Z");
+	
+	//h(X, Z) :- p(X, Y), q(Y, Z)
+	private IRule rule = rule(literal("h", x, z), literal("p", x, y), literal("q", y, z));
+	
+	//the body and the head of the last compiled rule
+	private Pipe bodyPipe;
+	private LiteralFields headStream;
+	
+	public DuplicatesEliminationTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		configuration.doPredicateIndexing = true;
+		//p and q are imported, the import writes them free of duplicates
+		configuration.predicateCatalog.addFacts(Arrays.asList(
+				new PredicateCount(new IRIWritable(Factory.BASIC.createPredicate("p", 2)), 100000L), 
+				new PredicateCount(new IRIWritable(Factory.BASIC.createPredicate("q", 2)), 100000L)));
+		configuration.predicateCatalog.addPredicates(Arrays.asList(
+				new PredicateCount(new IRIWritable(Factory.BASIC.createPredicate("h", 2)), 10L)));
+	}
+	
+	private static ILiteral literal(String predicate, ITerm... terms) {
+		return Factory.BASIC.createLiteral(true, Factory.BASIC.createPredicate(predicate, terms.length), Factory.BASIC.createTuple(terms));
+	}
+	
+	private static IRule rule(ILiteral head, ILiteral... body) {
+		return Factory.BASIC.createRule(Arrays.asList(head), Arrays.asList(body));
+	}
+	
+	private void compile(IRule compiledRule, IRule... evaluatedRules) throws Exception {
+		CascadingRuleCompiler compiler = new CascadingRuleCompiler(configuration) {
+			@Override
+			protected FlowAssembly attachTaps(RuleStreams ruleStreams, PipeFields pipeFields) {
+				bodyPipe = pipeFields.getPipe();
+				headStream = ruleStreams.getHeadStream();
+				return super.attachTaps(ruleStreams, pipeFields);
+			}
+		};
+		compiler.setEvaluatedRules(Arrays.asList(evaluatedRules));
+		compiler.compile(compiledRule);
+	}
+	
+	/*
+	 * true if the duplicates of the body are eliminated
+	 */
+	private boolean eliminatesDuplicates(Pipe pipe) {
+		if (pipe instanceof GroupBy || pipe instanceof CountBy) {
+			return true;
+		}
+		for (Pipe previous : pipe.getPrevious()) {
+			if (eliminatesDuplicates(previous)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	public void testDistinctJoin() throws Exception {
+		compile(rule, rule);
+		assertFalse(eliminatesDuplicates(bodyPipe));
+	}
+	
+	public void testNotDistinctInferences() throws Exception {
+		//q has inferences from several evaluations
+		configuration.predicateCatalog.addPredicates(Arrays.asList(new PredicateCount(new IRIWritable(Factory.BASIC.createPredicate("q", 2)), 10L)));
+		compile(rule, rule);
+		assertTrue(eliminatesDuplicates(bodyPipe));
+		
+		//until the inferences of its location are compacted
+		configuration.predicateCatalog.setDistinctInferences(configuration.predicateCatalog.getPredicateData(
+				new IRIWritable(Factory.BASIC.createPredicate("q", 2))).getLocation());
+		compile(rule, rule);
+		assertFalse(eliminatesDuplicates(bodyPipe));
+	}
+	
+	public void testDerivedLiteral() throws Exception {
+		//q(X, Y) :- p(X, Y) is evaluated together with the rule, q gets new inferences
+		compile(rule, rule, rule(literal("q", x, y), literal("p", x, y)));
+		assertTrue(eliminatesDuplicates(bodyPipe));
+	}
+	
+	public void testExistingResults() throws Exception {
+		compile(rule, rule);
+		assertTrue(headStream.isSource());
+		
+		//the head of n(X, Z) :- p(X, Y), q(Y, Z) has no records and is evaluated only once
+		IRule newHeadRule = rule(literal("n", x, z), literal("p", x, y), literal("q", y, z));
+		compile(newHeadRule, newHeadRule);
+		assertFalse(headStream.isSource());
+		
+		//n(X, Z) :- n(X, Y), q(Y, Z) is recursive, its head grows with every iteration
+		IRule recursiveRule = rule(literal("n", x, z), literal("n", x, y), literal("q", y, z));
+		compile(recursiveRule, recursiveRule);
+		assertTrue(headStream.isSource());
+	}
+}
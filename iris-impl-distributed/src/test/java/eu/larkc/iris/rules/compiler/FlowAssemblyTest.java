@@ -0,0 +1,149 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.rules.compiler;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.deri.iris.api.basics.ILiteral;
+import org.deri.iris.api.basics.IPredicate;
+import org.deri.iris.api.basics.IRule;
+import org.deri.iris.api.terms.ITerm;
+import org.deri.iris.factory.Factory;
+
+import cascading.tap.Hfs;
+import cascading.tap.Tap;
+import cascading.tuple.Fields;
+import cascading.tuple.Tuple;
+import cascading.tuple.TupleEntryCollector;
+import cascading.tuple.TupleEntryIterator;
+import eu.larkc.iris.LocalProjectTest;
+import eu.larkc.iris.evaluation.bottomup.naive.DistributedNaiveEvaluator;
+import eu.larkc.iris.indexing.DistributedFileSystemManager;
+import eu.larkc.iris.indexing.PredicateCount;
+import eu.larkc.iris.storage.IRIWritable;
+
+/**
+ * Evaluates a recursive rule over several iterations, the {@code FlowAssembly} of the rule reuses its pipes and source taps 
+ * and must read the inferences of the previous iterations, on the local file system
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class FlowAssemblyTest extends LocalProjectTest {
+
+	private IPredicate edge = Factory.BASIC.createPredicate("edge", 2);
+	private IPredicate path = Factory.BASIC.createPredicate("path", 2);
+	
+	private ITerm x = Factory.TERM.createVariable("X");
+	private ITerm y = Factory.TERM.createVariable("Y");
+	private ITerm z = Factory.TERM.createVariable("Z");
+	
+	//path(X, Y) :- edge(X, Y)
+	private IRule base = rule(literal(path, x, y), literal(edge, x, y));
+	//path(X, Z) :- path(X, Y), edge(Y, Z)
+	private IRule transitivity = rule(literal(path, x, z), literal(path, x, y), literal(edge, y, z));
+	
+	public FlowAssemblyTest(String name) {
+		super(name);
+	}
+
+	private static ILiteral literal(IPredicate predicate, ITerm... terms) {
+		return Factory.BASIC.createLiteral(true, predicate, Factory.BASIC.createTuple(terms));
+	}
+	
+	private static IRule rule(ILiteral head, ILiteral... body) {
+		return Factory.BASIC.createRule(Arrays.asList(head), Arrays.asList(body));
+	}
+	
+	private static Tuple tuple(IPredicate predicate, String first, String second) {
+		return new Tuple(new IRIWritable(predicate), new IRIWritable(Factory.CONCRETE.createIri("http://larkc.eu/" + first)), 
+				new IRIWritable(Factory.CONCRETE.createIri("http://larkc.eu/" + second)));
+	}
+	
+	private Tuple[] edges() {
+		return new Tuple[] {tuple(edge, "a", "b"), tuple(edge, "b", "c"), tuple(edge, "c", "d")};
+	}
+	
+	private Set<Tuple> paths() {
+		return new HashSet<Tuple>(Arrays.asList(tuple(path, "a", "b"), tuple(path, "b", "c"), tuple(path, "c", "d"), 
+				tuple(path, "a", "c"), tuple(path, "b", "d"), tuple(path, "a", "d")));
+	}
+	
+	public void testNaiveEvaluation() throws Exception {
+		writeFacts(new DistributedFileSystemManager(configuration).getFactsPath(), edges());
+		evaluate();
+		assertEquals(paths(), readInferences(DistributedFileSystemManager.INFERENCES_FOLDER));
+	}
+	
+	public void testSemiNaiveEvaluation() throws Exception {
+		configuration.doSemiNaiveEvaluation = true;
+		writeFacts(new DistributedFileSystemManager(configuration).getFactsPath(), edges());
+		evaluate();
+		assertEquals(paths(), readInferences(DistributedFileSystemManager.INFERENCES_FOLDER));
+	}
+	
+	public void testNewInferencesLocation() throws Exception {
+		//path has no inferences before the first iteration, the source taps must be built again once they exist
+		//the indexed storage reads the facts of the head, path has one, not connected to the edges
+		configuration.doPredicateIndexing = true;
+		configuration.predicateCatalog.addPredicates(Arrays.asList(new PredicateCount(new IRIWritable(edge), 3L), new PredicateCount(new IRIWritable(path), 1L)));
+		DistributedFileSystemManager distributedFileSystemManager = new DistributedFileSystemManager(configuration);
+		Tuple[] facts = Arrays.copyOf(edges(), 4);
+		facts[3] = tuple(path, "x", "y");
+		writeFacts(distributedFileSystemManager.getPredicateFactsPath(distributedFileSystemManager.getPredicateData(new IRIWritable(edge)).getLocation()), facts);
+		evaluate();
+		Integer location = configuration.predicateCatalog.getPredicateData(new IRIWritable(path)).getLocation();
+		assertEquals(paths(), readInferences(DistributedFileSystemManager.INFERENCES_FOLDER + "/" + location));
+	}
+	
+	private void evaluate() throws Exception {
+		CascadingRuleCompiler compiler = new CascadingRuleCompiler(configuration);
+		List<IRule> rules = Arrays.asList(base, transitivity);
+		compiler.setEvaluatedRules(rules);
+		List<IDistributedCompiledRule> compiledRules = new ArrayList<IDistributedCompiledRule>();
+		for (IRule rule : rules) {
+			compiledRules.add(compiler.compile(rule));
+		}
+		new DistributedNaiveEvaluator().evaluateRules(1, compiledRules, configuration);
+	}
+	
+	private void writeFacts(String path, Tuple[] tuples) throws Exception {
+		Tap sink = new Hfs(new DistributedFileSystemManager(configuration).getScheme(new Fields(0, 1, 2)), path, true);
+		TupleEntryCollector collector = sink.openForWrite(configuration.jobConf);
+		for (Tuple tuple : tuples) {
+			collector.add(tuple);
+		}
+		collector.close();
+	}
+	
+	private Set<Tuple> readInferences(String inferencesFolder) throws Exception {
+		Set<Tuple> tuples = new HashSet<Tuple>();
+		for (File result : new File(project, inferencesFolder + "/inference").listFiles()) {
+			Tap source = new Hfs(new DistributedFileSystemManager(configuration).getScheme(new Fields(0, 1, 2)), result.getAbsolutePath());
+			TupleEntryIterator iterator = source.openForRead(configuration.jobConf);
+			while (iterator.hasNext()) {
+				tuples.add(new Tuple(iterator.next().getTuple())); //the iterator reuses the tuple
+			}
+			iterator.close();
+		}
+		return tuples;
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.rules.compiler;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.deri.iris.api.basics.ILiteral;
+import org.deri.iris.api.basics.IRule;
+import org.deri.iris.api.terms.ITerm;
+import org.deri.iris.factory.Factory;
+
+import cascading.pipe.Each;
+import cascading.pipe.Every;
+import cascading.pipe.assembly.CountBy;
+import cascading.tuple.Tuple;
+import eu.larkc.iris.Configuration;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests that the joins grouping on added fields leave the joined streams unchanged and drop the added fields
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class PipeFieldsTest extends TestCase {
+
+	private ITerm x = Factory.TERM.createVariable("X");
+	private ITerm y = Factory.TERM.createVariable("Y");
+	private ITerm z = Factory.TERM.createVariable("Z");
+	
+	private List<LiteralFields> bodyStreams;
+	
+	public PipeFieldsTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		//h(X, Z) :- p(X, Y), q(Y, Z)
+		IRule rule = Factory.BASIC.createRule(Arrays.asList(literal("h", x, z)), Arrays.asList(literal("p", x, y), literal("q", y, z)));
+		bodyStreams = new RuleStreams(new Configuration(), null, rule).getBodyStreams();
+	}
+	
+	private static ILiteral literal(String predicate, ITerm... terms) {
+		return Factory.BASIC.createLiteral(true, Factory.BASIC.createPredicate(predicate, terms.length), Factory.BASIC.createTuple(terms));
+	}
+	
+	public void testSkewedInnerJoin() {
+		LiteralFields left = bodyStreams.get(0);
+		LiteralFields right = bodyStreams.get(1);
+		PipeFields join = left.skewedInnerJoin(right, new HashSet<Tuple>(), 4);
+		assertJoin(left, right, join);
+		//the streams can be joined again
+		assertJoin(left, right, left.skewedInnerJoin(right, new HashSet<Tuple>(), 4));
+	}
+	
+	public void testCrossProduct() {
+		LiteralFields left = bodyStreams.get(0);
+		LiteralFields right = bodyStreams.get(1);
+		assertJoin(left, right, left.crossProduct(right, 4));
+	}
+	
+	public void testEliminateDuplicates() {
+		LiteralFields stream = bodyStreams.get(0);
+		PipeFields distinct = stream.eliminateDuplicates();
+		assertTrue(distinct.getPipe() instanceof Every);
+		assertEquals(stream.getFields(), distinct.getFields());
+		//with partial aggregation the duplicates are counted before the shuffle and the count is projected away
+		distinct = stream.eliminateDuplicates(100);
+		assertTrue(distinct.getPipe() instanceof Each);
+		assertTrue(distinct.getPipe().getPrevious()[0] instanceof CountBy);
+		assertEquals(stream.getFields(), ((Each) distinct.getPipe()).getArgumentSelector());
+		assertEquals(stream.getFields(), distinct.getFields());
+	}
+	
+	private void assertJoin(LiteralFields left, LiteralFields right, PipeFields join) {
+		assertEquals(3, left.size());
+		assertEquals(3, right.size());
+		assertEquals(6, join.size());
+		assertEquals(left.getFields().append(right.getFields()), join.getFields());
+		//the added fields are projected away after the group
+		assertTrue(join.getPipe() instanceof Each);
+		assertEquals(join.getFields(), ((Each) join.getPipe()).getArgumentSelector());
+	}
+}
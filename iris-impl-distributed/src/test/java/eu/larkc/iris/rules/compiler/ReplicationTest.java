@@ -0,0 +1,152 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.rules.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.deri.iris.api.basics.ILiteral;
+import org.deri.iris.api.basics.IRule;
+import org.deri.iris.api.terms.ITerm;
+import org.deri.iris.factory.Factory;
+
+import cascading.pipe.Operator;
+import cascading.pipe.Pipe;
+import eu.larkc.iris.LocalProjectTest;
+import eu.larkc.iris.evaluation.ReplicatedAntiJoin;
+import eu.larkc.iris.evaluation.ReplicatedJoin;
+import eu.larkc.iris.indexing.PredicateCount;
+import eu.larkc.iris.storage.IRIWritable;
+
+/**
+ * Tests which literals the {@code CascadingRuleCompiler} joins on the map side
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class ReplicationTest extends LocalProjectTest {
+
+	private ITerm x = Factory.TERM.createVariable("X");
+	private ITerm y = Factory.TERM.createVariable("Y");
+	private ITerm z = Factory.TERM.createVariable("Z");
+	
+	//h(X, Z) :- big(X, Y), small(Y, Z)
+	private IRule rule = rule(literal("h", x, z), literal("big", x, y), literal("small", y, z));
+	
+	//the body of the last compiled rule
+	private Pipe bodyPipe;
+	
+	public ReplicationTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		configuration.doPredicateIndexing = true;
+		configuration.replicatedJoinThreshold = 100;
+		configuration.predicateCatalog.addPredicates(Arrays.asList(
+				new PredicateCount(new IRIWritable(Factory.BASIC.createPredicate("big", 2)), 100000L), 
+				new PredicateCount(new IRIWritable(Factory.BASIC.createPredicate("small", 2)), 10L), 
+				new PredicateCount(new IRIWritable(Factory.BASIC.createPredicate("h", 2)), 10L)));
+	}
+	
+	private static ILiteral literal(String predicate, ITerm... terms) {
+		return Factory.BASIC.createLiteral(true, Factory.BASIC.createPredicate(predicate, terms.length), Factory.BASIC.createTuple(terms));
+	}
+	
+	private static IRule rule(ILiteral head, ILiteral... body) {
+		return Factory.BASIC.createRule(Arrays.asList(head), Arrays.asList(body));
+	}
+	
+	private List<Class<?>> compile(List<IRule> evaluatedRules) throws Exception {
+		return compile(rule, evaluatedRules);
+	}
+	
+	private List<Class<?>> compile(IRule compiledRule, List<IRule> evaluatedRules) throws Exception {
+		CascadingRuleCompiler compiler = new CascadingRuleCompiler(configuration) {
+			@Override
+			protected FlowAssembly attachTaps(RuleStreams ruleStreams, PipeFields pipeFields) {
+				bodyPipe = pipeFields.getPipe();
+				return super.attachTaps(ruleStreams, pipeFields);
+			}
+		};
+		if (evaluatedRules != null) {
+			compiler.setEvaluatedRules(evaluatedRules);
+		}
+		compiler.compile(compiledRule);
+		List<Class<?>> operations = new ArrayList<Class<?>>();
+		collectOperations(bodyPipe, operations);
+		return operations;
+	}
+	
+	private void collectOperations(Pipe pipe, List<Class<?>> operations) {
+		if (pipe instanceof Operator) {
+			operations.add(((Operator) pipe).getOperation().getClass());
+		}
+		for (Pipe previous : pipe.getPrevious()) {
+			collectOperations(previous, operations);
+		}
+	}
+	
+	public void testSmallLiteralReplicated() throws Exception {
+		assertTrue(compile(null).contains(ReplicatedJoin.class));
+		assertTrue(compile(Arrays.asList(rule)).contains(ReplicatedJoin.class));
+	}
+	
+	public void testDerivedLiteralNotReplicated() throws Exception {
+		//small(X, Y) :- big(X, Y) is evaluated together with the rule, small can grow over the threshold
+		IRule derivingRule = rule(literal("small", x, y), literal("big", x, y));
+		assertFalse(compile(Arrays.asList(rule, derivingRule)).contains(ReplicatedJoin.class));
+	}
+	
+	public void testVariablePredicateHead() throws Exception {
+		//RIF_HAS_VALUE(Z, X, Y) :- big(X, Y), small(Y, Z) can derive any predicate
+		IRule derivingRule = rule(literal(LiteralFields.RIF_HAS_VALUE, z, x, y), literal("big", x, y), literal("small", y, z));
+		assertFalse(compile(Arrays.asList(rule, derivingRule)).contains(ReplicatedJoin.class));
+	}
+	
+	public void testClosedSchemaReplicated() throws Exception {
+		//small is closed by the schema closure, it is replicated whatever the threshold
+		configuration.replicatedJoinThreshold = 0;
+		assertFalse(compile(Arrays.asList(rule)).contains(ReplicatedJoin.class));
+		configuration.closedSchemaPredicates.add("small");
+		assertTrue(compile(Arrays.asList(rule)).contains(ReplicatedJoin.class));
+	}
+	
+	public void testExistingResultsReplicated() throws Exception {
+		assertTrue(compile(null).contains(ReplicatedAntiJoin.class));
+		assertTrue(compile(Arrays.asList(rule)).contains(ReplicatedAntiJoin.class));
+	}
+	
+	public void testGrowingHeadNotReplicated() throws Exception {
+		//h(X, Y) :- big(X, Y) derives the head too, the existing results of the head grow during the evaluation
+		assertFalse(compile(Arrays.asList(rule, rule(literal("h", x, y), literal("big", x, y)))).contains(ReplicatedAntiJoin.class));
+		
+		//h(X, Z) :- h(X, Y), small(Y, Z) is recursive, its head grows with every iteration
+		IRule recursiveRule = rule(literal("h", x, z), literal("h", x, y), literal("small", y, z));
+		assertFalse(compile(recursiveRule, Arrays.asList(recursiveRule)).contains(ReplicatedAntiJoin.class));
+	}
+	
+	public void testUnknownCountNotReplicated() throws Exception {
+		//h(X, Z) :- other(X, Y), other(Y, a), the count of other is not known, the constant does not make it small
+		configuration.replicatedJoinThreshold = Long.MAX_VALUE / 2;
+		IRule rule = rule(literal("h", x, z), literal("other", x, y), 
+				Factory.BASIC.createLiteral(true, Factory.BASIC.createPredicate("other", 2), Factory.BASIC.createTuple(y, Factory.TERM.createString("a"))));
+		assertFalse(compile(rule, null).contains(ReplicatedJoin.class));
+	}
+}
@@ -4,8 +4,20 @@
 package eu.larkc.iris.rules.optimisation;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
+import org.deri.iris.api.basics.ILiteral;
+import org.deri.iris.api.basics.IRule;
+import org.deri.iris.api.terms.ITerm;
+import org.deri.iris.factory.Factory;
+
+import eu.larkc.iris.Configuration;
+import eu.larkc.iris.LocalProjectTest;
 import eu.larkc.iris.evaluation.distributed.ProgramEvaluationTest;
+import eu.larkc.iris.indexing.PredicateCount;
+import eu.larkc.iris.storage.IRIWritable;
 
 /**
  * @author valer
@@ -38,4 +50,78 @@ public class JoinOptimizerTest extends ProgramEvaluationTest {
 		JoinOptimizer joinOptimizer = new JoinOptimizer();
 		joinOptimizer.optimise(rules.get(0));
 	}
+	
+	/*
+	 * a configuration with predicate indexing, where the predicates have the given records count
+	 */
+	private Configuration configuration(String[] predicates, long[] counts) {
+		Configuration configuration = LocalProjectTest.createConfiguration(LocalProjectTest.createProject(getClass()));
+		configuration.doPredicateIndexing = true;
+		List<PredicateCount> predicateCounts = new ArrayList<PredicateCount>();
+		for (int i = 0; i < predicates.length; i++) {
+			predicateCounts.add(new PredicateCount(new IRIWritable(Factory.BASIC.createPredicate(predicates[i], 2)), counts[i]));
+		}
+		configuration.predicateCatalog.addPredicates(predicateCounts);
+		return configuration;
+	}
+	
+	private static ILiteral literal(String predicate, String first, String second) {
+		ITerm[] terms = new ITerm[] {Factory.TERM.createVariable(first), Factory.TERM.createVariable(second)};
+		return Factory.BASIC.createLiteral(true, Factory.BASIC.createPredicate(predicate, 2), Factory.BASIC.createTuple(terms));
+	}
+	
+	private static IRule rule(ILiteral... body) {
+		return Factory.BASIC.createRule(Arrays.asList(literal("h", "X", "Y")), Arrays.asList(body));
+	}
+	
+	private static List<String> predicates(IRule rule) {
+		List<String> predicates = new ArrayList<String>();
+		for (ILiteral literal : rule.getBody()) {
+			predicates.add(literal.getAtom().getPredicate().getPredicateSymbol());
+		}
+		return predicates;
+	}
+	
+	//the symbols of the predicates, as stored in the literals
+	private static List<String> symbols(String... predicates) {
+		List<String> symbols = new ArrayList<String>();
+		for (String predicate : predicates) {
+			symbols.add(Factory.BASIC.createPredicate(predicate, 2).getPredicateSymbol());
+		}
+		return symbols;
+	}
+	
+	public void testKnownCardinalities() {
+		//p(X, Y) 10, q(Y, Z) 1000, r(Z, W) 100 : the smallest literal first, without cartesian joins
+		JoinOptimizer joinOptimizer = new JoinOptimizer(configuration(new String[] {"p", "q", "r"}, new long[] {10, 1000, 100}));
+		IRule rule = joinOptimizer.optimise(rule(literal("r", "Z", "W"), literal("q", "Y", "Z"), literal("p", "X", "Y")));
+		assertEquals(symbols("p", "q", "r"), predicates(rule));
+	}
+	
+	public void testCartesianProductLast() {
+		//q(Z, W) has no common variables with p(X, Y) and s(Y, V), it is joined last even if it is the smallest
+		JoinOptimizer joinOptimizer = new JoinOptimizer(configuration(new String[] {"p", "q", "s"}, new long[] {1000, 10, 100}));
+		IRule rule = joinOptimizer.optimise(rule(literal("q", "Z", "W"), literal("p", "X", "Y"), literal("s", "Y", "V")));
+		assertEquals(symbols("s", "p", "q"), predicates(rule));
+		//q(X, Y) 1, r(Z, W) 1, s(Y, Z) 1000 : joining q and r first costs the same, but it is a cartesian join
+		joinOptimizer = new JoinOptimizer(configuration(new String[] {"q", "r", "s"}, new long[] {1, 1, 1000}));
+		rule = joinOptimizer.optimise(rule(literal("q", "X", "Y"), literal("r", "Z", "W"), literal("s", "Y", "Z")));
+		assertEquals(symbols("q", "s", "r"), predicates(rule));
+	}
+	
+	public void testGreedyOrder() {
+		//a chain of 17 literals, l0(X0, X1), l1(X1, X2) ..., is ordered greedy, starting with the smallest one
+		int size = 17;
+		String[] predicates = new String[size];
+		long[] counts = new long[size];
+		List<ILiteral> body = new ArrayList<ILiteral>();
+		for (int i = 0; i < size; i++) {
+			predicates[i] = "l" + i;
+			counts[i] = (i + 1) * 10;
+			body.add(0, literal(predicates[i], "X" + i, "X" + (i + 1)));
+		}
+		JoinOptimizer joinOptimizer = new JoinOptimizer(configuration(predicates, counts));
+		IRule rule = joinOptimizer.optimise(rule(body.toArray(new ILiteral[0])));
+		assertEquals(symbols(predicates), predicates(rule));
+	}
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+
+import cascading.tuple.Tuple;
+
+/**
+ * Tests the storage and the statistics of a {@code ColumnarBlock}
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class ColumnarBlockTest extends TestCase {
+
+	public ColumnarBlockTest(String name) {
+		super(name);
+	}
+
+	private List<Tuple> createTuples() {
+		List<Tuple> tuples = new ArrayList<Tuple>();
+		for (int i = 0; i < 1000; i++) {
+			tuples.add(new Tuple(new Text("type"), new Text(i % 2 == 0 ? "a" : "c"), new LongWritable(i % 100)));
+		}
+		return tuples;
+	}
+	
+	private DataInputStream write(List<Tuple> tuples) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		ColumnarBlock.fromTuples(tuples).write(out);
+		out.close();
+		return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+	}
+	
+	public void testReadWrite() throws IOException {
+		List<Tuple> tuples = createTuples();
+		DataInputStream in = write(tuples);
+		ColumnarBlock.Header header = ColumnarBlock.readHeader(in);
+		assertEquals(1000, header.getRows());
+		ColumnarBlock block = ColumnarBlock.read(header, in);
+		for (int i = 0; i < tuples.size(); i++) {
+			assertEquals(tuples.get(i), block.getTuple(i));
+		}
+		assertNull(ColumnarBlock.readHeader(in));
+	}
+	
+	public void testStatistics() throws IOException {
+		ColumnarBlock.Header header = ColumnarBlock.readHeader(write(createTuples()));
+		assertEquals(1, header.getDistinct(0));
+		assertEquals(2, header.getDistinct(1));
+		assertTrue(header.mayContain(0, new Text("type")));
+		//out of range
+		assertFalse(header.mayContain(0, new Text("subClassOf")));
+		assertFalse(header.mayContain(2, new LongWritable(100)));
+		//in range but not in the block, excluded by the bloom filter
+		assertFalse(header.mayContain(1, new Text("b")));
+		
+		Map<Integer, Object> constants = new HashMap<Integer, Object>();
+		constants.put(1, new Text("c"));
+		assertEquals(500.0, header.estimateRows(constants), 0.001);
+		constants.put(2, new LongWritable(5));
+		assertEquals(5.0, header.estimateRows(constants), 0.001);
+		constants.put(1, new Text("b"));
+		assertEquals(0.0, header.estimateRows(constants), 0.001);
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+import cascading.tuple.hadoop.BufferedInputStream;
+
+/**
+ * Tests that the raw comparators give the same order as the deserialized terms
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class TermComparatorTest extends TestCase {
+
+	public TermComparatorTest(String name) {
+		super(name);
+	}
+
+	private BufferedInputStream serialize(WritableComparable writable) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		writable.write(out);
+		out.close();
+		BufferedInputStream stream = new BufferedInputStream();
+		stream.reset(bytes.toByteArray(), 0, bytes.size());
+		return stream;
+	}
+	
+	private IRIWritable iri(String value) {
+		IRIWritable iri = new IRIWritable();
+		iri.setValue(value);
+		return iri;
+	}
+	
+	private void assertSameOrder(java.util.Comparator<Object> comparator, WritableComparable lhs, WritableComparable rhs) throws IOException {
+		@SuppressWarnings("unchecked")
+		int raw = ((cascading.tuple.StreamComparator<BufferedInputStream>) comparator).compare(serialize(lhs), serialize(rhs));
+		assertEquals(Integer.signum(lhs.compareTo(rhs)), Integer.signum(raw));
+	}
+	
+	public void testUTFTermComparator() throws IOException {
+		UTFTermComparator comparator = new UTFTermComparator();
+		assertSameOrder(comparator, iri("http://example.org/a"), iri("http://example.org/b"));
+		assertSameOrder(comparator, iri("http://example.org/b"), iri("http://example.org/a"));
+		assertSameOrder(comparator, iri("http://example.org/a"), iri("http://example.org/a"));
+		assertSameOrder(comparator, iri("http://example.org/a"), iri("http://example.org/ab"));
+		assertSameOrder(comparator, iri("http://example.org/\u00e9"), iri("http://example.org/z"));
+		
+		assertEquals(comparator.hashCode(iri("http://example.org/a")), comparator.hashCode(iri("http://example.org/a")));
+	}
+
+	public void testLongTermComparator() throws IOException {
+		LongTermComparator comparator = new LongTermComparator();
+		assertSameOrder(comparator, new LongTermWritable(1), new LongTermWritable(2));
+		assertSameOrder(comparator, new LongTermWritable(1L << 48), new LongTermWritable(2));
+		assertSameOrder(comparator, new LongTermWritable(5), new LongTermWritable(5));
+	}
+	
+	public void testStreamPosition() throws IOException {
+		BufferedInputStream lhs = serialize(iri("a"));
+		BufferedInputStream rhs = serialize(iri("abc"));
+		new UTFTermComparator().compare(lhs, rhs);
+		assertEquals(0, lhs.available());
+		assertEquals(0, rhs.available());
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2010 Softgress - http://www.softgress.com/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package eu.larkc.iris.storage.rdf;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the grouping of the predicates of a RDF repository in splits
+ * 
+ * @author valer.roman@softgress.com
+ *
+ */
+public class RdfInputFormatTest extends TestCase {
+
+	public RdfInputFormatTest(String name) {
+		super(name);
+	}
+
+	public void testGroupPredicates() throws Exception {
+		Map<String, Long> predicateCounts = new LinkedHashMap<String, Long>();
+		predicateCounts.put("a", 10L);
+		predicateCounts.put("b", 60L);
+		predicateCounts.put("c", 30L);
+		predicateCounts.put("d", 20L);
+		predicateCounts.put("e", 40L);
+		
+		//b | e, a | c, d
+		List<RdfInputSplit> splits = RdfInputFormat.groupPredicates(predicateCounts, 3);
+		assertEquals(3, splits.size());
+		assertEquals(new HashSet<String>(Arrays.asList("b")), predicates(splits.get(0)));
+		assertEquals(60, splits.get(0).getLength());
+		assertEquals(new HashSet<String>(Arrays.asList("e", "a")), predicates(splits.get(1)));
+		assertEquals(50, splits.get(1).getLength());
+		assertEquals(new HashSet<String>(Arrays.asList("c", "d")), predicates(splits.get(2)));
+		assertEquals(50, splits.get(2).getLength());
+	}
+	
+	public void testEachPredicateInOneSplit() throws Exception {
+		Map<String, Long> predicateCounts = new LinkedHashMap<String, Long>();
+		for (int i = 0; i < 20; i++) {
+			predicateCounts.put("p" + i, (long) (i * i + 1));
+		}
+		Set<String> predicates = new HashSet<String>();
+		int count = 0;
+		for (RdfInputSplit split : RdfInputFormat.groupPredicates(predicateCounts, 6)) {
+			count += split.getPredicates().length;
+			predicates.addAll(predicates(split));
+		}
+		assertEquals(20, count);
+		assertEquals(predicateCounts.keySet(), predicates);
+	}
+	
+	private Set<String> predicates(RdfInputSplit split) {
+		return new HashSet<String>(Arrays.asList(split.getPredicates()));
+	}
+}